@@ -0,0 +1,218 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.RequestParser;
+import no.geosoft.logiq.core.websocket.BatchingSender;
+import no.geosoft.logiq.core.websocket.WebSocketClient;
+
+/**
+ * Producer throughput of small send requests over a local web socket,
+ * sent one frame per request or through a BatchingSender.
+ * <p>
+ * Each invocation sends N_REQUESTS requests and waits until they are
+ * written to the socket, so the score is requests per second.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchingSenderBenchmark
+{
+  /** Number of requests sent per invocation. */
+  private static final int N_REQUESTS = 100;
+
+  /** Port of the local server. */
+  private static final int PORT = 18080;
+
+  /** Max time in seconds to wait for the local server to start. */
+  private static final long START_TIMEOUT = 10L;
+
+  /** Number of samples in each send request. */
+  @Param({"1", "100"})
+  private int nSamples_;
+
+  /** Local server that discards what it receives. */
+  private WebSocketServer server_;
+
+  /** Client connected to the local server. */
+  private WebSocketClient client_;
+
+  /** Batching sender of the client. */
+  private BatchingSender sender_;
+
+  /** Batching sender of the client, merging the send requests. */
+  private BatchingSender mergingSender_;
+
+  /** The requests to send. */
+  private final List<Request> requests_ = new ArrayList<>();
+
+  /** Number of frames received by the server. */
+  private final AtomicLong nFrames_ = new AtomicLong();
+
+  /**
+   * Start the local server, connect the client and create the requests.
+   *
+   * @throws Exception  If the connection cannot be established.
+   */
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    // The server is started asynchronously, and must listen before clients connect
+    CountDownLatch serverStarted = new CountDownLatch(1);
+
+    server_ = new WebSocketServer(new InetSocketAddress("127.0.0.1", PORT)) {
+        @Override
+        public void onOpen(WebSocket connection, ClientHandshake handshake) {}
+
+        @Override
+        public void onClose(WebSocket connection, int code, String reason, boolean isRemote) {}
+
+        @Override
+        public void onMessage(WebSocket connection, String message)
+        {
+          nFrames_.incrementAndGet();
+        }
+
+        @Override
+        public void onMessage(WebSocket connection, ByteBuffer message)
+        {
+          nFrames_.incrementAndGet();
+        }
+
+        @Override
+        public void onError(WebSocket connection, Exception exception) {}
+
+        @Override
+        public void onStart()
+        {
+          serverStarted.countDown();
+        }
+      };
+    server_.setReuseAddr(true);
+    server_.start();
+
+    if (!serverStarted.await(START_TIMEOUT, TimeUnit.SECONDS))
+      throw new IllegalStateException("Unable to start local server");
+
+    client_ = new WebSocketClient(new URI("ws://127.0.0.1:" + PORT));
+    if (!client_.connectBlocking())
+      throw new IllegalStateException("Unable to connect to local server");
+
+    sender_ = new BatchingSender(client_);
+    sender_.setMaxDelay(0);
+    sender_.setMaxRequests(N_REQUESTS);
+
+    mergingSender_ = new BatchingSender(client_);
+    mergingSender_.setMaxDelay(0);
+    mergingSender_.setMaxRequests(N_REQUESTS);
+    mergingSender_.setMerging(true);
+
+    String json = Payloads.getSendRequest(nSamples_);
+    for (int i = 0; i < N_REQUESTS; i++)
+      requests_.add(RequestParser.parseLazy(json));
+  }
+
+  /**
+   * Close the client and stop the local server.
+   *
+   * @throws Exception  If the server cannot be stopped.
+   */
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    client_.closeBlocking();
+    server_.stop();
+  }
+
+  /**
+   * Wait until everything sent is written to the socket.
+   */
+  private void drain()
+  {
+    while (client_.hasBufferedData())
+      Thread.onSpinWait();
+  }
+
+  /**
+   * Send each request in a frame of its own through WebSocketClient.send().
+   *
+   * @throws Exception  If sending fails.
+   */
+  @Benchmark
+  @OperationsPerInvocation(N_REQUESTS)
+  public void single()
+    throws Exception
+  {
+    for (Request request : requests_)
+      client_.send(request);
+
+    drain();
+  }
+
+  /**
+   * Send the requests as one JSON-RPC batch through a BatchingSender.
+   *
+   * @throws Exception  If sending fails.
+   */
+  @Benchmark
+  @OperationsPerInvocation(N_REQUESTS)
+  public void batched()
+    throws Exception
+  {
+    for (Request request : requests_)
+      sender_.send(request);
+
+    sender_.flush();
+    drain();
+  }
+
+  /**
+   * Send the requests merged into one send request through a BatchingSender.
+   *
+   * @throws Exception  If sending fails.
+   */
+  @Benchmark
+  @OperationsPerInvocation(N_REQUESTS)
+  public void merged()
+    throws Exception
+  {
+    for (Request request : requests_)
+      mergingSender_.send(request);
+
+    mergingSender_.flush();
+    drain();
+  }
+}
@@ -0,0 +1,56 @@
+package no.geosoft.logiq.core.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the LogIQ Core benchmarks with throughput and allocation
+ * reporting.
+ * <p>
+ * Allocation is reported by the JMH GC profiler, where
+ * <em>gc.alloc.rate.norm</em> is the number of bytes allocated
+ * per operation. This is the figure to watch for regressions
+ * on the hot paths, as it is largely independent of the machine.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp &lt;classpath&gt; no.geosoft.logiq.core.benchmark.BenchmarkRunner [regexp]
+ * </pre>
+ * where the optional regular expression selects the benchmarks to run,
+ * like "RequestBenchmark" or "JsonUtilBenchmark.encode.*". All benchmarks
+ * are run by default.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class BenchmarkRunner
+{
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private BenchmarkRunner()
+  {
+    assert false;
+  }
+
+  /**
+   * Run the benchmarks.
+   *
+   * @param arguments  Optional regular expression of benchmarks to run.
+   * @throws RunnerException  If the benchmark run fails.
+   */
+  public static void main(String[] arguments)
+    throws RunnerException
+  {
+    String include = arguments.length > 0 ? arguments[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+
+    Options options = new OptionsBuilder()
+      .include(include)
+      .addProfiler(GCProfiler.class)
+      .build();
+
+    new Runner(options).run();
+  }
+}
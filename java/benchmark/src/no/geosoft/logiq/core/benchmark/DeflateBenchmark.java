@@ -0,0 +1,165 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.TextFrame;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.websocket.PerMessageDeflate;
+
+/**
+ * Bandwidth against CPU of permessage-deflate on send requests,
+ * for a range of compression levels.
+ * <p>
+ * The score is the cost of compressing or decompressing one message.
+ * The bytesIn and bytesOut counters give the bandwidth, and their
+ * ratio the compression ratio. Messages are compressed without context
+ * takeover, as repeating the same message with context takeover would
+ * give unrealistically small output.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeflateBenchmark
+{
+  /** Negotiated answer of a server accepting no context takeover both ways. */
+  private static final String NO_CONTEXT_TAKEOVER =
+    "permessage-deflate; client_no_context_takeover; server_no_context_takeover";
+
+  /**
+   * Bytes before and after compression, reported per second
+   * along with the score.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Bandwidth
+  {
+    /** Number of bytes to compress. */
+    public long bytesIn;
+
+    /** Number of bytes compressed. */
+    public long bytesOut;
+
+    /**
+     * Reset the counters before each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+      bytesIn = 0;
+      bytesOut = 0;
+    }
+  }
+
+  /** Name of message to compress. See Payloads. */
+  @Param({Payloads.SEND_1K, Payloads.SEND_100K})
+  private String message_;
+
+  /** Compression level. */
+  @Param({"1", "6", "9"})
+  private int level_;
+
+  /** The UTF-8 bytes of the message. */
+  private byte[] bytes_;
+
+  /** The compressed message. */
+  private byte[] compressed_;
+
+  /** Compressing side. */
+  private PerMessageDeflate deflater_;
+
+  /** Decompressing side. */
+  private PerMessageDeflate inflater_;
+
+  /**
+   * Create the message and the two sides of the extension.
+   */
+  @Setup
+  public void setup()
+  {
+    bytes_ = Payloads.getRequest(message_).getBytes(StandardCharsets.UTF_8);
+
+    deflater_ = new PerMessageDeflate();
+    deflater_.setLevel(level_);
+    deflater_.setContextTakeover(false);
+    deflater_.acceptProvidedExtensionAsClient(NO_CONTEXT_TAKEOVER);
+
+    inflater_ = new PerMessageDeflate();
+    inflater_.acceptProvidedExtensionAsClient(NO_CONTEXT_TAKEOVER);
+
+    TextFrame frame = newFrame(bytes_);
+    deflater_.encodeFrame(frame);
+
+    ByteBuffer payload = frame.getPayloadData();
+    compressed_ = new byte[payload.remaining()];
+    payload.get(compressed_);
+  }
+
+  /**
+   * Return a final text frame of the specified payload.
+   *
+   * @param payload  Payload of frame. Non-null.
+   * @return         The requested frame. Never null.
+   */
+  private static TextFrame newFrame(byte[] payload)
+  {
+    TextFrame frame = new TextFrame();
+    frame.setPayload(ByteBuffer.wrap(payload));
+    frame.setFin(true);
+    return frame;
+  }
+
+  /**
+   * Compress the message.
+   *
+   * @param bandwidth  Bytes in and out. Non-null.
+   * @return           The compressed frame.
+   */
+  @Benchmark
+  public TextFrame deflate(Bandwidth bandwidth)
+  {
+    TextFrame frame = newFrame(bytes_);
+    deflater_.encodeFrame(frame);
+
+    bandwidth.bytesIn += bytes_.length;
+    bandwidth.bytesOut += frame.getPayloadData().remaining();
+    return frame;
+  }
+
+  /**
+   * Decompress the compressed message.
+   *
+   * @return  The decompressed frame.
+   * @throws InvalidDataException  If the message cannot be decompressed.
+   */
+  @Benchmark
+  public TextFrame inflate()
+    throws InvalidDataException
+  {
+    TextFrame frame = newFrame(compressed_);
+    frame.setRSV1(true);
+    inflater_.decodeFrame(frame);
+    return frame;
+  }
+}
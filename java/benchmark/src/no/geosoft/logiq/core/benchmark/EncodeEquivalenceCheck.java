@@ -0,0 +1,131 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import javax.json.Json;
+
+import no.geosoft.logiq.core.json.JsonUtil;
+
+/**
+ * Property based check that JsonUtil.encode() escapes strings exactly
+ * as javax.json does.
+ * <p>
+ * Random strings are generated with a bias towards the characters that
+ * matter: control characters, quote, backslash and slash, mixed with
+ * ASCII and arbitrary BMP characters, unpaired surrogates included.
+ * Each string is encoded into a String, a StringBuilder and a plain
+ * Appendable, and all three must equal the javax.json serialization
+ * of the same string.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp &lt;classpath&gt; no.geosoft.logiq.core.benchmark.EncodeEquivalenceCheck [nStrings [seed]]
+ * </pre>
+ * The defaults are 200000 strings and seed 42. The exit code is 0 if
+ * all strings match and 1 otherwise.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class EncodeEquivalenceCheck
+{
+  /** Characters with short escape forms, and slash which is not escaped. */
+  private static final String SPECIAL_CHARACTERS = "\"\\\b\f\n\r\t/";
+
+  /** Maximum length of the generated strings. */
+  private static final int MAX_LENGTH = 40;
+
+  /** Maximum number of mismatches reported. */
+  private static final int MAX_REPORTED = 10;
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private EncodeEquivalenceCheck()
+  {
+    assert false;
+  }
+
+  /**
+   * Return a random string.
+   *
+   * @param random  Random generator. Non-null.
+   * @return        A random string. Never null.
+   */
+  private static String newString(Random random)
+  {
+    assert random != null : "random cannot be null";
+
+    char[] characters = new char[random.nextInt(MAX_LENGTH)];
+    for (int i = 0; i < characters.length; i++) {
+      switch (random.nextInt(4)) {
+        case 0  : characters[i] = (char) random.nextInt(0x40); break;
+        case 1  : characters[i] = (char) random.nextInt(0x80); break;
+        case 2  : characters[i] = (char) random.nextInt(0x10000); break;
+        default : characters[i] = SPECIAL_CHARACTERS.charAt(random.nextInt(SPECIAL_CHARACTERS.length()));
+      }
+    }
+
+    return new String(characters);
+  }
+
+  /**
+   * Return the specified string as a printable list of character codes.
+   *
+   * @param text  Text to describe. Non-null.
+   * @return      The character codes of text. Never null.
+   */
+  private static String toCodes(String text)
+  {
+    assert text != null : "text cannot be null";
+
+    StringBuilder s = new StringBuilder("[");
+    for (int i = 0; i < text.length(); i++) {
+      if (i > 0)
+        s.append(' ');
+      s.append(Integer.toHexString(text.charAt(i)));
+    }
+    s.append(']');
+    return s.toString();
+  }
+
+  /**
+   * Run the check.
+   *
+   * @param arguments  Optional number of strings and random seed.
+   * @throws IOException  If writing to the appendable fails. Cannot happen.
+   */
+  public static void main(String[] arguments)
+    throws IOException
+  {
+    int nStrings = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 200000;
+    long seed = arguments.length > 1 ? Long.parseLong(arguments[1]) : 42L;
+
+    Random random = new Random(seed);
+
+    int nMismatches = 0;
+    for (int i = 0; i < nStrings; i++) {
+      String text = newString(random);
+      String expected = Json.createValue(text).toString();
+
+      String encoded = JsonUtil.encode(text);
+
+      StringBuilder s = new StringBuilder();
+      JsonUtil.encode(text, s);
+
+      StringWriter writer = new StringWriter();
+      JsonUtil.encode(text, writer);
+
+      if (expected.equals(encoded) && expected.equals(s.toString()) && expected.equals(writer.toString()))
+        continue;
+
+      nMismatches++;
+      if (nMismatches <= MAX_REPORTED)
+        System.out.println("Mismatch for " + toCodes(text) + ": expected " + expected + ", got " + encoded);
+    }
+
+    System.out.println(nStrings + " strings checked with seed " + seed + ", " + nMismatches + " mismatches");
+    System.exit(nMismatches == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,248 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+import no.geosoft.logiq.core.jsonrpc.Response;
+import no.geosoft.logiq.core.websocket.PreparedFrame;
+import no.geosoft.logiq.core.websocket.PreparedResponse;
+
+/**
+ * Server side cost of delivering one batch of producer data to an
+ * increasing number of consumers over local web sockets.
+ * <p>
+ * The data is sent as a new Response per consumer, as a PreparedResponse
+ * under the ID of each consumer, or as one PreparedFrame shared by all.
+ * Each invocation sends to all consumers and waits until everything is
+ * written to the sockets, so the score is the cost of one fan-out.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark
+{
+  /** Port of the local server. */
+  private static final int PORT = 18081;
+
+  /** Max time in seconds to wait for the local server to start. */
+  private static final long START_TIMEOUT = 10L;
+
+  /**
+   * A JSON value given as unparsed text, as producer data is
+   * forwarded by the server.
+   */
+  private static final class RawJson
+    implements JsonSerializable
+  {
+    /** The JSON text. */
+    private final String json_;
+
+    /**
+     * Create a raw JSON instance.
+     *
+     * @param json  The JSON text. Non-null.
+     */
+    RawJson(String json)
+    {
+      assert json != null : "json cannot be null";
+      json_ = json;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toJson()
+    {
+      return json_;
+    }
+  }
+
+  /** Number of consumers. */
+  @Param({"1", "10", "100"})
+  private int nConsumers_;
+
+  /** Number of samples in the data. */
+  @Param({"10", "1000"})
+  private int nSamples_;
+
+  /** Local server delivering the data. */
+  private WebSocketServer server_;
+
+  /** The consumers, discarding what they receive. */
+  private final List<WebSocketClient> clients_ = new ArrayList<>();
+
+  /** Server side connection of each consumer. */
+  private final List<WebSocket> connections_ = new CopyOnWriteArrayList<>();
+
+  /** startConsuming request ID of each consumer connection. */
+  private final Map<WebSocket,Long> subscribers_ = new LinkedHashMap<>();
+
+  /** The data to deliver. */
+  private JsonSerializable data_;
+
+  /**
+   * Start the local server and connect the consumers.
+   *
+   * @throws Exception  If a connection cannot be established.
+   */
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    // The server is started asynchronously, and must listen before clients connect
+    CountDownLatch serverStarted = new CountDownLatch(1);
+
+    server_ = new WebSocketServer(new InetSocketAddress("127.0.0.1", PORT)) {
+        @Override
+        public void onOpen(WebSocket connection, ClientHandshake handshake)
+        {
+          connections_.add(connection);
+        }
+
+        @Override
+        public void onClose(WebSocket connection, int code, String reason, boolean isRemote) {}
+
+        @Override
+        public void onMessage(WebSocket connection, String message) {}
+
+        @Override
+        public void onMessage(WebSocket connection, ByteBuffer message) {}
+
+        @Override
+        public void onError(WebSocket connection, Exception exception) {}
+
+        @Override
+        public void onStart()
+        {
+          serverStarted.countDown();
+        }
+      };
+    server_.setReuseAddr(true);
+    server_.start();
+
+    if (!serverStarted.await(START_TIMEOUT, TimeUnit.SECONDS))
+      throw new IllegalStateException("Unable to start local server");
+
+    for (int i = 0; i < nConsumers_; i++) {
+      WebSocketClient client = new WebSocketClient(new URI("ws://127.0.0.1:" + PORT)) {
+          @Override
+          public void onOpen(ServerHandshake handshake) {}
+
+          @Override
+          public void onMessage(String message) {}
+
+          @Override
+          public void onClose(int code, String reason, boolean isRemote) {}
+
+          @Override
+          public void onError(Exception exception) {}
+        };
+
+      if (!client.connectBlocking())
+        throw new IllegalStateException("Unable to connect to local server");
+
+      clients_.add(client);
+    }
+
+    while (connections_.size() < nConsumers_)
+      Thread.sleep(1);
+
+    long id = 1000;
+    for (WebSocket connection : connections_)
+      subscribers_.put(connection, id++);
+
+    data_ = new RawJson(Payloads.getTimeSeries(nSamples_));
+  }
+
+  /**
+   * Close the consumers and stop the local server.
+   *
+   * @throws Exception  If the server cannot be stopped.
+   */
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    for (WebSocketClient client : clients_)
+      client.closeBlocking();
+
+    server_.stop();
+  }
+
+  /**
+   * Wait until everything sent is written to the sockets.
+   */
+  private void drain()
+  {
+    for (WebSocket connection : connections_) {
+      while (connection.hasBufferedData())
+        Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Build, serialize and send a new Response to each consumer.
+   */
+  @Benchmark
+  public void perConsumer()
+  {
+    for (Map.Entry<WebSocket,Long> subscriber : subscribers_.entrySet())
+      subscriber.getKey().send(new Response(data_, subscriber.getValue()).toJson());
+
+    drain();
+  }
+
+  /**
+   * Serialize the data once, and send it under the ID of each consumer.
+   */
+  @Benchmark
+  public void preparedResponse()
+  {
+    new PreparedResponse(data_).send(subscribers_);
+
+    drain();
+  }
+
+  /**
+   * Serialize the data once into a frame shared by all consumers.
+   */
+  @Benchmark
+  public void preparedFrame()
+  {
+    PreparedFrame.of(new Response(data_, 1000L)).send(connections_);
+
+    drain();
+  }
+}
@@ -0,0 +1,139 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.json.JsonUtil;
+
+/**
+ * The JsonUtil methods on the message hot paths.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonUtilBenchmark
+{
+  /**
+   * Messages to validate. Kept in a separate state so that only
+   * the isValid benchmark is repeated for each message.
+   */
+  @State(Scope.Benchmark)
+  public static class Messages
+  {
+    /** Name of message to validate. See Payloads. */
+    @Param({Payloads.ADMIN, Payloads.SEND_1K, Payloads.SEND_100K, Payloads.ERROR})
+    private String message_;
+
+    /** The JSON text of the message. */
+    private String json_;
+
+    /**
+     * Create the message to validate.
+     */
+    @Setup
+    public void setup()
+    {
+      json_ = message_.equals(Payloads.ERROR) ? Payloads.getErrorResponse() : Payloads.getRequest(message_);
+    }
+  }
+
+  /** A typical string param, like a user name, with nothing to escape. */
+  private final String plainText_ = "producer.rig7@geosoft.no";
+
+  /** A string with characters to escape, like an error message. */
+  private final String escapedText_ = "Curve \"hookload\" has 2 dimensions,\n\texpected 1";
+
+  /** One sample block as boxed values. */
+  private final List<Double> sampleList_ = new ArrayList<>();
+
+  /** The same sample block as primitive values. */
+  private final double[] sampleArray_ = new double[1000];
+
+  /**
+   * Create the sample blocks.
+   */
+  @Setup
+  public void setup()
+  {
+    Random random = new Random(0);
+    for (int i = 0; i < sampleArray_.length; i++) {
+      sampleArray_[i] = 1200.0 + random.nextGaussian() * 35.0;
+      sampleList_.add(sampleArray_[i]);
+    }
+  }
+
+  /**
+   * Encode a string with nothing to escape.
+   *
+   * @return  The encoded string. Never null.
+   */
+  @Benchmark
+  public String encodePlain()
+  {
+    return JsonUtil.encode(plainText_);
+  }
+
+  /**
+   * Encode a string with characters to escape.
+   *
+   * @return  The encoded string. Never null.
+   */
+  @Benchmark
+  public String encodeEscaped()
+  {
+    return JsonUtil.encode(escapedText_);
+  }
+
+  /**
+   * Get 1000 boxed samples as JSON.
+   *
+   * @return  The samples as JSON. Never null.
+   */
+  @Benchmark
+  public String getAsStringList()
+  {
+    return JsonUtil.getAsString(sampleList_);
+  }
+
+  /**
+   * Get 1000 primitive samples as JSON.
+   *
+   * @return  The samples as JSON. Never null.
+   */
+  @Benchmark
+  public String getAsStringArray()
+  {
+    return JsonUtil.getAsString(sampleArray_);
+  }
+
+  /**
+   * Validate a message.
+   *
+   * @param messages  The message to validate. Non-null.
+   * @return          True if the message is valid JSON.
+   */
+  @Benchmark
+  public boolean isValid(Messages messages)
+  {
+    return JsonUtil.isValid(messages.json_);
+  }
+}
@@ -0,0 +1,167 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.util.Random;
+
+/**
+ * Realistic LogIQ messages used as input to the benchmarks.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class Payloads
+{
+  /** Start time of the generated time series. 2024-01-01T00:00:00Z. */
+  private static final long START_TIME = 1704067200000L;
+
+  /** Small administrative request. Payload names are used as benchmark @Param values. */
+  static final String ADMIN = "admin";
+
+  /** Send request with 1000 samples. */
+  static final String SEND_1K = "send-1k";
+
+  /** Send request with 100000 samples. */
+  static final String SEND_100K = "send-100k";
+
+  /** Success response to a getStreams call. */
+  static final String SUCCESS = "success";
+
+  /** Error response. */
+  static final String ERROR = "error";
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private Payloads()
+  {
+    assert false;
+  }
+
+  /**
+   * Return the request message of the specified name.
+   *
+   * @param name  Name of request, ADMIN, SEND_1K or SEND_100K. Non-null.
+   * @return      The requested message as JSON. Never null.
+   */
+  static String getRequest(String name)
+  {
+    switch (name) {
+      case ADMIN     : return getAdminRequest();
+      case SEND_1K   : return getSendRequest(1000);
+      case SEND_100K : return getSendRequest(100000);
+      default :
+        throw new IllegalArgumentException("Unknown request: " + name);
+    }
+  }
+
+  /**
+   * Return the response message of the specified name.
+   *
+   * @param name  Name of response, SUCCESS or ERROR. Non-null.
+   * @return      The requested message as JSON. Never null.
+   */
+  static String getResponse(String name)
+  {
+    switch (name) {
+      case SUCCESS : return getSuccessResponse();
+      case ERROR   : return getErrorResponse();
+      default :
+        throw new IllegalArgumentException("Unknown response: " + name);
+    }
+  }
+
+  /**
+   * Return a success response of a getStreams call.
+   *
+   * @return  A success response message as JSON. Never null.
+   */
+  static String getSuccessResponse()
+  {
+    StringBuilder s = new StringBuilder();
+    s.append("{\"jsonrpc\":\"2.0\",\"result\":[");
+    for (int i = 0; i < 20; i++) {
+      if (i > 0)
+        s.append(',');
+      s.append("{\"id\":").append(1719243 + i);
+      s.append(",\"name\":\"Rig ").append(i).append(" - Drilling\"");
+      s.append(",\"nSamples\":").append(1000 * i).append('}');
+    }
+    s.append("],\"id\":1001}");
+    return s.toString();
+  }
+
+  /**
+   * Return an error response, as for a send request with invalid data.
+   *
+   * @return  An error response message as JSON. Never null.
+   */
+  static String getErrorResponse()
+  {
+    return "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32003,\"message\":\"LogIQ - Invalid format\"," +
+           "\"data\":\"Curve \\\"hookload\\\" has 2 dimensions, expected 1\"},\"id\":1002}";
+  }
+
+  /**
+   * Return a small administrative request, a getStreams call.
+   *
+   * @return  A small request message as JSON. Never null.
+   */
+  static String getAdminRequest()
+  {
+    return "{\"jsonrpc\":\"2.0\",\"method\":\"getStreams\",\"params\":[\"producer\",\"secret\"],\"id\":1001}";
+  }
+
+  /**
+   * Return a TimeSeries.JSON document with a time index and two
+   * float curves.
+   *
+   * @param nSamples  Number of samples (rows) in the document. [0,&gt;.
+   * @return          The requested document. Never null.
+   */
+  static String getTimeSeries(int nSamples)
+  {
+    assert nSamples >= 0 : "Invalid nSamples: " + nSamples;
+
+    Random random = new Random(nSamples);
+
+    StringBuilder s = new StringBuilder(64 * nSamples + 1024);
+    s.append("[{\"header\":{");
+    s.append("\"name\":\"Rig 7 - Drilling\",");
+    s.append("\"description\":\"Surface sensors\",");
+    s.append("\"source\":\"LogIQ benchmark\",");
+    s.append("\"organization\":\"GeoSoft\",");
+    s.append("\"timeStart\":\"2024-01-01T00:00:00.000Z\"");
+    s.append("},\"curves\":[");
+    s.append("{\"name\":\"time\",\"quantity\":\"time\",\"unit\":\"ms\",\"valueType\":\"integer\",\"dimensions\":1},");
+    s.append("{\"name\":\"hookload\",\"quantity\":\"force\",\"unit\":\"kN\",\"valueType\":\"float\",\"dimensions\":1},");
+    s.append("{\"name\":\"rpm\",\"quantity\":\"angular velocity\",\"unit\":\"rpm\",\"valueType\":\"float\",\"dimensions\":1}");
+    s.append("],\"data\":[");
+
+    for (int i = 0; i < nSamples; i++) {
+      if (i > 0)
+        s.append(',');
+
+      s.append('[');
+      s.append(START_TIME + 1000L * i);
+      s.append(',');
+      s.append(1200.0 + random.nextGaussian() * 35.0);
+      s.append(',');
+      s.append(118.0 + random.nextGaussian() * 4.0);
+      s.append(']');
+    }
+
+    s.append("]}]");
+    return s.toString();
+  }
+
+  /**
+   * Return a send request carrying a TimeSeries.JSON document with
+   * the specified number of samples.
+   *
+   * @param nSamples  Number of samples in the data param. [0,&gt;.
+   * @return          The requested message as JSON. Never null.
+   */
+  static String getSendRequest(int nSamples)
+  {
+    return "{\"jsonrpc\":\"2.0\",\"method\":\"send\",\"params\":[1719243,\"producer\",\"secret\"," +
+           getTimeSeries(nSamples) + "],\"id\":1002}";
+  }
+}
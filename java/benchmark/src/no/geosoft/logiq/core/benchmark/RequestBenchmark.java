@@ -0,0 +1,112 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.jsonrpc.MessageCodec;
+import no.geosoft.logiq.core.jsonrpc.MutableRequest;
+import no.geosoft.logiq.core.jsonrpc.Request;
+
+/**
+ * Decoding and encoding of JSON-RPC requests.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark
+{
+  /** Name of message to use. See Payloads. */
+  @Param({Payloads.ADMIN, Payloads.SEND_1K, Payloads.SEND_100K})
+  private String message_;
+
+  /** The JSON text of the message. */
+  private String json_;
+
+  /** The message as a request instance. */
+  private Request request_;
+
+  /** The message as a mutable request instance. */
+  private MutableRequest mutableRequest_;
+
+  /** Request refilled by the decodeMutable benchmark. */
+  private final MutableRequest decodedRequest_ = new MutableRequest();
+
+  /** Buffer reused by the encodeMutable benchmark. */
+  private ByteBuffer buffer_ = ByteBuffer.allocate(1024);
+
+  /**
+   * Create the message of this benchmark.
+   */
+  @Setup
+  public void setup()
+  {
+    json_ = Payloads.getRequest(message_);
+    request_ = new Request(json_);
+    mutableRequest_ = new MutableRequest();
+    mutableRequest_.read(json_);
+  }
+
+  /**
+   * Decode the message through Request(String).
+   *
+   * @return  The decoded request. Never null.
+   */
+  @Benchmark
+  public Request decode()
+  {
+    return new Request(json_);
+  }
+
+  /**
+   * Encode the message through Request.toJson().
+   *
+   * @return  The encoded request. Never null.
+   */
+  @Benchmark
+  public String encode()
+  {
+    return request_.toJson();
+  }
+
+  /**
+   * Decode the message by refilling a mutable request.
+   *
+   * @return  The decoded request. Never null.
+   */
+  @Benchmark
+  public MutableRequest decodeMutable()
+  {
+    decodedRequest_.read(json_);
+    return decodedRequest_;
+  }
+
+  /**
+   * Encode the message from a mutable request into a reused byte buffer.
+   *
+   * @return  The buffer holding the encoded request. Never null.
+   */
+  @Benchmark
+  public ByteBuffer encodeMutable()
+  {
+    buffer_.clear();
+    buffer_ = MessageCodec.encode(mutableRequest_, buffer_);
+    return buffer_;
+  }
+}
@@ -0,0 +1,105 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.jsonrpc.MethodRegistry;
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.RequestException;
+import no.geosoft.logiq.core.jsonrpc.RequestParser;
+
+/**
+ * Compare the tree based Request(String) constructor with the
+ * event driven RequestParser in eager and lazy mode, without and
+ * with the param types of a MethodRegistry.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestParseBenchmark
+{
+  /** Name of message to decode. See Payloads. */
+  @Param({Payloads.ADMIN, Payloads.SEND_1K, Payloads.SEND_100K})
+  private String message_;
+
+  /** The JSON text of the message. */
+  private String json_;
+
+  /** Param types of the LogIQ methods. */
+  private final MethodRegistry registry_ = MethodRegistry.createLogIqRegistry();
+
+  /**
+   * Create the message of this benchmark.
+   */
+  @Setup
+  public void setup()
+  {
+    json_ = Payloads.getRequest(message_);
+  }
+
+  /**
+   * Decode through the JSON object tree.
+   *
+   * @return  The decoded request. Never null.
+   */
+  @Benchmark
+  public Request tree()
+  {
+    return new Request(json_);
+  }
+
+  /**
+   * Decode through the event driven parser.
+   *
+   * @return  The decoded request. Never null.
+   */
+  @Benchmark
+  public Request streaming()
+  {
+    return RequestParser.parse(json_);
+  }
+
+  /**
+   * Decode lazily and extract the last param as JSON text,
+   * the way a forwarding server would.
+   *
+   * @return  The unparsed last param. Null for messages without params.
+   */
+  @Benchmark
+  public String lazy()
+  {
+    Request request = RequestParser.parseLazy(json_);
+    return request.getParamAsJson(request.getNParams() - 1);
+  }
+
+  /**
+   * Decode lazily with the params decoded to their declared types,
+   * and extract the last param as JSON text.
+   *
+   * @return  The unparsed last param. Null for messages without params.
+   * @throws RequestException  If the params are not of their declared types.
+   */
+  @Benchmark
+  public String typed()
+    throws RequestException
+  {
+    Request request = RequestParser.parseLazy(json_, registry_);
+    return request.getParamAsJson(request.getNParams() - 1);
+  }
+}
@@ -0,0 +1,112 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.jsonrpc.MessageCodec;
+import no.geosoft.logiq.core.jsonrpc.MutableResponse;
+import no.geosoft.logiq.core.jsonrpc.Response;
+
+/**
+ * Decoding and encoding of JSON-RPC responses.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBenchmark
+{
+  /** Name of message to use. See Payloads. */
+  @Param({Payloads.SUCCESS, Payloads.ERROR})
+  private String message_;
+
+  /** The JSON text of the message. */
+  private String json_;
+
+  /** The message as a response instance. */
+  private Response response_;
+
+  /** The message as a mutable response instance. */
+  private MutableResponse mutableResponse_;
+
+  /** Response refilled by the decodeMutable benchmark. */
+  private final MutableResponse decodedResponse_ = new MutableResponse();
+
+  /** Buffer reused by the encodeMutable benchmark. */
+  private ByteBuffer buffer_ = ByteBuffer.allocate(1024);
+
+  /**
+   * Create the message of this benchmark.
+   */
+  @Setup
+  public void setup()
+  {
+    json_ = Payloads.getResponse(message_);
+    response_ = new Response(json_);
+    mutableResponse_ = new MutableResponse();
+    mutableResponse_.read(json_);
+  }
+
+  /**
+   * Decode the message through Response(String).
+   *
+   * @return  The decoded response. Never null.
+   */
+  @Benchmark
+  public Response decode()
+  {
+    return new Response(json_);
+  }
+
+  /**
+   * Encode the message through Response.toJson().
+   *
+   * @return  The encoded response. Never null.
+   */
+  @Benchmark
+  public String encode()
+  {
+    return response_.toJson();
+  }
+
+  /**
+   * Decode the message by refilling a mutable response.
+   *
+   * @return  The decoded response. Never null.
+   */
+  @Benchmark
+  public MutableResponse decodeMutable()
+  {
+    decodedResponse_.read(json_);
+    return decodedResponse_;
+  }
+
+  /**
+   * Encode the message from a mutable response into a reused byte buffer.
+   *
+   * @return  The buffer holding the encoded response. Never null.
+   */
+  @Benchmark
+  public ByteBuffer encodeMutable()
+  {
+    buffer_.clear();
+    buffer_ = MessageCodec.encode(mutableResponse_, buffer_);
+    return buffer_;
+  }
+}
@@ -0,0 +1,153 @@
+package no.geosoft.logiq.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.RequestException;
+import no.geosoft.logiq.core.jsonrpc.RequestParser;
+import no.geosoft.logiq.core.timeseries.ColumnarTimeSeries;
+import no.geosoft.logiq.core.timeseries.TimeSeriesReader;
+
+/**
+ * Compare reading the data of a send request through the JSON object
+ * tree of the data param with reading it incrementally by TimeSeriesReader,
+ * and with reading it into ColumnarTimeSeries on and off the heap.
+ * <p>
+ * All sum the values of one curve, so every row is visited.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeSeriesReaderBenchmark
+{
+  /** Number of the data param of a send request. */
+  private static final int DATA_PARAM = 3;
+
+  /** Name of message to read. See Payloads. */
+  @Param({Payloads.SEND_1K, Payloads.SEND_100K})
+  private String message_;
+
+  /** The JSON text of the message. */
+  private String json_;
+
+  /**
+   * Create the message of this benchmark.
+   */
+  @Setup
+  public void setup()
+  {
+    json_ = Payloads.getRequest(message_);
+  }
+
+  /**
+   * Decode the data param into a JSON object tree and traverse it.
+   *
+   * @return  Sum of the hookload curve.
+   */
+  @Benchmark
+  public double tree()
+  {
+    Request request = RequestParser.parseLazy(json_);
+
+    double sum = 0.0;
+    for (JsonValue timeSeries : (JsonArray) request.getParam(DATA_PARAM)) {
+      for (JsonValue row : ((JsonObject) timeSeries).getJsonArray("data"))
+        sum += ((JsonArray) row).getJsonNumber(1).doubleValue();
+    }
+
+    return sum;
+  }
+
+  /**
+   * Read the data param incrementally.
+   *
+   * @return  Sum of the hookload curve.
+   * @throws RequestException  If the data is not valid TimeSeries.JSON.
+   */
+  @Benchmark
+  public double incremental()
+    throws RequestException
+  {
+    Request request = RequestParser.parseLazy(json_);
+
+    double sum = 0.0;
+    try (TimeSeriesReader reader = new TimeSeriesReader(request, DATA_PARAM)) {
+      while (reader.nextTimeSeries()) {
+        while (reader.nextRow())
+          sum += reader.getDouble(1);
+      }
+    }
+
+    return sum;
+  }
+
+  /**
+   * Read the data param into columnar time series and sum the curve.
+   *
+   * @param isDirect  True to store the columns outside of the heap, false to store them on the heap.
+   * @return          Sum of the hookload curve.
+   * @throws RequestException  If the data is not valid TimeSeries.JSON.
+   */
+  private double columnar(boolean isDirect)
+    throws RequestException
+  {
+    Request request = RequestParser.parseLazy(json_);
+
+    double sum = 0.0;
+    try (TimeSeriesReader reader = new TimeSeriesReader(request, DATA_PARAM)) {
+      for (ColumnarTimeSeries timeSeries : ColumnarTimeSeries.read(reader, isDirect)) {
+        for (double value : timeSeries.getDoubles(1, 0))
+          sum += value;
+      }
+    }
+
+    return sum;
+  }
+
+  /**
+   * Read the data param into columnar time series on the heap.
+   *
+   * @return  Sum of the hookload curve.
+   * @throws RequestException  If the data is not valid TimeSeries.JSON.
+   */
+  @Benchmark
+  public double columnarHeap()
+    throws RequestException
+  {
+    return columnar(false);
+  }
+
+  /**
+   * Read the data param into columnar time series outside of the heap.
+   *
+   * @return  Sum of the hookload curve.
+   * @throws RequestException  If the data is not valid TimeSeries.JSON.
+   */
+  @Benchmark
+  public double columnarDirect()
+    throws RequestException
+  {
+    return columnar(true);
+  }
+}
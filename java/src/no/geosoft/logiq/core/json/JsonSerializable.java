@@ -1,5 +1,7 @@
 package no.geosoft.logiq.core.json;
 
+import java.io.IOException;
+
 /**
  * Common interface for classes that are able to serialize
  * its content to JSON.
@@ -14,4 +16,24 @@ public interface JsonSerializable
    * @return  A JSON string representation of this object. Never null.
    */
   public String toJson();
+
+  /**
+   * Write the JSON representation of this object to the specified appendable.
+   * <p>
+   * The default implementation appends the result of {@link #toJson()}.
+   * Classes that serialize large content should override it so that
+   * the JSON is written directly, without the intermediate string.
+   *
+   * @param appendable  Appendable to write to. Non-null.
+   * @throws IllegalArgumentException  If appendable is null.
+   * @throws IOException  If the append operation fails.
+   */
+  public default void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    appendable.append(toJson());
+  }
 }
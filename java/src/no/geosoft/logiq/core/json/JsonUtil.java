@@ -12,13 +12,13 @@ import java.util.Map;
 import java.util.HashMap;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
-import javax.json.JsonException;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
@@ -40,6 +40,9 @@ import no.geosoft.cc.util.ISO8601DateParser;
  */
 public final class JsonUtil
 {
+  /** Hex digits used in unicode escape sequences. */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
   /**
    * Private constructor to prevent client instantiation.
    */
@@ -49,26 +52,71 @@ public final class JsonUtil
   }
 
   /**
-   * Check if the specified text is a valid JSON structure.
+   * Check if the specified text is a valid JSON structure,
+   * i.e. a JSON object or array.
+   * <p>
+   * The text is checked in a single pass without building any JSON model.
+   * Use {@link #getErrorOffset(CharSequence)} to find the location of an error.
    *
    * @param text  Text to check. May be null in case false is returned.
    * @return      True if the text is a valid JSON structure, false otherwise.
    */
   public static boolean isValid(String text)
+  {
+    return text != null && JsonValidator.validate(text) == -1;
+  }
+
+  /**
+   * Check if the specified UTF-8 bytes is a valid JSON structure,
+   * i.e. a JSON object or array.
+   *
+   * @param bytes  Bytes to check. May be null in case false is returned.
+   * @return       True if the bytes is a valid JSON structure, false otherwise.
+   */
+  public static boolean isValid(byte[] bytes)
+  {
+    return bytes != null && JsonValidator.validate(bytes, 0, bytes.length) == -1;
+  }
+
+  /**
+   * Return the offset of the first syntax error in the specified text.
+   * <p>
+   * The text must be a JSON object or array, optionally surrounded by
+   * whitespace. If the text ends prematurely the offset of the error
+   * is the length of the text.
+   *
+   * @param text  Text to check. Non-null.
+   * @return      Offset of the first error, or -1 if the text is a valid JSON structure.
+   * @throws IllegalArgumentException  If text is null.
+   */
+  public static int getErrorOffset(CharSequence text)
   {
     if (text == null)
-      return false;
+      throw new IllegalArgumentException("text cannot be null");
 
-    try {
-      Json.createReader(new StringReader(text)).read();
-      return true;
-    }
-    catch (JsonParsingException exception) {
-      return false;
-    }
-    catch (JsonException exception) {
-      return false;
-    }
+    return JsonValidator.validate(text);
+  }
+
+  /**
+   * Return the offset of the first syntax error in the specified UTF-8 bytes.
+   * Malformed UTF-8 within strings is reported as an error.
+   * See {@link #getErrorOffset(CharSequence)}.
+   *
+   * @param bytes   Bytes to check. Non-null.
+   * @param offset  Offset of the text within bytes. [0,&gt;.
+   * @param length  Number of bytes of the text. [0,&gt;.
+   * @return        Index within bytes of the first error, or -1 if the text is a valid JSON structure.
+   * @throws IllegalArgumentException  If bytes is null or offset and length is outside bytes.
+   */
+  public static int getErrorOffset(byte[] bytes, int offset, int length)
+  {
+    if (bytes == null)
+      throw new IllegalArgumentException("bytes cannot be null");
+
+    if (offset < 0 || length < 0 || offset > bytes.length - length)
+      throw new IllegalArgumentException("Invalid range: " + offset + "," + length);
+
+    return JsonValidator.validate(bytes, offset, length);
   }
 
   /**
@@ -86,12 +134,88 @@ public final class JsonUtil
     if (text == null)
       throw new IllegalArgumentException("text cannot be null");
 
-    // We could scan the text and escape as necessary.
-    // Better is to let javax.json fix this, but as there is no public
-    // method that does this conversion we add the text to a phony JSON
-    // object and then extract it again. Probably not as efficient, but
-    // JSON Well Log Format doesn't include many strings anyway.
-    return Json.createObjectBuilder().add("x", text).build().get("x").toString();
+    StringBuilder s = new StringBuilder(text.length() + 2);
+    encode(text, s);
+    return s.toString();
+  }
+
+  /**
+   * Encode the given text by appropriate escape sequences and append
+   * it, including surrounding quotes, to the specified string builder.
+   * <p>
+   * The escaping is identical to that of javax.json: Quote, backslash and
+   * control characters are escaped, everything else is written as is.
+   *
+   * @param text  Text to encode. Non-null. Without quotes.
+   * @param s     String builder to append to. Non-null.
+   * @throws IllegalArgumentException  If text or s is null.
+   */
+  public static void encode(CharSequence text, StringBuilder s)
+  {
+    try {
+      encode(text, (Appendable) s);
+    }
+    catch (IOException exception) {
+      assert false : "Cannot happen with a StringBuilder";
+    }
+  }
+
+  /**
+   * Encode the given text by appropriate escape sequences and append
+   * it, including surrounding quotes, to the specified appendable.
+   * <p>
+   * The escaping is identical to that of javax.json: Quote, backslash and
+   * control characters are escaped, everything else is written as is.
+   *
+   * @param text        Text to encode. Non-null. Without quotes.
+   * @param appendable  Appendable to append to. Non-null.
+   * @throws IllegalArgumentException  If text or appendable is null.
+   * @throws IOException  If the append operation fails.
+   */
+  public static void encode(CharSequence text, Appendable appendable)
+    throws IOException
+  {
+    if (text == null)
+      throw new IllegalArgumentException("text cannot be null");
+
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    appendable.append('"');
+
+    // Characters are copied in runs between the ones that must be escaped.
+    // In the common case there are none and the text is appended in one go.
+    int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\')
+        continue;
+
+      if (i > start)
+        appendable.append(text, start, i);
+
+      switch (c) {
+        case '"'  : appendable.append("\\\""); break;
+        case '\\' : appendable.append("\\\\"); break;
+        case '\b' : appendable.append("\\b"); break;
+        case '\f' : appendable.append("\\f"); break;
+        case '\n' : appendable.append("\\n"); break;
+        case '\r' : appendable.append("\\r"); break;
+        case '\t' : appendable.append("\\t"); break;
+        default :
+          appendable.append("\\u00");
+          appendable.append(HEX_DIGITS[c >> 4]);
+          appendable.append(HEX_DIGITS[c & 0xf]);
+      }
+
+      start = i + 1;
+    }
+
+    if (start < length)
+      appendable.append(text, start, length);
+
+    appendable.append('"');
   }
 
   /**
@@ -105,38 +229,153 @@ public final class JsonUtil
    */
   public static String getAsString(Object value)
   {
+    StringBuilder s = new StringBuilder();
+    write(value, s);
+    return s.toString();
+  }
+
+  /**
+   * Write the specified object as JSON to the given appendable.
+   * See {@link #write(Object,StringBuilder)}.
+   *
+   * @param value       Value to write. May be null, in case "null" is written.
+   * @param appendable  Appendable to write to. Non-null.
+   * @throws IllegalArgumentException  If appendable is null.
+   * @throws IOException  If the append operation fails.
+   */
+  public static void write(Object value, Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      write(value, (StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    write(value, s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the specified object as JSON to the given string builder.
+   * To make sense, the object should be of numeric type, boolean, date,
+   * string, a JSON value, a JSON serializable, a collection of these or
+   * a double[], float[], long[] or int[] array. Other types are written
+   * as the JSON string of their toString().
+   * <p>
+   * Primitive array elements are written without boxing. NaN and
+   * infinite values are written as null.
+   *
+   * @param value  Value to write. May be null, in case "null" is written.
+   * @param s      String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public static void write(Object value, StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
     //
     // Null
     //
-    if (value == null)
-      return "null";
+    if (value == null) {
+      s.append("null");
+      return;
+    }
+
+    //
+    // JSON value. Checked before Collection as JsonArray is a List.
+    //
+    if (value instanceof JsonValue) {
+      s.append(value.toString());
+      return;
+    }
+
+    //
+    // Primitive arrays
+    //
+    if (value instanceof double[]) {
+      double[] values = (double[]) value;
+      s.append('[');
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          s.append(',');
+        NumberWriter.write(values[i], s);
+      }
+      s.append(']');
+      return;
+    }
+
+    if (value instanceof float[]) {
+      float[] values = (float[]) value;
+      s.append('[');
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          s.append(',');
+        NumberWriter.write(values[i], s);
+      }
+      s.append(']');
+      return;
+    }
+
+    if (value instanceof long[]) {
+      long[] values = (long[]) value;
+      s.append('[');
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          s.append(',');
+        s.append(values[i]);
+      }
+      s.append(']');
+      return;
+    }
+
+    if (value instanceof int[]) {
+      int[] values = (int[]) value;
+      s.append('[');
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          s.append(',');
+        s.append(values[i]);
+      }
+      s.append(']');
+      return;
+    }
 
     //
     // Collection
     //
-    if (Collection.class.isAssignableFrom(value.getClass())) {
+    if (value instanceof Collection) {
       Collection<?> values = (Collection<?>) value;
 
-      StringBuilder s = new StringBuilder();
-      s.append("[");
+      s.append('[');
 
       boolean isFirst = true;
       for (Object v : values) {
         if (!isFirst)
           s.append(',');
 
-        s.append(JsonUtil.getAsString(v));
+        write(v, s);
         isFirst = false;
       }
       s.append(']');
-      return s.toString();
+      return;
     }
 
     //
     // JsonSerializable
     //
     if (value instanceof JsonSerializable) {
-      return ((JsonSerializable) value).toJson();
+      try {
+        ((JsonSerializable) value).toJson(s);
+      }
+      catch (IOException exception) {
+        assert false : "Cannot happen with a StringBuilder";
+      }
+      return;
     }
 
     //
@@ -144,7 +383,10 @@ public final class JsonUtil
     //
     if (value instanceof Date) {
       Date date = (Date) value;
-      return '\"' + ISO8601DateParser.toString(date) + '\"';
+      s.append('\"');
+      s.append(ISO8601DateParser.toString(date));
+      s.append('\"');
+      return;
     }
 
     //
@@ -152,7 +394,8 @@ public final class JsonUtil
     //
     if (value instanceof Boolean) {
       boolean v = (Boolean) value;
-      return v ? "true" : "false";
+      s.append(v ? "true" : "false");
+      return;
     }
 
     //
@@ -160,17 +403,117 @@ public final class JsonUtil
     //
     if (value instanceof Number) {
       Number number = (Number) value;
-      if (value instanceof Double || value instanceof Float)
-        return "" + number.doubleValue();
+      if (value instanceof Double)
+        writeNumber(number.doubleValue(), s);
+      else if (value instanceof Float)
+        NumberWriter.write(number.floatValue(), s);
       else
-        return "" + number.longValue();
+        writeNumber(number.longValue(), s);
+      return;
     }
 
     //
     // String or other
     //
-    String text = value.toString();
-    return encode(text);
+    encode(value.toString(), s);
+  }
+
+  /**
+   * Write the specified value as a JSON number to the given string builder.
+   * <p>
+   * The shortest decimal that rounds back to the same value is written,
+   * in the layout of Double.toString(). NaN and infinite values has no
+   * JSON representation and are written as null. No temporary objects
+   * are created.
+   *
+   * @param value  Value to write.
+   * @param s      String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public static void writeNumber(double value, StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    NumberWriter.write(value, s);
+  }
+
+  /**
+   * Write the specified value as a JSON number to the given string builder.
+   * No temporary objects are created.
+   *
+   * @param value  Value to write.
+   * @param s      String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public static void writeNumber(long value, StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    s.append(value);
+  }
+
+  /**
+   * Return the specified JSON array of numbers as a double array.
+   * <p>
+   * The text is converted directly, without boxing and without any
+   * intermediate JSON objects. Null elements are returned as NaN.
+   *
+   * @param jsonArray  JSON array text, like "[1.0, 2.5, null]". Non-null.
+   * @return           The requested array. Never null.
+   * @throws IllegalArgumentException  If jsonArray is null.
+   * @throws JsonParsingException      If jsonArray is not a JSON array of numbers.
+   */
+  public static double[] getAsDoubleArray(CharSequence jsonArray)
+    throws JsonParsingException
+  {
+    if (jsonArray == null)
+      throw new IllegalArgumentException("jsonArray cannot be null");
+
+    return new NumberReader(jsonArray).readDoubles();
+  }
+
+  /**
+   * Return the specified JSON array of numbers as a float array.
+   * <p>
+   * The text is converted directly, without boxing and without any
+   * intermediate JSON objects. Null elements are returned as NaN.
+   *
+   * @param jsonArray  JSON array text, like "[1.0, 2.5, null]". Non-null.
+   * @return           The requested array. Never null.
+   * @throws IllegalArgumentException  If jsonArray is null.
+   * @throws JsonParsingException      If jsonArray is not a JSON array of numbers.
+   */
+  public static float[] getAsFloatArray(CharSequence jsonArray)
+    throws JsonParsingException
+  {
+    if (jsonArray == null)
+      throw new IllegalArgumentException("jsonArray cannot be null");
+
+    return new NumberReader(jsonArray).readFloats();
+  }
+
+  /**
+   * Return the specified JSON array of integers as a long array.
+   * <p>
+   * The text is converted directly, without boxing and without any
+   * intermediate JSON objects.
+   *
+   * @param jsonArray  JSON array text, like "[1, 2, null]". Non-null.
+   * @param nullValue  Value to return for null elements.
+   * @return           The requested array. Never null.
+   * @throws IllegalArgumentException  If jsonArray is null.
+   * @throws JsonParsingException      If jsonArray is not a JSON array of integers
+   *                                   or if any of them are out of the long range.
+   */
+  public static long[] getAsLongArray(CharSequence jsonArray, long nullValue)
+    throws JsonParsingException
+  {
+    if (jsonArray == null)
+      throw new IllegalArgumentException("jsonArray cannot be null");
+
+    return new NumberReader(jsonArray).readLongs(nullValue);
   }
 
   /**
@@ -213,11 +556,18 @@ public final class JsonUtil
   /**
    * Return the specified jsonValue as a core Java instance of the
    * given class.
+   * <p>
+   * Numbers are returned as the boxed type of the given number class,
+   * primitive or not. JSON strings holding a number, like "42", are
+   * parsed when a number class is requested. Values that cannot be
+   * converted are returned as is.
    *
    * @param jsonValue  JSON value to consider. May be null, in case null is returned.
    * @param clazz      Class of instance to return. Non-null.
    * @return           The requested value. Null if input value is null.
    * @throws IllegalArgumentException  If clazz is null.
+   * @throws NumberFormatException     If a number class is requested for a JSON
+   *                                   string that doesn't hold a number.
    */
   public static Object getAsType(JsonValue jsonValue, Class<?> clazz)
   {
@@ -243,43 +593,56 @@ public final class JsonUtil
         return jsonValue.toString();
     }
 
-    if (Number.class.isAssignableFrom(clazz)) {
-      if (jsonValue instanceof JsonNumber) {
-        JsonNumber jsonNumber = (JsonNumber) jsonValue;
-        if (clazz == double.class || clazz == Double.class)
-          return (Double) jsonNumber.doubleValue();
+    boolean isNumberClass = Number.class.isAssignableFrom(clazz) ||
+                            clazz.isPrimitive() && clazz != boolean.class && clazz != char.class;
 
-        if (clazz == float.class || clazz == Float.class)
-          return (float) jsonNumber.doubleValue();
+    if (isNumberClass) {
+      if (jsonValue instanceof JsonNumber)
+        return getAsNumber((JsonNumber) jsonValue, clazz);
 
-        if (clazz == long.class || clazz == Long.class)
-          return (Long) jsonNumber.longValue();
+      if (jsonValue instanceof JsonString) {
+        String text = ((JsonString) jsonValue).getString().trim();
+        return getAsNumber(Json.createValue(new BigDecimal(text)), clazz);
+      }
+    }
 
-        if (clazz == int.class || clazz == Integer.class)
-          return (Integer) jsonNumber.intValue();
+    return jsonValue;
+  }
 
-        if (clazz == short.class || clazz == Short.class)
-          return (short) jsonNumber.intValue();
+  /**
+   * Return the specified JSON number as an instance of the given number class.
+   *
+   * @param jsonNumber  JSON number to convert. Non-null.
+   * @param clazz       Number class, primitive or not. Non-null.
+   * @return            The requested number. Never null.
+   */
+  private static Number getAsNumber(JsonNumber jsonNumber, Class<?> clazz)
+  {
+    assert jsonNumber != null : "jsonNumber cannot be null";
+    assert clazz != null : "clazz cannot be null";
 
-        if (clazz == byte.class || clazz == Byte.class)
-          return (byte) jsonNumber.intValue();
+    if (clazz == double.class || clazz == Double.class)
+      return jsonNumber.doubleValue();
 
-        if (clazz == Number.class)
-          return (Number) jsonNumber.doubleValue();
-      }
+    if (clazz == float.class || clazz == Float.class)
+      return (float) jsonNumber.doubleValue();
 
-      else if (jsonValue instanceof JsonString) {
-        JsonString jsonString = (JsonString) jsonValue;
+    if (clazz == long.class || clazz == Long.class)
+      return jsonNumber.longValue();
 
-        String s = jsonValue.toString();
+    if (clazz == int.class || clazz == Integer.class)
+      return jsonNumber.intValue();
 
+    if (clazz == short.class || clazz == Short.class)
+      return (short) jsonNumber.intValue();
 
-        // TODO: Parse
-        assert false;
-      }
-    }
+    if (clazz == byte.class || clazz == Byte.class)
+      return (byte) jsonNumber.intValue();
 
-    return jsonValue;
+    if (clazz == BigDecimal.class)
+      return jsonNumber.bigDecimalValue();
+
+    return jsonNumber.doubleValue();
   }
 
   /**
@@ -389,6 +752,9 @@ public final class JsonUtil
     else if (value instanceof JsonValue)
       add(jsonObjectBuilder, key, getValue((JsonValue) value));
 
+    else if (isPrimitiveArray(value))
+      jsonObjectBuilder.add(key, createArrayBuilder(value));
+
     else
       return false; // Nothing was added
 
@@ -412,8 +778,10 @@ public final class JsonUtil
 
       case NUMBER :
         JsonNumber number = (JsonNumber) jsonValue;
-        if (number.isIntegral())
-          return number.intValueExact(); // TODO: Handle longs
+        if (number.isIntegral()) {
+          long longValue = number.longValue();
+          return (int) longValue == longValue ? (Object) (int) longValue : (Object) longValue;
+        }
         else
           return number.doubleValue();
 
@@ -500,9 +868,70 @@ public final class JsonUtil
     else if (value instanceof JsonValue)
       add(jsonArrayBuilder, getValue((JsonValue) value));
 
+    else if (isPrimitiveArray(value))
+      jsonArrayBuilder.add(createArrayBuilder(value));
+
     else
       return false; // Nothing was added
 
     return true;
   }
+
+  /**
+   * Check if the specified value is one of the supported primitive arrays.
+   *
+   * @param value  Value to check. May be null.
+   * @return       True if value is a double[], float[], long[] or int[], false otherwise.
+   */
+  private static boolean isPrimitiveArray(Object value)
+  {
+    return value instanceof double[] ||
+           value instanceof float[] ||
+           value instanceof long[] ||
+           value instanceof int[];
+  }
+
+  /**
+   * Create a JSON array builder holding the elements of the specified
+   * primitive array. NaN and infinite values are added as null.
+   *
+   * @param array  A double[], float[], long[] or int[] array. Non-null.
+   * @return       The requested JSON array builder. Never null.
+   */
+  private static JsonArrayBuilder createArrayBuilder(Object array)
+  {
+    assert isPrimitiveArray(array) : "Unsupported array: " + array;
+
+    JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
+
+    if (array instanceof double[]) {
+      for (double v : (double[]) array) {
+        if (Double.isFinite(v))
+          jsonArrayBuilder.add(v);
+        else
+          jsonArrayBuilder.addNull();
+      }
+    }
+
+    else if (array instanceof float[]) {
+      for (float v : (float[]) array) {
+        if (Float.isFinite(v))
+          jsonArrayBuilder.add((double) v);
+        else
+          jsonArrayBuilder.addNull();
+      }
+    }
+
+    else if (array instanceof long[]) {
+      for (long v : (long[]) array)
+        jsonArrayBuilder.add(v);
+    }
+
+    else {
+      for (int v : (int[]) array)
+        jsonArrayBuilder.add(v);
+    }
+
+    return jsonArrayBuilder;
+  }
 }
@@ -0,0 +1,481 @@
+package no.geosoft.logiq.core.json;
+
+/**
+ * Syntax check of JSON text without building any JSON model.
+ * <p>
+ * The text is scanned once, front to back, and the scan stops at the
+ * first error. Nothing is allocated and no exceptions are thrown, so
+ * checking a message costs about as much as reading it once.
+ * <p>
+ * The text may be given as characters or as UTF-8 bytes. For bytes
+ * the UTF-8 encoding of strings is checked as well.
+ * <p>
+ * As for JsonReader.read(), a valid text is a JSON object or array.
+ * It may be surrounded by whitespace, but nothing else.
+ * Nesting deeper than MAX_DEPTH levels is reported as an error.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class JsonValidator
+{
+  /** Maximum nesting depth of objects and arrays. */
+  static final int MAX_DEPTH = 1000;
+
+  /** Character returned by charAt() beyond the end of the text. */
+  private static final int EOF = -1;
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private JsonValidator()
+  {
+    assert false;
+  }
+
+  /**
+   * Check the specified JSON text.
+   *
+   * @param text  Text to check. Non-null.
+   * @return      Offset of the first error, or -1 if the text is valid.
+   */
+  static int validate(CharSequence text)
+  {
+    assert text != null : "text cannot be null";
+
+    return validate(text, null, 0, text.length());
+  }
+
+  /**
+   * Check the specified UTF-8 encoded JSON text.
+   *
+   * @param bytes   Bytes holding the text to check. Non-null.
+   * @param offset  Offset of the text within bytes. [0,&gt;.
+   * @param length  Number of bytes of the text. [0,&gt;.
+   * @return        Index within bytes of the first error, or -1 if the text is valid.
+   */
+  static int validate(byte[] bytes, int offset, int length)
+  {
+    assert bytes != null : "bytes cannot be null";
+    assert offset >= 0 && length >= 0 && offset + length <= bytes.length : "Invalid range: " + offset + "," + length;
+
+    return validate(null, bytes, offset, offset + length);
+  }
+
+  /**
+   * Check the JSON text of either text or bytes.
+   *
+   * @param text   Text to check. Null if bytes is given.
+   * @param bytes  Bytes to check. Null if text is given.
+   * @param start  Start position of the text. Inclusive.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position of the first error, or -1 if the text is valid.
+   */
+  private static int validate(CharSequence text, byte[] bytes, int start, int end)
+  {
+    int pos = skipWhitespace(text, bytes, start, end);
+
+    int c = charAt(text, bytes, pos, end);
+    if (c != '{' && c != '[')
+      return pos;
+
+    pos = readValue(text, bytes, pos, end, 0);
+    if (pos < 0)
+      return ~pos;
+
+    pos = skipWhitespace(text, bytes, pos, end);
+    return pos == end ? -1 : pos;
+  }
+
+  //
+  // The read methods below return the position just past what was
+  // read if successful, and the bitwise complement of the error position
+  // (i.e. a negative number) if not.
+  //
+
+  /**
+   * Read a JSON value starting at the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position of the value.
+   * @param end    End position of the text. Exclusive.
+   * @param depth  Current nesting depth. [0,&gt;.
+   * @return       Position after the value, or complement of the error position.
+   */
+  private static int readValue(CharSequence text, byte[] bytes, int pos, int end, int depth)
+  {
+    switch (charAt(text, bytes, pos, end)) {
+      case '{' : return readObject(text, bytes, pos, end, depth + 1);
+      case '[' : return readArray(text, bytes, pos, end, depth + 1);
+      case '"' : return readString(text, bytes, pos, end);
+      case 't' : return readLiteral("true", text, bytes, pos, end);
+      case 'f' : return readLiteral("false", text, bytes, pos, end);
+      case 'n' : return readLiteral("null", text, bytes, pos, end);
+      default  : return readNumber(text, bytes, pos, end);
+    }
+  }
+
+  /**
+   * Read a JSON object starting at the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position of the opening brace.
+   * @param end    End position of the text. Exclusive.
+   * @param depth  Nesting depth of the object. [1,&gt;.
+   * @return       Position after the object, or complement of the error position.
+   */
+  private static int readObject(CharSequence text, byte[] bytes, int pos, int end, int depth)
+  {
+    if (depth > MAX_DEPTH)
+      return ~pos;
+
+    pos = skipWhitespace(text, bytes, pos + 1, end);
+    if (charAt(text, bytes, pos, end) == '}')
+      return pos + 1;
+
+    while (true) {
+      // Name
+      if (charAt(text, bytes, pos, end) != '"')
+        return ~pos;
+
+      pos = readString(text, bytes, pos, end);
+      if (pos < 0)
+        return pos;
+
+      pos = skipWhitespace(text, bytes, pos, end);
+      if (charAt(text, bytes, pos, end) != ':')
+        return ~pos;
+
+      // Value
+      pos = skipWhitespace(text, bytes, pos + 1, end);
+      pos = readValue(text, bytes, pos, end, depth);
+      if (pos < 0)
+        return pos;
+
+      // Separator
+      pos = skipWhitespace(text, bytes, pos, end);
+      int c = charAt(text, bytes, pos, end);
+      if (c == '}')
+        return pos + 1;
+      if (c != ',')
+        return ~pos;
+
+      pos = skipWhitespace(text, bytes, pos + 1, end);
+    }
+  }
+
+  /**
+   * Read a JSON array starting at the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position of the opening bracket.
+   * @param end    End position of the text. Exclusive.
+   * @param depth  Nesting depth of the array. [1,&gt;.
+   * @return       Position after the array, or complement of the error position.
+   */
+  private static int readArray(CharSequence text, byte[] bytes, int pos, int end, int depth)
+  {
+    if (depth > MAX_DEPTH)
+      return ~pos;
+
+    pos = skipWhitespace(text, bytes, pos + 1, end);
+    if (charAt(text, bytes, pos, end) == ']')
+      return pos + 1;
+
+    while (true) {
+      pos = readValue(text, bytes, pos, end, depth);
+      if (pos < 0)
+        return pos;
+
+      pos = skipWhitespace(text, bytes, pos, end);
+      int c = charAt(text, bytes, pos, end);
+      if (c == ']')
+        return pos + 1;
+      if (c != ',')
+        return ~pos;
+
+      pos = skipWhitespace(text, bytes, pos + 1, end);
+    }
+  }
+
+  /**
+   * Read a JSON string starting at the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position of the opening quote.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position after the string, or complement of the error position.
+   */
+  private static int readString(CharSequence text, byte[] bytes, int pos, int end)
+  {
+    pos++;
+
+    while (true) {
+      int c = charAt(text, bytes, pos, end);
+
+      if (c == '"')
+        return pos + 1;
+
+      // Unterminated string or unescaped control character
+      if (c < 0x20)
+        return ~pos;
+
+      if (c == '\\') {
+        pos++;
+        switch (charAt(text, bytes, pos, end)) {
+          case '"' :
+          case '\\' :
+          case '/' :
+          case 'b' :
+          case 'f' :
+          case 'n' :
+          case 'r' :
+          case 't' :
+            pos++;
+            break;
+
+          case 'u' :
+            pos++;
+            for (int i = 0; i < 4; i++, pos++) {
+              if (!isHexDigit(charAt(text, bytes, pos, end)))
+                return ~pos;
+            }
+            break;
+
+          default :
+            return ~pos;
+        }
+      }
+
+      else if (c >= 0x80 && bytes != null) {
+        pos = readUtf8(bytes, pos, end);
+        if (pos < 0)
+          return pos;
+      }
+
+      else {
+        pos++;
+      }
+    }
+  }
+
+  /**
+   * Read a multi byte UTF-8 sequence starting at the specified position.
+   * Overlong encodings, surrogates and code points above U+10FFFF
+   * are rejected.
+   *
+   * @param bytes  Bytes being checked. Non-null.
+   * @param pos    Position of the lead byte.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position after the sequence, or complement of the error position.
+   */
+  private static int readUtf8(byte[] bytes, int pos, int end)
+  {
+    assert bytes != null : "bytes cannot be null";
+
+    int b = bytes[pos] & 0xff;
+
+    // Number of continuation bytes and the valid range of the first of them
+    int nContinuations;
+    int min = 0x80;
+    int max = 0xbf;
+
+    if (b >= 0xc2 && b <= 0xdf) {
+      nContinuations = 1;
+    }
+    else if (b >= 0xe0 && b <= 0xef) {
+      nContinuations = 2;
+      if (b == 0xe0)
+        min = 0xa0;
+      else if (b == 0xed)
+        max = 0x9f;
+    }
+    else if (b >= 0xf0 && b <= 0xf4) {
+      nContinuations = 3;
+      if (b == 0xf0)
+        min = 0x90;
+      else if (b == 0xf4)
+        max = 0x8f;
+    }
+    else {
+      return ~pos;
+    }
+
+    pos++;
+
+    for (int i = 0; i < nContinuations; i++, pos++) {
+      if (pos == end)
+        return ~pos;
+
+      int continuation = bytes[pos] & 0xff;
+      if (continuation < min || continuation > max)
+        return ~pos;
+
+      min = 0x80;
+      max = 0xbf;
+    }
+
+    return pos;
+  }
+
+  /**
+   * Read a JSON number starting at the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position of the number.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position after the number, or complement of the error position.
+   */
+  private static int readNumber(CharSequence text, byte[] bytes, int pos, int end)
+  {
+    if (charAt(text, bytes, pos, end) == '-')
+      pos++;
+
+    //
+    // Integer part. No leading zeros.
+    //
+    int c = charAt(text, bytes, pos, end);
+    if (c == '0') {
+      pos++;
+    }
+    else if (c >= '1' && c <= '9') {
+      pos = skipDigits(text, bytes, pos + 1, end);
+    }
+    else {
+      return ~pos;
+    }
+
+    //
+    // Fraction
+    //
+    if (charAt(text, bytes, pos, end) == '.') {
+      pos++;
+      if (!isDigit(charAt(text, bytes, pos, end)))
+        return ~pos;
+
+      pos = skipDigits(text, bytes, pos + 1, end);
+    }
+
+    //
+    // Exponent
+    //
+    c = charAt(text, bytes, pos, end);
+    if (c == 'e' || c == 'E') {
+      pos++;
+
+      c = charAt(text, bytes, pos, end);
+      if (c == '+' || c == '-')
+        pos++;
+
+      if (!isDigit(charAt(text, bytes, pos, end)))
+        return ~pos;
+
+      pos = skipDigits(text, bytes, pos + 1, end);
+    }
+
+    return pos;
+  }
+
+  /**
+   * Read the specified literal starting at the specified position.
+   *
+   * @param literal  Literal to read, "true", "false" or "null". Non-null.
+   * @param text     Text being checked. Null if bytes is given.
+   * @param bytes    Bytes being checked. Null if text is given.
+   * @param pos      Position of the literal.
+   * @param end      End position of the text. Exclusive.
+   * @return         Position after the literal, or complement of the error position.
+   */
+  private static int readLiteral(String literal, CharSequence text, byte[] bytes, int pos, int end)
+  {
+    assert literal != null : "literal cannot be null";
+
+    for (int i = 0; i < literal.length(); i++, pos++) {
+      if (charAt(text, bytes, pos, end) != literal.charAt(i))
+        return ~pos;
+    }
+
+    return pos;
+  }
+
+  /**
+   * Return the position of the first non-digit at or after the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position to start at.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position of the first non-digit.
+   */
+  private static int skipDigits(CharSequence text, byte[] bytes, int pos, int end)
+  {
+    while (isDigit(charAt(text, bytes, pos, end)))
+      pos++;
+
+    return pos;
+  }
+
+  /**
+   * Return the position of the first non-whitespace at or after the specified position.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position to start at.
+   * @param end    End position of the text. Exclusive.
+   * @return       Position of the first non-whitespace.
+   */
+  private static int skipWhitespace(CharSequence text, byte[] bytes, int pos, int end)
+  {
+    while (true) {
+      int c = charAt(text, bytes, pos, end);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+        return pos;
+
+      pos++;
+    }
+  }
+
+  /**
+   * Check if the specified character is a decimal digit.
+   *
+   * @param c  Character to check.
+   * @return   True if c is a decimal digit, false otherwise.
+   */
+  private static boolean isDigit(int c)
+  {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Check if the specified character is a hexadecimal digit.
+   *
+   * @param c  Character to check.
+   * @return   True if c is a hexadecimal digit, false otherwise.
+   */
+  private static boolean isHexDigit(int c)
+  {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  /**
+   * Return the character at the specified position of text or bytes.
+   *
+   * @param text   Text being checked. Null if bytes is given.
+   * @param bytes  Bytes being checked. Null if text is given.
+   * @param pos    Position to get character of.
+   * @param end    End position of the text. Exclusive.
+   * @return       The requested character, the unsigned byte value for bytes,
+   *               or EOF if pos is at or beyond end.
+   */
+  private static int charAt(CharSequence text, byte[] bytes, int pos, int end)
+  {
+    if (pos >= end)
+      return EOF;
+
+    return bytes != null ? bytes[pos] & 0xff : text.charAt(pos);
+  }
+}
@@ -0,0 +1,396 @@
+package no.geosoft.logiq.core.json;
+
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Reader of JSON numeric arrays directly into primitive arrays.
+ * <p>
+ * The text is scanned once to count the elements and once to convert
+ * them. No boxing, JsonNumber or BigDecimal instances are involved.
+ * Numbers with up to 15 significant digits and a moderate exponent
+ * (which covers the vast majority of measured values) are converted
+ * exactly by a single floating point multiplication or division.
+ * Other numbers are handed to Double.parseDouble().
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class NumberReader
+{
+  /** Powers of 10 that are exactly representable as double. */
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+    1e21, 1e22
+  };
+
+  /** Largest significand that is exactly representable as double, 2^53. */
+  private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+  /** The text being read. */
+  private final CharSequence text_;
+
+  /** End of the text being read. Exclusive. */
+  private final int end_;
+
+  /** Current read position. */
+  private int pos_;
+
+  /**
+   * Create a reader for the specified JSON array text.
+   *
+   * @param text  JSON array text to read. Non-null.
+   */
+  NumberReader(CharSequence text)
+  {
+    assert text != null : "text cannot be null";
+
+    text_ = text;
+    end_ = text.length();
+    pos_ = 0;
+  }
+
+  /**
+   * Read the text as an array of doubles. Null elements are returned as NaN.
+   *
+   * @return  The requested array. Never null.
+   * @throws JsonParsingException  If the text is not a JSON array of numbers.
+   */
+  double[] readDoubles()
+    throws JsonParsingException
+  {
+    double[] values = new double[start()];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readNull() ? Double.NaN : readDouble();
+      next(i == values.length - 1);
+    }
+
+    return values;
+  }
+
+  /**
+   * Read the text as an array of floats. Null elements are returned as NaN.
+   *
+   * @return  The requested array. Never null.
+   * @throws JsonParsingException  If the text is not a JSON array of numbers.
+   */
+  float[] readFloats()
+    throws JsonParsingException
+  {
+    float[] values = new float[start()];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readNull() ? Float.NaN : (float) readDouble();
+      next(i == values.length - 1);
+    }
+
+    return values;
+  }
+
+  /**
+   * Read the text as an array of longs.
+   *
+   * @param nullValue  Value to use for null elements.
+   * @return           The requested array. Never null.
+   * @throws JsonParsingException  If the text is not a JSON array of integers.
+   */
+  long[] readLongs(long nullValue)
+    throws JsonParsingException
+  {
+    long[] values = new long[start()];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readNull() ? nullValue : readLong();
+      next(i == values.length - 1);
+    }
+
+    return values;
+  }
+
+  /**
+   * Create a parsing exception for the current position.
+   *
+   * @param message  Error message. Non-null.
+   * @return         The requested exception. Never null.
+   */
+  private JsonParsingException error(String message)
+  {
+    return new JsonParsingException(message + " at position " + pos_, null);
+  }
+
+  /**
+   * Skip whitespace from the current position.
+   */
+  private void skipWhitespace()
+  {
+    while (pos_ < end_) {
+      char c = text_.charAt(pos_);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+        break;
+      pos_++;
+    }
+  }
+
+  /**
+   * Read the opening bracket and return the number of elements of the array.
+   *
+   * @return  Number of elements of the array. [0,&gt;.
+   * @throws JsonParsingException  If the text is not a JSON array.
+   */
+  private int start()
+    throws JsonParsingException
+  {
+    skipWhitespace();
+    if (pos_ == end_ || text_.charAt(pos_) != '[')
+      throw error("Expected '['");
+
+    pos_++;
+    skipWhitespace();
+
+    // Empty array
+    if (pos_ < end_ && text_.charAt(pos_) == ']') {
+      pos_++;
+      end();
+      return 0;
+    }
+
+    // As elements are numbers, each comma separates two elements.
+    // Malformed content is detected when the elements are read.
+    int nElements = 1;
+    for (int i = pos_; i < end_; i++) {
+      if (text_.charAt(i) == ',')
+        nElements++;
+    }
+
+    return nElements;
+  }
+
+  /**
+   * Read the separator after an element.
+   *
+   * @param isLast  True if this is the last element, false otherwise.
+   * @throws JsonParsingException  If the separator is not as expected.
+   */
+  private void next(boolean isLast)
+    throws JsonParsingException
+  {
+    skipWhitespace();
+
+    char expected = isLast ? ']' : ',';
+    if (pos_ == end_ || text_.charAt(pos_) != expected)
+      throw error("Expected '" + expected + "'");
+
+    pos_++;
+    skipWhitespace();
+
+    if (isLast)
+      end();
+  }
+
+  /**
+   * Verify that there is nothing but whitespace left.
+   *
+   * @throws JsonParsingException  If there is more content.
+   */
+  private void end()
+    throws JsonParsingException
+  {
+    skipWhitespace();
+    if (pos_ != end_)
+      throw error("Unexpected content after array");
+  }
+
+  /**
+   * Read a null literal if present at the current position.
+   *
+   * @return  True if a null was read, false otherwise.
+   */
+  private boolean readNull()
+  {
+    if (pos_ + 4 <= end_ &&
+        text_.charAt(pos_) == 'n' &&
+        text_.charAt(pos_ + 1) == 'u' &&
+        text_.charAt(pos_ + 2) == 'l' &&
+        text_.charAt(pos_ + 3) == 'l') {
+      pos_ += 4;
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Read an integer number at the current position.
+   *
+   * @return  The number read.
+   * @throws JsonParsingException  If there is no valid integer at the current position.
+   */
+  private long readLong()
+    throws JsonParsingException
+  {
+    boolean isNegative = pos_ < end_ && text_.charAt(pos_) == '-';
+    if (isNegative)
+      pos_++;
+
+    int start = pos_;
+
+    // Accumulate as a negative number to cover Long.MIN_VALUE
+    long value = 0;
+    while (pos_ < end_) {
+      char c = text_.charAt(pos_);
+      if (c < '0' || c > '9')
+        break;
+
+      // JSON doesn't allow leading zeros, like 01
+      if (pos_ == start + 1 && text_.charAt(start) == '0')
+        throw error("Leading zero");
+
+      int digit = c - '0';
+      if (value < (Long.MIN_VALUE + digit) / 10)
+        throw error("Integer overflow");
+
+      value = 10 * value - digit;
+      pos_++;
+    }
+
+    if (pos_ == start)
+      throw error("Expected integer");
+
+    if (pos_ < end_) {
+      char c = text_.charAt(pos_);
+      if (c == '.' || c == 'e' || c == 'E')
+        throw error("Expected integer");
+    }
+
+    if (!isNegative) {
+      if (value == Long.MIN_VALUE)
+        throw error("Integer overflow");
+      value = -value;
+    }
+
+    return value;
+  }
+
+  /**
+   * Read a number at the current position.
+   *
+   * @return  The number read.
+   * @throws JsonParsingException  If there is no valid number at the current position.
+   */
+  private double readDouble()
+    throws JsonParsingException
+  {
+    int start = pos_;
+
+    boolean isNegative = pos_ < end_ && text_.charAt(pos_) == '-';
+    if (isNegative)
+      pos_++;
+
+    long significand = 0;
+    int nSignificantDigits = 0;
+    int exponent = 0;
+    int nDigits = 0;
+
+    //
+    // Integer part
+    //
+    int integerStart = pos_;
+    while (pos_ < end_) {
+      char c = text_.charAt(pos_);
+      if (c < '0' || c > '9')
+        break;
+
+      // JSON doesn't allow leading zeros, like 01
+      if (pos_ == integerStart + 1 && text_.charAt(integerStart) == '0')
+        throw error("Leading zero");
+
+      if (significand != 0 || c != '0')
+        nSignificantDigits++;
+
+      // Digits beyond what fits in a long only scale the value
+      if (nSignificantDigits <= 18)
+        significand = 10 * significand + (c - '0');
+      else
+        exponent++;
+
+      nDigits++;
+      pos_++;
+    }
+
+    if (nDigits == 0)
+      throw error("Expected number");
+
+    //
+    // Fraction
+    //
+    if (pos_ < end_ && text_.charAt(pos_) == '.') {
+      pos_++;
+
+      int nFractionDigits = 0;
+      while (pos_ < end_) {
+        char c = text_.charAt(pos_);
+        if (c < '0' || c > '9')
+          break;
+
+        if (significand != 0 || c != '0')
+          nSignificantDigits++;
+
+        if (nSignificantDigits <= 18) {
+          significand = 10 * significand + (c - '0');
+          exponent--;
+        }
+
+        nFractionDigits++;
+        pos_++;
+      }
+
+      if (nFractionDigits == 0)
+        throw error("Expected fraction digits");
+    }
+
+    //
+    // Exponent
+    //
+    if (pos_ < end_ && (text_.charAt(pos_) == 'e' || text_.charAt(pos_) == 'E')) {
+      pos_++;
+
+      boolean isNegativeExponent = false;
+      if (pos_ < end_ && (text_.charAt(pos_) == '+' || text_.charAt(pos_) == '-')) {
+        isNegativeExponent = text_.charAt(pos_) == '-';
+        pos_++;
+      }
+
+      int exponentValue = 0;
+      int nExponentDigits = 0;
+      while (pos_ < end_) {
+        char c = text_.charAt(pos_);
+        if (c < '0' || c > '9')
+          break;
+
+        // Saturate, anything this large is zero or infinity anyway
+        if (exponentValue < 100000)
+          exponentValue = 10 * exponentValue + (c - '0');
+
+        nExponentDigits++;
+        pos_++;
+      }
+
+      if (nExponentDigits == 0)
+        throw error("Expected exponent digits");
+
+      exponent += isNegativeExponent ? -exponentValue : exponentValue;
+    }
+
+    //
+    // Exact conversion when both the significand and the power of ten
+    // are exact doubles (Clinger's fast path)
+    //
+    if (nSignificantDigits <= 15 && significand < MAX_EXACT_SIGNIFICAND &&
+        exponent >= -22 && exponent <= 22) {
+      double value = exponent >= 0 ? significand * POW10[exponent] : significand / POW10[-exponent];
+      return isNegative ? -value : value;
+    }
+
+    return Double.parseDouble(text_.subSequence(start, pos_).toString());
+  }
+}
@@ -0,0 +1,525 @@
+package no.geosoft.logiq.core.json;
+
+import java.math.BigInteger;
+
+/**
+ * Allocation free formatting of double values as JSON numbers.
+ * <p>
+ * The digits are found by the Schubfach algorithm of Raffaello Giulietti
+ * ("The Schubfach way to render doubles", 2020), which gives the shortest
+ * decimal that rounds back to the same double. The layout is that of
+ * Double.toString(): Plain notation for magnitudes in [10<sup>-3</sup>,
+ * 10<sup>7</sup>&gt; and computerized scientific notation otherwise.
+ * <p>
+ * Unlike Double.toString() of Java versions prior to 19, the output never
+ * has more digits than necessary, and unlike StringBuilder.append(double)
+ * of these versions no temporary objects are involved.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class NumberWriter
+{
+  /** Precision of double, in bits. */
+  private static final int P = 53;
+
+  /** Minimum exponent of the double significand. */
+  private static final int Q_MIN = -1074;
+
+  /** Minimum significand of normal doubles, 2^52. */
+  private static final long C_MIN = 1L << (P - 1);
+
+  /** Subnormal significands below this are scaled by 10 to get enough precision. */
+  private static final long C_TINY = 3;
+
+  /** Mask of the significand bits of a double. */
+  private static final long T_MASK = (1L << (P - 1)) - 1;
+
+  /** Mask of the biased exponent bits of a double. */
+  private static final int BQ_MASK = (1 << (Long.SIZE - P)) - 1;
+
+  /** Precision of float, in bits. */
+  private static final int FLOAT_P = 24;
+
+  /** Minimum exponent of the float significand. */
+  private static final int FLOAT_Q_MIN = -149;
+
+  /** Minimum significand of normal floats, 2^23. */
+  private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+
+  /** Float subnormal significands below this are scaled by 10 to get enough precision. */
+  private static final int FLOAT_C_TINY = 8;
+
+  /** Mask of the significand bits of a float. */
+  private static final int FLOAT_T_MASK = (1 << (FLOAT_P - 1)) - 1;
+
+  /** Mask of the biased exponent bits of a float. */
+  private static final int FLOAT_BQ_MASK = (1 << (Integer.SIZE - FLOAT_P)) - 1;
+
+  /** Mask of the lower 32 bits of a long. */
+  private static final long MASK_32 = (1L << 32) - 1;
+
+  /** Smallest decimal exponent k needed. */
+  private static final int K_MIN = -324;
+
+  /** Largest decimal exponent k needed. */
+  private static final int K_MAX = 292;
+
+  /** Mask of the lower 63 bits of a long. */
+  private static final long MASK_63 = (1L << 63) - 1;
+
+  /** Powers of 10 that fit in a long. */
+  private static final long[] POW10 = new long[19];
+
+  /**
+   * 126-bit approximations of 10^-k for k in [K_MIN,K_MAX], as pairs of
+   * the upper and lower 63 bits. See {@link #computeG}.
+   */
+  private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++)
+      POW10[i] = 10 * POW10[i - 1];
+
+    for (int k = K_MIN; k <= K_MAX; k++)
+      computeG(k);
+  }
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private NumberWriter()
+  {
+    assert false;
+  }
+
+  /**
+   * Compute the table entry for the specified decimal exponent.
+   * <p>
+   * Let 10^-k = b 2^r for the unique integer r and real b with
+   * 2^125 &lt;= b &lt; 2^126, and let g = floor(b) + 1. The upper
+   * 63 bits of g is stored at index 2(k - K_MIN) and the lower 63 bits
+   * at the next index. This is done once, at class initialization.
+   *
+   * @param k  Decimal exponent. [K_MIN,K_MAX].
+   */
+  private static void computeG(int k)
+  {
+    int shift = 125 - flog2pow10(-k);
+
+    BigInteger b;
+    if (k <= 0) {
+      BigInteger pow10 = BigInteger.TEN.pow(-k);
+      b = shift >= 0 ? pow10.shiftLeft(shift) : pow10.shiftRight(-shift);
+    }
+    else {
+      b = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+    }
+
+    BigInteger g = b.add(BigInteger.ONE);
+
+    int index = 2 * (k - K_MIN);
+    G[index] = g.shiftRight(63).longValueExact();
+    G[index + 1] = g.longValue() & MASK_63;
+  }
+
+  /**
+   * Return floor(log10(2^e)).
+   *
+   * @param e  Exponent. Valid for |e| &lt;= 5456721.
+   * @return   The requested value.
+   */
+  private static int flog10pow2(int e)
+  {
+    return (int) (e * 661_971_961_083L >> 41);
+  }
+
+  /**
+   * Return floor(log10(3/4 2^e)).
+   *
+   * @param e  Exponent. Valid for |e| &lt;= 5456721.
+   * @return   The requested value.
+   */
+  private static int flog10threeQuartersPow2(int e)
+  {
+    return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  /**
+   * Return floor(log2(10^e)).
+   *
+   * @param e  Exponent. Valid for |e| &lt;= 1838394.
+   * @return   The requested value.
+   */
+  private static int flog2pow10(int e)
+  {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+
+  /**
+   * Return the rounded-to-odd product of g and cp, where g is the
+   * 126-bit value given by g1 and g0.
+   *
+   * @param g1  Upper 63 bits of g.
+   * @param g0  Lower 63 bits of g.
+   * @param cp  Value to multiply.
+   * @return    The requested value.
+   */
+  private static long rop(long g1, long g0, long cp)
+  {
+    long x1 = Math.multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = Math.multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+  /**
+   * Write the specified value as a JSON number to the given string builder.
+   * NaN and infinite values are written as null, as they have no JSON
+   * representation.
+   *
+   * @param value  Value to write.
+   * @param s      String builder to write to. Non-null.
+   */
+  static void write(double value, StringBuilder s)
+  {
+    assert s != null : "s cannot be null";
+
+    long bits = Double.doubleToRawLongBits(value);
+    long t = bits & T_MASK;
+    int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+
+    // NaN and infinity
+    if (bq == BQ_MASK) {
+      s.append("null");
+      return;
+    }
+
+    if (bits < 0)
+      s.append('-');
+
+    // Normal value
+    if (bq != 0) {
+      int mq = -Q_MIN + 1 - bq;
+      long c = C_MIN | t;
+
+      // Integers are written right away
+      if (0 < mq && mq < P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          writeDecimal(f, 0, s);
+          return;
+        }
+      }
+
+      toDecimal(-mq, c, 0, s);
+    }
+
+    // Subnormal value
+    else if (t != 0) {
+      if (t < C_TINY)
+        toDecimal(Q_MIN, 10 * t, -1, s);
+      else
+        toDecimal(Q_MIN, t, 0, s);
+    }
+
+    // Zero
+    else {
+      s.append("0.0");
+    }
+  }
+
+  /**
+   * Write the specified value as a JSON number to the given string builder.
+   * <p>
+   * The shortest decimal that rounds back to the same <em>float</em> is
+   * written, so 0.1f is written as 0.1 and not as 0.10000000149011612
+   * which is the shortest decimal of the corresponding double. NaN and
+   * infinite values are written as null.
+   *
+   * @param value  Value to write.
+   * @param s      String builder to write to. Non-null.
+   */
+  static void write(float value, StringBuilder s)
+  {
+    assert s != null : "s cannot be null";
+
+    int bits = Float.floatToRawIntBits(value);
+    int t = bits & FLOAT_T_MASK;
+    int bq = (bits >>> (FLOAT_P - 1)) & FLOAT_BQ_MASK;
+
+    // NaN and infinity
+    if (bq == FLOAT_BQ_MASK) {
+      s.append("null");
+      return;
+    }
+
+    if (bits < 0)
+      s.append('-');
+
+    // Normal value
+    if (bq != 0) {
+      int mq = -FLOAT_Q_MIN + 1 - bq;
+      int c = FLOAT_C_MIN | t;
+
+      // Integers are written right away
+      if (0 < mq && mq < FLOAT_P) {
+        int f = c >> mq;
+        if (f << mq == c) {
+          writeDecimal(f, 0, s);
+          return;
+        }
+      }
+
+      toDecimal(-mq, c, 0, s);
+    }
+
+    // Subnormal value
+    else if (t != 0) {
+      if (t < FLOAT_C_TINY)
+        toDecimal(FLOAT_Q_MIN, 10 * t, -1, s);
+      else
+        toDecimal(FLOAT_Q_MIN, t, 0, s);
+    }
+
+    // Zero
+    else {
+      s.append("0.0");
+    }
+  }
+
+  /**
+   * Return the rounded-to-odd product of g and cp, where g is the
+   * 64-bit approximation used for floats.
+   *
+   * @param g   Approximation of 10^-k.
+   * @param cp  Value to multiply.
+   * @return    The requested value.
+   */
+  private static int rop(long g, long cp)
+  {
+    long x1 = Math.multiplyHigh(g, cp);
+    long vbp = x1 >>> 31;
+    return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+  }
+
+  /**
+   * Find the shortest decimal of the float c 2^q and write it.
+   *
+   * @param q   Binary exponent.
+   * @param c   Binary significand.
+   * @param dk  Correction of the decimal exponent, -1 for tiny subnormals, 0 otherwise.
+   * @param s   String builder to write to. Non-null.
+   */
+  private static void toDecimal(int q, int c, int dk, StringBuilder s)
+  {
+    int out = c & 0x1;
+    long cb = (long) c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+
+    // The rounding interval is symmetric except at powers of 2
+    if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    }
+    else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+
+    int h = q + flog2pow10(-k) + 33;
+
+    // The upper 63 bits of the double table are precise enough for floats
+    long g = G[2 * (k - K_MIN)] + 1;
+
+    int vb = rop(g, cb << h);
+    int vbl = rop(g, cbl << h);
+    int vbr = rop(g, cbr << h);
+
+    int sv = vb >> 2;
+
+    // Try a decimal with one digit less first
+    if (sv >= 100) {
+      int sp10 = 10 * (int) (sv * 1_717_986_919L >>> 34);
+      int tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        writeDecimal(upin ? sp10 : tp10, k, s);
+        return;
+      }
+    }
+
+    int tv = sv + 1;
+    boolean uin = vbl + out <= sv << 2;
+    boolean win = (tv << 2) + out <= vbr;
+    if (uin != win) {
+      writeDecimal(uin ? sv : tv, k + dk, s);
+      return;
+    }
+
+    // Both candidates are in the interval, pick the closest, or the even one on a tie
+    int cmp = vb - (sv + tv << 1);
+    writeDecimal(cmp < 0 || cmp == 0 && (sv & 0x1) == 0 ? sv : tv, k + dk, s);
+  }
+
+  /**
+   * Find the shortest decimal of the double c 2^q and write it.
+   *
+   * @param q   Binary exponent.
+   * @param c   Binary significand.
+   * @param dk  Correction of the decimal exponent, -1 for tiny subnormals, 0 otherwise.
+   * @param s   String builder to write to. Non-null.
+   */
+  private static void toDecimal(int q, long c, int dk, StringBuilder s)
+  {
+    int out = (int) c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+
+    // The rounding interval is symmetric except at powers of 2
+    if (c != C_MIN || q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    }
+    else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+
+    int h = q + flog2pow10(-k) + 2;
+
+    int index = 2 * (k - K_MIN);
+    long g1 = G[index];
+    long g0 = G[index + 1];
+
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long sv = vb >> 2;
+
+    // Try a decimal with one digit less first
+    if (sv >= 100) {
+      long sp10 = 10 * Math.multiplyHigh(sv, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        writeDecimal(upin ? sp10 : tp10, k, s);
+        return;
+      }
+    }
+
+    long tv = sv + 1;
+    boolean uin = vbl + out <= sv << 2;
+    boolean win = (tv << 2) + out <= vbr;
+    if (uin != win) {
+      writeDecimal(uin ? sv : tv, k + dk, s);
+      return;
+    }
+
+    // Both candidates are in the interval, pick the closest, or the even one on a tie
+    long cmp = vb - (sv + tv << 1);
+    writeDecimal(cmp < 0 || cmp == 0 && (sv & 0x1) == 0 ? sv : tv, k + dk, s);
+  }
+
+  /**
+   * Return the number of decimal digits of the specified value.
+   *
+   * @param f  Value to consider. [1,10^18&gt;.
+   * @return   Number of decimal digits. [1,18].
+   */
+  private static int getNDigits(long f)
+  {
+    int length = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+    return f >= POW10[length] ? length + 1 : length;
+  }
+
+  /**
+   * Write the decimal f 10^e in the layout of Double.toString().
+   *
+   * @param f  Decimal significand. [1,10^18&gt;.
+   * @param e  Decimal exponent.
+   * @param s  String builder to write to. Non-null.
+   */
+  private static void writeDecimal(long f, int e, StringBuilder s)
+  {
+    assert f > 0 : "Invalid significand: " + f;
+
+    // Remove trailing zeros so that f has no more digits than necessary
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+
+    int nDigits = getNDigits(f);
+
+    // The value is 0.ddd 10^exponent
+    int exponent = nDigits + e;
+
+    //
+    // Plain notation, >= 1
+    //
+    if (0 < exponent && exponent <= 7) {
+      if (e >= 0) {
+        s.append(f);
+        for (int i = 0; i < e; i++)
+          s.append('0');
+        s.append(".0");
+      }
+      else {
+        long divisor = POW10[-e];
+        s.append(f / divisor);
+        s.append('.');
+        appendPadded(f % divisor, -e, s);
+      }
+    }
+
+    //
+    // Plain notation, < 1
+    //
+    else if (-3 < exponent && exponent <= 0) {
+      s.append("0.");
+      for (int i = 0; i < -exponent; i++)
+        s.append('0');
+      s.append(f);
+    }
+
+    //
+    // Scientific notation
+    //
+    else {
+      long divisor = POW10[nDigits - 1];
+      s.append(f / divisor);
+      s.append('.');
+      if (nDigits == 1)
+        s.append('0');
+      else
+        appendPadded(f % divisor, nDigits - 1, s);
+      s.append('E');
+      s.append(exponent - 1);
+    }
+  }
+
+  /**
+   * Append the specified value left padded with zeros to the given number of digits.
+   *
+   * @param value    Value to append. [0,&gt;.
+   * @param nDigits  Total number of digits to append. [1,18].
+   * @param s        String builder to append to. Non-null.
+   */
+  private static void appendPadded(long value, int nDigits, StringBuilder s)
+  {
+    int nValueDigits = value == 0 ? 1 : getNDigits(value);
+    for (int i = nValueDigits; i < nDigits; i++)
+      s.append('0');
+    s.append(value);
+  }
+}
@@ -0,0 +1,67 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading the remaining content of a byte buffer.
+ * <p>
+ * The stream reads from a duplicate so the position of the
+ * specified buffer is left untouched.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class ByteBufferInputStream extends InputStream
+{
+  /** The buffer being read. */
+  private final ByteBuffer buffer_;
+
+  /**
+   * Create an input stream for the remaining content of the specified buffer.
+   *
+   * @param buffer  Buffer to read. Non-null.
+   */
+  ByteBufferInputStream(ByteBuffer buffer)
+  {
+    assert buffer != null : "buffer cannot be null";
+    buffer_ = buffer.duplicate();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read()
+  {
+    return buffer_.hasRemaining() ? buffer_.get() & 0xff : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read(byte[] bytes, int offset, int length)
+  {
+    if (length == 0)
+      return 0;
+
+    if (!buffer_.hasRemaining())
+      return -1;
+
+    int n = Math.min(length, buffer_.remaining());
+    buffer_.get(bytes, offset, n);
+    return n;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int available()
+  {
+    return buffer_.remaining();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long skip(long n)
+  {
+    int nSkipped = (int) Math.max(0, Math.min(n, buffer_.remaining()));
+    buffer_.position(buffer_.position() + nSkipped);
+    return nSkipped;
+  }
+}
@@ -0,0 +1,702 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+import no.geosoft.logiq.core.json.JsonUtil;
+
+/**
+ * Routes JSON-RPC requests to the handlers of their methods, and turns
+ * the outcome into the response.
+ * <p>
+ * Handlers are registered per method, either as a {@link RequestHandler}
+ * or as a public method of some object bound by a method handle:
+ * <pre>
+ *   public final class Producer
+ *   {
+ *     public long send(long streamId, String username, String password, String data) { ... }
+ *   }
+ *
+ *   Dispatcher dispatcher = new Dispatcher(MethodRegistry.createLogIqRegistry());
+ *   dispatcher.bind("producer", new Producer(), "send");
+ *   dispatcher.setExecutor("producer", producerExecutor);
+ *   :
+ *   dispatcher.dispatch(message).thenAccept(response -&gt; send(response.toJson()));
+ * </pre>
+ * The params of a bound method are converted to its Java param types,
+ * which must be boolean, int, long, double or their boxed types, String,
+ * JsonArray, JsonObject, JsonValue or Object.
+ * Object, array and time series params are passed as their JSON text
+ * to String params, so that large TimeSeries.JSON data received lazily
+ * is never parsed.
+ * <p>
+ * A message holding a batch of requests is answered by a batch of their
+ * responses, see {@link #dispatch(String)}.
+ * <p>
+ * Each handler belongs to a named group, and the requests of a group are
+ * served by the executor of the group, see {@link #setExecutor}. Giving
+ * slow administrative methods a group of their own keeps them from holding
+ * back <em>send</em> and <em>startConsuming</em>. Groups without an
+ * executor use the one of the default group, which by default is the
+ * calling thread.
+ * <p>
+ * Errors are answered by error responses: unparsable messages by
+ * PARSE_ERROR or INVALID_REQUEST, unknown methods by METHOD_NOT_FOUND,
+ * params not matching the method registry or the bound Java method by
+ * INVALID_PARAMS, a {@link RequestException} by its own error type, and
+ * anything else by INTERNAL_ERROR. The details of internal errors are
+ * logged, not returned to the client.
+ * <p>
+ * The dispatcher is thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class Dispatcher
+{
+  /** The logger instance. */
+  private static final Logger logger_ = Logger.getLogger(Dispatcher.class.getName());
+
+  /** Name of the group of handlers registered without one. */
+  public static final String DEFAULT_GROUP = "default";
+
+  /** Executor that runs on the calling thread. */
+  private static final Executor CALLER_EXECUTOR = Runnable::run;
+
+  /** Param types of the methods. Null to take the params as they are decoded. */
+  private final MethodRegistry registry_;
+
+  /** The handlers, by method name. */
+  private final Map<String,Route> routes_ = new ConcurrentHashMap<>();
+
+  /** The executors of the groups, by group name. */
+  private final Map<String,Executor> executors_ = new ConcurrentHashMap<>();
+
+  /**
+   * A handler and the group it belongs to.
+   */
+  private static final class Route
+  {
+    /** The handler of the method. */
+    private final RequestHandler handler_;
+
+    /** Name of the group of the handler. */
+    private final String group_;
+
+    /**
+     * Create a route.
+     *
+     * @param handler  The handler of the method. Non-null.
+     * @param group    Name of the group of the handler. Non-null.
+     */
+    private Route(RequestHandler handler, String group)
+    {
+      assert handler != null : "handler cannot be null";
+      assert group != null : "group cannot be null";
+
+      handler_ = handler;
+      group_ = group;
+    }
+  }
+
+  /**
+   * Create a dispatcher that takes the params as they are decoded.
+   */
+  public Dispatcher()
+  {
+    registry_ = null;
+  }
+
+  /**
+   * Create a dispatcher that decodes the params of messages to the
+   * types of the specified registry, and rejects messages with params
+   * not matching them.
+   *
+   * @param registry  Param types of the methods. Non-null.
+   * @throws IllegalArgumentException  If registry is null.
+   */
+  public Dispatcher(MethodRegistry registry)
+  {
+    if (registry == null)
+      throw new IllegalArgumentException("registry cannot be null");
+
+    registry_ = registry;
+  }
+
+  /**
+   * Return the method registry of this dispatcher.
+   *
+   * @return  The method registry of this dispatcher. Null if none.
+   */
+  public MethodRegistry getRegistry()
+  {
+    return registry_;
+  }
+
+  /**
+   * Set the executor serving the requests of the specified group.
+   *
+   * @param group     Name of group. Non-null.
+   * @param executor  Executor of the group. Null to use the executor of the
+   *                  default group, or the calling thread for the default group.
+   * @throws IllegalArgumentException  If group is null.
+   */
+  public void setExecutor(String group, Executor executor)
+  {
+    if (group == null)
+      throw new IllegalArgumentException("group cannot be null");
+
+    if (executor != null)
+      executors_.put(group, executor);
+    else
+      executors_.remove(group);
+  }
+
+  /**
+   * Return the executor serving the requests of the specified group.
+   *
+   * @param group  Name of group. Non-null.
+   * @return       The executor of the group. Never null.
+   */
+  private Executor getExecutor(String group)
+  {
+    assert group != null : "group cannot be null";
+
+    Executor executor = executors_.get(group);
+    if (executor == null)
+      executor = executors_.get(DEFAULT_GROUP);
+
+    return executor != null ? executor : CALLER_EXECUTOR;
+  }
+
+  /**
+   * Register the handler of the specified method in the default group.
+   * It replaces any handler of the method.
+   *
+   * @param method   Name of method. Non-null.
+   * @param handler  Handler of the method. Non-null.
+   * @throws IllegalArgumentException  If method or handler is null.
+   */
+  public void register(String method, RequestHandler handler)
+  {
+    register(method, DEFAULT_GROUP, handler);
+  }
+
+  /**
+   * Register the handler of the specified method in the given group.
+   * It replaces any handler of the method.
+   *
+   * @param method   Name of method. Non-null.
+   * @param group    Name of group. Non-null.
+   * @param handler  Handler of the method. Non-null.
+   * @throws IllegalArgumentException  If method, group or handler is null.
+   */
+  public void register(String method, String group, RequestHandler handler)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    if (group == null)
+      throw new IllegalArgumentException("group cannot be null");
+
+    if (handler == null)
+      throw new IllegalArgumentException("handler cannot be null");
+
+    routes_.put(method, new Route(handler, group));
+  }
+
+  /**
+   * Register the public methods of the specified target with the given
+   * names as the handlers of the JSON-RPC methods of the same names,
+   * in the specified group.
+   *
+   * @param group    Name of group. Non-null.
+   * @param target   Object to call the methods on. Non-null.
+   * @param methods  Names of the methods. Non-null.
+   * @throws IllegalArgumentException  If group, target or methods is null, if the
+   *                                   class of target doesn't have exactly one public
+   *                                   instance method of each name, or if a method has
+   *                                   a param of an unsupported type. None of the
+   *                                   methods are registered then.
+   */
+  public void bind(String group, Object target, String... methods)
+  {
+    if (group == null)
+      throw new IllegalArgumentException("group cannot be null");
+
+    if (target == null)
+      throw new IllegalArgumentException("target cannot be null");
+
+    if (methods == null)
+      throw new IllegalArgumentException("methods cannot be null");
+
+    // All are checked before any is registered
+    BoundHandler[] handlers = new BoundHandler[methods.length];
+    for (int i = 0; i < methods.length; i++)
+      handlers[i] = new BoundHandler(target, findMethod(target.getClass(), methods[i]));
+
+    for (int i = 0; i < methods.length; i++)
+      register(methods[i], group, handlers[i]);
+  }
+
+  /**
+   * Return the public instance method of the specified name of the given class.
+   *
+   * @param clazz  Class to search. Non-null.
+   * @param name   Name of method. Non-null.
+   * @return       The requested method. Never null.
+   * @throws IllegalArgumentException  If there is not exactly one such method.
+   */
+  private static Method findMethod(Class<?> clazz, String name)
+  {
+    assert clazz != null : "clazz cannot be null";
+
+    if (name == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    Method method = null;
+    for (Method m : clazz.getMethods()) {
+      if (!m.getName().equals(name) || Modifier.isStatic(m.getModifiers()))
+        continue;
+
+      if (method != null)
+        throw new IllegalArgumentException("Overloaded method: " + clazz.getName() + "." + name);
+
+      method = m;
+    }
+
+    if (method == null)
+      throw new IllegalArgumentException("No public method: " + clazz.getName() + "." + name);
+
+    return method;
+  }
+
+  /**
+   * Remove the handler of the specified method.
+   *
+   * @param method  Name of method. Non-null.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public void unregister(String method)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    routes_.remove(method);
+  }
+
+  /**
+   * Check if the specified method has a handler.
+   *
+   * @param method  Name of method. Non-null.
+   * @return        True if the method has a handler, false otherwise.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public boolean isRegistered(String method)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    return routes_.containsKey(method);
+  }
+
+  /**
+   * Decode the specified request message and serve it.
+   * Object and array params are decoded lazily.
+   * <p>
+   * A message holding a batch of requests is answered by a {@link ResponseBatch}
+   * when all of its requests are served, and a single request by its
+   * {@link Response}. Elements of a batch that are not valid requests are
+   * answered by an INVALID_REQUEST response each, while a batch that is not
+   * valid JSON or is empty is answered by a single error response.
+   *
+   * @param message  Request message or batch as JSON. Non-null.
+   * @return         Future of the response or response batch. Never null,
+   *                 and never completed exceptionally.
+   * @throws IllegalArgumentException  If message is null.
+   */
+  public CompletableFuture<? extends JsonSerializable> dispatch(String message)
+  {
+    if (message == null)
+      throw new IllegalArgumentException("message cannot be null");
+
+    if (isBatch(message))
+      return dispatchBatch(message);
+
+    Request request;
+    try {
+      request = registry_ != null ? RequestParser.parseLazy(message, registry_) : RequestParser.parseLazy(message);
+    }
+    catch (RequestException exception) {
+      return CompletableFuture.completedFuture(exception.toResponse());
+    }
+    catch (JsonException exception) {
+      return CompletableFuture.completedFuture(toResponse(message, exception));
+    }
+
+    return dispatch(request);
+  }
+
+  /**
+   * Check if the specified message is a batch, i.e. a JSON array.
+   *
+   * @param message  Message to check. Non-null.
+   * @return         True if the message is a batch, false otherwise.
+   */
+  private static boolean isBatch(String message)
+  {
+    assert message != null : "message cannot be null";
+
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+        return c == '[';
+    }
+
+    return false;
+  }
+
+  /**
+   * Decode the specified batch message and serve its requests.
+   *
+   * @param message  Batch message as JSON. Non-null.
+   * @return         Future of the response batch, or of an error response if the
+   *                 batch can't be decoded. Never null, and never completed exceptionally.
+   */
+  private CompletableFuture<? extends JsonSerializable> dispatchBatch(String message)
+  {
+    assert message != null : "message cannot be null";
+
+    List<RequestException> invalidRequests = new ArrayList<>();
+    List<Request> requests;
+    try {
+      requests = RequestParser.parseBatchLazy(message, invalidRequests);
+    }
+    catch (JsonException exception) {
+      return CompletableFuture.completedFuture(toResponse(message, exception));
+    }
+
+    List<CompletableFuture<Response>> responses = new ArrayList<>(requests.size() + invalidRequests.size());
+
+    // Each element that is not a valid request is answered on its own
+    for (RequestException exception : invalidRequests)
+      responses.add(CompletableFuture.completedFuture(exception.toResponse()));
+
+    for (Request request : requests) {
+      // Params not matching the registry fail their own request only
+      if (registry_ != null) {
+        try {
+          request = RequestParser.convert(request, registry_);
+        }
+        catch (RequestException exception) {
+          responses.add(CompletableFuture.completedFuture(exception.toResponse()));
+          continue;
+        }
+      }
+
+      responses.add(dispatch(request));
+    }
+
+    return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+        List<Response> batch = new ArrayList<>(responses.size());
+        for (CompletableFuture<Response> response : responses)
+          batch.add(response.join());
+        return new ResponseBatch(batch);
+      });
+  }
+
+  /**
+   * Return the error response of the specified undecodable message.
+   *
+   * @param message    The message. Non-null.
+   * @param exception  The decoding failure. Non-null.
+   * @return           The error response. Never null.
+   */
+  private static Response toResponse(String message, JsonException exception)
+  {
+    assert message != null : "message cannot be null";
+    assert exception != null : "exception cannot be null";
+
+    // The error is in the JSON itself or in the JSON-RPC structure
+    ErrorType errorType = JsonUtil.isValid(message) ? ErrorType.INVALID_REQUEST : ErrorType.PARSE_ERROR;
+    return new Response(errorType, exception.getMessage(), null);
+  }
+
+  /**
+   * Serve the specified request on the executor of the group of its method.
+   * <p>
+   * The params are taken as they are, so a request not decoded with the
+   * registry of this dispatcher is not checked against it.
+   *
+   * @param request  Request to serve. Non-null.
+   * @return         Future of the response. Never null, and never completed
+   *                 exceptionally.
+   * @throws IllegalArgumentException  If request is null.
+   */
+  public CompletableFuture<Response> dispatch(Request request)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    Route route = routes_.get(request.getMethod());
+    if (route == null)
+      return CompletableFuture.completedFuture(new Response(ErrorType.METHOD_NOT_FOUND, request.getMethod(), request.getId()));
+
+    CompletableFuture<Response> response = new CompletableFuture<>();
+
+    try {
+      getExecutor(route.group_).execute(() -> serve(route.handler_, request, response));
+    }
+    catch (RejectedExecutionException exception) {
+      logger_.log(Level.WARNING, "Unable to serve request " + request.getId() + " (" + request.getMethod() + ")", exception);
+      response.complete(new Response(ErrorType.INTERNAL_ERROR, "Server busy", request.getId()));
+    }
+
+    return response;
+  }
+
+  /**
+   * Serve the specified request by the given handler and complete the
+   * response with the outcome.
+   *
+   * @param handler   Handler of the request. Non-null.
+   * @param request   Request to serve. Non-null.
+   * @param response  Response to complete. Non-null.
+   */
+  private static void serve(RequestHandler handler, Request request, CompletableFuture<Response> response)
+  {
+    assert handler != null : "handler cannot be null";
+    assert request != null : "request cannot be null";
+    assert response != null : "response cannot be null";
+
+    Object result;
+    try {
+      result = handler.handle(request);
+    }
+    catch (Throwable throwable) {
+      response.complete(toResponse(request, throwable));
+      return;
+    }
+
+    if (!(result instanceof CompletionStage)) {
+      response.complete(new Response(result, request.getId()));
+      return;
+    }
+
+    ((CompletionStage<?>) result).whenComplete((value, throwable) -> {
+        response.complete(throwable == null ? new Response(value, request.getId()) : toResponse(request, throwable));
+      });
+  }
+
+  /**
+   * Return the error response of the specified failure of the given request.
+   *
+   * @param request    Request that failed. Non-null.
+   * @param throwable  The failure. Non-null.
+   * @return           The error response. Never null.
+   */
+  private static Response toResponse(Request request, Throwable throwable)
+  {
+    assert request != null : "request cannot be null";
+    assert throwable != null : "throwable cannot be null";
+
+    if (throwable instanceof CompletionException && throwable.getCause() != null)
+      throwable = throwable.getCause();
+
+    if (throwable instanceof RequestException) {
+      RequestException exception = (RequestException) throwable;
+      Long id = exception.getRequestId() != null ? exception.getRequestId() : request.getId();
+      return new Response(exception.getErrorType(), exception.getMessage(), id);
+    }
+
+    // The details stay in the log, as they may expose the internals of the server
+    logger_.log(Level.WARNING, "Request " + request.getId() + " (" + request.getMethod() + ") failed", throwable);
+    return new Response(ErrorType.INTERNAL_ERROR, "Internal error", request.getId());
+  }
+
+  /**
+   * A handler calling a Java method through a method handle.
+   */
+  private static final class BoundHandler
+    implements RequestHandler
+  {
+    /** The method, bound to its target and taking its params as an Object[]. */
+    private final MethodHandle methodHandle_;
+
+    /** Name of the method, for messages. */
+    private final String name_;
+
+    /** Types to convert each param to. */
+    private final ParamType[] paramTypes_;
+
+    /** Java class of each param, boxed. */
+    private final Class<?>[] classes_;
+
+    /** Indicate for each param if it is passed as JSON text. */
+    private final boolean[] isJsonText_;
+
+    /** Indicate for each param if it is of a primitive type, and so can't be null. */
+    private final boolean[] isPrimitive_;
+
+    /**
+     * Create a handler calling the specified method on the given target.
+     *
+     * @param target  Object to call the method on. Non-null.
+     * @param method  Method to call. Non-null.
+     * @throws IllegalArgumentException  If the method is not accessible, or if
+     *                                   it has a param of an unsupported type.
+     */
+    private BoundHandler(Object target, Method method)
+    {
+      assert target != null : "target cannot be null";
+      assert method != null : "method cannot be null";
+
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      int nParams = parameterTypes.length;
+
+      try {
+        // Spread and boxed once here, so that each call is a single invokeExact()
+        methodHandle_ = MethodHandles.publicLookup()
+          .unreflect(method)
+          .bindTo(target)
+          .asSpreader(Object[].class, nParams)
+          .asType(MethodType.methodType(Object.class, Object[].class));
+      }
+      catch (IllegalAccessException exception) {
+        throw new IllegalArgumentException("Inaccessible method: " + method, exception);
+      }
+
+      name_ = method.getName();
+      paramTypes_ = new ParamType[nParams];
+      classes_ = new Class<?>[nParams];
+      isJsonText_ = new boolean[nParams];
+      isPrimitive_ = new boolean[nParams];
+
+      for (int i = 0; i < nParams; i++) {
+        paramTypes_[i] = getParamType(parameterTypes[i]);
+        if (paramTypes_[i] == null)
+          throw new IllegalArgumentException("Unsupported type of param " + i + " of " + method + ": " +
+                                             parameterTypes[i].getName());
+
+        classes_[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        isJsonText_[i] = parameterTypes[i] == String.class;
+        isPrimitive_[i] = parameterTypes[i].isPrimitive();
+      }
+    }
+
+    /**
+     * Return the param type to convert to for the specified Java type.
+     *
+     * @param clazz  Java type of param. Non-null.
+     * @return       The corresponding param type, or null if params
+     *               can't be passed as this type.
+     */
+    private static ParamType getParamType(Class<?> clazz)
+    {
+      assert clazz != null : "clazz cannot be null";
+
+      if (clazz == boolean.class || clazz == Boolean.class)
+        return ParamType.BOOLEAN;
+
+      if (clazz == int.class || clazz == Integer.class)
+        return ParamType.INTEGER;
+
+      if (clazz == long.class || clazz == Long.class)
+        return ParamType.LONG;
+
+      if (clazz == double.class || clazz == Double.class)
+        return ParamType.DOUBLE;
+
+      if (clazz == JsonArray.class)
+        return ParamType.ARRAY;
+
+      if (clazz == JsonObject.class)
+        return ParamType.OBJECT;
+
+      if (clazz == String.class)
+        return ParamType.STRING;
+
+      if (clazz == Object.class || clazz == JsonValue.class)
+        return ParamType.ANY;
+
+      return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Params that can't be converted to the Java types of the method
+     * fail by a RequestException of INVALID_PARAMS. Anything thrown by
+     * the method itself is passed on as it is.
+     */
+    @Override
+    public Object handle(Request request)
+      throws Exception
+    {
+      int nParams = paramTypes_.length;
+      if (request.getNParams() != nParams)
+        throw new RequestException(ErrorType.INVALID_PARAMS,
+                                   name_ + " takes " + nParams + " params, got " + request.getNParams(),
+                                   request.getId());
+
+      Object[] arguments = new Object[nParams];
+      for (int i = 0; i < nParams; i++) {
+        if (isJsonText_[i]) {
+          // Strings as they are, anything else as JSON text without decoding it
+          Object param = request.getRawParam(i);
+          arguments[i] = param == null || param instanceof String ? param : request.getParamAsJson(i);
+          continue;
+        }
+
+        try {
+          Object param = paramTypes_[i].convert(request.getParam(i));
+          if (param == null ? isPrimitive_[i] : !classes_[i].isInstance(param))
+            throw new IllegalArgumentException("expected " + classes_[i].getSimpleName());
+
+          arguments[i] = param;
+        }
+        catch (IllegalArgumentException exception) {
+          throw new RequestException(ErrorType.INVALID_PARAMS,
+                                     "Param " + i + " of " + name_ + ": " + exception.getMessage(),
+                                     request.getId());
+        }
+      }
+
+      try {
+        return (Object) methodHandle_.invokeExact(arguments);
+      }
+      catch (Exception | Error exception) {
+        throw exception;
+      }
+      catch (Throwable throwable) {
+        throw new Exception(throwable);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Dispatcher of " + routes_.size() + " methods";
+  }
+}
@@ -0,0 +1,133 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.Reader;
+
+/**
+ * A not yet parsed JSON value, kept as a character range of the
+ * message it was received in.
+ * <p>
+ * Used as a placeholder for lazily decoded params of a {@link Request}.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class JsonSlice
+{
+  /** The complete message text. */
+  private final String source_;
+
+  /** Start position of the value within source. Inclusive. */
+  private final int start_;
+
+  /** End position of the value within source. Exclusive. */
+  private final int end_;
+
+  /**
+   * Create a new JSON slice.
+   *
+   * @param source  The complete message text. Non-null.
+   * @param start   Start position of the value within source. Inclusive.
+   * @param end     End position of the value within source. Exclusive.
+   */
+  JsonSlice(String source, int start, int end)
+  {
+    assert source != null : "source cannot be null";
+    assert start >= 0 && start <= end && end <= source.length() : "Invalid range: " + start + "," + end;
+
+    source_ = source;
+    start_ = start;
+    end_ = end;
+  }
+
+  /**
+   * Return the complete message text this slice is part of.
+   *
+   * @return  The complete message text. Never null.
+   */
+  String getSource()
+  {
+    return source_;
+  }
+
+  /**
+   * Return start position of the value within the source.
+   *
+   * @return  Start position of the value. Inclusive.
+   */
+  int getStart()
+  {
+    return start_;
+  }
+
+  /**
+   * Return end position of the value within the source.
+   *
+   * @return  End position of the value. Exclusive.
+   */
+  int getEnd()
+  {
+    return end_;
+  }
+
+  /**
+   * Return the length of the value in characters.
+   *
+   * @return  Length of the value. [0,&gt;.
+   */
+  int getLength()
+  {
+    return end_ - start_;
+  }
+
+  /**
+   * Append the unparsed value to the specified string builder.
+   *
+   * @param s  String builder to append to. Non-null.
+   */
+  void appendTo(StringBuilder s)
+  {
+    assert s != null : "s cannot be null";
+    s.append(source_, start_, end_);
+  }
+
+  /**
+   * Return a reader of the unparsed value. The value is read
+   * directly from the source, without copying it.
+   *
+   * @return  A new reader of the value. Never null.
+   */
+  Reader newReader()
+  {
+    return new Reader()
+    {
+      /** Current position within source. */
+      private int pos_ = start_;
+
+      /** {@inheritDoc} */
+      @Override
+      public int read(char[] buffer, int offset, int length)
+      {
+        if (pos_ >= end_)
+          return -1;
+
+        int n = Math.min(length, end_ - pos_);
+        source_.getChars(pos_, pos_ + n, buffer, offset);
+        pos_ += n;
+        return n;
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void close()
+      {
+        pos_ = end_;
+      }
+    };
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return source_.substring(start_, end_);
+  }
+}
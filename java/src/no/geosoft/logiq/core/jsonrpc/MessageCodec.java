@@ -0,0 +1,526 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Encode and decode JSON-RPC messages directly to and from UTF-8 bytes.
+ * <p>
+ * The string based API (toJson() and the JSON string constructors)
+ * requires the message to be copied between UTF-16 text and UTF-8
+ * bytes at the socket. The codec writes messages straight into a byte
+ * buffer and reads them straight from a byte buffer or byte array.
+ * <p>
+ * <b>Note: </b>Buffers handed to a web socket for sending are kept
+ * by the socket until written, so they must not be reused by the caller.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MessageCodec
+{
+  /** Scratch text buffers larger than this are not kept between calls. */
+  private static final int MAX_SCRATCH_CAPACITY = 1024 * 1024;
+
+  /** Per thread scratch text buffer used while encoding. */
+  private static final ThreadLocal<StringBuilder> scratch_ = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+  /** Shared reader factory. Avoids the provider lookup of Json.createReader(). */
+  private static final JsonReaderFactory readerFactory_ = Json.createReaderFactory(null);
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private MessageCodec()
+  {
+    assert false;
+  }
+
+  /**
+   * Encode the specified request into a new byte buffer.
+   *
+   * @param request  Request to encode. Non-null.
+   * @return         The encoded message, ready to be read. Never null.
+   * @throws IllegalArgumentException  If request is null.
+   */
+  public static ByteBuffer encode(Request request)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    StringBuilder s = getScratch();
+    request.writeTo(s);
+    return toBuffer(s);
+  }
+
+  /**
+   * Encode the specified request into the given byte buffer, starting
+   * at its current position.
+   * <p>
+   * If the buffer is too small a larger buffer of the same kind
+   * is allocated, and the content of the buffer up to its position is
+   * copied into it before the message is written. In either case the
+   * position of the returned buffer is just past the message.
+   *
+   * @param request  Request to encode. Non-null.
+   * @param buffer   Buffer to encode into. Non-null.
+   * @return         The buffer holding the message. Either buffer or a larger replacement. Never null.
+   * @throws IllegalArgumentException  If request or buffer is null.
+   */
+  public static ByteBuffer encode(Request request, ByteBuffer buffer)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    StringBuilder s = getScratch();
+    request.writeTo(s);
+    return putUtf8(s, buffer);
+  }
+
+  /**
+   * Encode the specified response into a new byte buffer.
+   *
+   * @param response  Response to encode. Non-null.
+   * @return          The encoded message, ready to be read. Never null.
+   * @throws IllegalArgumentException  If response is null.
+   */
+  public static ByteBuffer encode(Response response)
+  {
+    if (response == null)
+      throw new IllegalArgumentException("response cannot be null");
+
+    StringBuilder s = getScratch();
+    response.writeTo(s);
+    return toBuffer(s);
+  }
+
+  /**
+   * Encode the specified response into the given byte buffer, starting
+   * at its current position. See {@link #encode(Request,ByteBuffer)}.
+   *
+   * @param response  Response to encode. Non-null.
+   * @param buffer    Buffer to encode into. Non-null.
+   * @return          The buffer holding the message. Either buffer or a larger replacement. Never null.
+   * @throws IllegalArgumentException  If response or buffer is null.
+   */
+  public static ByteBuffer encode(Response response, ByteBuffer buffer)
+  {
+    if (response == null)
+      throw new IllegalArgumentException("response cannot be null");
+
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    StringBuilder s = getScratch();
+    response.writeTo(s);
+    return putUtf8(s, buffer);
+  }
+
+  /**
+   * Encode the specified request batch into a new byte buffer.
+   *
+   * @param batch  Request batch to encode. Non-null.
+   * @return       The encoded message, ready to be read. Never null.
+   * @throws IllegalArgumentException  If batch is null.
+   */
+  public static ByteBuffer encode(RequestBatch batch)
+  {
+    if (batch == null)
+      throw new IllegalArgumentException("batch cannot be null");
+
+    StringBuilder s = getScratch();
+    batch.writeTo(s);
+    return toBuffer(s);
+  }
+
+  /**
+   * Encode the specified response batch into a new byte buffer.
+   *
+   * @param batch  Response batch to encode. Non-null.
+   * @return       The encoded message, ready to be read. Never null.
+   * @throws IllegalArgumentException  If batch is null.
+   */
+  public static ByteBuffer encode(ResponseBatch batch)
+  {
+    if (batch == null)
+      throw new IllegalArgumentException("batch cannot be null");
+
+    StringBuilder s = getScratch();
+    batch.writeTo(s);
+    return toBuffer(s);
+  }
+
+  /**
+   * Encode the specified mutable request into the given byte buffer,
+   * starting at its current position. See {@link #encode(Request,ByteBuffer)}.
+   *
+   * @param request  Request to encode. Non-null.
+   * @param buffer   Buffer to encode into. Non-null.
+   * @return         The buffer holding the message. Either buffer or a larger replacement. Never null.
+   * @throws IllegalArgumentException  If request or buffer is null.
+   * @throws IllegalStateException     If the method of request is not set.
+   */
+  public static ByteBuffer encode(MutableRequest request, ByteBuffer buffer)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    StringBuilder s = getScratch();
+    request.writeTo(s);
+    return putUtf8(s, buffer);
+  }
+
+  /**
+   * Encode the specified mutable response into the given byte buffer,
+   * starting at its current position. See {@link #encode(Request,ByteBuffer)}.
+   *
+   * @param response  Response to encode. Non-null.
+   * @param buffer    Buffer to encode into. Non-null.
+   * @return          The buffer holding the message. Either buffer or a larger replacement. Never null.
+   * @throws IllegalArgumentException  If response or buffer is null.
+   */
+  public static ByteBuffer encode(MutableResponse response, ByteBuffer buffer)
+  {
+    if (response == null)
+      throw new IllegalArgumentException("response cannot be null");
+
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    StringBuilder s = getScratch();
+    response.writeTo(s);
+    return putUtf8(s, buffer);
+  }
+
+  /**
+   * Decode a request from the remaining content of the specified buffer.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer  Buffer holding a UTF-8 encoded request. Non-null.
+   * @return        The decoded request. Never null.
+   * @throws IllegalArgumentException  If buffer is null.
+   * @throws JsonParsingException      If the content is not a valid request.
+   */
+  public static Request decodeRequest(ByteBuffer buffer)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    return RequestParser.parse(toStream(buffer));
+  }
+
+  /**
+   * Decode a request from the specified bytes.
+   *
+   * @param bytes   Bytes holding a UTF-8 encoded request. Non-null.
+   * @param offset  Offset of the message within bytes. [0,&gt;.
+   * @param length  Length of the message. [0,&gt;.
+   * @return        The decoded request. Never null.
+   * @throws IllegalArgumentException  If bytes is null.
+   * @throws JsonParsingException      If the content is not a valid request.
+   */
+  public static Request decodeRequest(byte[] bytes, int offset, int length)
+    throws JsonParsingException
+  {
+    if (bytes == null)
+      throw new IllegalArgumentException("bytes cannot be null");
+
+    return RequestParser.parse(new ByteArrayInputStream(bytes, offset, length));
+  }
+
+  /**
+   * Decode a response from the remaining content of the specified buffer.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer  Buffer holding a UTF-8 encoded response. Non-null.
+   * @return        The decoded response. Never null.
+   * @throws IllegalArgumentException  If buffer is null.
+   * @throws JsonParsingException      If the content is not a valid response.
+   */
+  public static Response decodeResponse(ByteBuffer buffer)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    return decodeResponse(toStream(buffer));
+  }
+
+  /**
+   * Decode a response from the specified bytes.
+   *
+   * @param bytes   Bytes holding a UTF-8 encoded response. Non-null.
+   * @param offset  Offset of the message within bytes. [0,&gt;.
+   * @param length  Length of the message. [0,&gt;.
+   * @return        The decoded response. Never null.
+   * @throws IllegalArgumentException  If bytes is null.
+   * @throws JsonParsingException      If the content is not a valid response.
+   */
+  public static Response decodeResponse(byte[] bytes, int offset, int length)
+    throws JsonParsingException
+  {
+    if (bytes == null)
+      throw new IllegalArgumentException("bytes cannot be null");
+
+    return decodeResponse(new ByteArrayInputStream(bytes, offset, length));
+  }
+
+  /**
+   * Decode a request batch from the remaining content of the specified buffer.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer  Buffer holding a UTF-8 encoded request batch. Non-null.
+   * @return        The decoded request batch. Never null.
+   * @throws IllegalArgumentException  If buffer is null.
+   * @throws JsonParsingException      If the content is not a valid request batch.
+   */
+  public static RequestBatch decodeRequestBatch(ByteBuffer buffer)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    return new RequestBatch(RequestParser.parseBatch(toStream(buffer)));
+  }
+
+  /**
+   * Decode a response batch from the remaining content of the specified buffer.
+   * The position of the buffer is not changed.
+   *
+   * @param buffer  Buffer holding a UTF-8 encoded response batch. Non-null.
+   * @return        The decoded response batch. Never null.
+   * @throws IllegalArgumentException  If buffer is null.
+   * @throws JsonParsingException      If the content is not a valid response batch.
+   */
+  public static ResponseBatch decodeResponseBatch(ByteBuffer buffer)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    return new ResponseBatch(ResponseParser.parseBatch(toStream(buffer)));
+  }
+
+  /**
+   * Decode a request from the remaining content of the specified buffer
+   * into the given mutable request. The position of the buffer is not changed.
+   *
+   * @param buffer   Buffer holding a UTF-8 encoded request. Non-null.
+   * @param request  Request to refill. Non-null.
+   * @throws IllegalArgumentException  If buffer or request is null.
+   * @throws JsonParsingException      If the content is not a valid request.
+   */
+  public static void decodeRequest(ByteBuffer buffer, MutableRequest request)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    RequestParser.parse(toStream(buffer), request);
+  }
+
+  /**
+   * Decode a response from the remaining content of the specified buffer
+   * into the given mutable response. The position of the buffer is not changed.
+   *
+   * @param buffer    Buffer holding a UTF-8 encoded response. Non-null.
+   * @param response  Response to refill. Non-null.
+   * @throws IllegalArgumentException  If buffer or response is null.
+   * @throws JsonParsingException      If the content is not a valid response.
+   */
+  public static void decodeResponse(ByteBuffer buffer, MutableResponse response)
+    throws JsonParsingException
+  {
+    if (buffer == null)
+      throw new IllegalArgumentException("buffer cannot be null");
+
+    if (response == null)
+      throw new IllegalArgumentException("response cannot be null");
+
+    ResponseParser.parse(toStream(buffer), response);
+  }
+
+  /**
+   * Decode a response from the specified stream.
+   *
+   * @param stream  Stream holding a UTF-8 encoded response. Non-null.
+   * @return        The decoded response. Never null.
+   * @throws JsonParsingException  If the content is not a valid response.
+   */
+  private static Response decodeResponse(InputStream stream)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+
+    JsonReader reader = readerFactory_.createReader(stream, StandardCharsets.UTF_8);
+    try {
+      return new Response(reader.readObject());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Return an input stream over the remaining content of the specified buffer.
+   *
+   * @param buffer  Buffer to get stream of. Non-null.
+   * @return        The requested stream. Never null.
+   */
+  private static InputStream toStream(ByteBuffer buffer)
+  {
+    assert buffer != null : "buffer cannot be null";
+
+    if (buffer.hasArray())
+      return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+    return new ByteBufferInputStream(buffer);
+  }
+
+  /**
+   * Return the empty scratch text buffer of the calling thread.
+   *
+   * @return  The scratch text buffer. Never null.
+   */
+  private static StringBuilder getScratch()
+  {
+    StringBuilder s = scratch_.get();
+
+    // Don't hold on to the memory of an exceptionally large message
+    if (s.capacity() > MAX_SCRATCH_CAPACITY) {
+      s = new StringBuilder(1024);
+      scratch_.set(s);
+    }
+
+    s.setLength(0);
+    return s;
+  }
+
+  /**
+   * Return the specified text as UTF-8 in a new byte buffer of exact size.
+   *
+   * @param s  Text to convert. Non-null.
+   * @return   The requested buffer, ready to be read. Never null.
+   */
+  private static ByteBuffer toBuffer(CharSequence s)
+  {
+    assert s != null : "s cannot be null";
+
+    ByteBuffer buffer = ByteBuffer.allocate(getUtf8Length(s));
+    putUtf8(s, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Return the number of bytes of the specified text when encoded as UTF-8.
+   *
+   * @param s  Text to consider. Non-null.
+   * @return   Number of UTF-8 bytes. [0,&gt;.
+   */
+  static int getUtf8Length(CharSequence s)
+  {
+    assert s != null : "s cannot be null";
+
+    int length = s.length();
+    int nBytes = length;
+
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80)
+        continue;
+
+      if (c < 0x800)
+        nBytes += 1;
+
+      // A valid surrogate pair is 4 bytes, i.e. 2 extra for each of the 2 chars.
+      // An unpaired surrogate is replaced by '?'
+      else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          nBytes += 2;
+          i++;
+        }
+      }
+
+      else
+        nBytes += 2;
+    }
+
+    return nBytes;
+  }
+
+  /**
+   * Write the specified text as UTF-8 into the given buffer at its
+   * current position, growing the buffer if necessary.
+   *
+   * @param s       Text to write. Non-null.
+   * @param buffer  Buffer to write to. Non-null.
+   * @return        The buffer written to. Either buffer or a larger replacement. Never null.
+   */
+  private static ByteBuffer putUtf8(CharSequence s, ByteBuffer buffer)
+  {
+    assert s != null : "s cannot be null";
+    assert buffer != null : "buffer cannot be null";
+
+    int nBytes = getUtf8Length(s);
+
+    if (buffer.remaining() < nBytes) {
+      int capacity = Math.max(buffer.position() + nBytes, 2 * buffer.capacity());
+      ByteBuffer newBuffer = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+      buffer.flip();
+      newBuffer.put(buffer);
+      buffer = newBuffer;
+    }
+
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      }
+
+      else if (c < 0x800) {
+        buffer.put((byte) (0xc0 | (c >> 6)));
+        buffer.put((byte) (0x80 | (c & 0x3f)));
+      }
+
+      else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, s.charAt(++i));
+          buffer.put((byte) (0xf0 | (codePoint >> 18)));
+          buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+          buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+          buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+        }
+        else {
+          buffer.put((byte) '?');
+        }
+      }
+
+      else {
+        buffer.put((byte) (0xe0 | (c >> 12)));
+        buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        buffer.put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+
+    return buffer;
+  }
+}
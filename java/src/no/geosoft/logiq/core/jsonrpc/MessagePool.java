@@ -0,0 +1,146 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+/**
+ * A bounded pool of {@link MutableRequest} and {@link MutableResponse}
+ * instances.
+ * <p>
+ * A pool is not thread safe. Use one pool per connection or thread,
+ * or the pool of the calling thread as given by {@link #getThreadPool}.
+ * Instances are handed out reset, and should be released when the
+ * message is encoded or processed. Releasing is optional; an instance
+ * that is not released is simply garbage collected. If the pool is
+ * full the released instance is dropped.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MessagePool
+{
+  /** Default capacity of the thread pools. */
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /** The pools of the individual threads. */
+  private static final ThreadLocal<MessagePool> threadPool_ = ThreadLocal.withInitial(() -> new MessagePool(DEFAULT_CAPACITY));
+
+  /** Free requests. */
+  private final MutableRequest[] requests_;
+
+  /** Number of free requests. [0,capacity]. */
+  private int nRequests_ = 0;
+
+  /** Free responses. */
+  private final MutableResponse[] responses_;
+
+  /** Number of free responses. [0,capacity]. */
+  private int nResponses_ = 0;
+
+  /**
+   * Create a new message pool.
+   *
+   * @param capacity  Max number of free requests and free responses held. [0,&gt;.
+   * @throws IllegalArgumentException  If capacity is &lt; 0.
+   */
+  public MessagePool(int capacity)
+  {
+    if (capacity < 0)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+    requests_ = new MutableRequest[capacity];
+    responses_ = new MutableResponse[capacity];
+  }
+
+  /**
+   * Return the message pool of the calling thread.
+   *
+   * @return  The message pool of the calling thread. Never null.
+   */
+  public static MessagePool getThreadPool()
+  {
+    return threadPool_.get();
+  }
+
+  /**
+   * Return an empty request, either from the pool or a new one.
+   *
+   * @return  An empty request. Never null.
+   */
+  public MutableRequest getRequest()
+  {
+    if (nRequests_ == 0)
+      return new MutableRequest();
+
+    MutableRequest request = requests_[--nRequests_];
+    requests_[nRequests_] = null;
+    request.isPooled_ = false;
+    request.reset();
+    return request;
+  }
+
+  /**
+   * Return the specified request to the pool.
+   * The request must not be used by the caller after this call.
+   *
+   * @param request  Request to release. Non-null.
+   * @throws IllegalArgumentException  If request is null.
+   * @throws IllegalStateException     If request is already released and not
+   *                                   handed out again.
+   */
+  public void release(MutableRequest request)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (request.isPooled_)
+      throw new IllegalStateException("Request is already released");
+
+    if (nRequests_ == requests_.length)
+      return;
+
+    // Don't keep the params alive while in the pool
+    request.reset();
+    request.isPooled_ = true;
+    requests_[nRequests_++] = request;
+  }
+
+  /**
+   * Return an empty response, either from the pool or a new one.
+   *
+   * @return  An empty response. Never null.
+   */
+  public MutableResponse getResponse()
+  {
+    if (nResponses_ == 0)
+      return new MutableResponse();
+
+    MutableResponse response = responses_[--nResponses_];
+    responses_[nResponses_] = null;
+    response.isPooled_ = false;
+    response.reset();
+    return response;
+  }
+
+  /**
+   * Return the specified response to the pool.
+   * The response must not be used by the caller after this call.
+   *
+   * @param response  Response to release. Non-null.
+   * @throws IllegalArgumentException  If response is null.
+   * @throws IllegalStateException     If response is already released and not
+   *                                   handed out again.
+   */
+  public void release(MutableResponse response)
+  {
+    if (response == null)
+      throw new IllegalArgumentException("response cannot be null");
+
+    if (response.isPooled_)
+      throw new IllegalStateException("Response is already released");
+
+    if (nResponses_ == responses_.length)
+      return;
+
+    // Don't keep the result alive while in the pool
+    response.reset();
+    response.isPooled_ = true;
+    responses_[nResponses_++] = response;
+  }
+}
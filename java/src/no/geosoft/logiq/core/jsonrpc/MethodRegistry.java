@@ -0,0 +1,281 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of the param types of JSON-RPC methods.
+ * <p>
+ * Given a registry, {@link RequestParser#parse(String,MethodRegistry)}
+ * decodes each param of a registered method directly to its declared type,
+ * and rejects requests with params of the wrong number or type with an
+ * INVALID_PARAMS {@link RequestException} before the request is served.
+ * Requests of methods that are not registered are decoded as without
+ * a registry.
+ * <p>
+ * A method may have several signatures, of different number of params.
+ * The signatures of the LogIQ methods are given by {@link #createLogIqRegistry}.
+ * <p>
+ * The registry is thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MethodRegistry
+{
+  /** The signatures of each method, by method name. */
+  private final Map<String,List<MethodSignature>> signatures_ = new ConcurrentHashMap<>();
+
+  /**
+   * Create an empty method registry.
+   */
+  public MethodRegistry()
+  {
+    // Nothing
+  }
+
+  /**
+   * Create a registry with the signatures of the methods of the LogIQ protocol.
+   * Stream, client and customer IDs are longs and the data of
+   * <em>send</em> is a TimeSeries.JSON document.
+   *
+   * @return  A new registry of the LogIQ methods. Never null.
+   */
+  public static MethodRegistry createLogIqRegistry()
+  {
+    MethodRegistry registry = new MethodRegistry();
+
+    ParamType l = ParamType.LONG;
+    ParamType s = ParamType.STRING;
+
+    //
+    // Producer methods
+    //
+    registry.register("send", "streamId,clientUsername,clientPassword,data", l, s, s, ParamType.TIME_SERIES);
+    registry.register("resetStream", "streamId,clientUsername,clientPassword", l, s, s);
+
+    //
+    // Consumer methods
+    //
+    registry.register("startConsuming", "streamName,clientUsername,clientPassword,messageId", s, s, s, l);
+    registry.register("stopConsuming", "streamName,clientUsername,clientPassword,messageId", s, s, s, l);
+
+    //
+    // Customer administration methods
+    //
+    registry.register("getStreams", "customerUsername,customerPassword", s, s);
+    registry.register("createStream", "customerUsername,customerPassword", s, s);
+    registry.register("createStream", "streamName,customerUsername,customerPassword", s, s, s);
+    registry.register("updateStream", "streamId,newName,customerUsername,customerPassword", l, s, s, s);
+    registry.register("deleteStream", "streamId,customerUsername,customerPassword", l, s, s);
+    registry.register("getTransfers", "streamId,customerUsername,customerPassword", l, s, s);
+    registry.register("getClients", "customerUsername,customerPassword", s, s);
+    registry.register("createClient",
+                      "clientName,contact,email,username,password,clientUsername,clientPassword,customerUsername,customerPassword",
+                      s, s, s, s, s, s, s, s, s);
+    registry.register("updateClient",
+                      "clientId,newClientName,newContact,newEmail,newClientUsername,newClientPassword,customerUsername,customerPassword",
+                      l, s, s, s, s, s, s, s);
+    registry.register("deleteClient", "clientId,customerUsername,customerPassword", l, s, s);
+    registry.register("setAsProducer", "clientId,streamId,customerUsername,customerPassword", l, l, s, s);
+    registry.register("setAsConsumer", "clientId,streamId,customerUsername,customerPassword", l, l, s, s);
+    registry.register("isProducer", "clientId,streamId,customerUsername,customerPassword", l, l, s, s);
+    registry.register("isConsumer", "clientId,streamId,customerUsername,customerPassword", l, l, s, s);
+
+    //
+    // LogIQ administrator methods
+    //
+    registry.register("getCustomers", "adminUsername,adminPassword", s, s);
+    registry.register("createCustomer", "name,contact,email,username,password,adminUsername,adminPassword",
+                      s, s, s, s, s, s, s);
+    registry.register("updateCustomer",
+                      "customerId,newName,newContact,newEmail,newUsername,newPassword,adminUsername,adminPassword",
+                      l, s, s, s, s, s, s, s);
+    registry.register("deleteCustomer", "customerId,adminUsername,adminPassword", l, s, s);
+
+    return registry;
+  }
+
+  /**
+   * Register a signature of the specified method.
+   *
+   * @param method      Name of method. Non-null.
+   * @param paramNames  Comma separated names of the params. Non-null.
+   * @param paramTypes  Types of the params. Non-null.
+   */
+  private void register(String method, String paramNames, ParamType... paramTypes)
+  {
+    assert method != null : "method cannot be null";
+    assert paramNames != null : "paramNames cannot be null";
+    assert paramTypes != null : "paramTypes cannot be null";
+
+    register(new MethodSignature(method, Arrays.asList(paramNames.split(",")), Arrays.asList(paramTypes)));
+  }
+
+  /**
+   * Register the specified signature. It replaces any signature
+   * of the same method with the same number of params.
+   *
+   * @param signature  Signature to register. Non-null.
+   * @throws IllegalArgumentException  If signature is null.
+   */
+  public void register(MethodSignature signature)
+  {
+    if (signature == null)
+      throw new IllegalArgumentException("signature cannot be null");
+
+    // Lists are replaced rather than modified, so readers need no locking
+    signatures_.compute(signature.getMethod(), (method, signatures) -> {
+        List<MethodSignature> newSignatures = new ArrayList<>();
+        if (signatures != null) {
+          for (MethodSignature s : signatures) {
+            if (s.getNParams() != signature.getNParams())
+              newSignatures.add(s);
+          }
+        }
+        newSignatures.add(signature);
+        return Collections.unmodifiableList(newSignatures);
+      });
+  }
+
+  /**
+   * Return the names of the registered methods.
+   *
+   * @return  Names of the registered methods. Never null.
+   */
+  public Set<String> getMethods()
+  {
+    return Collections.unmodifiableSet(signatures_.keySet());
+  }
+
+  /**
+   * Check if the specified method is registered.
+   *
+   * @param method  Name of method to check. Non-null.
+   * @return        True if the method is registered, false otherwise.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public boolean isRegistered(String method)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    return signatures_.containsKey(method);
+  }
+
+  /**
+   * Return the signatures of the specified method.
+   *
+   * @param method  Name of method. Non-null.
+   * @return        The signatures of the method. Empty if not registered. Never null.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public List<MethodSignature> getSignatures(String method)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    return signatures_.getOrDefault(method, Collections.emptyList());
+  }
+
+  /**
+   * Return the signature of the specified method with the given number of params.
+   *
+   * @param method   Name of method. Non-null.
+   * @param nParams  Number of params. [0,&gt;.
+   * @return         The requested signature, or null if none.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public MethodSignature getSignature(String method, int nParams)
+  {
+    for (MethodSignature signature : getSignatures(method)) {
+      if (signature.getNParams() == nParams)
+        return signature;
+    }
+
+    return null;
+  }
+
+  /**
+   * Return the type of the specified param of the given method, as a hint
+   * for decoding the param while the total number of params is unknown.
+   *
+   * @param method   Name of method. Null if not yet known.
+   * @param paramNo  Param number. [0,&gt;.
+   * @return         The type of the param in all signatures of the method
+   *                 that have it, or ANY if they disagree or the method
+   *                 is unknown. Never null.
+   */
+  ParamType getParamType(String method, int paramNo)
+  {
+    assert paramNo >= 0 : "Invalid paramNo: " + paramNo;
+
+    if (method == null)
+      return ParamType.ANY;
+
+    ParamType paramType = null;
+    for (MethodSignature signature : getSignatures(method)) {
+      if (paramNo >= signature.getNParams())
+        continue;
+
+      ParamType type = signature.getParamTypes().get(paramNo);
+      if (paramType != null && type != paramType)
+        return ParamType.ANY;
+
+      paramType = type;
+    }
+
+    return paramType != null ? paramType : ParamType.ANY;
+  }
+
+  /**
+   * Convert the specified decoded params of a request to the types
+   * declared for its method, in place.
+   *
+   * @param method  Name of method. Non-null.
+   * @param params  Params to convert. Non-null.
+   * @param id      ID of the request.
+   * @throws RequestException  If the method is registered, but the params
+   *                           do not match any of its signatures.
+   */
+  void convert(String method, List<Object> params, long id)
+    throws RequestException
+  {
+    assert method != null : "method cannot be null";
+    assert params != null : "params cannot be null";
+
+    List<MethodSignature> signatures = getSignatures(method);
+    if (signatures.isEmpty())
+      return;
+
+    MethodSignature signature = getSignature(method, params.size());
+    if (signature == null) {
+      StringBuilder s = new StringBuilder();
+      for (MethodSignature candidate : signatures) {
+        if (s.length() > 0)
+          s.append(" or ");
+        s.append(candidate.getNParams());
+      }
+      throw new RequestException(ErrorType.INVALID_PARAMS,
+                                 method + " takes " + s + " params, got " + params.size(), id);
+    }
+
+    try {
+      signature.convert(params);
+    }
+    catch (IllegalArgumentException exception) {
+      throw new RequestException(ErrorType.INVALID_PARAMS, exception.getMessage(), id);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Method registry of " + signatures_.size() + " methods";
+  }
+}
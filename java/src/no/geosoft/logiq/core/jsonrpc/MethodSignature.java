@@ -0,0 +1,152 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The declared params of a JSON-RPC method, like
+ * <pre>
+ *   send(streamId:long, clientUsername:string, clientPassword:string, data:timeSeries)
+ * </pre>
+ * Params are positional, so a signature is identified by the method name
+ * and its number of params. See {@link MethodRegistry}.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MethodSignature
+{
+  /** Name of the method. */
+  private final String method_;
+
+  /** Names of the params, for messages. */
+  private final List<String> paramNames_;
+
+  /** Types of the params. */
+  private final List<ParamType> paramTypes_;
+
+  /**
+   * Create a method signature.
+   *
+   * @param method      Name of the method. Non-null.
+   * @param paramNames  Names of the params. Non-null.
+   * @param paramTypes  Types of the params, one for each name. Non-null.
+   * @throws IllegalArgumentException  If method, paramNames or paramTypes is null,
+   *                                   if any of their elements are null, or if
+   *                                   they are of different sizes.
+   */
+  public MethodSignature(String method, List<String> paramNames, List<ParamType> paramTypes)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    if (paramNames == null)
+      throw new IllegalArgumentException("paramNames cannot be null");
+
+    if (paramTypes == null)
+      throw new IllegalArgumentException("paramTypes cannot be null");
+
+    if (paramNames.size() != paramTypes.size())
+      throw new IllegalArgumentException("paramNames and paramTypes must be of same size");
+
+    for (String paramName : paramNames) {
+      if (paramName == null)
+        throw new IllegalArgumentException("Param names and types cannot be null");
+    }
+
+    for (ParamType paramType : paramTypes) {
+      if (paramType == null)
+        throw new IllegalArgumentException("Param names and types cannot be null");
+    }
+
+    method_ = method;
+    paramNames_ = Collections.unmodifiableList(new ArrayList<>(paramNames));
+    paramTypes_ = Collections.unmodifiableList(new ArrayList<>(paramTypes));
+  }
+
+  /**
+   * Return the name of the method of this signature.
+   *
+   * @return  Name of the method. Never null.
+   */
+  public String getMethod()
+  {
+    return method_;
+  }
+
+  /**
+   * Return the number of params of this signature.
+   *
+   * @return  Number of params. [0,&gt;.
+   */
+  public int getNParams()
+  {
+    return paramTypes_.size();
+  }
+
+  /**
+   * Return the names of the params of this signature.
+   *
+   * @return  Names of the params. Never null.
+   */
+  public List<String> getParamNames()
+  {
+    return paramNames_;
+  }
+
+  /**
+   * Return the types of the params of this signature.
+   *
+   * @return  Types of the params. Never null.
+   */
+  public List<ParamType> getParamTypes()
+  {
+    return paramTypes_;
+  }
+
+  /**
+   * Convert the specified decoded params to the types of this
+   * signature, in place.
+   *
+   * @param params  Params to convert. Non-null.
+   * @throws IllegalArgumentException  If the number of params is wrong
+   *                                   or a param is not of its type.
+   *                                   The message tells why.
+   */
+  void convert(List<Object> params)
+  {
+    assert params != null : "params cannot be null";
+
+    if (params.size() != paramTypes_.size())
+      throw new IllegalArgumentException(method_ + " takes " + paramTypes_.size() + " params, got " + params.size());
+
+    for (int i = 0; i < params.size(); i++) {
+      try {
+        params.set(i, paramTypes_.get(i).convert(params.get(i)));
+      }
+      catch (IllegalArgumentException exception) {
+        throw new IllegalArgumentException("Param " + i + " (" + paramNames_.get(i) + ") of " + method_ + ": " +
+                                           exception.getMessage());
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    StringBuilder s = new StringBuilder(method_);
+    s.append('(');
+    for (int i = 0; i < paramTypes_.size(); i++) {
+      if (i > 0)
+        s.append(", ");
+      s.append(paramNames_.get(i));
+      s.append(':');
+      s.append(paramTypes_.get(i));
+    }
+    s.append(')');
+    return s.toString();
+  }
+}
@@ -0,0 +1,255 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.stream.JsonParsingException;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+
+/**
+ * A reusable request message for high rate producers and consumers.
+ * <p>
+ * {@link Request} is immutable, and each message sent or received
+ * costs a new instance with its own params list. A mutable request
+ * is instead reset and refilled for every message, either explicitly
+ * through the setters or by {@link #read}, so that a hot loop can
+ * encode and decode its messages on a single instance:
+ * <pre>
+ *   MutableRequest request = pool.getRequest();
+ *   request.setMethod("send");
+ *   request.setId(Counter.get());
+ *   request.addParam(streamId);
+ *   :
+ *   buffer = MessageCodec.encode(request, buffer);
+ *   pool.release(request);
+ * </pre>
+ * Instances are not thread safe and must not be kept by others
+ * once released to a {@link MessagePool}. Use {@link #toRequest}
+ * to get an immutable copy that can be passed on.
+ * <p>
+ * Note that number and boolean params are still boxed as they are
+ * kept as objects.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MutableRequest
+  implements JsonSerializable
+{
+  /** Name of method to invoke. Null until set. */
+  private String method_;
+
+  /** Parameter values. Kept between messages to reuse its storage. Accessed by RequestParser. */
+  final List<Object> params_ = new ArrayList<>();
+
+  /** ID of this request message. */
+  private long id_;
+
+  /** Time the current content was set. */
+  private long time_;
+
+  /** Whether this instance is free in a {@link MessagePool}. Accessed by MessagePool. */
+  boolean isPooled_ = false;
+
+  /**
+   * Create an empty mutable request. Method must be set before it
+   * can be written.
+   */
+  public MutableRequest()
+  {
+    reset();
+  }
+
+  /**
+   * Clear the content of this request so it can be refilled.
+   * The time of the request is set to now.
+   */
+  public void reset()
+  {
+    method_ = null;
+    params_.clear();
+    id_ = 0L;
+    time_ = System.currentTimeMillis();
+  }
+
+  /**
+   * Refill this request from the specified JSON string.
+   * The previous content is replaced, also if the string is not valid.
+   *
+   * @param jsonString  JSON string to read. Non-null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   */
+  public void read(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    RequestParser.parse(jsonString, this);
+  }
+
+  /**
+   * Set method of this request.
+   *
+   * @param method  Name of the method to invoke. Non-null.
+   * @throws IllegalArgumentException  If method is null.
+   */
+  public void setMethod(String method)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    method_ = method;
+  }
+
+  /**
+   * Return method of this request.
+   *
+   * @return  Method of this request. Null if not set.
+   */
+  public String getMethod()
+  {
+    return method_;
+  }
+
+  /**
+   * Set ID of this request.
+   *
+   * @param id  Message ID.
+   */
+  public void setId(long id)
+  {
+    id_ = id;
+  }
+
+  /**
+   * Return ID of this request.
+   *
+   * @return  ID of this request.
+   */
+  public long getId()
+  {
+    return id_;
+  }
+
+  /**
+   * Add a parameter to this request.
+   *
+   * @param param  Parameter to add. May be null.
+   */
+  public void addParam(Object param)
+  {
+    params_.add(param);
+  }
+
+  /**
+   * Return the number of parameters of this request.
+   *
+   * @return  Number of parameters of this request. [0,&gt;.
+   */
+  public int getNParams()
+  {
+    return params_.size();
+  }
+
+  /**
+   * Get a specific parameter of this request.
+   *
+   * @param paramNo  Parameter number to get. [0,&gt;.
+   * @return         The requested parameter, or null if doesn't exist.
+   * @throws IllegalArgumentException  If parameterNo is &lt; 0.
+   */
+  public Object getParam(int paramNo)
+  {
+    if (paramNo < 0)
+      throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
+
+    return paramNo < params_.size() ? params_.get(paramNo) : null;
+  }
+
+  /**
+   * Return the time the current content of this request was set,
+   * as milliseconds since the epoch.
+   *
+   * @return  The time of this request.
+   */
+  public long getTimeMillis()
+  {
+    return time_;
+  }
+
+  /**
+   * Return an immutable copy of this request.
+   *
+   * @return  An immutable copy of this request. Never null.
+   * @throws IllegalStateException  If method is not set.
+   */
+  public Request toRequest()
+  {
+    if (method_ == null)
+      throw new IllegalStateException("method is not set");
+
+    return new Request(method_, id_, new ArrayList<>(params_));
+  }
+
+  /**
+   * Return a JSON string representation of this request.
+   *
+   * @return  A JSON string representation of this request. Never null.
+   * @throws IllegalStateException  If method is not set.
+   */
+  @Override
+  public String toJson()
+  {
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this request to the specified
+   * string builder. See {@link Request#writeTo}.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   * @throws IllegalStateException     If method is not set.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    if (method_ == null)
+      throw new IllegalStateException("method is not set");
+
+    Request.write(method_, params_, id_, s);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return method_ != null ? toRequest().toString() : "(empty)";
+  }
+}
@@ -0,0 +1,250 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.IOException;
+
+import javax.json.stream.JsonParsingException;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+
+/**
+ * A reusable response message for high rate producers and consumers.
+ * <p>
+ * This is the mutable counterpart of {@link Response}, in the same way
+ * as {@link MutableRequest} is for {@link Request}. The instance is
+ * reset and refilled for every message, either through the setters
+ * or by {@link #read}. Unlike Response the ID is kept as a primitive,
+ * and its presence is given by {@link #hasId}.
+ * <p>
+ * Instances are not thread safe and must not be kept by others
+ * once released to a {@link MessagePool}. Use {@link #toResponse}
+ * to get an immutable copy that can be passed on.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MutableResponse
+  implements JsonSerializable
+{
+  /** The result of the corresponding request message. Null if an error occurred. */
+  private Object result_;
+
+  /** Any error the occurred on the corresponding request. Null on success. */
+  private Response.Error error_;
+
+  /** ID of the corresponding request message. Valid only if hasId_ is true. */
+  private long id_;
+
+  /** Indicate if the ID of the corresponding request message is known. */
+  private boolean hasId_;
+
+  /** Time the current content was set. */
+  private long time_;
+
+  /** Whether this instance is free in a {@link MessagePool}. Accessed by MessagePool. */
+  boolean isPooled_ = false;
+
+  /**
+   * Create an empty mutable response. This is a success response
+   * with a null result and no ID.
+   */
+  public MutableResponse()
+  {
+    reset();
+  }
+
+  /**
+   * Clear the content of this response so it can be refilled.
+   * The time of the response is set to now.
+   */
+  public void reset()
+  {
+    result_ = null;
+    error_ = null;
+    id_ = 0L;
+    hasId_ = false;
+    time_ = System.currentTimeMillis();
+  }
+
+  /**
+   * Refill this response from the specified JSON string.
+   * The previous content is replaced, also if the string is not valid.
+   *
+   * @param jsonString  JSON string to read. Non-null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   */
+  public void read(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    ResponseParser.parse(jsonString, this);
+  }
+
+  /**
+   * Make this a success response with the specified result.
+   *
+   * @param result  The message result. May be null.
+   */
+  public void setResult(Object result)
+  {
+    result_ = result;
+    error_ = null;
+  }
+
+  /**
+   * Return result of this response.
+   *
+   * @return  Result of this response. Null if this is an error response, may be null otherwise.
+   */
+  public Object getResult()
+  {
+    return result_;
+  }
+
+  /**
+   * Make this an error response with the specified error.
+   *
+   * @param error  The message error. Non-null.
+   * @throws IllegalArgumentException  If error is null.
+   */
+  public void setError(Response.Error error)
+  {
+    if (error == null)
+      throw new IllegalArgumentException("error cannot be null");
+
+    result_ = null;
+    error_ = error;
+  }
+
+  /**
+   * Make this an error response of the specified type.
+   *
+   * @param errorType  The message error type. Non-null.
+   * @param errorData  Any data associated with the error. Null if N/A.
+   * @throws IllegalArgumentException  If errorType is null.
+   */
+  public void setError(ErrorType errorType, Object errorData)
+  {
+    if (errorType == null)
+      throw new IllegalArgumentException("errorType cannot be null");
+
+    setError(new Response.Error(errorType, errorData));
+  }
+
+  /**
+   * Return error of this response.
+   *
+   * @return  Error of this response. Null if this is a success response.
+   */
+  public Response.Error getError()
+  {
+    return error_;
+  }
+
+  /**
+   * Set ID of the corresponding request message.
+   *
+   * @param id  ID of the corresponding request message.
+   */
+  public void setId(long id)
+  {
+    id_ = id;
+    hasId_ = true;
+  }
+
+  /**
+   * Return if the ID of the corresponding request message is known.
+   *
+   * @return  True if the ID is known, false if it was not detectable in the request.
+   */
+  public boolean hasId()
+  {
+    return hasId_;
+  }
+
+  /**
+   * Return ID of the corresponding request message.
+   *
+   * @return  ID of the corresponding request message. 0 if hasId() is false.
+   */
+  public long getId()
+  {
+    return id_;
+  }
+
+  /**
+   * Return the time the current content of this response was set,
+   * as milliseconds since the epoch.
+   *
+   * @return  The time of this response.
+   */
+  public long getTimeMillis()
+  {
+    return time_;
+  }
+
+  /**
+   * Return an immutable copy of this response.
+   *
+   * @return  An immutable copy of this response. Never null.
+   */
+  public Response toResponse()
+  {
+    return new Response(result_, error_, hasId_ ? Long.valueOf(id_) : null);
+  }
+
+  /**
+   * Return a JSON string representation of this response.
+   *
+   * @return  A JSON string representation of this response. Never null.
+   */
+  @Override
+  public String toJson()
+  {
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this response to the specified
+   * string builder. See {@link Response#writeTo}.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    Response.write(result_, error_, id_, hasId_, s);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return toResponse().toString();
+  }
+}
@@ -0,0 +1,246 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.math.BigDecimal;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+/**
+ * The types of JSON-RPC method params, as declared in a {@link MethodSignature}.
+ * <p>
+ * A param of a declared type is decoded directly to the Java class of the
+ * type, see {@link #getValueClass}. Numbers given as JSON strings, like "42",
+ * are accepted for the number types. Array, object and time series params
+ * may be left unparsed when decoded lazily, and are then only checked for
+ * their kind.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public enum ParamType
+{
+  /** A JSON true or false. Decoded as Boolean. */
+  BOOLEAN("boolean", Boolean.class, false),
+
+  /** A JSON number that fits in an int. Decoded as Integer. */
+  INTEGER("int", Integer.class, false),
+
+  /** A JSON number that fits in a long. Decoded as Long. */
+  LONG("long", Long.class, false),
+
+  /** A JSON number. Decoded as Double. */
+  DOUBLE("double", Double.class, false),
+
+  /** A JSON string. Decoded as String. May be null. */
+  STRING("string", String.class, true),
+
+  /** A JSON array. Decoded as JsonArray. May be null. */
+  ARRAY("array", JsonArray.class, true),
+
+  /** A JSON object. Decoded as JsonObject. May be null. */
+  OBJECT("object", JsonObject.class, true),
+
+  /** A TimeSeries.JSON document, i.e. a JSON array. Decoded as JsonArray. */
+  TIME_SERIES("timeSeries", JsonArray.class, false),
+
+  /** Any JSON value. Decoded as by {@link RequestParser}. May be null. */
+  ANY("any", Object.class, true);
+
+  /** Name of the type, as used in messages. */
+  private final String name_;
+
+  /** Java class of decoded params of this type. */
+  private final Class<?> valueClass_;
+
+  /** Indicate if JSON null is accepted for this type. */
+  private final boolean isNullable_;
+
+  /**
+   * Create a param type.
+   *
+   * @param name        Name of the type. Non-null.
+   * @param valueClass  Java class of decoded params of this type. Non-null.
+   * @param isNullable  True if JSON null is accepted, false otherwise.
+   */
+  private ParamType(String name, Class<?> valueClass, boolean isNullable)
+  {
+    assert name != null : "name cannot be null";
+    assert valueClass != null : "valueClass cannot be null";
+
+    name_ = name;
+    valueClass_ = valueClass;
+    isNullable_ = isNullable;
+  }
+
+  /**
+   * Return the name of this type.
+   *
+   * @return  Name of this type. Never null.
+   */
+  public String getName()
+  {
+    return name_;
+  }
+
+  /**
+   * Return the Java class of decoded params of this type. Lazily
+   * decoded array, object and time series params are of this class
+   * once accessed through {@link Request#getParam}.
+   *
+   * @return  Java class of decoded params of this type. Never null.
+   */
+  public Class<?> getValueClass()
+  {
+    return valueClass_;
+  }
+
+  /**
+   * Return if JSON null is accepted for this type.
+   *
+   * @return  True if JSON null is accepted, false otherwise.
+   */
+  public boolean isNullable()
+  {
+    return isNullable_;
+  }
+
+  /**
+   * Return the number of the specified string param.
+   *
+   * @param value  String holding a number. Non-null.
+   * @return       The number. Never null.
+   * @throws IllegalArgumentException  If value is not a number.
+   */
+  private BigDecimal parseNumber(String value)
+  {
+    assert value != null : "value cannot be null";
+
+    try {
+      return new BigDecimal(value.trim());
+    }
+    catch (NumberFormatException exception) {
+      throw new IllegalArgumentException("expected " + name_ + ", got \"" + value + "\"");
+    }
+  }
+
+  /**
+   * Return the kind of the specified decoded param, as used in messages.
+   *
+   * @param value  Param to get kind of. May be null.
+   * @return       Kind of the param. Never null.
+   */
+  private static String getKind(Object value)
+  {
+    if (value == null)
+      return "null";
+
+    if (value instanceof JsonSlice)
+      return ((JsonSlice) value).getSource().charAt(((JsonSlice) value).getStart()) == '[' ? "array" : "object";
+
+    if (value instanceof JsonArray)
+      return "array";
+
+    if (value instanceof JsonObject)
+      return "object";
+
+    if (value instanceof String)
+      return "string";
+
+    if (value instanceof Boolean)
+      return "boolean";
+
+    return "number " + value;
+  }
+
+  /**
+   * Convert the specified decoded param to this type.
+   * <p>
+   * Params already of the value class of this type are returned as is,
+   * so this is cheap for params decoded with the type known.
+   *
+   * @param value  Param as decoded by RequestParser. May be null.
+   * @return       The param as this type. May be null if the type is nullable.
+   * @throws IllegalArgumentException  If the param is not of this type.
+   *                                   The message tells why.
+   */
+  Object convert(Object value)
+  {
+    if (value == null) {
+      if (isNullable_)
+        return null;
+
+      throw new IllegalArgumentException("expected " + name_ + ", got null");
+    }
+
+    try {
+      switch (this) {
+        case BOOLEAN :
+          if (value instanceof Boolean)
+            return value;
+          break;
+
+        case INTEGER :
+          if (value instanceof Integer)
+            return value;
+          if (value instanceof Number)
+            return new BigDecimal(value.toString()).intValueExact();
+          if (value instanceof String)
+            return parseNumber((String) value).intValueExact();
+          break;
+
+        case LONG :
+          if (value instanceof Long)
+            return value;
+          if (value instanceof Integer)
+            return ((Integer) value).longValue();
+          if (value instanceof Number)
+            return new BigDecimal(value.toString()).longValueExact();
+          if (value instanceof String)
+            return parseNumber((String) value).longValueExact();
+          break;
+
+        case DOUBLE :
+          if (value instanceof Double)
+            return value;
+          if (value instanceof Number)
+            return ((Number) value).doubleValue();
+          if (value instanceof String)
+            return parseNumber((String) value).doubleValue();
+          break;
+
+        case STRING :
+          if (value instanceof String)
+            return value;
+          break;
+
+        case ARRAY :
+        case TIME_SERIES :
+          if (value instanceof JsonArray || value instanceof JsonSlice && getKind(value).equals("array"))
+            return value;
+          break;
+
+        case OBJECT :
+          if (value instanceof JsonObject || value instanceof JsonSlice && getKind(value).equals("object"))
+            return value;
+          break;
+
+        case ANY :
+          return value;
+
+        default :
+          assert false : "Unrecognized type: " + this;
+      }
+    }
+    catch (ArithmeticException exception) {
+      // Fractional or out of range
+    }
+
+    throw new IllegalArgumentException("expected " + name_ + ", got " + getKind(value));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return name_;
+  }
+}
@@ -1,5 +1,7 @@
 package no.geosoft.logiq.core.jsonrpc;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -18,6 +20,7 @@ import javax.json.stream.JsonParsingException;
 import no.geosoft.cc.util.Indentation;
 import no.geosoft.cc.util.Counter;
 
+import no.geosoft.logiq.core.json.JsonSerializable;
 import no.geosoft.logiq.core.json.JsonUtil;
 
 /**
@@ -37,12 +40,13 @@ import no.geosoft.logiq.core.json.JsonUtil;
  * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
  */
 public final class Request
+  implements JsonSerializable
 {
   /** Name of method to invoke. */
   private final String method_;
 
   /** Parameter values to be used during the invocation of the method. */
-  private final List<Object> params_ = new ArrayList<>();
+  private final List<Object> params_;
 
   /** ID of this request message. */
   private final long id_;
@@ -70,7 +74,7 @@ public final class Request
       throw new IllegalArgumentException("params cannot be null");
 
     method_ = method;
-    params_.addAll(params);
+    params_ = new ArrayList<>(params);
     id_ = id;
   }
 
@@ -94,12 +98,33 @@ public final class Request
       throw new IllegalArgumentException("params cannot be null");
 
     method_ = method;
+    params_ = new ArrayList<>(params.length);
 
     for (Object param : params)
       params_.add(param);
     id_ = Counter.get();
   }
 
+  /**
+   * Create a request message from already decoded components.
+   * <p>
+   * Used by the decoders of this package. The params list is
+   * adopted as is and not copied.
+   *
+   * @param method  Name of the method to invoke. Non-null.
+   * @param id      Message ID.
+   * @param params  Method parameters. Non-null.
+   */
+  Request(String method, long id, List<Object> params)
+  {
+    assert method != null : "method cannot be null";
+    assert params != null : "params cannot be null";
+
+    method_ = method;
+    params_ = params;
+    id_ = id;
+  }
+
   /**
    * Create a new message instance from the specified JSON string.
    *
@@ -117,6 +142,8 @@ public final class Request
     JsonReader jsonReader = Json.createReader(new StringReader(jsonString));
     JsonObject jsonObject = jsonReader.readObject();
 
+    params_ = new ArrayList<>();
+
     //
     // Method
     //
@@ -164,9 +191,23 @@ public final class Request
    */
   public List<Object> getParams()
   {
+    for (int i = 0; i < params_.size(); i++)
+      getParam(i);
+
     return Collections.unmodifiableList(params_);
   }
 
+  /**
+   * Return the number of parameters of this message.
+   * Unlike getParams().size() this doesn't decode any unparsed parameters.
+   *
+   * @return  Number of parameters of this message. [0,&gt;.
+   */
+  public int getNParams()
+  {
+    return params_.size();
+  }
+
   /**
    * Get a specific parameter of this message.
    * Convenient if the caller knows the parameters exactly.
@@ -176,6 +217,32 @@ public final class Request
    * @throws IllegalArgumentException  If parameterNo is &lt; 0.
    */
   public Object getParam(int paramNo)
+  {
+    if (paramNo < 0)
+      throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
+
+    if (paramNo >= params_.size())
+      return null;
+
+    Object param = params_.get(paramNo);
+    return param instanceof JsonSlice ? decodeParam(paramNo) : param;
+  }
+
+  /**
+   * Return a specific parameter of this message as it is held,
+   * i.e. without decoding it if it is not yet decoded.
+   *
+   * <p>
+   * A parameter not yet decoded is returned as an opaque placeholder
+   * that may be passed among the params of a new request, where it is
+   * written verbatim and decoded only if accessed.
+   *
+   * @param paramNo  Parameter number to get. [0,&gt;.
+   * @return         The requested parameter, a placeholder if not yet decoded,
+   *                 or null if doesn't exist.
+   * @throws IllegalArgumentException  If paramNo is &lt; 0.
+   */
+  public Object getRawParam(int paramNo)
   {
     if (paramNo < 0)
       throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
@@ -183,6 +250,105 @@ public final class Request
     return paramNo < params_.size() ? params_.get(paramNo) : null;
   }
 
+  /**
+   * Decode the specified unparsed parameter and replace it by
+   * its decoded value.
+   *
+   * @param paramNo  Parameter number to decode. [0,&gt;.
+   * @return         The decoded parameter. May be null.
+   */
+  private synchronized Object decodeParam(int paramNo)
+  {
+    assert paramNo >= 0 && paramNo < params_.size() : "Invalid paramNo: " + paramNo;
+
+    Object param = params_.get(paramNo);
+
+    // Another thread may have decoded it already
+    if (!(param instanceof JsonSlice))
+      return param;
+
+    Object value = RequestParser.decode((JsonSlice) param);
+    params_.set(paramNo, value);
+    return value;
+  }
+
+  /**
+   * Return a specific parameter of this message as JSON text.
+   * <p>
+   * For parameters that are not yet decoded (see
+   * {@link RequestParser#parseLazy}) this is the exact text of the
+   * received message, and the call doesn't involve any parsing.
+   *
+   * @param paramNo  Parameter number to get. [0,&gt;.
+   * @return         The requested parameter as JSON text, or null if it doesn't exist.
+   * @throws IllegalArgumentException  If parameterNo is &lt; 0.
+   */
+  public String getParamAsJson(int paramNo)
+  {
+    if (paramNo < 0)
+      throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
+
+    if (paramNo >= params_.size())
+      return null;
+
+    Object param = params_.get(paramNo);
+    return param instanceof JsonSlice ? param.toString() : JsonUtil.getAsString(param);
+  }
+
+  /**
+   * Return a reader of the JSON text of a specific parameter of this message.
+   * <p>
+   * For parameters that are not yet decoded the text is read directly
+   * from the received message, without copying or parsing it. This is
+   * the input of choice for streaming parsers of large parameters,
+   * like the TimeSeries.JSON data of a send request.
+   *
+   * @param paramNo  Parameter number to get. [0,&gt;.
+   * @return         A reader of the parameter as JSON text, or null if it doesn't exist.
+   * @throws IllegalArgumentException  If parameterNo is &lt; 0.
+   */
+  public Reader getParamAsReader(int paramNo)
+  {
+    if (paramNo < 0)
+      throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
+
+    if (paramNo >= params_.size())
+      return null;
+
+    Object param = params_.get(paramNo);
+    return param instanceof JsonSlice ? ((JsonSlice) param).newReader() : new StringReader(JsonUtil.getAsString(param));
+  }
+
+  /**
+   * Append the JSON text of the specified parameter to the given string builder.
+   *
+   * @param s        String builder to append to. Non-null.
+   * @param paramNo  Parameter number to append. [0,nParams&gt;.
+   */
+  private void appendParam(StringBuilder s, int paramNo)
+  {
+    assert s != null : "s cannot be null";
+    assert paramNo >= 0 && paramNo < params_.size() : "Invalid paramNo: " + paramNo;
+
+    appendParam(s, params_.get(paramNo));
+  }
+
+  /**
+   * Append the JSON text of the specified parameter value to the given string builder.
+   *
+   * @param s      String builder to append to. Non-null.
+   * @param param  Parameter value to append. Either a decoded value or
+   *               an unparsed JsonSlice. May be null.
+   */
+  private static void appendParam(StringBuilder s, Object param)
+  {
+    assert s != null : "s cannot be null";
+
+    if (param instanceof JsonSlice)
+      ((JsonSlice) param).appendTo(s);
+    else
+      JsonUtil.write(param, s);
+  }
 
   /**
    * Return ID of this request message or the ID of the corresponding
@@ -206,14 +372,82 @@ public final class Request
     return new Date(time_);
   }
 
+  /**
+   * Return exact time the message was created, as milliseconds
+   * since the epoch. Unlike getTime() this doesn't allocate.
+   *
+   * @return  The time the message was created.
+   */
+  public long getTimeMillis()
+  {
+    return time_;
+  }
+
   /**
    * Return a JSON string representation of this message.
    *
    * @return  A JSON string representation of this message. Never null.
    */
+  @Override
   public String toJson()
   {
     StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this message to the specified
+   * string builder.
+   * <p>
+   * Use this method to write several messages into one reusable
+   * buffer without any intermediate strings.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    write(method_, params_, id_, s);
+  }
+
+  /**
+   * Write the JSON representation of a request message with the
+   * specified content to the given string builder.
+   * Shared with {@link MutableRequest}.
+   *
+   * @param method  Name of method. Non-null.
+   * @param params  Method parameters. Decoded values or unparsed JsonSlices. Non-null.
+   * @param id      Message ID.
+   * @param s       String builder to write to. Non-null.
+   */
+  static void write(String method, List<Object> params, long id, StringBuilder s)
+  {
+    assert method != null : "method cannot be null";
+    assert params != null : "params cannot be null";
+    assert s != null : "s cannot be null";
+
     s.append('{');
 
     //
@@ -224,19 +458,20 @@ public final class Request
     //
     // Method
     //
-    s.append("\"method\":\"" + method_ + "\",");
+    s.append("\"method\":");
+    JsonUtil.encode(method, s);
+    s.append(',');
 
     //
     // Params
     //
-    if (params_.size() > 0) {
+    if (params.size() > 0) {
       s.append("\"params\":[");
-      for (int i = 0; i < params_.size(); i++) {
+      for (int i = 0; i < params.size(); i++) {
         if (i > 0)
           s.append(',');
 
-        Object param = params_.get(i);
-        s.append(JsonUtil.getAsString(param));
+        appendParam(s, params.get(i));
       }
       s.append("],");
     }
@@ -244,11 +479,10 @@ public final class Request
     //
     // ID
     //
-    s.append("\"id\":" + id_);
+    s.append("\"id\":");
+    s.append(id);
 
     s.append('}');
-
-    return s.toString();
   }
 
   /**
@@ -295,8 +529,7 @@ public final class Request
       for (int i = 0; i < params_.size(); i++) {
         if (i > 0)
           parameters.append(',');
-        Object param = params_.get(i);
-        parameters.append(JsonUtil.getAsString(param));
+        appendParam(parameters, i);
       }
 
       s.append(Response.clip(parameters.toString(), maxLength));
@@ -0,0 +1,166 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.stream.JsonParsingException;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+
+/**
+ * Models a batch of request messages according to the JSON-RPC version 2.0.
+ * <p>
+ * A batch is a JSON array of request objects:
+ * <br>
+ * <pre>
+ *   [
+ *     {"jsonrpc": "2.0", "method": &lt;method&gt;, "params": [...], "id": &lt;id&gt;},
+ *     {"jsonrpc": "2.0", "method": &lt;method&gt;, "params": [...], "id": &lt;id&gt;},
+ *     :
+ *   ]
+ * </pre>
+ * The batch is sent as one message, and the server answers with a
+ * {@link ResponseBatch} holding the responses in any order.
+ * A batch must hold at least one request.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class RequestBatch
+  implements JsonSerializable
+{
+  /** The requests of this batch. Non-empty. */
+  private final List<Request> requests_;
+
+  /**
+   * Create a request batch.
+   *
+   * @param requests  Requests of the batch. Non-null and non-empty.
+   * @throws IllegalArgumentException  If requests is null, empty or contains null.
+   */
+  public RequestBatch(List<Request> requests)
+  {
+    if (requests == null)
+      throw new IllegalArgumentException("requests cannot be null");
+
+    if (requests.isEmpty())
+      throw new IllegalArgumentException("requests cannot be empty");
+
+    for (Request request : requests) {
+      if (request == null)
+        throw new IllegalArgumentException("requests cannot contain null");
+    }
+
+    requests_ = new ArrayList<>(requests);
+  }
+
+  /**
+   * Create a request batch.
+   *
+   * @param requests  Requests of the batch. Non-null and non-empty.
+   * @throws IllegalArgumentException  If requests is null, empty or contains null.
+   */
+  public RequestBatch(Request... requests)
+  {
+    this(requests != null ? Arrays.asList(requests) : null);
+  }
+
+  /**
+   * Create a request batch from the specified JSON string.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid batch.
+   */
+  public RequestBatch(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    requests_ = RequestParser.parseBatch(jsonString);
+  }
+
+  /**
+   * Return the requests of this batch.
+   *
+   * @return  The requests of this batch. Never null and never empty.
+   */
+  public List<Request> getRequests()
+  {
+    return Collections.unmodifiableList(requests_);
+  }
+
+  /**
+   * Return the number of requests of this batch.
+   *
+   * @return  Number of requests of this batch. [1,&gt;.
+   */
+  public int size()
+  {
+    return requests_.size();
+  }
+
+  /**
+   * Return a JSON string representation of this batch.
+   *
+   * @return  A JSON string representation of this batch. Never null.
+   */
+  @Override
+  public String toJson()
+  {
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this batch to the specified
+   * string builder.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    s.append('[');
+    for (int i = 0; i < requests_.size(); i++) {
+      if (i > 0)
+        s.append(',');
+
+      requests_.get(i).writeTo(s);
+    }
+    s.append(']');
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Batch of " + requests_.size() + " requests";
+  }
+}
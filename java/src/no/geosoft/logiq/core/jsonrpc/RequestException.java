@@ -0,0 +1,72 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+/**
+ * Thrown when a request is received that cannot be served, and that
+ * should be answered by an error response.
+ * <p>
+ * The exception carries the JSON-RPC error type and the ID of the
+ * request, so that the response is given by {@link #toResponse}.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class RequestException
+  extends Exception
+{
+  /** Serialization version. */
+  private static final long serialVersionUID = 1L;
+
+  /** The JSON-RPC error type. */
+  private final ErrorType errorType_;
+
+  /** ID of the request. Null if not known. */
+  private final Long requestId_;
+
+  /**
+   * Create a request exception.
+   *
+   * @param errorType  The JSON-RPC error type. Non-null.
+   * @param message    Details of the error, returned as the error data. May be null.
+   * @param requestId  ID of the request. Null if not known.
+   * @throws IllegalArgumentException  If errorType is null.
+   */
+  public RequestException(ErrorType errorType, String message, Long requestId)
+  {
+    super(message);
+
+    if (errorType == null)
+      throw new IllegalArgumentException("errorType cannot be null");
+
+    errorType_ = errorType;
+    requestId_ = requestId;
+  }
+
+  /**
+   * Return the JSON-RPC error type of this exception.
+   *
+   * @return  The error type. Never null.
+   */
+  public ErrorType getErrorType()
+  {
+    return errorType_;
+  }
+
+  /**
+   * Return the ID of the request that failed.
+   *
+   * @return  ID of the request. Null if not known.
+   */
+  public Long getRequestId()
+  {
+    return requestId_;
+  }
+
+  /**
+   * Return the error response of this exception.
+   *
+   * @return  The error response. Never null.
+   */
+  public Response toResponse()
+  {
+    return new Response(errorType_, getMessage(), requestId_);
+  }
+}
@@ -0,0 +1,25 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+/**
+ * Serves the requests of a JSON-RPC method. See {@link Dispatcher}.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@FunctionalInterface
+public interface RequestHandler
+{
+  /**
+   * Serve the specified request.
+   * <p>
+   * A RequestException is answered by its error response, and anything
+   * else by INTERNAL_ERROR. Invalid params should be reported by a
+   * RequestException of INVALID_PARAMS.
+   *
+   * @param request  Request to serve. Non-null.
+   * @return         The result of the request. May be null. If it is a
+   *                 CompletionStage, its outcome is the result.
+   * @throws Exception  If the request cannot be served.
+   */
+  Object handle(Request request)
+    throws Exception;
+}
@@ -0,0 +1,782 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Event driven decoder of JSON-RPC request messages.
+ * <p>
+ * The parser reads <em>method</em>, <em>params</em> and <em>id</em> in
+ * a single pass and produces the same {@link Request} instance as
+ * {@link Request#Request(String)}, but without building the intermediate
+ * JSON object tree. Only params that are themselves JSON objects or
+ * arrays are materialized as such.
+ * <p>
+ * In <em>lazy</em> mode the object and array params are not materialized
+ * at all. The parser only records their position within the message, and
+ * they are decoded on first access through {@link Request#getParam}.
+ * Their unparsed JSON text is available through {@link Request#getParamAsJson}
+ * and is written back as is by {@link Request#toJson}, so that large
+ * payloads like the TimeSeries.JSON data of a <em>send</em> request can be
+ * forwarded without being parsed and serialized. Scalar params are always
+ * decoded right away as their text is tokenized anyway.
+ * <p>
+ * Given a {@link MethodRegistry}, the params of registered methods are
+ * decoded straight to their declared types, and requests with params of
+ * the wrong number or type are rejected with an INVALID_PARAMS
+ * {@link RequestException} before they are served.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class RequestParser
+{
+  /** Shared parser factory. Avoids the provider lookup of Json.createParser(). */
+  private static final JsonParserFactory parserFactory_ = Json.createParserFactory(null);
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private RequestParser()
+  {
+    assert false;
+  }
+
+  /**
+   * Create a request message from the specified JSON string.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @return            The requested request message. Never null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   */
+  public static Request parse(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    return parse(new StringReader(jsonString));
+  }
+
+  /**
+   * Create a request message from the specified JSON string, leaving
+   * object and array params unparsed until they are accessed.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @return            The requested request message. Never null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   */
+  public static Request parseLazy(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parse(parser, jsonString);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a request message from the specified JSON string, with the
+   * params decoded to the types declared in the specified registry.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @param registry    Param types of the methods. Non-null.
+   * @return            The requested request message. Never null.
+   * @throws IllegalArgumentException  If jsonString or registry is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   * @throws RequestException          If the method is registered, but the params
+   *                                   don't match any of its signatures.
+   */
+  public static Request parse(String jsonString, MethodRegistry registry)
+    throws JsonParsingException, RequestException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    if (registry == null)
+      throw new IllegalArgumentException("registry cannot be null");
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parse(parser, null, registry);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a request message from the specified JSON string, with the
+   * params decoded to the types declared in the specified registry,
+   * except for object, array and time series params that are left
+   * unparsed until they are accessed. These are only checked to be
+   * of the right kind.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @param registry    Param types of the methods. Non-null.
+   * @return            The requested request message. Never null.
+   * @throws IllegalArgumentException  If jsonString or registry is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid instance.
+   * @throws RequestException          If the method is registered, but the params
+   *                                   don't match any of its signatures.
+   */
+  public static Request parseLazy(String jsonString, MethodRegistry registry)
+    throws JsonParsingException, RequestException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    if (registry == null)
+      throw new IllegalArgumentException("registry cannot be null");
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parse(parser, jsonString, registry);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a request message from the JSON content of the specified reader.
+   * The reader is consumed, but not closed.
+   *
+   * @param reader  Reader to create instance from. Non-null.
+   * @return        The requested request message. Never null.
+   * @throws IllegalArgumentException  If reader is null.
+   * @throws JsonParsingException      If the content is not a valid JSON or
+   *                                   if it doesn't constitute a valid instance.
+   */
+  public static Request parse(Reader reader)
+    throws JsonParsingException
+  {
+    if (reader == null)
+      throw new IllegalArgumentException("reader cannot be null");
+
+    JsonParser parser = parserFactory_.createParser(reader);
+    try {
+      return parse(parser, null);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a request message from the UTF-8 encoded JSON content
+   * of the specified stream. The stream is consumed, but not closed.
+   *
+   * @param stream  Stream to create instance from. Non-null.
+   * @return        The requested request message. Never null.
+   * @throws JsonParsingException  If the content is not a valid JSON or
+   *                               if it doesn't constitute a valid instance.
+   */
+  static Request parse(InputStream stream)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+    try {
+      return parse(parser, null);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Read a request message from the specified parser.
+   *
+   * @param parser  Parser to read from. Non-null.
+   * @param source  The text being parsed if object and array params
+   *                should be left unparsed, null to decode all params.
+   * @return        The requested request message. Never null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   */
+  static Request parse(JsonParser parser, String source)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+
+    MutableRequest request = new MutableRequest();
+    read(parser, source, null, request);
+
+    // The params list is handed over, the mutable request is discarded
+    return new Request(request.getMethod(), request.getId(), request.params_);
+  }
+
+  /**
+   * Read a request message from the specified parser, with the params
+   * decoded to the types declared in the specified registry.
+   *
+   * @param parser    Parser to read from. Non-null.
+   * @param source    The text being parsed if object and array params
+   *                  should be left unparsed, null to decode all params.
+   * @param registry  Param types of the methods. Non-null.
+   * @return          The requested request message. Never null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   * @throws RequestException      If the method is registered, but the params
+   *                               don't match any of its signatures.
+   */
+  private static Request parse(JsonParser parser, String source, MethodRegistry registry)
+    throws JsonParsingException, RequestException
+  {
+    assert parser != null : "parser cannot be null";
+    assert registry != null : "registry cannot be null";
+
+    MutableRequest request = new MutableRequest();
+    read(parser, source, registry, request);
+
+    // Params decoded before the method was known are converted here
+    registry.convert(request.getMethod(), request.params_, request.getId());
+
+    return new Request(request.getMethod(), request.getId(), request.params_);
+  }
+
+  /**
+   * Refill the specified mutable request with the content of the specified
+   * JSON string. See {@link MutableRequest#read}.
+   *
+   * @param jsonString  JSON string to read. Non-null.
+   * @param request     Request to refill. Non-null.
+   * @throws JsonParsingException  If jsonString is not a valid JSON string or
+   *                               if it doesn't constitute a valid instance.
+   */
+  static void parse(String jsonString, MutableRequest request)
+    throws JsonParsingException
+  {
+    assert jsonString != null : "jsonString cannot be null";
+    assert request != null : "request cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      read(parser, null, null, request);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Refill the specified mutable request with the UTF-8 encoded JSON
+   * content of the specified stream. The stream is consumed, but not closed.
+   *
+   * @param stream   Stream to read. Non-null.
+   * @param request  Request to refill. Non-null.
+   * @throws JsonParsingException  If the content is not a valid JSON or
+   *                               if it doesn't constitute a valid instance.
+   */
+  static void parse(InputStream stream, MutableRequest request)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+    assert request != null : "request cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+    try {
+      read(parser, null, null, request);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Read a request message from the specified parser into the
+   * given mutable request. The previous content of the request is
+   * replaced, also if the message turns out to be invalid.
+   *
+   * @param parser    Parser to read from. Non-null.
+   * @param source    The text being parsed if object and array params
+   *                  should be left unparsed, null to decode all params.
+   * @param registry  Param types to decode to, or null to decode by the JSON types.
+   * @param request   Request to fill. Non-null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   */
+  private static void read(JsonParser parser, String source, MethodRegistry registry, MutableRequest request)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+    assert request != null : "request cannot be null";
+
+    request.reset();
+
+    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT)
+      throw new JsonParsingException("Request must be a JSON object", parser.getLocation());
+
+    readObject(parser, source, registry, request);
+  }
+
+  /**
+   * Create a list of request messages from the specified JSON-RPC batch,
+   * i.e. a JSON array of request objects.
+   *
+   * @param jsonString  JSON string to create instances from. Non-null.
+   * @return            The requested request messages. Never null and never empty.
+   * @throws JsonParsingException  If jsonString is not a valid JSON string or
+   *                               if it doesn't constitute a valid batch.
+   */
+  static List<Request> parseBatch(String jsonString)
+    throws JsonParsingException
+  {
+    assert jsonString != null : "jsonString cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parseBatch(parser, null);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a list of request messages from the specified UTF-8 encoded
+   * JSON-RPC batch. The stream is consumed, but not closed.
+   *
+   * @param stream  Stream to create instances from. Non-null.
+   * @return        The requested request messages. Never null and never empty.
+   * @throws JsonParsingException  If the content is not a valid JSON or
+   *                               if it doesn't constitute a valid batch.
+   */
+  static List<Request> parseBatch(InputStream stream)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+    try {
+      return parseBatch(parser, null);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a list of request messages from the specified JSON-RPC batch,
+   * leaving object and array params unparsed until they are accessed.
+   * The params are not checked against any registry, see {@link #convert}.
+   * <p>
+   * Elements of the batch that are not valid requests are not returned,
+   * but added to invalidRequests as exceptions of INVALID_REQUEST, as each
+   * of them should be answered by an error response of its own.
+   *
+   * @param jsonString       JSON string to create instances from. Non-null.
+   * @param invalidRequests  List to add the invalid elements to. Non-null.
+   * @return                 The valid request messages. Never null, and only empty
+   *                         if there are invalid elements.
+   * @throws JsonParsingException  If jsonString is not a valid JSON string, is not
+   *                               an array, or is an empty array.
+   */
+  static List<Request> parseBatchLazy(String jsonString, List<RequestException> invalidRequests)
+    throws JsonParsingException
+  {
+    assert jsonString != null : "jsonString cannot be null";
+    assert invalidRequests != null : "invalidRequests cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parseBatch(parser, jsonString);
+    }
+    catch (JsonParsingException exception) {
+      // Invalid elements or invalid JSON. Sorted out below.
+    }
+    finally {
+      parser.close();
+    }
+
+    //
+    // Parse each element on its own, so that the invalid ones are told
+    // apart. Invalid JSON fails while skipping the elements.
+    //
+    List<Request> requests = new ArrayList<>();
+
+    parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY)
+        throw new JsonParsingException("Batch must be a JSON array", parser.getLocation());
+
+      JsonParser.Event event;
+      while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+        if (event != JsonParser.Event.START_OBJECT) {
+          skip(parser, event);
+          invalidRequests.add(new RequestException(ErrorType.INVALID_REQUEST, "Request must be a JSON object", null));
+          continue;
+        }
+
+        // The location is just after the opening bracket
+        int start = (int) parser.getLocation().getStreamOffset() - 1;
+        skip(parser, event);
+        int end = (int) parser.getLocation().getStreamOffset();
+
+        try {
+          requests.add(parseLazy(jsonString.substring(start, end)));
+        }
+        catch (JsonParsingException exception) {
+          invalidRequests.add(new RequestException(ErrorType.INVALID_REQUEST, exception.getMessage(), null));
+        }
+      }
+
+      if (requests.isEmpty() && invalidRequests.isEmpty())
+        throw new JsonParsingException("Batch cannot be empty", parser.getLocation());
+    }
+    finally {
+      parser.close();
+    }
+
+    return requests;
+  }
+
+  /**
+   * Read a JSON-RPC batch of request messages from the specified parser.
+   *
+   * @param parser  Parser to read from. Non-null.
+   * @param source  The text being parsed if object and array params
+   *                should be left unparsed, null to decode all params.
+   * @return        The requested request messages. Never null and never empty.
+   * @throws JsonParsingException  If the content doesn't constitute a valid batch.
+   */
+  private static List<Request> parseBatch(JsonParser parser, String source)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+
+    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY)
+      throw new JsonParsingException("Batch must be a JSON array", parser.getLocation());
+
+    List<Request> requests = new ArrayList<>();
+
+    JsonParser.Event event;
+    while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+      if (event != JsonParser.Event.START_OBJECT)
+        throw new JsonParsingException("Request must be a JSON object", parser.getLocation());
+
+      MutableRequest request = new MutableRequest();
+      readObject(parser, source, null, request);
+      requests.add(new Request(request.getMethod(), request.getId(), request.params_));
+    }
+
+    if (requests.isEmpty())
+      throw new JsonParsingException("Batch cannot be empty", parser.getLocation());
+
+    return requests;
+  }
+
+  /**
+   * Return the specified request with its params converted to the types
+   * declared in the given registry. Params not yet decoded are kept so.
+   *
+   * @param request   Request to convert. Non-null.
+   * @param registry  Param types of the methods. Non-null.
+   * @return          The converted request. Never null.
+   * @throws RequestException  If the method is registered, but the params
+   *                           don't match any of its signatures.
+   */
+  static Request convert(Request request, MethodRegistry registry)
+    throws RequestException
+  {
+    assert request != null : "request cannot be null";
+    assert registry != null : "registry cannot be null";
+
+    List<Object> params = new ArrayList<>(request.getNParams());
+    for (int i = 0; i < request.getNParams(); i++)
+      params.add(request.getRawParam(i));
+
+    registry.convert(request.getMethod(), params, request.getId());
+
+    return new Request(request.getMethod(), request.getId(), params);
+  }
+
+  /**
+   * Read the members of a request object from the specified parser
+   * into the given mutable request.
+   *
+   * @param parser    Parser positioned just inside the request object. Non-null.
+   * @param source    The text being parsed if object and array params
+   *                  should be left unparsed, null to decode all params.
+   * @param registry  Param types to decode to, or null to decode by the JSON types.
+   *                  Params not decoded to their type are converted by the caller.
+   * @param request   Request to fill. Non-null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   */
+  private static void readObject(JsonParser parser, String source, MethodRegistry registry, MutableRequest request)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+    assert request != null : "request cannot be null";
+
+    List<Object> params = request.params_;
+
+    String method = null;
+    long id = 0L;
+    boolean hasId = false;
+
+    while (true) {
+      JsonParser.Event event = parser.next();
+      if (event == JsonParser.Event.END_OBJECT)
+        break;
+
+      String key = parser.getString();
+      event = parser.next();
+
+      //
+      // Method
+      //
+      if (key.equals("method")) {
+        if (event != JsonParser.Event.VALUE_STRING)
+          throw new JsonParsingException("method must be a string", parser.getLocation());
+
+        method = parser.getString();
+      }
+
+      //
+      // Params
+      //
+      else if (key.equals("params")) {
+        if (event != JsonParser.Event.START_ARRAY)
+          throw new JsonParsingException("params must be an array", parser.getLocation());
+
+        params.clear();
+        while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+          boolean isStructure = event == JsonParser.Event.START_ARRAY || event == JsonParser.Event.START_OBJECT;
+          if (source != null && isStructure) {
+            // The location is just after the opening bracket
+            int start = (int) parser.getLocation().getStreamOffset() - 1;
+            skip(parser, event);
+            int end = (int) parser.getLocation().getStreamOffset();
+            params.add(new JsonSlice(source, start, end));
+          }
+          else if (registry != null) {
+            // The method is usually known by now, as it tends to come first
+            params.add(getParam(parser, event, registry.getParamType(method, params.size())));
+          }
+          else {
+            params.add(getParam(parser, event));
+          }
+        }
+      }
+
+      //
+      // ID
+      //
+      else if (key.equals("id")) {
+        if (event != JsonParser.Event.VALUE_NUMBER)
+          throw new JsonParsingException("id must be a number", parser.getLocation());
+
+        id = parser.getLong();
+        hasId = true;
+      }
+
+      //
+      // Anything else, including "jsonrpc"
+      //
+      else {
+        skip(parser, event);
+      }
+    }
+
+    if (method == null)
+      throw new JsonParsingException("method must be present", parser.getLocation());
+
+    if (!hasId)
+      throw new JsonParsingException("id must be present", parser.getLocation());
+
+    request.setMethod(method);
+    request.setId(id);
+  }
+
+  /**
+   * Decode the specified unparsed value.
+   *
+   * @param slice  Value to decode. Non-null.
+   * @return       The decoded value, a JsonArray or a JsonObject. Never null.
+   * @throws JsonParsingException  If the slice is not valid JSON.
+   */
+  static Object decode(JsonSlice slice)
+    throws JsonParsingException
+  {
+    assert slice != null : "slice cannot be null";
+
+    StringReader reader = new StringReader(slice.getSource());
+    try {
+      reader.skip(slice.getStart());
+    }
+    catch (IOException exception) {
+      assert false : "Cannot happen with a StringReader";
+    }
+
+    // The parser stops after the first value so the rest of the source is never read
+    JsonParser parser = parserFactory_.createParser(reader);
+    try {
+      return getParam(parser, parser.next());
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Return the param value at the current parser position.
+   * <p>
+   * The Java types are the same as those produced by combining
+   * JsonUtil.getClass() and JsonUtil.getAsType().
+   *
+   * @param parser  Parser positioned at the value. Non-null.
+   * @param event   The event of the current position. Non-null.
+   * @return        The param value. May be null.
+   */
+  static Object getParam(JsonParser parser, JsonParser.Event event)
+  {
+    assert parser != null : "parser cannot be null";
+    assert event != null : "event cannot be null";
+
+    switch (event) {
+      case VALUE_STRING :
+        return parser.getString();
+
+      case VALUE_NUMBER :
+        return getNumber(parser);
+
+      case VALUE_TRUE :
+        return Boolean.TRUE;
+
+      case VALUE_FALSE :
+        return Boolean.FALSE;
+
+      case VALUE_NULL :
+        return null;
+
+      case START_ARRAY :
+        return parser.getArray();
+
+      case START_OBJECT :
+        return parser.getObject();
+
+      default :
+        throw new JsonParsingException("Unexpected token: " + event, parser.getLocation());
+    }
+  }
+
+  /**
+   * Return the param value at the current parser position, decoded
+   * directly to the specified type where the JSON type allows it.
+   * Other values are decoded as by {@link #getParam(JsonParser,JsonParser.Event)}
+   * and are left for {@link ParamType#convert} to convert or reject.
+   *
+   * @param parser     Parser positioned at the value. Non-null.
+   * @param event      The event of the current position. Non-null.
+   * @param paramType  Type to decode to. Non-null.
+   * @return           The param value. May be null.
+   */
+  private static Object getParam(JsonParser parser, JsonParser.Event event, ParamType paramType)
+  {
+    assert parser != null : "parser cannot be null";
+    assert event != null : "event cannot be null";
+    assert paramType != null : "paramType cannot be null";
+
+    if (event == JsonParser.Event.VALUE_NUMBER) {
+      switch (paramType) {
+        case LONG :
+        case INTEGER :
+          // Exact, as getLong() and getInt() silently truncate
+          if (parser.isIntegralNumber()) {
+            BigDecimal value = parser.getBigDecimal();
+            try {
+              return paramType == ParamType.LONG ? (Object) value.longValueExact() : (Object) value.intValueExact();
+            }
+            catch (ArithmeticException exception) {
+              return value; // Out of range, rejected by ParamType.convert()
+            }
+          }
+          break;
+
+        case DOUBLE :
+          return parser.isIntegralNumber() ? (double) parser.getLong() : parser.getBigDecimal().doubleValue();
+
+        default :
+          break;
+      }
+    }
+
+    else if (event == JsonParser.Event.VALUE_STRING && paramType == ParamType.STRING) {
+      return parser.getString();
+    }
+
+    return getParam(parser, event);
+  }
+
+  /**
+   * Return the number at the current parser position as Integer,
+   * Long or Double, whichever is the narrowest exact representation.
+   *
+   * @param parser  Parser positioned at a number. Non-null.
+   * @return        The number. Never null.
+   */
+  private static Number getNumber(JsonParser parser)
+  {
+    assert parser != null : "parser cannot be null";
+
+    long longValue;
+
+    // Integral numbers are read without going through BigDecimal
+    if (parser.isIntegralNumber()) {
+      longValue = parser.getLong();
+    }
+    else {
+      BigDecimal number = parser.getBigDecimal();
+      double doubleValue = number.doubleValue();
+      longValue = number.longValue();
+      if (doubleValue != (double) longValue)
+        return doubleValue;
+    }
+
+    int intValue = (int) longValue;
+    if (intValue == longValue)
+      return intValue;
+
+    return longValue;
+  }
+
+  /**
+   * Skip the value at the current parser position.
+   *
+   * @param parser  Parser positioned at the value. Non-null.
+   * @param event   The event of the current position. Non-null.
+   */
+  static void skip(JsonParser parser, JsonParser.Event event)
+  {
+    assert parser != null : "parser cannot be null";
+    assert event != null : "event cannot be null";
+
+    if (event == JsonParser.Event.START_ARRAY)
+      parser.skipArray();
+
+    else if (event == JsonParser.Event.START_OBJECT)
+      parser.skipObject();
+  }
+}
@@ -1,17 +1,18 @@
 package no.geosoft.logiq.core.jsonrpc;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.Date;
 
 import javax.json.Json;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
 import javax.json.JsonValue;
 import javax.json.stream.JsonParsingException;
 
 import no.geosoft.cc.util.Indentation;
 
+import no.geosoft.logiq.core.json.JsonSerializable;
 import no.geosoft.logiq.core.json.JsonUtil;
 
 /**
@@ -35,6 +36,7 @@ import no.geosoft.logiq.core.json.JsonUtil;
  * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
  */
 public final class Response
+  implements JsonSerializable
 {
   /**
    * Model a response error according to the JSON-RPC version 2.0.
@@ -169,6 +171,20 @@ public final class Response
     id_ = id;
   }
 
+  /**
+   * Create a new response message from already decoded components.
+   *
+   * @param result  The message result. Null if error is given, may be null otherwise.
+   * @param error   The message error. Null on success.
+   * @param id      ID of the corresponding request message. Null if N/A.
+   */
+  Response(Object result, Error error, Long id)
+  {
+    result_ = result;
+    error_ = error;
+    id_ = id;
+  }
+
   /**
    * Create a new response message from the specified JSON string.
    *
@@ -179,12 +195,35 @@ public final class Response
    */
   public Response(String jsonString)
     throws JsonParsingException
+  {
+    this(readObject(jsonString));
+  }
+
+  /**
+   * Read the JSON object of the specified JSON string.
+   *
+   * @param jsonString  JSON string to read. Non-null.
+   * @return            The JSON object. Never null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON object.
+   */
+  private static JsonObject readObject(String jsonString)
+    throws JsonParsingException
   {
     if (jsonString == null)
       throw new IllegalArgumentException("jsonString cannot be null");
 
-    JsonReader jsonReader = Json.createReader(new StringReader(jsonString));
-    JsonObject jsonObject = jsonReader.readObject();
+    return Json.createReader(new StringReader(jsonString)).readObject();
+  }
+
+  /**
+   * Create a new response message from the specified JSON object.
+   *
+   * @param jsonObject  JSON object to create instance from. Non-null.
+   */
+  Response(JsonObject jsonObject)
+  {
+    assert jsonObject != null : "jsonObject cannot be null";
 
     //
     // result
@@ -255,14 +294,81 @@ public final class Response
     return new Date(time_);
   }
 
+  /**
+   * Return exact time the message was created, as milliseconds
+   * since the epoch. Unlike getTime() this doesn't allocate.
+   *
+   * @return  The time the message was created.
+   */
+  public long getTimeMillis()
+  {
+    return time_;
+  }
+
   /**
    * Return a JSON string representation of this message.
    *
    * @return  A JSON string representation of this message. Never null.
    */
+  @Override
   public String toJson()
   {
     StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this message to the specified
+   * string builder.
+   * <p>
+   * Use this method to write several messages into one reusable
+   * buffer without any intermediate strings.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    write(result_, error_, id_ != null ? id_ : 0L, id_ != null, s);
+  }
+
+  /**
+   * Write the JSON representation of a response message with the
+   * specified content to the given string builder.
+   * Shared with {@link MutableResponse}.
+   *
+   * @param result  The message result. Ignored if error is given. May be null.
+   * @param error   The message error. Null on success.
+   * @param id      ID of the corresponding request message. Ignored if hasId is false.
+   * @param hasId   True if the ID is known, false to write a null ID.
+   * @param s       String builder to write to. Non-null.
+   */
+  static void write(Object result, Error error, long id, boolean hasId, StringBuilder s)
+  {
+    assert s != null : "s cannot be null";
+
     s.append('{');
 
     //
@@ -273,22 +379,24 @@ public final class Response
     //
     // result
     //
-    if (error_ == null) {
+    if (error == null) {
       s.append("\"result\":");
-      s.append(JsonUtil.getAsString(result_));
+      JsonUtil.write(result, s);
       s.append(',');
     }
 
     //
     // error
     //
-    if (error_ != null) {
+    if (error != null) {
       s.append("\"error\":{");
-      s.append("\"code\":" + error_.getCode() + ",");
-      s.append("\"message\":\"" + error_.getMessage() + "\"");
-      if (error_.getData() != null) {
-        s.append(",");
-        s.append("\"data\":" + JsonUtil.getAsString(error_.getData()));
+      s.append("\"code\":");
+      s.append(error.getCode());
+      s.append(",\"message\":");
+      JsonUtil.encode(error.getMessage(), s);
+      if (error.getData() != null) {
+        s.append(",\"data\":");
+        JsonUtil.write(error.getData(), s);
       }
       s.append("},");
     }
@@ -296,10 +404,12 @@ public final class Response
     //
     // id
     //
-    s.append("\"id\":" + id_);
+    s.append("\"id\":");
+    if (hasId)
+      s.append(id);
+    else
+      s.append("null");
     s.append('}');
-
-    return s.toString();
   }
 
   /**
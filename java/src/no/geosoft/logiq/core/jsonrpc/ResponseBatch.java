@@ -0,0 +1,175 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.stream.JsonParsingException;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+
+/**
+ * Models a batch of response messages according to the JSON-RPC version 2.0.
+ * <p>
+ * A batch is a JSON array of response objects, sent by the server
+ * as the answer to a {@link RequestBatch}. The responses may be in any
+ * order, so use {@link #getResponse(long)} to find the response of a
+ * specific request. A batch must hold at least one response.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class ResponseBatch
+  implements JsonSerializable
+{
+  /** The responses of this batch. Non-empty. */
+  private final List<Response> responses_;
+
+  /**
+   * Create a response batch.
+   *
+   * @param responses  Responses of the batch. Non-null and non-empty.
+   * @throws IllegalArgumentException  If responses is null, empty or contains null.
+   */
+  public ResponseBatch(List<Response> responses)
+  {
+    if (responses == null)
+      throw new IllegalArgumentException("responses cannot be null");
+
+    if (responses.isEmpty())
+      throw new IllegalArgumentException("responses cannot be empty");
+
+    for (Response response : responses) {
+      if (response == null)
+        throw new IllegalArgumentException("responses cannot contain null");
+    }
+
+    responses_ = new ArrayList<>(responses);
+  }
+
+  /**
+   * Create a response batch.
+   *
+   * @param responses  Responses of the batch. Non-null and non-empty.
+   * @throws IllegalArgumentException  If responses is null, empty or contains null.
+   */
+  public ResponseBatch(Response... responses)
+  {
+    this(responses != null ? Arrays.asList(responses) : null);
+  }
+
+  /**
+   * Create a response batch from the specified JSON string.
+   *
+   * @param jsonString  JSON string to create instance from. Non-null.
+   * @throws IllegalArgumentException  If jsonString is null.
+   * @throws JsonParsingException      If jsonString is not a valid JSON string or
+   *                                   if it doesn't constitute a valid batch.
+   */
+  public ResponseBatch(String jsonString)
+    throws JsonParsingException
+  {
+    if (jsonString == null)
+      throw new IllegalArgumentException("jsonString cannot be null");
+
+    responses_ = ResponseParser.parseBatch(jsonString);
+  }
+
+  /**
+   * Return the responses of this batch.
+   *
+   * @return  The responses of this batch. Never null and never empty.
+   */
+  public List<Response> getResponses()
+  {
+    return Collections.unmodifiableList(responses_);
+  }
+
+  /**
+   * Return the response to the request of the specified ID.
+   *
+   * @param id  ID of request to get response of.
+   * @return    The requested response, or null if not part of this batch.
+   */
+  public Response getResponse(long id)
+  {
+    for (Response response : responses_) {
+      Long responseId = response.getId();
+      if (responseId != null && responseId == id)
+        return response;
+    }
+
+    return null;
+  }
+
+  /**
+   * Return the number of responses of this batch.
+   *
+   * @return  Number of responses of this batch. [1,&gt;.
+   */
+  public int size()
+  {
+    return responses_.size();
+  }
+
+  /**
+   * Return a JSON string representation of this batch.
+   *
+   * @return  A JSON string representation of this batch. Never null.
+   */
+  @Override
+  public String toJson()
+  {
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    if (appendable instanceof StringBuilder) {
+      writeTo((StringBuilder) appendable);
+      return;
+    }
+
+    StringBuilder s = new StringBuilder();
+    writeTo(s);
+    appendable.append(s);
+  }
+
+  /**
+   * Write the JSON representation of this batch to the specified
+   * string builder.
+   *
+   * @param s  String builder to write to. Non-null.
+   * @throws IllegalArgumentException  If s is null.
+   */
+  public void writeTo(StringBuilder s)
+  {
+    if (s == null)
+      throw new IllegalArgumentException("s cannot be null");
+
+    s.append('[');
+    for (int i = 0; i < responses_.size(); i++) {
+      if (i > 0)
+        s.append(',');
+
+      responses_.get(i).writeTo(s);
+    }
+    s.append(']');
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Batch of " + responses_.size() + " responses";
+  }
+}
@@ -0,0 +1,310 @@
+package no.geosoft.logiq.core.jsonrpc;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Event driven decoder of JSON-RPC response messages into a
+ * {@link MutableResponse}, and of JSON-RPC response batches.
+ * <p>
+ * The result is decoded to the same Java types as by
+ * {@link Response#Response(String)}, see {@link RequestParser#getParam}.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class ResponseParser
+{
+  /** Shared parser factory. Avoids the provider lookup of Json.createParser(). */
+  private static final JsonParserFactory parserFactory_ = Json.createParserFactory(null);
+
+  /**
+   * Private constructor to prevent client instantiation.
+   */
+  private ResponseParser()
+  {
+    assert false;
+  }
+
+  /**
+   * Refill the specified mutable response with the content of the
+   * specified JSON string.
+   *
+   * @param jsonString  JSON string to read. Non-null.
+   * @param response    Response to refill. Non-null.
+   * @throws JsonParsingException  If jsonString is not a valid JSON string or
+   *                               if it doesn't constitute a valid instance.
+   */
+  static void parse(String jsonString, MutableResponse response)
+    throws JsonParsingException
+  {
+    assert jsonString != null : "jsonString cannot be null";
+    assert response != null : "response cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      read(parser, response);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Refill the specified mutable response with the UTF-8 encoded JSON
+   * content of the specified stream. The stream is consumed, but not closed.
+   *
+   * @param stream    Stream to read. Non-null.
+   * @param response  Response to refill. Non-null.
+   * @throws JsonParsingException  If the content is not a valid JSON or
+   *                               if it doesn't constitute a valid instance.
+   */
+  static void parse(InputStream stream, MutableResponse response)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+    assert response != null : "response cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+    try {
+      read(parser, response);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Read a response message from the specified parser into the
+   * given mutable response. The previous content of the response is
+   * replaced, also if the message turns out to be invalid.
+   *
+   * @param parser    Parser to read from. Non-null.
+   * @param response  Response to fill. Non-null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   */
+  private static void read(JsonParser parser, MutableResponse response)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+    assert response != null : "response cannot be null";
+
+    response.reset();
+
+    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT)
+      throw new JsonParsingException("Response must be a JSON object", parser.getLocation());
+
+    readObject(parser, response);
+  }
+
+  /**
+   * Create a list of response messages from the specified JSON-RPC batch,
+   * i.e. a JSON array of response objects.
+   *
+   * @param jsonString  JSON string to create instances from. Non-null.
+   * @return            The requested response messages. Never null and never empty.
+   * @throws JsonParsingException  If jsonString is not a valid JSON string or
+   *                               if it doesn't constitute a valid batch.
+   */
+  static List<Response> parseBatch(String jsonString)
+    throws JsonParsingException
+  {
+    assert jsonString != null : "jsonString cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(new StringReader(jsonString));
+    try {
+      return parseBatch(parser);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Create a list of response messages from the specified UTF-8 encoded
+   * JSON-RPC batch. The stream is consumed, but not closed.
+   *
+   * @param stream  Stream to create instances from. Non-null.
+   * @return        The requested response messages. Never null and never empty.
+   * @throws JsonParsingException  If the content is not a valid JSON or
+   *                               if it doesn't constitute a valid batch.
+   */
+  static List<Response> parseBatch(InputStream stream)
+    throws JsonParsingException
+  {
+    assert stream != null : "stream cannot be null";
+
+    JsonParser parser = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+    try {
+      return parseBatch(parser);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Read a JSON-RPC batch of response messages from the specified parser.
+   *
+   * @param parser  Parser to read from. Non-null.
+   * @return        The requested response messages. Never null and never empty.
+   * @throws JsonParsingException  If the content doesn't constitute a valid batch.
+   */
+  private static List<Response> parseBatch(JsonParser parser)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+
+    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY)
+      throw new JsonParsingException("Batch must be a JSON array", parser.getLocation());
+
+    List<Response> responses = new ArrayList<>();
+    MutableResponse response = new MutableResponse();
+
+    JsonParser.Event event;
+    while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+      if (event != JsonParser.Event.START_OBJECT)
+        throw new JsonParsingException("Response must be a JSON object", parser.getLocation());
+
+      response.reset();
+      readObject(parser, response);
+      responses.add(response.toResponse());
+    }
+
+    if (responses.isEmpty())
+      throw new JsonParsingException("Batch cannot be empty", parser.getLocation());
+
+    return responses;
+  }
+
+  /**
+   * Read the members of a response object from the specified parser
+   * into the given mutable response.
+   *
+   * @param parser    Parser positioned just inside the response object. Non-null.
+   * @param response  Response to fill. Non-null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid instance.
+   */
+  private static void readObject(JsonParser parser, MutableResponse response)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+    assert response != null : "response cannot be null";
+
+    Object result = null;
+    Response.Error error = null;
+
+    while (true) {
+      JsonParser.Event event = parser.next();
+      if (event == JsonParser.Event.END_OBJECT)
+        break;
+
+      String key = parser.getString();
+      event = parser.next();
+
+      //
+      // result
+      //
+      if (key.equals("result")) {
+        result = RequestParser.getParam(parser, event);
+      }
+
+      //
+      // error
+      //
+      else if (key.equals("error")) {
+        if (event == JsonParser.Event.START_OBJECT)
+          error = readError(parser);
+        else if (event != JsonParser.Event.VALUE_NULL)
+          throw new JsonParsingException("error must be an object", parser.getLocation());
+      }
+
+      //
+      // id. Null if it was not detectable in the request.
+      //
+      else if (key.equals("id")) {
+        if (event == JsonParser.Event.VALUE_NUMBER)
+          response.setId(parser.getLong());
+        else if (event != JsonParser.Event.VALUE_NULL)
+          throw new JsonParsingException("id must be a number", parser.getLocation());
+      }
+
+      //
+      // Anything else, including "jsonrpc"
+      //
+      else {
+        RequestParser.skip(parser, event);
+      }
+    }
+
+    if (error != null)
+      response.setError(error);
+    else
+      response.setResult(result);
+  }
+
+  /**
+   * Read the error object at the current parser position.
+   *
+   * @param parser  Parser positioned just inside the error object. Non-null.
+   * @return        The error read. Never null.
+   * @throws JsonParsingException  If the content doesn't constitute a valid error.
+   */
+  private static Response.Error readError(JsonParser parser)
+    throws JsonParsingException
+  {
+    assert parser != null : "parser cannot be null";
+
+    Integer code = null;
+    String message = null;
+    JsonValue data = null;
+
+    while (true) {
+      JsonParser.Event event = parser.next();
+      if (event == JsonParser.Event.END_OBJECT)
+        break;
+
+      String key = parser.getString();
+      event = parser.next();
+
+      if (key.equals("code")) {
+        if (event != JsonParser.Event.VALUE_NUMBER)
+          throw new JsonParsingException("error code must be a number", parser.getLocation());
+
+        code = parser.getInt();
+      }
+
+      else if (key.equals("message")) {
+        if (event != JsonParser.Event.VALUE_STRING)
+          throw new JsonParsingException("error message must be a string", parser.getLocation());
+
+        message = parser.getString();
+      }
+
+      // As with Response(String) the data is kept as a JSON value
+      else if (key.equals("data")) {
+        data = parser.getValue();
+      }
+
+      else {
+        RequestParser.skip(parser, event);
+      }
+    }
+
+    if (code == null)
+      throw new JsonParsingException("error code must be present", parser.getLocation());
+
+    if (message == null)
+      throw new JsonParsingException("error message must be present", parser.getLocation());
+
+    return new Response.Error(code, message, data);
+  }
+}
@@ -0,0 +1,334 @@
+package no.geosoft.logiq.core.timeseries;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The values of one curve of a {@link ColumnarTimeSeries}.
+ * <p>
+ * Values of a curve of <em>n</em> dimensions are stored row by row,
+ * <em>n</em> values per row. Float values are stored as 8 byte doubles
+ * with null as NaN, integer and datetime values as 8 byte longs with
+ * nulls in a separate bit mask, and boolean values as single bytes.
+ * These are kept in a byte buffer, either on the heap or, for direct
+ * columns, outside of it. String values are kept on the heap.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class Column
+{
+  /** Initial capacity in rows. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Stored value of a null boolean. */
+  private static final byte NULL_BOOLEAN = -1;
+
+  /** Value type of the column. */
+  private final ValueType valueType_;
+
+  /** Number of values per row. */
+  private final int nDimensions_;
+
+  /** Indicate if primitive values are stored outside of the heap. */
+  private final boolean isDirect_;
+
+  /** Number of bytes per value in buffer. 0 for strings. */
+  private final int valueSize_;
+
+  /** Float, integer, datetime and boolean values. Null for strings. */
+  private ByteBuffer buffer_;
+
+  /** String values. Null for other types. */
+  private String[] strings_;
+
+  /** Null mask of integer and datetime values, one bit per value. Null until a null is set. */
+  private long[] nulls_;
+
+  /** Capacity in rows. */
+  private int capacity_;
+
+  /**
+   * Create a column.
+   *
+   * @param valueType    Value type of column. Non-null.
+   * @param nDimensions  Number of values per row. [1,&gt;.
+   * @param isDirect     True to store primitive values outside of the heap,
+   *                     false to store them on the heap.
+   */
+  Column(ValueType valueType, int nDimensions, boolean isDirect)
+  {
+    assert valueType != null : "valueType cannot be null";
+    assert nDimensions >= 1 : "Invalid nDimensions: " + nDimensions;
+
+    valueType_ = valueType;
+    nDimensions_ = nDimensions;
+    isDirect_ = isDirect;
+
+    switch (valueType) {
+      case STRING  : valueSize_ = 0; break;
+      case BOOLEAN : valueSize_ = 1; break;
+      default      : valueSize_ = 8;
+    }
+
+    setCapacity(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Return the value type of this column.
+   *
+   * @return  Value type of this column. Never null.
+   */
+  ValueType getValueType()
+  {
+    return valueType_;
+  }
+
+  /**
+   * Set the capacity of this column. Existing values are kept.
+   *
+   * @param capacity  New capacity in rows. [0,&gt;.
+   */
+  void setCapacity(int capacity)
+  {
+    assert capacity >= 0 : "Invalid capacity: " + capacity;
+
+    int nValues = Math.multiplyExact(capacity, nDimensions_);
+    int nOldValues = capacity_ * nDimensions_;
+    int nKept = Math.min(nValues, nOldValues);
+
+    if (valueType_ == ValueType.STRING) {
+      String[] strings = new String[nValues];
+      if (strings_ != null)
+        System.arraycopy(strings_, 0, strings, 0, nKept);
+      strings_ = strings;
+    }
+    else {
+      int nBytes = Math.multiplyExact(nValues, valueSize_);
+      ByteBuffer buffer = isDirect_ ? ByteBuffer.allocateDirect(nBytes) : ByteBuffer.allocate(nBytes);
+      buffer.order(ByteOrder.nativeOrder());
+      if (buffer_ != null) {
+        ByteBuffer kept = buffer_.duplicate();
+        kept.clear().limit(nKept * valueSize_);
+        buffer.put(kept);
+        buffer.clear();
+      }
+      buffer_ = buffer;
+    }
+
+    if (nulls_ != null) {
+      long[] nulls = new long[(nValues + 63) / 64];
+      System.arraycopy(nulls_, 0, nulls, 0, Math.min(nulls.length, nulls_.length));
+      nulls_ = nulls;
+    }
+
+    capacity_ = capacity;
+  }
+
+  /**
+   * Ensure that this column can hold the specified number of rows.
+   *
+   * @param nRows  Number of rows to hold. [0,&gt;.
+   */
+  void ensureCapacity(int nRows)
+  {
+    assert nRows >= 0 : "Invalid nRows: " + nRows;
+
+    if (nRows > capacity_)
+      setCapacity(Math.max(nRows, capacity_ < Integer.MAX_VALUE / 2 ? 2 * capacity_ : Integer.MAX_VALUE));
+  }
+
+  /**
+   * Return the number of bytes used by the values of this column.
+   *
+   * @return  Number of bytes used by this column, excluding the
+   *          contents of the strings of string columns. [0,&gt;.
+   */
+  long getMemorySize()
+  {
+    long nValues = (long) capacity_ * nDimensions_;
+    long size = valueType_ == ValueType.STRING ? 4 * nValues : nValues * valueSize_;
+    if (nulls_ != null)
+      size += 8L * nulls_.length;
+    return size;
+  }
+
+  /**
+   * Check if this column stores its primitive values outside of the heap.
+   *
+   * @return  True if the column is direct, false otherwise.
+   */
+  boolean isDirect()
+  {
+    return isDirect_;
+  }
+
+  /**
+   * Set the null state of the specified value of an integer or datetime column.
+   *
+   * @param index   Index of value. [0,capacity*nDimensions&gt;.
+   * @param isNull  True if the value is null, false otherwise.
+   */
+  private void setNullBit(int index, boolean isNull)
+  {
+    if (nulls_ == null) {
+      if (!isNull)
+        return;
+      nulls_ = new long[(capacity_ * nDimensions_ + 63) / 64];
+    }
+
+    if (isNull)
+      nulls_[index >>> 6] |= 1L << index;
+    else
+      nulls_[index >>> 6] &= ~(1L << index);
+  }
+
+  /**
+   * Set the specified value to null.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   */
+  void setNull(int index)
+  {
+    switch (valueType_) {
+      case FLOAT :
+        buffer_.putDouble(index * 8, Double.NaN);
+        break;
+
+      case INTEGER :
+      case DATETIME :
+        buffer_.putLong(index * 8, 0L);
+        setNullBit(index, true);
+        break;
+
+      case BOOLEAN :
+        buffer_.put(index, NULL_BOOLEAN);
+        break;
+
+      case STRING :
+        strings_[index] = null;
+        break;
+
+      default :
+        assert false : "Unrecognized value type: " + valueType_;
+    }
+  }
+
+  /**
+   * Check if the specified value is null.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @return       True if the value is null, false otherwise.
+   */
+  boolean isNull(int index)
+  {
+    switch (valueType_) {
+      case FLOAT    : return Double.isNaN(buffer_.getDouble(index * 8));
+      case INTEGER  :
+      case DATETIME : return nulls_ != null && (nulls_[index >>> 6] & (1L << index)) != 0;
+      case BOOLEAN  : return buffer_.get(index) == NULL_BOOLEAN;
+      case STRING   : return strings_[index] == null;
+      default :
+        assert false : "Unrecognized value type: " + valueType_;
+        return true;
+    }
+  }
+
+  /**
+   * Set the specified value of a float column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @param value  Value to set. NaN for null.
+   */
+  void setDouble(int index, double value)
+  {
+    assert valueType_ == ValueType.FLOAT : "Not a float column: " + valueType_;
+    buffer_.putDouble(index * 8, value);
+  }
+
+  /**
+   * Return the specified value of a float column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @return       The requested value. NaN if null.
+   */
+  double getDouble(int index)
+  {
+    assert valueType_ == ValueType.FLOAT : "Not a float column: " + valueType_;
+    return buffer_.getDouble(index * 8);
+  }
+
+  /**
+   * Set the specified value of an integer or datetime column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @param value  Value to set. Datetimes as milliseconds since the epoch.
+   */
+  void setLong(int index, long value)
+  {
+    assert valueType_ == ValueType.INTEGER || valueType_ == ValueType.DATETIME : "Not a long column: " + valueType_;
+    buffer_.putLong(index * 8, value);
+    setNullBit(index, false);
+  }
+
+  /**
+   * Return the specified value of an integer or datetime column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @return       The requested value. 0 if null.
+   */
+  long getLong(int index)
+  {
+    assert valueType_ == ValueType.INTEGER || valueType_ == ValueType.DATETIME : "Not a long column: " + valueType_;
+    return buffer_.getLong(index * 8);
+  }
+
+  /**
+   * Set the specified value of a boolean column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @param value  Value to set.
+   */
+  void setBoolean(int index, boolean value)
+  {
+    assert valueType_ == ValueType.BOOLEAN : "Not a boolean column: " + valueType_;
+    buffer_.put(index, (byte) (value ? 1 : 0));
+  }
+
+  /**
+   * Return the specified value of a boolean column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @return       The requested value. False if null.
+   */
+  boolean getBoolean(int index)
+  {
+    assert valueType_ == ValueType.BOOLEAN : "Not a boolean column: " + valueType_;
+    return buffer_.get(index) == 1;
+  }
+
+  /**
+   * Set the specified value of a string column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @param value  Value to set. May be null.
+   */
+  void setString(int index, String value)
+  {
+    assert valueType_ == ValueType.STRING : "Not a string column: " + valueType_;
+    strings_[index] = value;
+  }
+
+  /**
+   * Return the specified value of a string column.
+   *
+   * @param index  Index of value. [0,capacity*nDimensions&gt;.
+   * @return       The requested value. Null if null.
+   */
+  String getString(int index)
+  {
+    assert valueType_ == ValueType.STRING : "Not a string column: " + valueType_;
+    return strings_[index];
+  }
+}
@@ -0,0 +1,837 @@
+package no.geosoft.logiq.core.timeseries;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import no.geosoft.cc.util.ISO8601DateParser;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+import no.geosoft.logiq.core.json.JsonUtil;
+import no.geosoft.logiq.core.jsonrpc.ErrorType;
+import no.geosoft.logiq.core.jsonrpc.RequestException;
+
+/**
+ * A time series held in columns of primitive values.
+ * <p>
+ * Each curve is stored as one column, float curves as doubles, integer
+ * curves as longs, datetime curves as milliseconds since the epoch and
+ * boolean curves as bytes. The first curve is the index of the time
+ * series. Compared to a JsonArray of the data, which costs tens of bytes
+ * per value, a float or integer value costs 8 bytes. The columns may
+ * be allocated outside of the heap by ByteBuffer.allocateDirect(),
+ * so that large buffered time series leave the heap alone.
+ * <p>
+ * Time series are read from TimeSeries.JSON by {@link #read}, and written
+ * back by {@link #toJson}. A list of time series is written as a complete
+ * TimeSeries.JSON document by JsonUtil.write(). Datetime values are written
+ * as ISO 8601 strings in UTC with millisecond precision, which may differ
+ * in form from the original text.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class ColumnarTimeSeries
+  implements JsonSerializable
+{
+  /** Number of characters written to an appendable at a time by toJson(). */
+  private static final int CHUNK_SIZE = 8192;
+
+  /** Header of the time series. */
+  private final JsonObject header_;
+
+  /** The curves of the time series. */
+  private final List<Curve> curves_;
+
+  /** The values of each curve. */
+  private final Column[] columns_;
+
+  /** Indicate if the columns are stored outside of the heap. */
+  private final boolean isDirect_;
+
+  /** Number of rows. */
+  private int nRows_;
+
+  /**
+   * Create an empty columnar time series.
+   *
+   * @param header    Header of the time series. Null if none.
+   * @param curves    Curves of the time series. The first curve is the index. Non-null.
+   * @param isDirect  True to store the values outside of the heap, false to store them on the heap.
+   * @throws IllegalArgumentException  If curves is null or contains null.
+   */
+  public ColumnarTimeSeries(JsonObject header, List<Curve> curves, boolean isDirect)
+  {
+    if (curves == null)
+      throw new IllegalArgumentException("curves cannot be null");
+
+    // Not contains(null), which immutable lists reject
+    for (Curve curve : curves) {
+      if (curve == null)
+        throw new IllegalArgumentException("curves cannot contain null");
+    }
+
+    header_ = header != null ? header : JsonValue.EMPTY_JSON_OBJECT;
+    curves_ = Collections.unmodifiableList(new ArrayList<>(curves));
+    isDirect_ = isDirect;
+
+    columns_ = new Column[curves_.size()];
+    for (int curveNo = 0; curveNo < columns_.length; curveNo++) {
+      Curve curve = curves_.get(curveNo);
+      columns_[curveNo] = new Column(curve.getValueType(), curve.getNDimensions(), isDirect);
+    }
+  }
+
+  /**
+   * Read the remaining time series of the specified reader into columnar time series.
+   *
+   * @param reader    Reader to read from. Non-null.
+   * @param isDirect  True to store the values outside of the heap, false to store them on the heap.
+   * @return          The time series read. Never null.
+   * @throws IllegalArgumentException  If reader is null.
+   * @throws RequestException  If the document is not valid TimeSeries.JSON
+   *                           or is incompatible with the reader.
+   */
+  public static List<ColumnarTimeSeries> read(TimeSeriesReader reader, boolean isDirect)
+    throws RequestException
+  {
+    if (reader == null)
+      throw new IllegalArgumentException("reader cannot be null");
+
+    List<ColumnarTimeSeries> timeSeriesList = new ArrayList<>();
+
+    while (reader.nextTimeSeries()) {
+      ColumnarTimeSeries timeSeries = new ColumnarTimeSeries(reader.getHeader(), reader.getCurves(), isDirect);
+      while (reader.nextRow())
+        timeSeries.addRow(reader);
+
+      timeSeries.trimToSize();
+      timeSeriesList.add(timeSeries);
+    }
+
+    return timeSeriesList;
+  }
+
+  /**
+   * Return the header of this time series.
+   *
+   * @return  Header of this time series. Empty if none. Never null.
+   */
+  public JsonObject getHeader()
+  {
+    return header_;
+  }
+
+  /**
+   * Return the curves of this time series.
+   *
+   * @return  Curves of this time series. Never null.
+   */
+  public List<Curve> getCurves()
+  {
+    return curves_;
+  }
+
+  /**
+   * Return number of curves of this time series.
+   *
+   * @return  Number of curves. [0,&gt;.
+   */
+  public int getNCurves()
+  {
+    return curves_.size();
+  }
+
+  /**
+   * Return number of rows of this time series.
+   *
+   * @return  Number of rows. [0,&gt;.
+   */
+  public int getNRows()
+  {
+    return nRows_;
+  }
+
+  /**
+   * Check if the values of this time series are stored outside of the heap.
+   *
+   * @return  True if stored outside of the heap, false if on the heap.
+   */
+  public boolean isDirect()
+  {
+    return isDirect_;
+  }
+
+  /**
+   * Return the number of bytes used by the values of this time series.
+   *
+   * @return  Number of bytes used by the values, on or outside of the heap,
+   *          excluding the contents of strings. [0,&gt;.
+   */
+  public long getMemorySize()
+  {
+    long size = 0L;
+    for (Column column : columns_)
+      size += column.getMemorySize();
+    return size;
+  }
+
+  /**
+   * Release memory reserved for rows not yet added.
+   */
+  public void trimToSize()
+  {
+    for (Column column : columns_)
+      column.setCapacity(nRows_);
+  }
+
+  /**
+   * Return index of the specified value within its column.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param rowNo      Row number. [0,nRows&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           Index of the value within its column.
+   * @throws IllegalArgumentException  If curveNo, rowNo or dimension is out of range.
+   */
+  private int getIndex(int curveNo, int rowNo, int dimension)
+  {
+    if (curveNo < 0 || curveNo >= columns_.length)
+      throw new IllegalArgumentException("Invalid curveNo: " + curveNo);
+
+    if (rowNo < 0 || rowNo >= nRows_)
+      throw new IllegalArgumentException("Invalid rowNo: " + rowNo);
+
+    int nDimensions = curves_.get(curveNo).getNDimensions();
+    if (dimension < 0 || dimension >= nDimensions)
+      throw new IllegalArgumentException("Invalid dimension: " + dimension);
+
+    return rowNo * nDimensions + dimension;
+  }
+
+  /**
+   * Add the current row of the specified reader to this time series.
+   *
+   * @param reader  Reader positioned at a row of a time series with the
+   *                same curves as this. Non-null.
+   * @throws IllegalArgumentException  If reader is null or its curves
+   *                                   doesn't match those of this time series.
+   * @throws RequestException  If a datetime value cannot be parsed.
+   */
+  public void addRow(TimeSeriesReader reader)
+    throws RequestException
+  {
+    if (reader == null)
+      throw new IllegalArgumentException("reader cannot be null");
+
+    if (reader.getNCurves() != columns_.length)
+      throw new IllegalArgumentException("Curves doesn't match: " + reader.getCurves());
+
+    for (int curveNo = 0; curveNo < columns_.length; curveNo++) {
+      Curve curve = curves_.get(curveNo);
+      Curve readerCurve = reader.getCurves().get(curveNo);
+      if (readerCurve.getValueType() != curve.getValueType() || readerCurve.getNDimensions() != curve.getNDimensions())
+        throw new IllegalArgumentException("Curves doesn't match: " + reader.getCurves());
+    }
+
+    int rowNo = nRows_;
+    for (int curveNo = 0; curveNo < columns_.length; curveNo++) {
+      Column column = columns_[curveNo];
+      Curve curve = curves_.get(curveNo);
+      int nDimensions = curve.getNDimensions();
+
+      column.ensureCapacity(rowNo + 1);
+
+      for (int dimension = 0; dimension < nDimensions; dimension++) {
+        int index = rowNo * nDimensions + dimension;
+
+        if (reader.isNull(curveNo, dimension)) {
+          column.setNull(index);
+          continue;
+        }
+
+        switch (curve.getValueType()) {
+          case FLOAT :
+            column.setDouble(index, reader.getDouble(curveNo, dimension));
+            break;
+
+          case INTEGER :
+            column.setLong(index, reader.getLong(curveNo, dimension));
+            break;
+
+          case DATETIME :
+            column.setLong(index, parseTime((String) reader.getValue(curveNo, dimension), curve));
+            break;
+
+          case BOOLEAN :
+            column.setBoolean(index, (Boolean) reader.getValue(curveNo, dimension));
+            break;
+
+          case STRING :
+            column.setString(index, (String) reader.getValue(curveNo, dimension));
+            break;
+
+          default :
+            assert false : "Unrecognized value type: " + curve.getValueType();
+        }
+      }
+    }
+
+    nRows_++;
+  }
+
+  /**
+   * Add a row of the specified values to this time series.
+   * <p>
+   * Values are given per curve as Number, Date (or ISO 8601 string)
+   * for datetime curves, String or Boolean, or null. Values of curves
+   * of more than one dimension are given as a collection or an array.
+   *
+   * @param values  Value of each curve. Non-null.
+   * @throws IllegalArgumentException  If values is null or doesn't match the curves.
+   */
+  public void addRow(Object... values)
+  {
+    if (values == null)
+      throw new IllegalArgumentException("values cannot be null");
+
+    if (values.length != columns_.length)
+      throw new IllegalArgumentException("Expected " + columns_.length + " values: " + values.length);
+
+    // Values are converted before anything is stored, so that a failure leaves no partial row
+    List<Object[]> rowValues = new ArrayList<>();
+    for (int curveNo = 0; curveNo < columns_.length; curveNo++)
+      rowValues.add(getDimensionValues(curveNo, values[curveNo]));
+
+    int rowNo = nRows_;
+    for (int curveNo = 0; curveNo < columns_.length; curveNo++) {
+      Column column = columns_[curveNo];
+      Object[] dimensionValues = rowValues.get(curveNo);
+
+      column.ensureCapacity(rowNo + 1);
+
+      for (int dimension = 0; dimension < dimensionValues.length; dimension++) {
+        int index = rowNo * dimensionValues.length + dimension;
+        Object value = dimensionValues[dimension];
+
+        if (value == null)
+          column.setNull(index);
+        else if (value instanceof Double)
+          column.setDouble(index, (Double) value);
+        else if (value instanceof Long)
+          column.setLong(index, (Long) value);
+        else if (value instanceof Boolean)
+          column.setBoolean(index, (Boolean) value);
+        else
+          column.setString(index, (String) value);
+      }
+    }
+
+    nRows_++;
+  }
+
+  /**
+   * Return the values of the specified curve of a row being added,
+   * converted to the types of the column.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @param value    Value as given to addRow(). May be null.
+   * @return         Value of each dimension as Double, Long, Boolean,
+   *                 String or null. Never null.
+   * @throws IllegalArgumentException  If the value doesn't match the curve.
+   */
+  private Object[] getDimensionValues(int curveNo, Object value)
+  {
+    Curve curve = curves_.get(curveNo);
+    int nDimensions = curve.getNDimensions();
+
+    Object[] values = new Object[nDimensions];
+
+    if (nDimensions == 1) {
+      values[0] = convert(value, curve);
+      return values;
+    }
+
+    if (value == null)
+      return values;
+
+    List<Object> list = new ArrayList<>();
+    if (value instanceof Collection)
+      list.addAll((Collection<?>) value);
+    else if (value instanceof Object[])
+      Collections.addAll(list, (Object[]) value);
+    else if (value instanceof double[]) {
+      for (double v : (double[]) value)
+        list.add(v);
+    }
+    else if (value instanceof long[]) {
+      for (long v : (long[]) value)
+        list.add(v);
+    }
+    else
+      throw new IllegalArgumentException("Expected " + nDimensions + " values of " + curve + ": " + value);
+
+    if (list.size() != nDimensions)
+      throw new IllegalArgumentException("Expected " + nDimensions + " values of " + curve + ": " + list.size());
+
+    for (int dimension = 0; dimension < nDimensions; dimension++)
+      values[dimension] = convert(list.get(dimension), curve);
+
+    return values;
+  }
+
+  /**
+   * Convert the specified value to the type it is stored as in the column of the given curve.
+   *
+   * @param value  Value to convert. May be null.
+   * @param curve  Curve of value. Non-null.
+   * @return       The value as Double, Long, Boolean, String or null.
+   * @throws IllegalArgumentException  If the value doesn't match the curve.
+   */
+  private static Object convert(Object value, Curve curve)
+  {
+    assert curve != null : "curve cannot be null";
+
+    if (value == null)
+      return null;
+
+    switch (curve.getValueType()) {
+      case FLOAT :
+        if (value instanceof Number)
+          return ((Number) value).doubleValue();
+        break;
+
+      case INTEGER :
+        if (value instanceof Number)
+          return ((Number) value).longValue();
+        break;
+
+      case DATETIME :
+        if (value instanceof Date)
+          return ((Date) value).getTime();
+        if (value instanceof String) {
+          try {
+            return parseTime((String) value, curve);
+          }
+          catch (RequestException exception) {
+            throw new IllegalArgumentException(exception.getMessage());
+          }
+        }
+        break;
+
+      case BOOLEAN :
+        if (value instanceof Boolean)
+          return value;
+        break;
+
+      case STRING :
+        if (value instanceof String)
+          return value;
+        break;
+
+      default :
+        assert false : "Unrecognized value type: " + curve.getValueType();
+    }
+
+    throw new IllegalArgumentException("Invalid value of " + curve + ": " + value);
+  }
+
+  /**
+   * Parse the specified datetime value.
+   *
+   * @param text   ISO 8601 datetime. Non-null.
+   * @param curve  Curve of the value. Non-null.
+   * @return       The datetime as milliseconds since the epoch.
+   * @throws RequestException  If text is not a valid ISO 8601 datetime.
+   */
+  private static long parseTime(String text, Curve curve)
+    throws RequestException
+  {
+    assert text != null : "text cannot be null";
+    assert curve != null : "curve cannot be null";
+
+    try {
+      return ISO8601DateParser.parse(text).getTime();
+    }
+    catch (ParseException | RuntimeException exception) {
+      throw new RequestException(ErrorType.LOGIQ_INVALID_FORMAT,
+                                 "Invalid datetime of curve " + curve.getName() + ": \"" + text + "\"", null);
+    }
+  }
+
+  /**
+   * Check if the specified value is null.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param rowNo      Row number. [0,nRows&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           True if the value is null, false otherwise.
+   * @throws IllegalArgumentException  If curveNo, rowNo or dimension is out of range.
+   */
+  public boolean isNull(int curveNo, int rowNo, int dimension)
+  {
+    return columns_[curveNo].isNull(getIndex(curveNo, rowNo, dimension));
+  }
+
+  /**
+   * Check if the specified value is null.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @param rowNo    Row number. [0,nRows&gt;.
+   * @return         True if the value is null, false otherwise.
+   * @throws IllegalArgumentException  If curveNo or rowNo is out of range.
+   */
+  public boolean isNull(int curveNo, int rowNo)
+  {
+    return isNull(curveNo, rowNo, 0);
+  }
+
+  /**
+   * Return the specified value as a double.
+   *
+   * @param curveNo    Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param rowNo      Row number. [0,nRows&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value. Datetimes as milliseconds since the epoch. NaN if null.
+   * @throws IllegalArgumentException  If curveNo, rowNo or dimension is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public double getDouble(int curveNo, int rowNo, int dimension)
+  {
+    int index = getIndex(curveNo, rowNo, dimension);
+
+    Column column = columns_[curveNo];
+    switch (column.getValueType()) {
+      case FLOAT :
+        return column.getDouble(index);
+
+      case INTEGER :
+      case DATETIME :
+        return column.isNull(index) ? Double.NaN : column.getLong(index);
+
+      default :
+        throw new IllegalArgumentException("Curve is not numeric: " + curves_.get(curveNo));
+    }
+  }
+
+  /**
+   * Return the specified value as a double.
+   *
+   * @param curveNo  Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param rowNo    Row number. [0,nRows&gt;.
+   * @return         The requested value. Datetimes as milliseconds since the epoch. NaN if null.
+   * @throws IllegalArgumentException  If curveNo or rowNo is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public double getDouble(int curveNo, int rowNo)
+  {
+    return getDouble(curveNo, rowNo, 0);
+  }
+
+  /**
+   * Return the specified value as a long.
+   *
+   * @param curveNo    Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param rowNo      Row number. [0,nRows&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value. Datetimes as milliseconds since the
+   *                   epoch. Float values are truncated. 0 if null.
+   * @throws IllegalArgumentException  If curveNo, rowNo or dimension is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public long getLong(int curveNo, int rowNo, int dimension)
+  {
+    int index = getIndex(curveNo, rowNo, dimension);
+
+    Column column = columns_[curveNo];
+    switch (column.getValueType()) {
+      case FLOAT :
+        return column.isNull(index) ? 0L : (long) column.getDouble(index);
+
+      case INTEGER :
+      case DATETIME :
+        return column.getLong(index);
+
+      default :
+        throw new IllegalArgumentException("Curve is not numeric: " + curves_.get(curveNo));
+    }
+  }
+
+  /**
+   * Return the specified value as a long.
+   *
+   * @param curveNo  Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param rowNo    Row number. [0,nRows&gt;.
+   * @return         The requested value. Datetimes as milliseconds since the
+   *                 epoch. Float values are truncated. 0 if null.
+   * @throws IllegalArgumentException  If curveNo or rowNo is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public long getLong(int curveNo, int rowNo)
+  {
+    return getLong(curveNo, rowNo, 0);
+  }
+
+  /**
+   * Return the specified value.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param rowNo      Row number. [0,nRows&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value as Double, Long, Date, String or
+   *                   Boolean, depending on the value type of the curve.
+   *                   Null if null.
+   * @throws IllegalArgumentException  If curveNo, rowNo or dimension is out of range.
+   */
+  public Object getValue(int curveNo, int rowNo, int dimension)
+  {
+    int index = getIndex(curveNo, rowNo, dimension);
+
+    Column column = columns_[curveNo];
+    if (column.isNull(index))
+      return null;
+
+    switch (column.getValueType()) {
+      case FLOAT    : return column.getDouble(index);
+      case INTEGER  : return column.getLong(index);
+      case DATETIME : return new Date(column.getLong(index));
+      case BOOLEAN  : return column.getBoolean(index);
+      case STRING   : return column.getString(index);
+      default :
+        assert false : "Unrecognized value type: " + column.getValueType();
+        return null;
+    }
+  }
+
+  /**
+   * Return the specified value.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @param rowNo    Row number. [0,nRows&gt;.
+   * @return         The requested value as Double, Long, Date, String or
+   *                 Boolean, depending on the value type of the curve.
+   *                 Null if null.
+   * @throws IllegalArgumentException  If curveNo or rowNo is out of range.
+   */
+  public Object getValue(int curveNo, int rowNo)
+  {
+    return getValue(curveNo, rowNo, 0);
+  }
+
+  /**
+   * Return the values of the specified curve as a double array.
+   *
+   * @param curveNo    Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           A new array of the values of the curve, one per row.
+   *                   Nulls are returned as NaN. Never null.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public double[] getDoubles(int curveNo, int dimension)
+  {
+    double[] values = new double[nRows_];
+    for (int rowNo = 0; rowNo < nRows_; rowNo++)
+      values[rowNo] = getDouble(curveNo, rowNo, dimension);
+    return values;
+  }
+
+  /**
+   * Return the values of the specified curve as a long array.
+   *
+   * @param curveNo    Curve number of a float, integer or datetime curve. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           A new array of the values of the curve, one per row.
+   *                   Nulls are returned as 0. Never null.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range,
+   *                                   or the curve is not of one of the types above.
+   */
+  public long[] getLongs(int curveNo, int dimension)
+  {
+    long[] values = new long[nRows_];
+    for (int rowNo = 0; rowNo < nRows_; rowNo++)
+      values[rowNo] = getLong(curveNo, rowNo, dimension);
+    return values;
+  }
+
+  /**
+   * Write the specified curve definition as JSON.
+   *
+   * @param curve  Curve to write. Non-null.
+   * @param s      String builder to write to. Non-null.
+   */
+  private static void writeCurve(Curve curve, StringBuilder s)
+  {
+    assert curve != null : "curve cannot be null";
+    assert s != null : "s cannot be null";
+
+    s.append("{\"name\":");
+    JsonUtil.encode(curve.getName(), s);
+
+    if (curve.getDescription() != null) {
+      s.append(",\"description\":");
+      JsonUtil.encode(curve.getDescription(), s);
+    }
+
+    if (curve.getQuantity() != null) {
+      s.append(",\"quantity\":");
+      JsonUtil.encode(curve.getQuantity(), s);
+    }
+
+    if (curve.getUnit() != null) {
+      s.append(",\"unit\":");
+      JsonUtil.encode(curve.getUnit(), s);
+    }
+
+    s.append(",\"valueType\":\"").append(curve.getValueType().getName()).append('\"');
+    s.append(",\"dimensions\":").append(curve.getNDimensions());
+    s.append('}');
+  }
+
+  /**
+   * Write the specified value as JSON.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @param index    Index of value within its column.
+   * @param s        String builder to write to. Non-null.
+   */
+  private void writeValue(int curveNo, int index, StringBuilder s)
+  {
+    assert s != null : "s cannot be null";
+
+    Column column = columns_[curveNo];
+    if (column.isNull(index)) {
+      s.append("null");
+      return;
+    }
+
+    switch (column.getValueType()) {
+      case FLOAT :
+        JsonUtil.writeNumber(column.getDouble(index), s);
+        break;
+
+      case INTEGER :
+        JsonUtil.writeNumber(column.getLong(index), s);
+        break;
+
+      case DATETIME :
+        s.append('\"').append(ISO8601DateParser.toString(new Date(column.getLong(index)))).append('\"');
+        break;
+
+      case BOOLEAN :
+        s.append(column.getBoolean(index) ? "true" : "false");
+        break;
+
+      case STRING :
+        JsonUtil.encode(column.getString(index), s);
+        break;
+
+      default :
+        assert false : "Unrecognized value type: " + column.getValueType();
+    }
+  }
+
+  /**
+   * Write this time series as a TimeSeries.JSON time series object.
+   * If the appendable is not a StringBuilder, the JSON is written in
+   * chunks so that the complete text is never held in memory.
+   *
+   * @param appendable  Appendable to write to. Non-null.
+   * @throws IOException  If the append operation fails.
+   */
+  private void write(Appendable appendable)
+    throws IOException
+  {
+    assert appendable != null : "appendable cannot be null";
+
+    boolean isChunked = !(appendable instanceof StringBuilder);
+    StringBuilder s = isChunked ? new StringBuilder(CHUNK_SIZE + 1024) : (StringBuilder) appendable;
+
+    s.append("{\"header\":");
+    s.append(header_.toString());
+
+    s.append(",\"curves\":[");
+    for (Iterator<Curve> i = curves_.iterator(); i.hasNext(); ) {
+      writeCurve(i.next(), s);
+      if (i.hasNext())
+        s.append(',');
+    }
+
+    s.append("],\"data\":[");
+    for (int rowNo = 0; rowNo < nRows_; rowNo++) {
+      if (rowNo > 0)
+        s.append(',');
+
+      s.append('[');
+      for (int curveNo = 0; curveNo < columns_.length; curveNo++) {
+        if (curveNo > 0)
+          s.append(',');
+
+        int nDimensions = curves_.get(curveNo).getNDimensions();
+        if (nDimensions > 1)
+          s.append('[');
+
+        for (int dimension = 0; dimension < nDimensions; dimension++) {
+          if (dimension > 0)
+            s.append(',');
+          writeValue(curveNo, rowNo * nDimensions + dimension, s);
+        }
+
+        if (nDimensions > 1)
+          s.append(']');
+      }
+      s.append(']');
+
+      if (isChunked && s.length() >= CHUNK_SIZE) {
+        appendable.append(s);
+        s.setLength(0);
+      }
+    }
+
+    s.append("]}");
+
+    if (isChunked)
+      appendable.append(s);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toJson()
+  {
+    StringBuilder s = new StringBuilder(64 + 16 * nRows_ * columns_.length);
+    try {
+      write(s);
+    }
+    catch (IOException exception) {
+      assert false : "Cannot happen with a StringBuilder";
+    }
+    return s.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void toJson(Appendable appendable)
+    throws IOException
+  {
+    if (appendable == null)
+      throw new IllegalArgumentException("appendable cannot be null");
+
+    write(appendable);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Time series of " + nRows_ + " rows of " + curves_ + (isDirect_ ? ", direct" : "");
+  }
+}
@@ -0,0 +1,146 @@
+package no.geosoft.logiq.core.timeseries;
+
+/**
+ * Definition of a curve (column) of a TimeSeries.JSON document.
+ * The first curve of a time series is its index.
+ * <p>
+ * A curve has one value per row, or an array of <em>nDimensions</em>
+ * values per row if nDimensions is greater than 1.
+ * <p>
+ * Curves are immutable.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class Curve
+{
+  /** Name of curve. */
+  private final String name_;
+
+  /** Type of the values of the curve. */
+  private final ValueType valueType_;
+
+  /** Number of values per row. */
+  private final int nDimensions_;
+
+  /** Quantity of the curve, like "length". Null if not given. */
+  private final String quantity_;
+
+  /** Unit of the curve values, like "m". Null if not given. */
+  private final String unit_;
+
+  /** Description of the curve. Null if not given. */
+  private final String description_;
+
+  /**
+   * Create a curve.
+   *
+   * @param name         Name of curve. Non-null.
+   * @param valueType    Type of the values. Non-null.
+   * @param nDimensions  Number of values per row. [1,&gt;.
+   * @param quantity     Quantity of curve, like "length". May be null.
+   * @param unit         Unit of the curve values, like "m". May be null.
+   * @param description  Description of curve. May be null.
+   * @throws IllegalArgumentException  If name or valueType is null or nDimensions &lt; 1.
+   */
+  public Curve(String name, ValueType valueType, int nDimensions,
+               String quantity, String unit, String description)
+  {
+    if (name == null)
+      throw new IllegalArgumentException("name cannot be null");
+
+    if (valueType == null)
+      throw new IllegalArgumentException("valueType cannot be null");
+
+    if (nDimensions < 1)
+      throw new IllegalArgumentException("Invalid nDimensions: " + nDimensions);
+
+    name_ = name;
+    valueType_ = valueType;
+    nDimensions_ = nDimensions;
+    quantity_ = quantity;
+    unit_ = unit;
+    description_ = description;
+  }
+
+  /**
+   * Create a one dimensional curve.
+   *
+   * @param name       Name of curve. Non-null.
+   * @param valueType  Type of the values. Non-null.
+   * @param quantity   Quantity of curve, like "length". May be null.
+   * @param unit       Unit of the curve values, like "m". May be null.
+   * @throws IllegalArgumentException  If name or valueType is null.
+   */
+  public Curve(String name, ValueType valueType, String quantity, String unit)
+  {
+    this(name, valueType, 1, quantity, unit, null);
+  }
+
+  /**
+   * Return name of this curve.
+   *
+   * @return  Name of this curve. Never null.
+   */
+  public String getName()
+  {
+    return name_;
+  }
+
+  /**
+   * Return the type of the values of this curve.
+   *
+   * @return  Value type of this curve. Never null.
+   */
+  public ValueType getValueType()
+  {
+    return valueType_;
+  }
+
+  /**
+   * Return number of values per row of this curve.
+   *
+   * @return  Number of values per row. [1,&gt;.
+   */
+  public int getNDimensions()
+  {
+    return nDimensions_;
+  }
+
+  /**
+   * Return quantity of this curve.
+   *
+   * @return  Quantity of this curve, like "length". Null if not given.
+   */
+  public String getQuantity()
+  {
+    return quantity_;
+  }
+
+  /**
+   * Return unit of the values of this curve.
+   *
+   * @return  Unit of this curve, like "m". Null if not given.
+   */
+  public String getUnit()
+  {
+    return unit_;
+  }
+
+  /**
+   * Return description of this curve.
+   *
+   * @return  Description of this curve. Null if not given.
+   */
+  public String getDescription()
+  {
+    return description_;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return name_ + " (" + valueType_ + (nDimensions_ > 1 ? "[" + nDimensions_ + "]" : "") +
+           (unit_ != null ? ", " + unit_ : "") + ")";
+  }
+}
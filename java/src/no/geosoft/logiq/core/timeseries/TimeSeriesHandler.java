@@ -0,0 +1,50 @@
+package no.geosoft.logiq.core.timeseries;
+
+import no.geosoft.logiq.core.jsonrpc.RequestException;
+
+/**
+ * Receives the content of a TimeSeries.JSON document as it is read.
+ * See {@link TimeSeriesReader#read}.
+ * <p>
+ * The handler is given the reader itself, positioned at the time series
+ * or row in question. The values of a row are only valid during the call.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+@FunctionalInterface
+public interface TimeSeriesHandler
+{
+  /**
+   * A time series is started. Its header and curves are available.
+   *
+   * @param reader  The reader. Non-null.
+   * @throws RequestException  To stop reading, typically of an
+   *                           incompatible time series.
+   */
+  default void timeSeriesStart(TimeSeriesReader reader)
+    throws RequestException
+  {
+    // Nothing
+  }
+
+  /**
+   * A row of data is read.
+   *
+   * @param reader  The reader, positioned at the row. Non-null.
+   * @throws RequestException  To stop reading.
+   */
+  void row(TimeSeriesReader reader)
+    throws RequestException;
+
+  /**
+   * A time series is completed.
+   *
+   * @param reader  The reader. Non-null.
+   * @throws RequestException  To stop reading.
+   */
+  default void timeSeriesEnd(TimeSeriesReader reader)
+    throws RequestException
+  {
+    // Nothing
+  }
+}
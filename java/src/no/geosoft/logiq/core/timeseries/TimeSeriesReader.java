@@ -0,0 +1,875 @@
+package no.geosoft.logiq.core.timeseries;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+import no.geosoft.logiq.core.jsonrpc.ErrorType;
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.RequestException;
+
+/**
+ * Incremental reader of TimeSeries.JSON documents.
+ * <p>
+ * The document is read front to back by a streaming parser. The header
+ * and curves of each time series are read as they are reached, and the
+ * data rows are then read one at a time, reusing the same row buffer.
+ * No JSON model is built for the data, so the memory use is independent
+ * of the number of rows:
+ *
+ * <pre>
+ *   TimeSeriesReader reader = new TimeSeriesReader(request, 3);
+ *   while (reader.nextTimeSeries()) {
+ *     while (reader.nextRow())
+ *       process(reader.getLong(0), reader.getDouble(1));
+ *   }
+ * </pre>
+ *
+ * or equivalently, through a {@link TimeSeriesHandler} given to {@link #read}.
+ * <p>
+ * Values are checked against the value type and dimensions of their curve
+ * as they are read. Malformed documents are reported by a RequestException
+ * of type LOGIQ_INVALID_FORMAT, and valid JSON that this reader cannot
+ * handle, like unknown value types or <em>data</em> preceding
+ * <em>curves</em>, by LOGIQ_INCOMPATIBLE_FORMAT. The reader is unusable
+ * after an exception.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class TimeSeriesReader
+  implements Closeable
+{
+  /** Factory for JSON parsers. Thread safe. */
+  private static final JsonParserFactory parserFactory_ = Json.createParserFactory(null);
+
+  /** The reading states. */
+  private enum State
+  {
+    /** Nothing is read. */
+    START,
+
+    /** Between two time series. */
+    BETWEEN,
+
+    /** Within the data array of a time series. */
+    DATA,
+
+    /** The document is read, or reading has failed. */
+    END;
+  }
+
+  /** The underlying parser. */
+  private final JsonParser parser_;
+
+  /** Current state. */
+  private State state_ = State.START;
+
+  /** Header of the current time series. Empty if not given. */
+  private JsonObject header_ = JsonValue.EMPTY_JSON_OBJECT;
+
+  /** Curves of the current time series. Null until read. */
+  private List<Curve> curves_;
+
+  /** Indicate if the data of the current time series has been reached. */
+  private boolean hasData_;
+
+  /** Number of time series started. */
+  private int nTimeSeries_;
+
+  /** Number of rows read of the current time series. */
+  private int nRows_;
+
+  /** Index of the first value of each curve in the row buffers. */
+  private int[] offsets_ = new int[0];
+
+  /** Current row values of float and integer curves. */
+  private double[] doubles_ = new double[0];
+
+  /** Current row values of integer curves. */
+  private long[] longs_ = new long[0];
+
+  /** Current row values of string, datetime and boolean curves. */
+  private Object[] objects_ = new Object[0];
+
+  /** Indicate which values of the current row are null. */
+  private boolean[] isNull_ = new boolean[0];
+
+  /**
+   * Create a reader of the specified TimeSeries.JSON text.
+   *
+   * @param reader  Reader of the text. Non-null.
+   * @throws IllegalArgumentException  If reader is null.
+   */
+  public TimeSeriesReader(Reader reader)
+  {
+    if (reader == null)
+      throw new IllegalArgumentException("reader cannot be null");
+
+    parser_ = parserFactory_.createParser(reader);
+  }
+
+  /**
+   * Create a reader of the specified UTF-8 encoded TimeSeries.JSON stream.
+   *
+   * @param stream  Stream to read. Non-null.
+   * @throws IllegalArgumentException  If stream is null.
+   */
+  public TimeSeriesReader(InputStream stream)
+  {
+    if (stream == null)
+      throw new IllegalArgumentException("stream cannot be null");
+
+    parser_ = parserFactory_.createParser(stream, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a reader of the specified TimeSeries.JSON text.
+   *
+   * @param text  Text to read. Non-null.
+   * @throws IllegalArgumentException  If text is null.
+   */
+  public TimeSeriesReader(String text)
+  {
+    if (text == null)
+      throw new IllegalArgumentException("text cannot be null");
+
+    parser_ = parserFactory_.createParser(new StringReader(text));
+  }
+
+  /**
+   * Create a reader of the specified param of the given request,
+   * typically the <em>data</em> param of a <em>send</em> request.
+   * For lazily parsed requests the param is read directly from the
+   * received message.
+   *
+   * @param request  Request to read param of. Non-null.
+   * @param paramNo  Param number. [0,&gt;.
+   * @throws IllegalArgumentException  If request is null or paramNo is out of range.
+   */
+  public TimeSeriesReader(Request request, int paramNo)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (paramNo < 0 || paramNo >= request.getNParams())
+      throw new IllegalArgumentException("Invalid paramNo: " + paramNo);
+
+    parser_ = parserFactory_.createParser(request.getParamAsReader(paramNo));
+  }
+
+  /**
+   * Return an exception of the specified type, including the current
+   * position of the reader.
+   *
+   * @param errorType  Error type, LOGIQ_INVALID_FORMAT or LOGIQ_INCOMPATIBLE_FORMAT. Non-null.
+   * @param message    Details of the error. Non-null.
+   * @return           The requested exception. Never null.
+   */
+  private RequestException newException(ErrorType errorType, String message)
+  {
+    assert errorType != null : "errorType cannot be null";
+    assert message != null : "message cannot be null";
+
+    StringBuilder s = new StringBuilder("TimeSeries.JSON");
+    if (nTimeSeries_ > 0) {
+      s.append(" time series ").append(nTimeSeries_ - 1);
+      if (state_ == State.DATA)
+        s.append(" row ").append(nRows_);
+    }
+
+    JsonLocation location = parser_.getLocation();
+    s.append(" (line ").append(location.getLineNumber());
+    s.append(", column ").append(location.getColumnNumber()).append("): ");
+    s.append(message);
+
+    state_ = State.END;
+
+    return new RequestException(errorType, s.toString(), null);
+  }
+
+  /**
+   * Return an invalid format exception.
+   *
+   * @param message  Details of the error. Non-null.
+   * @return         The requested exception. Never null.
+   */
+  private RequestException invalid(String message)
+  {
+    return newException(ErrorType.LOGIQ_INVALID_FORMAT, message);
+  }
+
+  /**
+   * Return an incompatible format exception.
+   *
+   * @param message  Details of the error. Non-null.
+   * @return         The requested exception. Never null.
+   */
+  private RequestException incompatible(String message)
+  {
+    return newException(ErrorType.LOGIQ_INCOMPATIBLE_FORMAT, message);
+  }
+
+  /**
+   * Advance the parser to the next event.
+   *
+   * @return  The next event. Never null.
+   * @throws RequestException  If the document ends prematurely.
+   */
+  private JsonParser.Event next()
+    throws RequestException
+  {
+    if (!parser_.hasNext())
+      throw invalid("unexpected end of document");
+
+    return parser_.next();
+  }
+
+  /**
+   * Skip the value at the current parser position.
+   *
+   * @param event  The event of the current position. Non-null.
+   */
+  private void skip(JsonParser.Event event)
+  {
+    assert event != null : "event cannot be null";
+
+    if (event == JsonParser.Event.START_ARRAY)
+      parser_.skipArray();
+
+    else if (event == JsonParser.Event.START_OBJECT)
+      parser_.skipObject();
+  }
+
+  /**
+   * Skip the remaining rows of the data array of the current time series.
+   * Rows are skipped by their parser events, as skipArray() of the parser
+   * does not support being called within an array.
+   *
+   * @throws RequestException  If the document ends prematurely.
+   */
+  private void skipRows()
+    throws RequestException
+  {
+    int depth = 1;
+    while (depth > 0) {
+      switch (next()) {
+        case START_ARRAY :
+        case START_OBJECT :
+          depth++;
+          break;
+
+        case END_ARRAY :
+        case END_OBJECT :
+          depth--;
+          break;
+
+        default :
+          // Values within the rows
+      }
+    }
+  }
+
+  /**
+   * Advance to the next time series of the document. Rows not
+   * read of the current time series are skipped.
+   *
+   * @return  True if a time series is reached, false if the document is completed.
+   * @throws RequestException  If the document is not valid TimeSeries.JSON
+   *                           or is incompatible with this reader.
+   */
+  public boolean nextTimeSeries()
+    throws RequestException
+  {
+    try {
+      if (state_ == State.START) {
+        if (next() != JsonParser.Event.START_ARRAY)
+          throw invalid("expected an array of time series");
+        state_ = State.BETWEEN;
+      }
+
+      if (state_ == State.DATA) {
+        skipRows();
+        state_ = State.BETWEEN;
+        readMembers();
+      }
+
+      if (state_ == State.END)
+        return false;
+
+      JsonParser.Event event = next();
+      if (event == JsonParser.Event.END_ARRAY) {
+        if (parser_.hasNext())
+          throw invalid("unexpected content after document");
+
+        state_ = State.END;
+        return false;
+      }
+
+      if (event != JsonParser.Event.START_OBJECT)
+        throw invalid("expected a time series object, got " + event);
+
+      nTimeSeries_++;
+      nRows_ = 0;
+      header_ = JsonValue.EMPTY_JSON_OBJECT;
+      curves_ = null;
+      hasData_ = false;
+
+      readMembers();
+      return true;
+    }
+    catch (JsonException exception) {
+      throw invalid(exception.getMessage());
+    }
+  }
+
+  /**
+   * Read members of the current time series object up to
+   * the data array or to the end of the object.
+   *
+   * @throws RequestException  If the document is not valid TimeSeries.JSON
+   *                           or is incompatible with this reader.
+   */
+  private void readMembers()
+    throws RequestException
+  {
+    while (true) {
+      JsonParser.Event event = next();
+      if (event == JsonParser.Event.END_OBJECT) {
+        state_ = State.BETWEEN;
+        return;
+      }
+
+      assert event == JsonParser.Event.KEY_NAME : "Unexpected event: " + event;
+      String key = parser_.getString();
+
+      event = next();
+
+      switch (key) {
+        case "header" :
+          if (event != JsonParser.Event.START_OBJECT)
+            throw invalid("header must be an object");
+          header_ = parser_.getObject();
+          break;
+
+        case "curves" :
+          if (event != JsonParser.Event.START_ARRAY)
+            throw invalid("curves must be an array");
+          setCurves(parser_.getArray());
+          break;
+
+        case "data" :
+          if (hasData_)
+            throw invalid("more than one data array");
+          if (event != JsonParser.Event.START_ARRAY)
+            throw invalid("data must be an array");
+          if (curves_ == null)
+            throw incompatible("curves must precede data to be read incrementally");
+          hasData_ = true;
+          state_ = State.DATA;
+          return;
+
+        default :
+          skip(event);
+      }
+    }
+  }
+
+  /**
+   * Set the curves of the current time series and prepare the row buffers.
+   *
+   * @param curves  The curves as given in the document. Non-null.
+   * @throws RequestException  If the curves are not valid or not supported.
+   */
+  private void setCurves(JsonArray curves)
+    throws RequestException
+  {
+    assert curves != null : "curves cannot be null";
+
+    if (hasData_)
+      throw incompatible("curves must precede data to be read incrementally");
+
+    List<Curve> curveList = new ArrayList<>();
+    for (JsonValue value : curves) {
+      if (value.getValueType() != JsonValue.ValueType.OBJECT)
+        throw invalid("curve " + curveList.size() + " must be an object");
+
+      curveList.add(newCurve((JsonObject) value, curveList.size()));
+    }
+
+    curves_ = Collections.unmodifiableList(curveList);
+
+    offsets_ = new int[curves_.size()];
+    int nValues = 0;
+    for (int curveNo = 0; curveNo < curves_.size(); curveNo++) {
+      offsets_[curveNo] = nValues;
+      nValues += curves_.get(curveNo).getNDimensions();
+    }
+
+    doubles_ = new double[nValues];
+    longs_ = new long[nValues];
+    objects_ = new Object[nValues];
+    isNull_ = new boolean[nValues];
+  }
+
+  /**
+   * Return the specified string member of the given curve definition.
+   *
+   * @param jsonObject  Curve definition. Non-null.
+   * @param key         Member to get. Non-null.
+   * @param curveNo     Curve number, for messages. [0,&gt;.
+   * @return            The member value, or null if not given.
+   * @throws RequestException  If the member is not a string.
+   */
+  private String getString(JsonObject jsonObject, String key, int curveNo)
+    throws RequestException
+  {
+    assert jsonObject != null : "jsonObject cannot be null";
+    assert key != null : "key cannot be null";
+
+    JsonValue value = jsonObject.get(key);
+    if (value == null || value == JsonValue.NULL)
+      return null;
+
+    if (!(value instanceof JsonString))
+      throw invalid(key + " of curve " + curveNo + " must be a string");
+
+    return ((JsonString) value).getString();
+  }
+
+  /**
+   * Create a curve of the specified TimeSeries.JSON curve definition.
+   *
+   * @param jsonObject  Curve definition. Non-null.
+   * @param curveNo     Curve number, for messages. [0,&gt;.
+   * @return            The curve. Never null.
+   * @throws RequestException  If the curve is not valid or not supported.
+   */
+  private Curve newCurve(JsonObject jsonObject, int curveNo)
+    throws RequestException
+  {
+    assert jsonObject != null : "jsonObject cannot be null";
+
+    String name = getString(jsonObject, "name", curveNo);
+    if (name == null)
+      throw invalid("curve " + curveNo + " has no name");
+
+    String valueTypeName = getString(jsonObject, "valueType", curveNo);
+    ValueType valueType = valueTypeName != null ? ValueType.get(valueTypeName) : ValueType.FLOAT;
+    if (valueType == null)
+      throw incompatible("unsupported valueType \"" + valueTypeName + "\" of curve " + name);
+
+    int nDimensions = 1;
+    JsonValue dimensions = jsonObject.get("dimensions");
+    if (dimensions != null && dimensions != JsonValue.NULL) {
+      if (!(dimensions instanceof JsonNumber) || !((JsonNumber) dimensions).isIntegral() ||
+          ((JsonNumber) dimensions).bigDecimalValue().compareTo(BigDecimal.ONE) < 0 ||
+          ((JsonNumber) dimensions).bigDecimalValue().compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0)
+        throw invalid("dimensions of curve " + name + " must be a positive integer");
+
+      nDimensions = ((JsonNumber) dimensions).intValue();
+    }
+
+    return new Curve(name, valueType, nDimensions,
+                     getString(jsonObject, "quantity", curveNo),
+                     getString(jsonObject, "unit", curveNo),
+                     getString(jsonObject, "description", curveNo));
+  }
+
+  /**
+   * Advance to the next row of the current time series.
+   *
+   * @return  True if a row is read, false if the time series has no more rows.
+   * @throws RequestException  If the document is not valid TimeSeries.JSON
+   *                           or is incompatible with this reader.
+   */
+  public boolean nextRow()
+    throws RequestException
+  {
+    if (state_ != State.DATA)
+      return false;
+
+    try {
+      JsonParser.Event event = next();
+      if (event == JsonParser.Event.END_ARRAY) {
+        state_ = State.BETWEEN;
+        readMembers();
+        return false;
+      }
+
+      if (event != JsonParser.Event.START_ARRAY)
+        throw invalid("row must be an array, got " + event);
+
+      int nCurves = curves_.size();
+      for (int curveNo = 0; curveNo < nCurves; curveNo++) {
+        event = next();
+        if (event == JsonParser.Event.END_ARRAY)
+          throw invalid("expected " + nCurves + " values, got " + curveNo);
+
+        Curve curve = curves_.get(curveNo);
+        int nDimensions = curve.getNDimensions();
+        int offset = offsets_[curveNo];
+
+        if (nDimensions == 1) {
+          readValue(event, curve, offset);
+          continue;
+        }
+
+        if (event == JsonParser.Event.VALUE_NULL) {
+          for (int dimension = 0; dimension < nDimensions; dimension++)
+            readValue(event, curve, offset + dimension);
+          continue;
+        }
+
+        if (event != JsonParser.Event.START_ARRAY)
+          throw invalid("value of curve " + curve.getName() + " must be an array of " + nDimensions);
+
+        for (int dimension = 0; dimension < nDimensions; dimension++) {
+          event = next();
+          if (event == JsonParser.Event.END_ARRAY)
+            throw invalid("expected " + nDimensions + " values of curve " + curve.getName() + ", got " + dimension);
+          readValue(event, curve, offset + dimension);
+        }
+
+        if (next() != JsonParser.Event.END_ARRAY)
+          throw invalid("expected " + nDimensions + " values of curve " + curve.getName() + ", got more");
+      }
+
+      if (next() != JsonParser.Event.END_ARRAY)
+        throw invalid("expected " + nCurves + " values, got more");
+
+      nRows_++;
+      return true;
+    }
+    catch (JsonException exception) {
+      throw invalid(exception.getMessage());
+    }
+  }
+
+  /**
+   * Read the value at the current parser position into the row buffers.
+   *
+   * @param event  The event of the current position. Non-null.
+   * @param curve  Curve of the value. Non-null.
+   * @param index  Index of the value in the row buffers. [0,&gt;.
+   * @throws RequestException  If the value is not of the curve value type.
+   */
+  private void readValue(JsonParser.Event event, Curve curve, int index)
+    throws RequestException
+  {
+    assert event != null : "event cannot be null";
+    assert curve != null : "curve cannot be null";
+
+    isNull_[index] = event == JsonParser.Event.VALUE_NULL;
+    if (isNull_[index]) {
+      doubles_[index] = Double.NaN;
+      longs_[index] = 0L;
+      objects_[index] = null;
+      return;
+    }
+
+    ValueType valueType = curve.getValueType();
+    switch (valueType) {
+      case FLOAT :
+        if (event == JsonParser.Event.VALUE_NUMBER) {
+          // The number text is parsed directly, without a BigDecimal
+          doubles_[index] = Double.parseDouble(parser_.getString());
+          return;
+        }
+        break;
+
+      case INTEGER :
+        if (event == JsonParser.Event.VALUE_NUMBER && parser_.isIntegralNumber()) {
+          String text = parser_.getString();
+          try {
+            // getLong() silently truncates numbers of more than 18 digits
+            longs_[index] = text.length() < 19 ? parser_.getLong() : new BigDecimal(text).longValueExact();
+          }
+          catch (ArithmeticException exception) {
+            throw invalid("value " + text + " of curve " + curve.getName() + " is out of range");
+          }
+          doubles_[index] = longs_[index];
+          return;
+        }
+        break;
+
+      case STRING :
+      case DATETIME :
+        if (event == JsonParser.Event.VALUE_STRING) {
+          objects_[index] = parser_.getString();
+          return;
+        }
+        break;
+
+      case BOOLEAN :
+        if (event == JsonParser.Event.VALUE_TRUE || event == JsonParser.Event.VALUE_FALSE) {
+          objects_[index] = event == JsonParser.Event.VALUE_TRUE;
+          return;
+        }
+        break;
+
+      default :
+        assert false : "Unrecognized value type: " + valueType;
+    }
+
+    throw invalid("value of curve " + curve.getName() + " must be " + valueType + ", got " + event);
+  }
+
+  /**
+   * Read the complete document, reporting its content to the specified handler.
+   *
+   * @param handler  Handler to report to. Non-null.
+   * @return         Total number of rows read. [0,&gt;.
+   * @throws IllegalArgumentException  If handler is null.
+   * @throws RequestException  If the document is not valid TimeSeries.JSON,
+   *                           is incompatible with this reader, or if thrown
+   *                           by the handler.
+   */
+  public long read(TimeSeriesHandler handler)
+    throws RequestException
+  {
+    if (handler == null)
+      throw new IllegalArgumentException("handler cannot be null");
+
+    long nRows = 0;
+    while (nextTimeSeries()) {
+      handler.timeSeriesStart(this);
+      while (nextRow()) {
+        handler.row(this);
+        nRows++;
+      }
+      handler.timeSeriesEnd(this);
+    }
+
+    return nRows;
+  }
+
+  /**
+   * Return the header of the current time series.
+   *
+   * @return  Header of the current time series. Empty if not given
+   *          or not yet read. Never null.
+   */
+  public JsonObject getHeader()
+  {
+    return header_;
+  }
+
+  /**
+   * Return the curves of the current time series.
+   *
+   * @return  Curves of the current time series. Empty if not given. Never null.
+   */
+  public List<Curve> getCurves()
+  {
+    return curves_ != null ? curves_ : Collections.emptyList();
+  }
+
+  /**
+   * Return number of curves of the current time series.
+   *
+   * @return  Number of curves of the current time series. [0,&gt;.
+   */
+  public int getNCurves()
+  {
+    return getCurves().size();
+  }
+
+  /**
+   * Return the number of rows read so far of the current time series.
+   * The current row is row number getNRows() - 1.
+   *
+   * @return  Number of rows read of the current time series. [0,&gt;.
+   */
+  public int getNRows()
+  {
+    return nRows_;
+  }
+
+  /**
+   * Return index of the specified value in the row buffers.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           Index of the value in the row buffers.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range.
+   */
+  private int getIndex(int curveNo, int dimension)
+  {
+    if (curveNo < 0 || curveNo >= getNCurves())
+      throw new IllegalArgumentException("Invalid curveNo: " + curveNo);
+
+    if (dimension < 0 || dimension >= curves_.get(curveNo).getNDimensions())
+      throw new IllegalArgumentException("Invalid dimension: " + dimension);
+
+    return offsets_[curveNo] + dimension;
+  }
+
+  /**
+   * Check if the specified value of the current row is null.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           True if the value is null, false otherwise.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range.
+   */
+  public boolean isNull(int curveNo, int dimension)
+  {
+    return isNull_[getIndex(curveNo, dimension)];
+  }
+
+  /**
+   * Check if the specified value of the current row is null.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @return         True if the value is null, false otherwise.
+   * @throws IllegalArgumentException  If curveNo is out of range.
+   */
+  public boolean isNull(int curveNo)
+  {
+    return isNull(curveNo, 0);
+  }
+
+  /**
+   * Return the specified value of the current row as a double.
+   *
+   * @param curveNo    Curve number of a numeric curve. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value. NaN if null.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range,
+   *                                   or the curve is not numeric.
+   */
+  public double getDouble(int curveNo, int dimension)
+  {
+    int index = getIndex(curveNo, dimension);
+
+    if (!curves_.get(curveNo).getValueType().isNumeric())
+      throw new IllegalArgumentException("Curve is not numeric: " + curves_.get(curveNo));
+
+    return doubles_[index];
+  }
+
+  /**
+   * Return the specified value of the current row as a double.
+   *
+   * @param curveNo  Curve number of a numeric curve. [0,nCurves&gt;.
+   * @return         The requested value. NaN if null.
+   * @throws IllegalArgumentException  If curveNo is out of range,
+   *                                   or the curve is not numeric.
+   */
+  public double getDouble(int curveNo)
+  {
+    return getDouble(curveNo, 0);
+  }
+
+  /**
+   * Return the specified value of the current row as a long.
+   * Float values are truncated.
+   *
+   * @param curveNo    Curve number of a numeric curve. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value. 0 if null.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range,
+   *                                   or the curve is not numeric.
+   */
+  public long getLong(int curveNo, int dimension)
+  {
+    int index = getIndex(curveNo, dimension);
+
+    ValueType valueType = curves_.get(curveNo).getValueType();
+    if (!valueType.isNumeric())
+      throw new IllegalArgumentException("Curve is not numeric: " + curves_.get(curveNo));
+
+    if (isNull_[index])
+      return 0L;
+
+    return valueType == ValueType.INTEGER ? longs_[index] : (long) doubles_[index];
+  }
+
+  /**
+   * Return the specified value of the current row as a long.
+   * Float values are truncated.
+   *
+   * @param curveNo  Curve number of a numeric curve. [0,nCurves&gt;.
+   * @return         The requested value. 0 if null.
+   * @throws IllegalArgumentException  If curveNo is out of range,
+   *                                   or the curve is not numeric.
+   */
+  public long getLong(int curveNo)
+  {
+    return getLong(curveNo, 0);
+  }
+
+  /**
+   * Return the specified value of the current row.
+   *
+   * @param curveNo    Curve number. [0,nCurves&gt;.
+   * @param dimension  Dimension. [0,nDimensions&gt;.
+   * @return           The requested value as Double, Long, String or
+   *                   Boolean, depending on the value type of the curve.
+   *                   Null if null.
+   * @throws IllegalArgumentException  If curveNo or dimension is out of range.
+   */
+  public Object getValue(int curveNo, int dimension)
+  {
+    int index = getIndex(curveNo, dimension);
+
+    if (isNull_[index])
+      return null;
+
+    switch (curves_.get(curveNo).getValueType()) {
+      case FLOAT   : return doubles_[index];
+      case INTEGER : return longs_[index];
+      default      : return objects_[index];
+    }
+  }
+
+  /**
+   * Return the specified value of the current row.
+   *
+   * @param curveNo  Curve number. [0,nCurves&gt;.
+   * @return         The requested value as Double, Long, String or
+   *                 Boolean, depending on the value type of the curve.
+   *                 Null if null.
+   * @throws IllegalArgumentException  If curveNo is out of range.
+   */
+  public Object getValue(int curveNo)
+  {
+    return getValue(curveNo, 0);
+  }
+
+  /**
+   * Close this reader and the underlying input.
+   */
+  @Override
+  public void close()
+  {
+    state_ = State.END;
+    parser_.close();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "TimeSeries.JSON reader at time series " + (nTimeSeries_ - 1) + " row " + nRows_ + " of " + getCurves();
+  }
+}
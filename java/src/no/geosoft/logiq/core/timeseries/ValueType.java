@@ -0,0 +1,85 @@
+package no.geosoft.logiq.core.timeseries;
+
+/**
+ * The value types of TimeSeries.JSON curves.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public enum ValueType
+{
+  /** Floating point numbers. Read as double. */
+  FLOAT("float"),
+
+  /** Integral numbers. Read as long. */
+  INTEGER("integer"),
+
+  /** Strings. */
+  STRING("string"),
+
+  /** ISO 8601 date/time strings. Read as String. */
+  DATETIME("datetime"),
+
+  /** true or false. Read as Boolean. */
+  BOOLEAN("boolean");
+
+  /** Name of the type as used in TimeSeries.JSON. */
+  private final String name_;
+
+  /**
+   * Create a value type.
+   *
+   * @param name  Name of the type as used in TimeSeries.JSON. Non-null.
+   */
+  private ValueType(String name)
+  {
+    assert name != null : "name cannot be null";
+    name_ = name;
+  }
+
+  /**
+   * Return the value type of the specified TimeSeries.JSON name.
+   *
+   * @param name  Name of value type, like "float". Non-null.
+   * @return      The requested value type, or null if not supported.
+   * @throws IllegalArgumentException  If name is null.
+   */
+  public static ValueType get(String name)
+  {
+    if (name == null)
+      throw new IllegalArgumentException("name cannot be null");
+
+    for (ValueType valueType : values()) {
+      if (valueType.name_.equals(name))
+        return valueType;
+    }
+
+    return null;
+  }
+
+  /**
+   * Return the name of this type as used in TimeSeries.JSON.
+   *
+   * @return  Name of this type. Never null.
+   */
+  public String getName()
+  {
+    return name_;
+  }
+
+  /**
+   * Check if values of this type are numbers.
+   *
+   * @return  True if values of this type are numbers, false otherwise.
+   */
+  public boolean isNumeric()
+  {
+    return this == FLOAT || this == INTEGER;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return name_;
+  }
+}
@@ -0,0 +1,513 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import no.geosoft.cc.event.EventManager;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+import no.geosoft.logiq.core.jsonrpc.Request;
+
+/**
+ * Sender that gathers requests and sends them to the server as one
+ * JSON-RPC batch in a single frame.
+ * <p>
+ * Each request is serialized into the pending frame as it is added.
+ * The frame is sent when one of the following happens:
+ * <ul>
+ *   <li>The oldest pending request has waited <em>maxDelay</em> ms.</li>
+ *   <li>The frame has reached <em>maxBytes</em> characters.</li>
+ *   <li>The frame holds <em>maxRequests</em> requests.</li>
+ *   <li>{@link #flush} or {@link #close} is called.</li>
+ * </ul>
+ * A frame holding a single request is sent as a plain request.
+ * <p>
+ * If <em>merging</em> is enabled, <em>send</em> requests for the same stream
+ * and credentials are merged into one request by concatenating their
+ * TimeSeries.JSON data arrays. The merged request gets the ID of the first
+ * of them, and only this ID is answered by the server. Merged requests are
+ * placed after the other requests of the frame.
+ * <p>
+ * Instead of the "LogIqRequestSent" notification of each request, one
+ * "LogIqBatchSent" notification is issued per frame, with the list of
+ * requests as data.
+ * <p>
+ * The sender is thread safe. Frames are sent, and listeners notified,
+ * without holding the lock of the sender, so frames taken by different
+ * threads at the same time may reach the server in either order.
+ * Requests pending when the connection fails are lost.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class BatchingSender
+{
+  /**
+   * A JSON array given as unparsed text. Used for the merged data param,
+   * which is written as is by JsonUtil.
+   */
+  private static final class RawJson
+    implements JsonSerializable
+  {
+    /** The JSON text. */
+    private final String json_;
+
+    /**
+     * Create a raw JSON instance.
+     *
+     * @param json  The JSON text. Non-null.
+     */
+    RawJson(String json)
+    {
+      assert json != null : "json cannot be null";
+      json_ = json;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toJson()
+    {
+      return json_;
+    }
+  }
+
+  /**
+   * The merged send requests of one stream.
+   */
+  private static final class MergedSend
+  {
+    /** The first request merged. Provides ID and all params but data. */
+    private final Request request_;
+
+    /** The content of the merged data arrays, without the brackets. */
+    private final StringBuilder data_ = new StringBuilder();
+
+    /**
+     * Create a merged send request.
+     *
+     * @param request  The first request to merge. Non-null.
+     */
+    MergedSend(Request request)
+    {
+      assert request != null : "request cannot be null";
+      request_ = request;
+    }
+
+    /**
+     * Return the merged request.
+     *
+     * @return  The merged request. Never null.
+     */
+    Request getRequest()
+    {
+      // Params are copied as held, so the data param is not decoded
+      List<Object> params = new ArrayList<>();
+      for (int i = 0; i < request_.getNParams(); i++)
+        params.add(request_.getRawParam(i));
+
+      params.set(DATA_PARAM, new RawJson("[" + data_ + "]"));
+      return new Request(request_.getMethod(), params, request_.getId());
+    }
+  }
+
+  /**
+   * A frame taken from the sender, ready to be sent.
+   */
+  private static final class Frame
+  {
+    /** The JSON text of the frame. */
+    private final String text_;
+
+    /** The requests of the frame, merged requests included. */
+    private final List<Request> frameRequests_;
+
+    /** The requests added to the sender for this frame. */
+    private final List<Request> requests_;
+
+    /**
+     * Create a frame.
+     *
+     * @param text           The JSON text of the frame. Non-null.
+     * @param frameRequests  The requests of the frame. Non-null.
+     * @param requests       The requests added for the frame. Non-null.
+     */
+    Frame(String text, List<Request> frameRequests, List<Request> requests)
+    {
+      assert text != null : "text cannot be null";
+      assert frameRequests != null : "frameRequests cannot be null";
+      assert requests != null : "requests cannot be null";
+
+      text_ = text;
+      frameRequests_ = frameRequests;
+      requests_ = requests;
+    }
+  }
+
+  /** The logger instance. */
+  private static final Logger logger_ = Logger.getLogger(BatchingSender.class.getName());
+
+  /** Name of the method of requests that may be merged. */
+  private static final String SEND_METHOD = "send";
+
+  /** Number of params of send requests. */
+  private static final int N_SEND_PARAMS = 4;
+
+  /** Index of the TimeSeries.JSON data param of send requests. */
+  private static final int DATA_PARAM = 3;
+
+  /** Timer for delayed flushing, shared by all senders. */
+  private static final ScheduledExecutorService timer_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LogIQ batching sender");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /** The client to send through. */
+  private final WebSocketClient client_;
+
+  /** Max time in milliseconds a request is kept pending. 0 to flush by size and explicitly only. */
+  private long maxDelay_ = 10L;
+
+  /** Max number of characters of a frame. */
+  private int maxBytes_ = 64 * 1024;
+
+  /** Max number of requests of a frame. */
+  private int maxRequests_ = 1000;
+
+  /** Indicate if send requests for the same stream are merged. */
+  private boolean isMerging_ = false;
+
+  /** The serialized requests not merged, separated by commas. */
+  private final StringBuilder frame_ = new StringBuilder();
+
+  /** The requests serialized into frame_. */
+  private List<Request> writtenRequests_ = new ArrayList<>();
+
+  /** The merged send requests, by stream and credentials. */
+  private final Map<String,MergedSend> mergedSends_ = new LinkedHashMap<>();
+
+  /** Number of characters of the pending merged data. */
+  private int mergedLength_ = 0;
+
+  /** The requests pending. */
+  private List<Request> requests_ = new ArrayList<>();
+
+  /** The pending delayed flush. Null if none. */
+  private ScheduledFuture<?> scheduledFlush_ = null;
+
+  /** Indicate if the sender is closed. */
+  private boolean isClosed_ = false;
+
+  /**
+   * Create a batching sender for the specified client.
+   *
+   * @param client  Client to send through. Non-null.
+   * @throws IllegalArgumentException  If client is null.
+   */
+  public BatchingSender(WebSocketClient client)
+  {
+    if (client == null)
+      throw new IllegalArgumentException("client cannot be null");
+
+    client_ = client;
+  }
+
+  /**
+   * Set the max time a request is kept pending before its frame is sent.
+   * Default is 10 ms.
+   *
+   * @param maxDelay  Max delay in milliseconds. 0 to only send frames
+   *                  when full or explicitly flushed. [0,&gt;.
+   * @throws IllegalArgumentException  If maxDelay is &lt; 0.
+   */
+  public synchronized void setMaxDelay(long maxDelay)
+  {
+    if (maxDelay < 0)
+      throw new IllegalArgumentException("Invalid maxDelay: " + maxDelay);
+
+    maxDelay_ = maxDelay;
+  }
+
+  /**
+   * Set the size at which a frame is sent. Default is 64kB.
+   * The frame is sent as soon as it reaches this size, so it may exceed
+   * it by the size of its last request.
+   *
+   * @param maxBytes  Max size of a frame in characters. [1,&gt;.
+   * @throws IllegalArgumentException  If maxBytes is &lt; 1.
+   */
+  public synchronized void setMaxBytes(int maxBytes)
+  {
+    if (maxBytes < 1)
+      throw new IllegalArgumentException("Invalid maxBytes: " + maxBytes);
+
+    maxBytes_ = maxBytes;
+  }
+
+  /**
+   * Set the max number of requests of a frame. Default is 1000.
+   *
+   * @param maxRequests  Max number of requests of a frame. [1,&gt;.
+   * @throws IllegalArgumentException  If maxRequests is &lt; 1.
+   */
+  public synchronized void setMaxRequests(int maxRequests)
+  {
+    if (maxRequests < 1)
+      throw new IllegalArgumentException("Invalid maxRequests: " + maxRequests);
+
+    maxRequests_ = maxRequests;
+  }
+
+  /**
+   * Specify if send requests for the same stream and credentials
+   * should be merged into one request. Default is false.
+   *
+   * @param isMerging  True to merge send requests, false to send them individually.
+   */
+  public synchronized void setMerging(boolean isMerging)
+  {
+    isMerging_ = isMerging;
+  }
+
+  /**
+   * Return the number of requests currently pending.
+   *
+   * @return  Number of pending requests. [0,&gt;.
+   */
+  public synchronized int getNPendingRequests()
+  {
+    return requests_.size();
+  }
+
+  /**
+   * Add the specified request to the pending frame. The frame is sent
+   * if this makes it reach its size limits.
+   *
+   * @param request  Request to send. Non-null.
+   * @throws IllegalArgumentException  If request is null.
+   * @throws IllegalStateException     If the sender is closed.
+   * @throws IOException  If a frame was sent and sending failed.
+   */
+  public void send(Request request)
+    throws IOException
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    Frame frame = null;
+
+    synchronized (this) {
+      if (isClosed_)
+        throw new IllegalStateException("Sender is closed");
+
+      if (!isMerging_ || !merge(request)) {
+        if (frame_.length() > 0)
+          frame_.append(',');
+        request.writeTo(frame_);
+        writtenRequests_.add(request);
+      }
+
+      requests_.add(request);
+
+      if (frame_.length() + mergedLength_ >= maxBytes_ || getNFrameRequests() >= maxRequests_)
+        frame = takeFrame();
+
+      else if (scheduledFlush_ == null && maxDelay_ > 0)
+        scheduledFlush_ = timer_.schedule(this::flushScheduled, maxDelay_, TimeUnit.MILLISECONDS);
+    }
+
+    // Sent outside the lock so other threads may add requests meanwhile
+    if (frame != null)
+      sendFrame(frame);
+  }
+
+  /**
+   * Merge the specified request with the pending send requests of
+   * the same stream, if possible.
+   *
+   * @param request  Request to merge. Non-null.
+   * @return         True if the request was merged, false if it is not
+   *                 a mergeable send request.
+   */
+  private boolean merge(Request request)
+  {
+    assert request != null : "request cannot be null";
+
+    if (!request.getMethod().equals(SEND_METHOD) || request.getNParams() != N_SEND_PARAMS)
+      return false;
+
+    String data = request.getParamAsJson(DATA_PARAM);
+    if (data.length() < 2 || data.charAt(0) != '[' || data.charAt(data.length() - 1) != ']')
+      return false;
+
+    String key = request.getParamAsJson(0) + "," + request.getParamAsJson(1) + "," + request.getParamAsJson(2);
+
+    MergedSend mergedSend = mergedSends_.get(key);
+    if (mergedSend == null) {
+      mergedSend = new MergedSend(request);
+      mergedSends_.put(key, mergedSend);
+    }
+
+    // Empty data arrays add nothing
+    String content = data.substring(1, data.length() - 1).trim();
+    if (content.isEmpty())
+      return true;
+
+    if (mergedSend.data_.length() > 0) {
+      mergedSend.data_.append(',');
+      mergedLength_++;
+    }
+
+    mergedSend.data_.append(content);
+    mergedLength_ += content.length();
+
+    return true;
+  }
+
+  /**
+   * Return the number of requests the pending frame will hold.
+   *
+   * @return  Number of requests of the pending frame. [0,&gt;.
+   */
+  private int getNFrameRequests()
+  {
+    return writtenRequests_.size() + mergedSends_.size();
+  }
+
+  /**
+   * Take the pending requests as one frame and reset the sender.
+   *
+   * @return  The frame of the pending requests, or null if there are none.
+   */
+  private synchronized Frame takeFrame()
+  {
+    if (scheduledFlush_ != null) {
+      scheduledFlush_.cancel(false);
+      scheduledFlush_ = null;
+    }
+
+    if (requests_.isEmpty())
+      return null;
+
+    //
+    // Complete the frame with the merged requests
+    //
+    List<Request> frameRequests = writtenRequests_;
+    for (MergedSend mergedSend : mergedSends_.values()) {
+      Request request = mergedSend.getRequest();
+      if (frame_.length() > 0)
+        frame_.append(',');
+      request.writeTo(frame_);
+      frameRequests.add(request);
+    }
+
+    // A single request is sent as is, otherwise as a batch
+    String text = frameRequests.size() > 1 ? "[" + frame_ + "]" : frame_.toString();
+
+    Frame frame = new Frame(text, frameRequests, requests_);
+
+    frame_.setLength(0);
+    writtenRequests_ = new ArrayList<>();
+    mergedSends_.clear();
+    mergedLength_ = 0;
+    requests_ = new ArrayList<>();
+
+    return frame;
+  }
+
+  /**
+   * Send the specified frame and notify listeners.
+   * Called without holding the lock of this sender.
+   *
+   * @param frame  Frame to send. Non-null.
+   * @throws IOException  If sending failed. The requests of the frame are lost.
+   */
+  private void sendFrame(Frame frame)
+    throws IOException
+  {
+    assert frame != null : "frame cannot be null";
+
+    // Only requests of the frame are answered. Those merged into
+    // another are not, and so not recorded.
+    // Frames are serialized as requests are added, so encode time is not recorded.
+    ClientMetrics metrics = client_.getMetrics();
+    long sendTime = System.nanoTime();
+    for (Request request : frame.frameRequests_)
+      metrics.requestSent(request, sendTime);
+
+    try {
+      if (client_.isBinary()) {
+        byte[] bytes = frame.text_.getBytes(StandardCharsets.UTF_8);
+        client_.send(ByteBuffer.wrap(bytes));
+        metrics.messageSent(bytes.length);
+      }
+      else {
+        client_.send(frame.text_);
+        metrics.messageSent(frame.text_.length());
+      }
+    }
+    catch (WebsocketNotConnectedException exception) {
+      throw new IOException("Unable to send batch of " + frame.requests_.size() + " requests", exception);
+    }
+
+    EventManager.getInstance().notify("LogIqBatchSent", client_, Collections.unmodifiableList(frame.requests_));
+  }
+
+  /**
+   * Send the pending requests, if any, as one frame.
+   *
+   * @throws IOException  If sending failed. The pending requests are lost.
+   */
+  public void flush()
+    throws IOException
+  {
+    Frame frame = takeFrame();
+    if (frame != null)
+      sendFrame(frame);
+  }
+
+  /**
+   * Flush the pending requests when the max delay has passed.
+   */
+  private void flushScheduled()
+  {
+    try {
+      flush();
+    }
+    catch (IOException exception) {
+      logger_.log(Level.WARNING, "Delayed flush failed", exception);
+    }
+  }
+
+  /**
+   * Send any pending requests and close the sender.
+   * The client itself is not closed.
+   *
+   * @throws IOException  If sending failed.
+   */
+  public void close()
+    throws IOException
+  {
+    synchronized (this) {
+      if (isClosed_)
+        return;
+
+      isClosed_ = true;
+    }
+
+    flush();
+  }
+}
@@ -0,0 +1,608 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import no.geosoft.logiq.core.jsonrpc.ErrorType;
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.Response;
+
+/**
+ * Traffic metrics of a {@link WebSocketClient}.
+ * <p>
+ * Recorded are messages and bytes in and out, encode and decode time,
+ * error responses per {@link ErrorType} and the request to response
+ * latency per JSON-RPC method. Latency is measured from the request
+ * is passed to the socket until the first response with its ID is
+ * decoded, and only for requests sent through the client or a
+ * {@link BatchingSender} as Request instances. Byte counts of text
+ * frames are in characters.
+ * <p>
+ * Recording uses LongAdder counters and {@link Histogram}s and never
+ * blocks. The metrics are read through {@link #getSnapshot} or through
+ * JMX once registered, see {@link #register}.
+ * <p>
+ * The metrics are thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class ClientMetrics
+  implements ClientMetricsMBean
+{
+  /**
+   * A request awaiting its response.
+   */
+  private static final class PendingRequest
+  {
+    /** Method of the request. */
+    private final String method_;
+
+    /** Time the request was sent, as System.nanoTime(). */
+    private final long sendTime_;
+
+    /**
+     * Create a pending request.
+     *
+     * @param method    Method of the request. Non-null.
+     * @param sendTime  Time the request was sent, as System.nanoTime().
+     */
+    PendingRequest(String method, long sendTime)
+    {
+      assert method != null : "method cannot be null";
+
+      method_ = method;
+      sendTime_ = sendTime;
+    }
+  }
+
+  /**
+   * Immutable view of the metrics at a given time.
+   */
+  public static final class Snapshot
+  {
+    /** Time of the snapshot, as System.nanoTime(). */
+    private final long nanoTime_;
+
+    /** Number of messages sent. */
+    private final long nMessagesOut_;
+
+    /** Number of bytes sent. */
+    private final long nBytesOut_;
+
+    /** Number of messages received. */
+    private final long nMessagesIn_;
+
+    /** Number of bytes received. */
+    private final long nBytesIn_;
+
+    /** Encode time in nanoseconds. */
+    private final Histogram encodeTime_;
+
+    /** Decode time in nanoseconds. */
+    private final Histogram decodeTime_;
+
+    /** Latency in nanoseconds, by method. */
+    private final Map<String,Histogram> latencies_;
+
+    /** Number of error responses, by error type. */
+    private final Map<ErrorType,Long> nErrors_;
+
+    /** Number of error responses with codes not in ErrorType. */
+    private final long nOtherErrors_;
+
+    /**
+     * Create a snapshot of the specified metrics.
+     *
+     * @param metrics  Metrics to take snapshot of. Non-null.
+     */
+    private Snapshot(ClientMetrics metrics)
+    {
+      assert metrics != null : "metrics cannot be null";
+
+      nanoTime_ = System.nanoTime();
+      nMessagesOut_ = metrics.nMessagesOut_.sum();
+      nBytesOut_ = metrics.nBytesOut_.sum();
+      nMessagesIn_ = metrics.nMessagesIn_.sum();
+      nBytesIn_ = metrics.nBytesIn_.sum();
+      encodeTime_ = metrics.encodeTime_.copy();
+      decodeTime_ = metrics.decodeTime_.copy();
+
+      Map<String,Histogram> latencies = new HashMap<>();
+      for (Map.Entry<String,Histogram> entry : metrics.latencies_.entrySet())
+        latencies.put(entry.getKey(), entry.getValue().copy());
+      latencies_ = Collections.unmodifiableMap(latencies);
+
+      Map<ErrorType,Long> nErrors = new EnumMap<>(ErrorType.class);
+      for (Map.Entry<ErrorType,LongAdder> entry : metrics.nErrors_.entrySet())
+        nErrors.put(entry.getKey(), entry.getValue().sum());
+      nErrors_ = Collections.unmodifiableMap(nErrors);
+
+      nOtherErrors_ = metrics.nOtherErrors_.sum();
+    }
+
+    /**
+     * Return the number of messages sent.
+     *
+     * @return  Number of messages sent. [0,&gt;.
+     */
+    public long getNMessagesOut()
+    {
+      return nMessagesOut_;
+    }
+
+    /**
+     * Return the number of bytes sent.
+     *
+     * @return  Number of bytes sent. [0,&gt;.
+     */
+    public long getNBytesOut()
+    {
+      return nBytesOut_;
+    }
+
+    /**
+     * Return the number of messages received.
+     *
+     * @return  Number of messages received. [0,&gt;.
+     */
+    public long getNMessagesIn()
+    {
+      return nMessagesIn_;
+    }
+
+    /**
+     * Return the number of bytes received.
+     *
+     * @return  Number of bytes received. [0,&gt;.
+     */
+    public long getNBytesIn()
+    {
+      return nBytesIn_;
+    }
+
+    /**
+     * Return the time to encode messages.
+     *
+     * @return  Encode time histogram in nanoseconds. Never null.
+     */
+    public Histogram getEncodeTime()
+    {
+      return encodeTime_.copy();
+    }
+
+    /**
+     * Return the time to decode messages.
+     *
+     * @return  Decode time histogram in nanoseconds. Never null.
+     */
+    public Histogram getDecodeTime()
+    {
+      return decodeTime_.copy();
+    }
+
+    /**
+     * Return the request to response latency of each method.
+     *
+     * @return  Latency histograms in nanoseconds, by method. Never null.
+     */
+    public Map<String,Histogram> getLatencies()
+    {
+      Map<String,Histogram> latencies = new HashMap<>();
+      for (Map.Entry<String,Histogram> entry : latencies_.entrySet())
+        latencies.put(entry.getKey(), entry.getValue().copy());
+
+      return latencies;
+    }
+
+    /**
+     * Return the number of error responses of each error type.
+     * Types without errors are not included.
+     *
+     * @return  Number of error responses, by error type. Never null.
+     */
+    public Map<ErrorType,Long> getNErrors()
+    {
+      return nErrors_;
+    }
+
+    /**
+     * Return the number of error responses with codes not defined by ErrorType.
+     *
+     * @return  Number of other error responses. [0,&gt;.
+     */
+    public long getNOtherErrors()
+    {
+      return nOtherErrors_;
+    }
+
+    /**
+     * Return the rate of change of a counter between the specified
+     * earlier snapshot and this one.
+     *
+     * @param count         Count of this snapshot.
+     * @param earlierCount  Count of the earlier snapshot.
+     * @param earlier       The earlier snapshot. Non-null.
+     * @return              Rate per second. 0 if the snapshots are simultaneous.
+     */
+    private double getRate(long count, long earlierCount, Snapshot earlier)
+    {
+      if (earlier == null)
+        throw new IllegalArgumentException("earlier cannot be null");
+
+      long nanos = nanoTime_ - earlier.nanoTime_;
+      return nanos > 0 ? (count - earlierCount) * 1.0e9 / nanos : 0.0;
+    }
+
+    /**
+     * Return the number of messages sent per second since the specified snapshot.
+     *
+     * @param earlier  Earlier snapshot of the same metrics. Non-null.
+     * @return         Messages sent per second.
+     * @throws IllegalArgumentException  If earlier is null.
+     */
+    public double getMessagesOutRate(Snapshot earlier)
+    {
+      return getRate(nMessagesOut_, earlier != null ? earlier.nMessagesOut_ : 0L, earlier);
+    }
+
+    /**
+     * Return the number of bytes sent per second since the specified snapshot.
+     *
+     * @param earlier  Earlier snapshot of the same metrics. Non-null.
+     * @return         Bytes sent per second.
+     * @throws IllegalArgumentException  If earlier is null.
+     */
+    public double getBytesOutRate(Snapshot earlier)
+    {
+      return getRate(nBytesOut_, earlier != null ? earlier.nBytesOut_ : 0L, earlier);
+    }
+
+    /**
+     * Return the number of messages received per second since the specified snapshot.
+     *
+     * @param earlier  Earlier snapshot of the same metrics. Non-null.
+     * @return         Messages received per second.
+     * @throws IllegalArgumentException  If earlier is null.
+     */
+    public double getMessagesInRate(Snapshot earlier)
+    {
+      return getRate(nMessagesIn_, earlier != null ? earlier.nMessagesIn_ : 0L, earlier);
+    }
+
+    /**
+     * Return the number of bytes received per second since the specified snapshot.
+     *
+     * @param earlier  Earlier snapshot of the same metrics. Non-null.
+     * @return         Bytes received per second.
+     * @throws IllegalArgumentException  If earlier is null.
+     */
+    public double getBytesInRate(Snapshot earlier)
+    {
+      return getRate(nBytesIn_, earlier != null ? earlier.nBytesIn_ : 0L, earlier);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+      StringBuilder s = new StringBuilder();
+      s.append("out: " + nMessagesOut_ + " messages, " + nBytesOut_ + " bytes\n");
+      s.append("in: " + nMessagesIn_ + " messages, " + nBytesIn_ + " bytes\n");
+      s.append("encode: " + encodeTime_ + "\n");
+      s.append("decode: " + decodeTime_ + "\n");
+      for (Map.Entry<String,Histogram> entry : latencies_.entrySet())
+        s.append("latency " + entry.getKey() + ": " + entry.getValue() + "\n");
+      s.append("errors: " + nErrors_ + ", other: " + nOtherErrors_);
+      return s.toString();
+    }
+  }
+
+  /** Max number of requests awaiting their response that are tracked for latency. */
+  private static final int MAX_PENDING = 100000;
+
+  /** Number of messages sent. */
+  private final LongAdder nMessagesOut_ = new LongAdder();
+
+  /** Number of bytes sent. */
+  private final LongAdder nBytesOut_ = new LongAdder();
+
+  /** Number of messages received. */
+  private final LongAdder nMessagesIn_ = new LongAdder();
+
+  /** Number of bytes received. */
+  private final LongAdder nBytesIn_ = new LongAdder();
+
+  /** Encode time in nanoseconds. */
+  private final Histogram encodeTime_ = new Histogram();
+
+  /** Decode time in nanoseconds. */
+  private final Histogram decodeTime_ = new Histogram();
+
+  /** Latency in nanoseconds, by method. */
+  private final Map<String,Histogram> latencies_ = new ConcurrentHashMap<>();
+
+  /** Number of error responses, by error type. */
+  private final Map<ErrorType,LongAdder> nErrors_ = new ConcurrentHashMap<>();
+
+  /** Number of error responses with codes not in ErrorType. */
+  private final LongAdder nOtherErrors_ = new LongAdder();
+
+  /** Requests awaiting their response, by request ID. */
+  private final Map<Long,PendingRequest> pendingRequests_ = new ConcurrentHashMap<>();
+
+  /** Name the metrics are registered under in JMX. Null if not registered. */
+  private ObjectName objectName_ = null;
+
+  /**
+   * Create metrics for a client.
+   */
+  ClientMetrics()
+  {
+    // Nothing
+  }
+
+  /**
+   * Record that a message was sent.
+   *
+   * @param nBytes  Size of the message in bytes. [0,&gt;.
+   */
+  void messageSent(long nBytes)
+  {
+    nMessagesOut_.increment();
+    nBytesOut_.add(nBytes);
+  }
+
+  /**
+   * Record the time it took to encode a message.
+   *
+   * @param encodeTime  Time to encode the message in nanoseconds. [0,&gt;.
+   */
+  void messageEncoded(long encodeTime)
+  {
+    encodeTime_.record(encodeTime);
+  }
+
+  /**
+   * Record that the specified request is being sent, for latency measurement.
+   * Must be called before the request is passed to the socket, as the
+   * response may arrive before that call returns.
+   *
+   * @param request   Request being sent. Non-null.
+   * @param sendTime  Time the request is sent, as System.nanoTime().
+   */
+  void requestSent(Request request, long sendTime)
+  {
+    assert request != null : "request cannot be null";
+
+    // Requests never answered, like those lost with the connection,
+    // would otherwise accumulate. Tracking starts over instead.
+    if (pendingRequests_.size() >= MAX_PENDING)
+      pendingRequests_.clear();
+
+    pendingRequests_.put(request.getId(), new PendingRequest(request.getMethod(), sendTime));
+  }
+
+  /**
+   * Record that a message was received.
+   *
+   * @param nBytes  Size of the message in bytes. [0,&gt;.
+   */
+  void messageReceived(long nBytes)
+  {
+    nMessagesIn_.increment();
+    nBytesIn_.add(nBytes);
+  }
+
+  /**
+   * Record the time it took to decode a message.
+   *
+   * @param decodeTime  Time to decode the message in nanoseconds. [0,&gt;.
+   */
+  void messageDecoded(long decodeTime)
+  {
+    decodeTime_.record(decodeTime);
+  }
+
+  /**
+   * Record that the specified response was received.
+   *
+   * @param response     Response that was received. Non-null.
+   * @param receiveTime  Time the response was received, as System.nanoTime().
+   */
+  void responseReceived(Response response, long receiveTime)
+  {
+    assert response != null : "response cannot be null";
+
+    Long id = response.getId();
+    PendingRequest pendingRequest = id != null ? pendingRequests_.remove(id) : null;
+    if (pendingRequest != null)
+      latencies_.computeIfAbsent(pendingRequest.method_, key -> new Histogram()).record(receiveTime - pendingRequest.sendTime_);
+
+    Response.Error error = response.getError();
+    if (error != null) {
+      ErrorType errorType = ErrorType.get(error.getCode());
+      if (errorType != null)
+        nErrors_.computeIfAbsent(errorType, key -> new LongAdder()).increment();
+      else
+        nOtherErrors_.increment();
+    }
+  }
+
+  /**
+   * Forget the requests awaiting their response. Called when the
+   * connection is closed, as these will never be answered.
+   */
+  void connectionClosed()
+  {
+    pendingRequests_.clear();
+  }
+
+  /**
+   * Return a snapshot of the current metrics.
+   *
+   * @return  A snapshot of the current metrics. Never null.
+   */
+  public Snapshot getSnapshot()
+  {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Register these metrics in the platform MBean server under the
+   * name "no.geosoft.logiq:type=WebSocketClient,name=&lt;name&gt;".
+   * Any previous registration is removed.
+   *
+   * @param name  Name of the client, e.g. the server URI. Non-null.
+   * @throws IllegalArgumentException  If name is null.
+   * @throws JMException  If registration fails.
+   */
+  public synchronized void register(String name)
+    throws JMException
+  {
+    if (name == null)
+      throw new IllegalArgumentException("name cannot be null");
+
+    unregister();
+
+    ObjectName objectName = new ObjectName("no.geosoft.logiq:type=WebSocketClient,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    objectName_ = objectName;
+  }
+
+  /**
+   * Remove these metrics from the platform MBean server.
+   * No-op if they are not registered.
+   *
+   * @throws JMException  If unregistration fails.
+   */
+  public synchronized void unregister()
+    throws JMException
+  {
+    if (objectName_ == null)
+      return;
+
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    if (mbeanServer.isRegistered(objectName_))
+      mbeanServer.unregisterMBean(objectName_);
+
+    objectName_ = null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNMessagesOut()
+  {
+    return nMessagesOut_.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNBytesOut()
+  {
+    return nBytesOut_.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNMessagesIn()
+  {
+    return nMessagesIn_.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNBytesIn()
+  {
+    return nBytesIn_.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNErrors()
+  {
+    long nErrors = nOtherErrors_.sum();
+    for (LongAdder n : nErrors_.values())
+      nErrors += n.sum();
+
+    return nErrors;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getNErrors(String errorType)
+  {
+    if (errorType == null)
+      throw new IllegalArgumentException("errorType cannot be null");
+
+    for (Map.Entry<ErrorType,LongAdder> entry : nErrors_.entrySet()) {
+      if (entry.getKey().name().equals(errorType))
+        return entry.getValue().sum();
+    }
+
+    return 0L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double getMeanEncodeTime()
+  {
+    return encodeTime_.getMean() / 1000.0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double getMeanDecodeTime()
+  {
+    return decodeTime_.getMean() / 1000.0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String[] getMethods()
+  {
+    return latencies_.keySet().toArray(new String[0]);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getLatency(String method, double percentile)
+  {
+    if (method == null)
+      throw new IllegalArgumentException("method cannot be null");
+
+    Histogram latency = latencies_.get(method);
+    return latency != null ? TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(percentile)) : 0L;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reset()
+  {
+    nMessagesOut_.reset();
+    nBytesOut_.reset();
+    nMessagesIn_.reset();
+    nBytesIn_.reset();
+    encodeTime_.reset();
+    decodeTime_.reset();
+    latencies_.clear();
+    nErrors_.clear();
+    nOtherErrors_.reset();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return getSnapshot().toString();
+  }
+}
@@ -0,0 +1,90 @@
+package no.geosoft.logiq.core.websocket;
+
+/**
+ * JMX management interface of {@link ClientMetrics}.
+ * <p>
+ * Times are in microseconds. Counters are totals since the metrics
+ * were created or last reset, and rates are left to the monitoring tool.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public interface ClientMetricsMBean
+{
+  /**
+   * Return the number of messages sent.
+   *
+   * @return  Number of messages sent. [0,&gt;.
+   */
+  long getNMessagesOut();
+
+  /**
+   * Return the number of bytes sent.
+   *
+   * @return  Number of bytes sent. [0,&gt;.
+   */
+  long getNBytesOut();
+
+  /**
+   * Return the number of messages received.
+   *
+   * @return  Number of messages received. [0,&gt;.
+   */
+  long getNMessagesIn();
+
+  /**
+   * Return the number of bytes received.
+   *
+   * @return  Number of bytes received. [0,&gt;.
+   */
+  long getNBytesIn();
+
+  /**
+   * Return the number of error responses received.
+   *
+   * @return  Number of error responses. [0,&gt;.
+   */
+  long getNErrors();
+
+  /**
+   * Return the number of error responses received of the specified type.
+   *
+   * @param errorType  Name of error type, see ErrorType. Non-null.
+   * @return           Number of error responses of the type. [0,&gt;.
+   */
+  long getNErrors(String errorType);
+
+  /**
+   * Return the mean time to encode a message.
+   *
+   * @return  Mean encode time in microseconds. [0,&gt;.
+   */
+  double getMeanEncodeTime();
+
+  /**
+   * Return the mean time to decode a message.
+   *
+   * @return  Mean decode time in microseconds. [0,&gt;.
+   */
+  double getMeanDecodeTime();
+
+  /**
+   * Return the methods with latency recorded.
+   *
+   * @return  The methods with latency recorded. Never null.
+   */
+  String[] getMethods();
+
+  /**
+   * Return the specified request to response latency percentile of the given method.
+   *
+   * @param method      Method to get latency of. Non-null.
+   * @param percentile  Percentile to get. [0.0,100.0].
+   * @return            The requested latency in microseconds. 0 if none is recorded.
+   */
+  long getLatency(String method, double percentile);
+
+  /**
+   * Reset all metrics.
+   */
+  void reset();
+}
@@ -0,0 +1,230 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative long values, such as durations in nanoseconds.
+ * <p>
+ * Values are counted in log-linear buckets in the style of HdrHistogram:
+ * each power of two is split into 16 equally wide buckets, so percentiles
+ * are reported with a relative error of less than 1/16 (about 6%) over the
+ * full range of long. Recording is lock-free and allocation free, and costs
+ * a few atomic increments.
+ * <p>
+ * The histogram is thread safe. Values recorded while the histogram is
+ * being read may or may not be included.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class Histogram
+{
+  /** Number of bits of the sub bucket index. */
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /** Number of buckets per power of two. */
+  private static final int N_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Total number of buckets. Values below N_SUB_BUCKETS get a bucket each. */
+  private static final int N_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * N_SUB_BUCKETS;
+
+  /** Number of values in each bucket. */
+  private final AtomicLongArray counts_ = new AtomicLongArray(N_BUCKETS);
+
+  /** Number of values recorded. */
+  private final LongAdder count_ = new LongAdder();
+
+  /** Sum of the values recorded. */
+  private final LongAdder sum_ = new LongAdder();
+
+  /** Largest value recorded. */
+  private final AtomicLong max_ = new AtomicLong();
+
+  /**
+   * Create an empty histogram.
+   */
+  public Histogram()
+  {
+    // Nothing
+  }
+
+  /**
+   * Return the bucket of the specified value.
+   *
+   * @param value  Value to get bucket of. [0,&gt;.
+   * @return       Bucket index. [0,N_BUCKETS&gt;.
+   */
+  private static int getBucket(long value)
+  {
+    assert value >= 0 : "Invalid value: " + value;
+
+    if (value < N_SUB_BUCKETS)
+      return (int) value;
+
+    // The exponent picks the group, the bits below the leading one the bucket within it
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (N_SUB_BUCKETS - 1);
+
+    return (shift + 1) * N_SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Return the largest value of the specified bucket.
+   *
+   * @param bucket  Bucket to get upper bound of. [0,N_BUCKETS&gt;.
+   * @return        Largest value that goes in the bucket.
+   */
+  private static long getUpperBound(int bucket)
+  {
+    assert bucket >= 0 && bucket < N_BUCKETS : "Invalid bucket: " + bucket;
+
+    if (bucket < N_SUB_BUCKETS)
+      return bucket;
+
+    int shift = bucket / N_SUB_BUCKETS - 1;
+    long lowerBound = (long) (N_SUB_BUCKETS + bucket % N_SUB_BUCKETS) << shift;
+
+    return lowerBound + ((1L << shift) - 1);
+  }
+
+  /**
+   * Record the specified value. Negative values are recorded as 0.
+   *
+   * @param value  Value to record.
+   */
+  public void record(long value)
+  {
+    if (value < 0)
+      value = 0;
+
+    counts_.incrementAndGet(getBucket(value));
+    count_.increment();
+    sum_.add(value);
+
+    // Only contended until the max has settled
+    long max = max_.get();
+    while (value > max && !max_.compareAndSet(max, value))
+      max = max_.get();
+  }
+
+  /**
+   * Return the number of values recorded.
+   *
+   * @return  Number of values recorded. [0,&gt;.
+   */
+  public long getCount()
+  {
+    return count_.sum();
+  }
+
+  /**
+   * Return the sum of the values recorded.
+   *
+   * @return  Sum of the values recorded. [0,&gt;.
+   */
+  public long getSum()
+  {
+    return sum_.sum();
+  }
+
+  /**
+   * Return the mean of the values recorded.
+   *
+   * @return  Mean of the values recorded. 0 if none.
+   */
+  public double getMean()
+  {
+    long count = count_.sum();
+    return count > 0 ? (double) sum_.sum() / count : 0.0;
+  }
+
+  /**
+   * Return the largest value recorded.
+   *
+   * @return  The largest value recorded. 0 if none.
+   */
+  public long getMax()
+  {
+    return max_.get();
+  }
+
+  /**
+   * Return the specified percentile of the values recorded, i.e. the
+   * value at or below which the given percentage of the values are.
+   * The value is reported as the upper bound of its bucket, capped by
+   * the max value recorded.
+   *
+   * @param percentile  Percentile to get. [0.0,100.0].
+   * @return            The requested percentile. 0 if no values are recorded.
+   * @throws IllegalArgumentException  If percentile is out of range.
+   */
+  public long getPercentile(double percentile)
+  {
+    if (!(percentile >= 0.0 && percentile <= 100.0))
+      throw new IllegalArgumentException("Invalid percentile: " + percentile);
+
+    // Counted from the buckets, as count_ may be ahead of them while recording
+    long count = 0;
+    for (int i = 0; i < N_BUCKETS; i++)
+      count += counts_.get(i);
+
+    if (count == 0)
+      return 0L;
+
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+
+    long n = 0;
+    for (int i = 0; i < N_BUCKETS; i++) {
+      n += counts_.get(i);
+      if (n >= rank)
+        return Math.min(getUpperBound(i), max_.get());
+    }
+
+    return max_.get();
+  }
+
+  /**
+   * Return a copy of this histogram.
+   *
+   * @return  A copy of this histogram. Never null.
+   */
+  public Histogram copy()
+  {
+    Histogram histogram = new Histogram();
+
+    for (int i = 0; i < N_BUCKETS; i++)
+      histogram.counts_.set(i, counts_.get(i));
+
+    histogram.count_.add(count_.sum());
+    histogram.sum_.add(sum_.sum());
+    histogram.max_.set(max_.get());
+
+    return histogram;
+  }
+
+  /**
+   * Remove all values recorded.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < N_BUCKETS; i++)
+      counts_.set(i, 0L);
+
+    count_.reset();
+    sum_.reset();
+    max_.set(0L);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "n=" + getCount() +
+           " mean=" + Math.round(getMean()) +
+           " p50=" + getPercentile(50.0) +
+           " p99=" + getPercentile(99.0) +
+           " max=" + getMax();
+  }
+}
@@ -0,0 +1,266 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lazy, rate limited and size capped logging of the message traffic
+ * of the web socket package.
+ * <p>
+ * Messages are only built if the logger accepts the level, and then
+ * clipped to a max length. Each level is limited to a max number of
+ * messages per second, and the number of messages dropped in a second
+ * is logged at the start of the next.
+ * <p>
+ * With the level disabled, {@link #logPayload} costs a level check only,
+ * and {@link #log} the level check and the creation of the supplier.
+ * <p>
+ * The instance is a singleton and is thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class MessageLogger
+{
+  /**
+   * The levels subject to rate limiting.
+   */
+  private static final class Levels
+  {
+    /** The levels, from fine to severe. */
+    private static final Level[] LEVELS = {Level.FINEST, Level.FINER, Level.FINE, Level.CONFIG,
+                                           Level.INFO, Level.WARNING, Level.SEVERE};
+
+    /** Number of levels. */
+    static final int N_LEVELS = LEVELS.length;
+
+    /**
+     * Private constructor to prevent client instantiation.
+     */
+    private Levels()
+    {
+      assert false;
+    }
+
+    /**
+     * Return the index of the specified level, i.e. of the nearest
+     * standard level at or below it.
+     *
+     * @param level  Level to get index of. Non-null.
+     * @return       Index of level. [0,N_LEVELS&gt;.
+     */
+    static int indexOf(Level level)
+    {
+      assert level != null : "level cannot be null";
+
+      for (int i = N_LEVELS - 1; i > 0; i--) {
+        if (level.intValue() >= LEVELS[i].intValue())
+          return i;
+      }
+
+      return 0;
+    }
+  }
+
+  /** The sole instance of this class. */
+  private static final MessageLogger instance_ = new MessageLogger();
+
+  /** Length of the rate limiting window. */
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** Max length of a logged message. */
+  private volatile int maxLength_ = 200;
+
+  /** Max number of messages logged per second and level. */
+  private volatile int maxRate_ = 100;
+
+  /** Start of the current window, by level index. */
+  private final AtomicLong[] windowStart_ = new AtomicLong[Levels.N_LEVELS];
+
+  /** Number of messages logged in the current window, by level index. */
+  private final AtomicLong[] nLogged_ = new AtomicLong[Levels.N_LEVELS];
+
+  /** Number of messages dropped in the current window, by level index. */
+  private final AtomicLong[] nDropped_ = new AtomicLong[Levels.N_LEVELS];
+
+  /**
+   * Create the message logger instance.
+   */
+  private MessageLogger()
+  {
+    long now = System.nanoTime();
+    for (int i = 0; i < Levels.N_LEVELS; i++) {
+      windowStart_[i] = new AtomicLong(now);
+      nLogged_[i] = new AtomicLong();
+      nDropped_[i] = new AtomicLong();
+    }
+  }
+
+  /**
+   * Return the sole instance of this class.
+   *
+   * @return  The message logger instance. Never null.
+   */
+  public static MessageLogger getInstance()
+  {
+    return instance_;
+  }
+
+  /**
+   * Set the max length of logged messages. Longer messages are clipped,
+   * with a statement of how much was clipped. Default is 200.
+   *
+   * @param maxLength  Max message length. [1,&gt;.
+   * @throws IllegalArgumentException  If maxLength is &lt; 1.
+   */
+  public void setMaxLength(int maxLength)
+  {
+    if (maxLength < 1)
+      throw new IllegalArgumentException("Invalid maxLength: " + maxLength);
+
+    maxLength_ = maxLength;
+  }
+
+  /**
+   * Return the max length of logged messages.
+   *
+   * @return  Max message length. [1,&gt;.
+   */
+  public int getMaxLength()
+  {
+    return maxLength_;
+  }
+
+  /**
+   * Set the max number of messages logged per second at each level.
+   * Default is 100.
+   *
+   * @param maxRate  Max number of messages per second. [1,&gt;.
+   * @throws IllegalArgumentException  If maxRate is &lt; 1.
+   */
+  public void setMaxRate(int maxRate)
+  {
+    if (maxRate < 1)
+      throw new IllegalArgumentException("Invalid maxRate: " + maxRate);
+
+    maxRate_ = maxRate;
+  }
+
+  /**
+   * Return the max number of messages logged per second at each level.
+   *
+   * @return  Max number of messages per second. [1,&gt;.
+   */
+  public int getMaxRate()
+  {
+    return maxRate_;
+  }
+
+  /**
+   * Log the message of the specified supplier, unless the level is
+   * disabled or the rate limit has been reached.
+   *
+   * @param logger   Logger to log to. Non-null.
+   * @param level    Level to log at. Non-null.
+   * @param message  Supplier of the message. Only called if the message is logged. Non-null.
+   * @throws IllegalArgumentException  If logger or level is null.
+   */
+  public void log(Logger logger, Level level, Supplier<String> message)
+  {
+    if (logger == null)
+      throw new IllegalArgumentException("logger cannot be null");
+
+    if (level == null)
+      throw new IllegalArgumentException("level cannot be null");
+
+    if (!logger.isLoggable(level) || !acquire(logger, level))
+      return;
+
+    logger.log(level, clip(message.get(), maxLength_));
+  }
+
+  /**
+   * Log the specified message payload with the given prefix, unless
+   * the level is disabled or the rate limit has been reached.
+   * Only the part of the payload being logged is copied.
+   *
+   * @param logger   Logger to log to. Non-null.
+   * @param level    Level to log at. Non-null.
+   * @param prefix   Text to put in front of the payload. Non-null.
+   * @param payload  Payload to log. Non-null.
+   * @throws IllegalArgumentException  If logger or level is null.
+   */
+  public void logPayload(Logger logger, Level level, String prefix, CharSequence payload)
+  {
+    if (logger == null)
+      throw new IllegalArgumentException("logger cannot be null");
+
+    if (level == null)
+      throw new IllegalArgumentException("level cannot be null");
+
+    if (!logger.isLoggable(level) || !acquire(logger, level))
+      return;
+
+    logger.log(level, prefix + clip(payload, maxLength_));
+  }
+
+  /**
+   * Count a message against the rate limit of its level.
+   * When a new window starts, the number of messages dropped in the
+   * previous one is logged.
+   *
+   * @param logger  Logger to report dropped messages to. Non-null.
+   * @param level   Level of the message. Non-null.
+   * @return        True if the message may be logged, false if it should be dropped.
+   */
+  private boolean acquire(Logger logger, Level level)
+  {
+    assert logger != null : "logger cannot be null";
+    assert level != null : "level cannot be null";
+
+    int index = Levels.indexOf(level);
+
+    long now = System.nanoTime();
+    long windowStart = windowStart_[index].get();
+
+    // The thread that starts the new window reports the drops of the previous one
+    if (now - windowStart >= WINDOW_NANOS && windowStart_[index].compareAndSet(windowStart, now)) {
+      nLogged_[index].set(0);
+      long nDropped = nDropped_[index].getAndSet(0);
+      if (nDropped > 0)
+        logger.log(level, nDropped + " log messages dropped");
+    }
+
+    if (nLogged_[index].incrementAndGet() > maxRate_) {
+      nDropped_[index].incrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Return a clipped version of the specified text, including a
+   * statement of how much was clipped.
+   *
+   * @param text    Text to clip. Non-null.
+   * @param length  Approximate length of returning string. [0,&gt;.
+   * @return        Requested string. Never null.
+   */
+  static String clip(CharSequence text, int length)
+  {
+    assert text != null : "text cannot be null";
+    assert length >= 0 : "invalid length";
+
+    int textLength = text.length();
+
+    // As Response.clip(), the clip statement must pay off
+    if (textLength < length + 13)
+      return text.toString();
+
+    int nMissing = textLength - length;
+    return text.subSequence(0, length) + "... (" + nMissing + " more)";
+  }
+}
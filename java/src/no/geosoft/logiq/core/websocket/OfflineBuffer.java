@@ -0,0 +1,321 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded first-in first-out buffer of serialized messages, used by
+ * {@link WebSocketClient} to hold requests issued while disconnected.
+ * <p>
+ * The messages are kept back to back in a ring of fixed capacity,
+ * either on the heap or in a memory-mapped file. A memory-mapped buffer
+ * keeps its content if the process terminates, and the messages not yet
+ * replayed are picked up again when a buffer is created on the same file.
+ * The file is not forced to disk, so the content may be lost if the
+ * operating system goes down.
+ * <p>
+ * The buffer is thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class OfflineBuffer
+{
+  /** Identifies a memory-mapped buffer file. "LIQB". */
+  private static final int MAGIC = 0x4c495142;
+
+  /** Size of the file header: magic, head, tail and number of messages. */
+  private static final int HEADER_SIZE = 16;
+
+  /** Size of the length prefix of each message. */
+  private static final int LENGTH_SIZE = 4;
+
+  /** Length prefix marking that the next message is at the start of the ring. */
+  private static final int WRAP = -1;
+
+  /** The ring of messages. Header included for memory-mapped buffers. */
+  private final ByteBuffer buffer_;
+
+  /** Position of the ring within buffer_. 0 or HEADER_SIZE. */
+  private final int offset_;
+
+  /** Capacity of the ring in bytes. */
+  private final int capacity_;
+
+  /** Position of the oldest message within the ring. */
+  private int head_ = 0;
+
+  /** Position of the next message to add within the ring. */
+  private int tail_ = 0;
+
+  /** Number of messages in the buffer. */
+  private int nMessages_ = 0;
+
+  /** Number of messages rejected because the buffer was full. */
+  private long nRejected_ = 0;
+
+  /**
+   * Create a heap based offline buffer.
+   *
+   * @param capacity  Capacity in bytes. Each message takes its
+   *                  length plus 4 bytes. [1,&gt;.
+   * @throws IllegalArgumentException  If capacity is &lt; 1.
+   */
+  public OfflineBuffer(int capacity)
+  {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+    buffer_ = ByteBuffer.allocate(capacity);
+    offset_ = 0;
+    capacity_ = capacity;
+  }
+
+  /**
+   * Create an offline buffer memory-mapped to the specified file.
+   * If the file holds a buffer of the same capacity, its messages are
+   * kept. Otherwise the file is (re)initialized to an empty buffer.
+   *
+   * @param file      File to map. Created if it doesn't exist. Non-null.
+   * @param capacity  Capacity in bytes. Each message takes its
+   *                  length plus 4 bytes. [1,&gt;.
+   * @throws IllegalArgumentException  If file is null or capacity is &lt; 1.
+   * @throws IOException  If the file cannot be created or mapped.
+   */
+  public OfflineBuffer(File file, int capacity)
+    throws IOException
+  {
+    if (file == null)
+      throw new IllegalArgumentException("file cannot be null");
+
+    if (capacity < 1 || capacity > Integer.MAX_VALUE - HEADER_SIZE)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+    // The mapping stays valid after the channel is closed
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+         FileChannel channel = randomAccessFile.getChannel()) {
+      boolean isExisting = channel.size() == HEADER_SIZE + capacity;
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+
+      buffer_ = buffer;
+      offset_ = HEADER_SIZE;
+      capacity_ = capacity;
+
+      if (!isExisting || !readHeader())
+        writeHeader();
+    }
+  }
+
+  /**
+   * Read head, tail and number of messages from the header of a
+   * memory-mapped buffer.
+   *
+   * @return  True if the header was valid, false otherwise.
+   */
+  private boolean readHeader()
+  {
+    assert offset_ == HEADER_SIZE : "Not a mapped buffer";
+
+    int head = buffer_.getInt(4);
+    int tail = buffer_.getInt(8);
+    int nMessages = buffer_.getInt(12);
+
+    if (buffer_.getInt(0) != MAGIC || head < 0 || head > capacity_ || tail < 0 || tail > capacity_ ||
+        nMessages < 0 || (nMessages == 0) != (head == tail))
+      return false;
+
+    head_ = head;
+    tail_ = tail;
+    nMessages_ = nMessages;
+
+    return true;
+  }
+
+  /**
+   * Write head, tail and number of messages to the header of a
+   * memory-mapped buffer. No-op for heap buffers.
+   */
+  private void writeHeader()
+  {
+    if (offset_ == 0)
+      return;
+
+    buffer_.putInt(0, MAGIC);
+    buffer_.putInt(4, head_);
+    buffer_.putInt(8, tail_);
+    buffer_.putInt(12, nMessages_);
+  }
+
+  /**
+   * Return the capacity of this buffer.
+   *
+   * @return  Capacity in bytes. [1,&gt;.
+   */
+  public int getCapacity()
+  {
+    return capacity_;
+  }
+
+  /**
+   * Return the number of messages in this buffer.
+   *
+   * @return  Number of messages. [0,&gt;.
+   */
+  public synchronized int size()
+  {
+    return nMessages_;
+  }
+
+  /**
+   * Return if this buffer is empty.
+   *
+   * @return  True if the buffer is empty, false otherwise.
+   */
+  public synchronized boolean isEmpty()
+  {
+    return nMessages_ == 0;
+  }
+
+  /**
+   * Return the number of messages rejected because this buffer was full.
+   *
+   * @return  Number of rejected messages. [0,&gt;.
+   */
+  public synchronized long getNRejected()
+  {
+    return nRejected_;
+  }
+
+  /**
+   * Add the specified message to the end of this buffer.
+   *
+   * @param message  Message to add. Non-null.
+   * @return         True if the message was added, false if there was no room for it.
+   * @throws IllegalArgumentException  If message is null.
+   */
+  public synchronized boolean add(byte[] message)
+  {
+    if (message == null)
+      throw new IllegalArgumentException("message cannot be null");
+
+    int size = LENGTH_SIZE + message.length;
+
+    // The tail never catches up with the head from behind,
+    // so that head == tail means empty
+    int position;
+    if (nMessages_ == 0) {
+      head_ = 0;
+      position = size <= capacity_ ? 0 : -1;
+    }
+    else if (tail_ > head_) {
+      if (capacity_ - tail_ >= size)
+        position = tail_;
+      else if (size < head_)
+        position = 0;
+      else
+        position = -1;
+    }
+    else {
+      position = head_ - tail_ > size ? tail_ : -1;
+    }
+
+    if (position < 0) {
+      nRejected_++;
+      return false;
+    }
+
+    if (position == 0 && nMessages_ > 0 && capacity_ - tail_ >= LENGTH_SIZE)
+      buffer_.putInt(offset_ + tail_, WRAP);
+
+    buffer_.putInt(offset_ + position, message.length);
+    for (int i = 0; i < message.length; i++)
+      buffer_.put(offset_ + position + LENGTH_SIZE + i, message[i]);
+
+    tail_ = position + size;
+    nMessages_++;
+
+    writeHeader();
+    return true;
+  }
+
+  /**
+   * Return the position of the oldest message, following a wrap
+   * to the start of the ring if necessary.
+   *
+   * @return  Position of the oldest message within the ring.
+   */
+  private int getHeadPosition()
+  {
+    assert nMessages_ > 0 : "Buffer is empty";
+
+    if (capacity_ - head_ < LENGTH_SIZE || buffer_.getInt(offset_ + head_) == WRAP)
+      return 0;
+
+    return head_;
+  }
+
+  /**
+   * Return the oldest message of this buffer without removing it.
+   *
+   * @return  The oldest message, or null if the buffer is empty.
+   */
+  public synchronized byte[] peek()
+  {
+    if (nMessages_ == 0)
+      return null;
+
+    int position = getHeadPosition();
+    int length = buffer_.getInt(offset_ + position);
+
+    byte[] message = new byte[length];
+    for (int i = 0; i < length; i++)
+      message[i] = buffer_.get(offset_ + position + LENGTH_SIZE + i);
+
+    return message;
+  }
+
+  /**
+   * Remove the oldest message of this buffer.
+   * No-op if the buffer is empty.
+   */
+  public synchronized void remove()
+  {
+    if (nMessages_ == 0)
+      return;
+
+    int position = getHeadPosition();
+    int length = buffer_.getInt(offset_ + position);
+
+    head_ = position + LENGTH_SIZE + length;
+    nMessages_--;
+
+    if (nMessages_ == 0) {
+      head_ = 0;
+      tail_ = 0;
+    }
+
+    writeHeader();
+  }
+
+  /**
+   * Remove all messages of this buffer.
+   */
+  public synchronized void clear()
+  {
+    head_ = 0;
+    tail_ = 0;
+    nMessages_ = 0;
+
+    writeHeader();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized String toString()
+  {
+    return "Offline buffer of " + nMessages_ + " messages";
+  }
+}
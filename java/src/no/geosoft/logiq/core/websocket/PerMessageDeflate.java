@@ -0,0 +1,562 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidFrameException;
+import org.java_websocket.extensions.CompressionExtension;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+
+/**
+ * The permessage-deflate web socket extension of RFC 7692.
+ * <p>
+ * Passed to {@link WebSocketClient#WebSocketClient(java.net.URI,PerMessageDeflate)}
+ * the extension is offered to the server, and messages are compressed if
+ * the server accepts it. It may also be given to a Java-WebSocket server
+ * draft, in which case it accepts the offers of clients.
+ * <p>
+ * Only complete messages of at least <em>threshold</em> bytes are
+ * compressed, so small administrative messages skip the cost.
+ * Incoming messages are decompressed whenever the peer compressed them.
+ * <p>
+ * With context takeover (the default) the compression dictionary is kept
+ * from one message to the next, which pays off for the repetitive
+ * TimeSeries.JSON of a stream. Without it, each message is compressed on
+ * its own, which saves the 32kB window per connection on both sides.
+ * <p>
+ * The window size parameters are not offered, and an answer requiring
+ * a client window below 15 bits is declined, as Deflater has no way to
+ * limit its window.
+ * <p>
+ * Java-WebSocket 1.4.0 does not write the RSV bits of outgoing frames,
+ * so the extension must be used through the draft of {@link #newDraft},
+ * which does.
+ * <p>
+ * The instance given is a prototype, copied for each connection.
+ * Compressed messages depend on those before them, so frames must be
+ * encoded in the order they are sent. WebSocketClient takes care of this.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class PerMessageDeflate
+  extends CompressionExtension
+{
+  /** Name of the extension, as negotiated. */
+  private static final String EXTENSION_NAME = "permessage-deflate";
+
+  /** Parameter for the server not to keep its context. */
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+  /** Parameter for the client not to keep its context. */
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+  /** Parameter limiting the window of the server. */
+  private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+
+  /** Parameter limiting the window of the client. */
+  private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+  /** Window of Deflater, in bits. */
+  private static final int MAX_WINDOW_BITS = 15;
+
+  /** The tail of a sync flushed deflate block, left out of the messages. */
+  private static final byte[] TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+  /** The RSV1 bit of the first byte of a frame. */
+  private static final byte RSV1 = 0x40;
+
+  /** Size of the chunks deflated and inflated at a time. */
+  private static final int CHUNK_SIZE = 8192;
+
+  /** Compression level. [0,9] or Deflater.DEFAULT_COMPRESSION. */
+  private int level_ = Deflater.DEFAULT_COMPRESSION;
+
+  /** Indicate if context takeover is requested. */
+  private boolean isContextTakeover_ = true;
+
+  /** Size in bytes of the smallest message compressed. */
+  private int threshold_ = 1024;
+
+  /** Indicate if the deflater is reset after each message, as negotiated. */
+  private boolean isLocalNoContextTakeover_ = false;
+
+  /** Indicate if the inflater is reset after each message, as negotiated. */
+  private boolean isRemoteNoContextTakeover_ = false;
+
+  /** Indicate if a compressed message is being received. */
+  private boolean isInflating_ = false;
+
+  /** Compressor of outgoing messages. Created when first needed. */
+  private Deflater deflater_ = null;
+
+  /** Decompressor of incoming messages. Created when first needed. */
+  private Inflater inflater_ = null;
+
+  /**
+   * Create a permessage-deflate extension with default settings.
+   */
+  public PerMessageDeflate()
+  {
+    // Nothing
+  }
+
+  /**
+   * Return a new web socket draft using this extension, for a client
+   * or a server. The draft writes the RSV1 bit of compressed frames.
+   *
+   * @return  A new draft using this extension. Never null.
+   */
+  public Draft_6455 newDraft()
+  {
+    return new DeflateDraft(List.of(this), List.of(new Protocol("")), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Set the compression level. Default is Deflater.DEFAULT_COMPRESSION (6).
+   *
+   * @param level  Compression level. [0,9] or -1 for default.
+   * @throws IllegalArgumentException  If level is out of range.
+   */
+  public void setLevel(int level)
+  {
+    if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+      throw new IllegalArgumentException("Invalid level: " + level);
+
+    level_ = level;
+  }
+
+  /**
+   * Return the compression level.
+   *
+   * @return  Compression level. [0,9] or -1 for default.
+   */
+  public int getLevel()
+  {
+    return level_;
+  }
+
+  /**
+   * Specify if context takeover should be used. If false, no context
+   * takeover is requested for either direction. Default is true.
+   *
+   * @param isContextTakeover  True to use context takeover, false not to.
+   */
+  public void setContextTakeover(boolean isContextTakeover)
+  {
+    isContextTakeover_ = isContextTakeover;
+  }
+
+  /**
+   * Return if context takeover is requested.
+   *
+   * @return  True if context takeover is requested, false otherwise.
+   */
+  public boolean isContextTakeover()
+  {
+    return isContextTakeover_;
+  }
+
+  /**
+   * Set the size of the smallest message to compress. Default is 1kB.
+   *
+   * @param threshold  Threshold in bytes. [0,&gt;.
+   * @throws IllegalArgumentException  If threshold is &lt; 0.
+   */
+  public void setThreshold(int threshold)
+  {
+    if (threshold < 0)
+      throw new IllegalArgumentException("Invalid threshold: " + threshold);
+
+    threshold_ = threshold;
+  }
+
+  /**
+   * Return the size of the smallest message to compress.
+   *
+   * @return  Threshold in bytes. [0,&gt;.
+   */
+  public int getThreshold()
+  {
+    return threshold_;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getProvidedExtensionAsClient()
+  {
+    return isContextTakeover_ ?
+      EXTENSION_NAME :
+      EXTENSION_NAME + "; " + CLIENT_NO_CONTEXT_TAKEOVER + "; " + SERVER_NO_CONTEXT_TAKEOVER;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getProvidedExtensionAsServer()
+  {
+    StringBuilder s = new StringBuilder(EXTENSION_NAME);
+
+    if (isLocalNoContextTakeover_)
+      s.append("; " + SERVER_NO_CONTEXT_TAKEOVER);
+
+    if (isRemoteNoContextTakeover_)
+      s.append("; " + CLIENT_NO_CONTEXT_TAKEOVER);
+
+    return s.toString();
+  }
+
+  /**
+   * Return the parameters of the permessage-deflate entry of the
+   * specified extension header.
+   *
+   * @param header  Sec-WebSocket-Extensions header value. Non-null.
+   * @return        The parameters of the entry, or null if there is none.
+   */
+  private static String[] getParameters(String header)
+  {
+    assert header != null : "header cannot be null";
+
+    for (String extension : header.split(",")) {
+      String[] parameters = extension.split(";");
+      if (parameters[0].trim().equals(EXTENSION_NAME)) {
+        for (int i = 0; i < parameters.length; i++)
+          parameters[i] = parameters[i].trim();
+        return parameters;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Return the window bits of the specified parameter.
+   *
+   * @param parameter  Parameter, possibly with a value. Non-null.
+   * @return           The window bits, or MAX_WINDOW_BITS if no value is given.
+   *                   -1 if the value is invalid.
+   */
+  private static int getWindowBits(String parameter)
+  {
+    assert parameter != null : "parameter cannot be null";
+
+    int equalsPos = parameter.indexOf('=');
+    if (equalsPos < 0)
+      return MAX_WINDOW_BITS;
+
+    String value = parameter.substring(equalsPos + 1).trim().replace("\"", "");
+    try {
+      int windowBits = Integer.parseInt(value);
+      return windowBits >= 8 && windowBits <= MAX_WINDOW_BITS ? windowBits : -1;
+    }
+    catch (NumberFormatException exception) {
+      return -1;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean acceptProvidedExtensionAsClient(String header)
+  {
+    String[] parameters = getParameters(header);
+    if (parameters == null)
+      return false;
+
+    boolean isLocalNoContextTakeover = !isContextTakeover_;
+    boolean isRemoteNoContextTakeover = false;
+
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i];
+      String name = parameter.split("=")[0].trim();
+
+      if (name.equals(SERVER_NO_CONTEXT_TAKEOVER))
+        isRemoteNoContextTakeover = true;
+      else if (name.equals(CLIENT_NO_CONTEXT_TAKEOVER))
+        isLocalNoContextTakeover = true;
+      else if (name.equals(CLIENT_MAX_WINDOW_BITS)) {
+        // Deflater always uses the full window
+        if (getWindowBits(parameter) != MAX_WINDOW_BITS)
+          return false;
+      }
+      else if (!name.equals(SERVER_MAX_WINDOW_BITS)) // Inflater handles any window
+        return false;
+    }
+
+    isLocalNoContextTakeover_ = isLocalNoContextTakeover;
+    isRemoteNoContextTakeover_ = isRemoteNoContextTakeover;
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean acceptProvidedExtensionAsServer(String header)
+  {
+    String[] parameters = getParameters(header);
+    if (parameters == null)
+      return false;
+
+    boolean isLocalNoContextTakeover = !isContextTakeover_;
+    boolean isRemoteNoContextTakeover = false;
+
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i];
+      String name = parameter.split("=")[0].trim();
+
+      if (name.equals(SERVER_NO_CONTEXT_TAKEOVER))
+        isLocalNoContextTakeover = true;
+      else if (name.equals(CLIENT_NO_CONTEXT_TAKEOVER))
+        isRemoteNoContextTakeover = true;
+      else if (name.equals(SERVER_MAX_WINDOW_BITS)) {
+        // Deflater always uses the full window
+        if (getWindowBits(parameter) != MAX_WINDOW_BITS)
+          return false;
+      }
+      else if (name.equals(CLIENT_MAX_WINDOW_BITS)) {
+        // Inflater handles any window
+        if (getWindowBits(parameter) < 0)
+          return false;
+      }
+      else
+        return false;
+    }
+
+    isLocalNoContextTakeover_ = isLocalNoContextTakeover;
+    isRemoteNoContextTakeover_ = isRemoteNoContextTakeover;
+    return true;
+  }
+
+  /**
+   * Check if the specified frame carries message data, as opposed to control data.
+   *
+   * @param frame  Frame to check. Non-null.
+   * @return       True if the frame carries message data, false otherwise.
+   */
+  private static boolean isDataFrame(Framedata frame)
+  {
+    assert frame != null : "frame cannot be null";
+
+    Opcode opcode = frame.getOpcode();
+    return opcode == Opcode.TEXT || opcode == Opcode.BINARY || opcode == Opcode.CONTINUOUS;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void encodeFrame(Framedata frame)
+  {
+    // Fragmented messages are sent as they are
+    Opcode opcode = frame.getOpcode();
+    if (opcode != Opcode.TEXT && opcode != Opcode.BINARY || !frame.isFin())
+      return;
+
+    ByteBuffer payload = frame.getPayloadData();
+    if (payload.remaining() < threshold_ || !(frame instanceof FramedataImpl1))
+      return;
+
+    if (deflater_ == null)
+      deflater_ = new Deflater(level_, true);
+
+    byte[] input = new byte[payload.remaining()];
+    payload.get(input);
+    deflater_.setInput(input);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 64);
+    byte[] chunk = new byte[CHUNK_SIZE];
+
+    // Sync flush until the output no longer fills the chunk, i.e. all input is consumed
+    int nBytes;
+    do {
+      nBytes = deflater_.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+      output.write(chunk, 0, nBytes);
+    } while (nBytes == chunk.length || !deflater_.needsInput());
+
+    if (isLocalNoContextTakeover_)
+      deflater_.reset();
+
+    // The tail is implied by RFC 7692
+    byte[] compressed = output.toByteArray();
+    int length = compressed.length;
+    if (length >= TAIL.length && endsWithTail(compressed, length))
+      length -= TAIL.length;
+
+    FramedataImpl1 frameImpl = (FramedataImpl1) frame;
+    frameImpl.setPayload(ByteBuffer.wrap(compressed, 0, length));
+    frameImpl.setRSV1(true);
+  }
+
+  /**
+   * Check if the specified bytes end with the deflate tail.
+   *
+   * @param bytes   Bytes to check. Non-null.
+   * @param length  Number of bytes to consider. [4,&gt;.
+   * @return        True if the bytes end with the tail, false otherwise.
+   */
+  private static boolean endsWithTail(byte[] bytes, int length)
+  {
+    assert bytes != null : "bytes cannot be null";
+    assert length >= TAIL.length : "Invalid length: " + length;
+
+    for (int i = 0; i < TAIL.length; i++) {
+      if (bytes[length - TAIL.length + i] != TAIL[i])
+        return false;
+    }
+
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void decodeFrame(Framedata frame)
+    throws InvalidDataException
+  {
+    if (!isDataFrame(frame))
+      return;
+
+    // RSV1 marks the first frame of a compressed message
+    if (frame.getOpcode() != Opcode.CONTINUOUS)
+      isInflating_ = frame.isRSV1();
+    else if (frame.isRSV1())
+      throw new InvalidFrameException("RSV1 set on continuation frame");
+
+    if (!isInflating_)
+      return;
+
+    if (!(frame instanceof FramedataImpl1))
+      throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "Unable to decompress frame");
+
+    if (inflater_ == null)
+      inflater_ = new Inflater(true);
+
+    ByteBuffer payload = frame.getPayloadData();
+    byte[] input = new byte[payload.remaining()];
+    payload.get(input);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4 + 64);
+
+    try {
+      inflate(input, output);
+      if (frame.isFin()) {
+        inflate(TAIL, output);
+        isInflating_ = false;
+
+        if (isRemoteNoContextTakeover_)
+          inflater_.reset();
+      }
+    }
+    catch (DataFormatException exception) {
+      throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, exception.getMessage());
+    }
+
+    FramedataImpl1 frameImpl = (FramedataImpl1) frame;
+    frameImpl.setPayload(ByteBuffer.wrap(output.toByteArray()));
+    frameImpl.setRSV1(false);
+  }
+
+  /**
+   * Inflate the specified bytes.
+   *
+   * @param input   Bytes to inflate. Non-null.
+   * @param output  Stream to write the inflated bytes to. Non-null.
+   * @throws DataFormatException  If the input is not valid deflate data.
+   */
+  private void inflate(byte[] input, ByteArrayOutputStream output)
+    throws DataFormatException
+  {
+    assert input != null : "input cannot be null";
+    assert output != null : "output cannot be null";
+
+    inflater_.setInput(input);
+
+    byte[] chunk = new byte[CHUNK_SIZE];
+    int nBytes;
+    while ((nBytes = inflater_.inflate(chunk)) > 0)
+      output.write(chunk, 0, nBytes);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IExtension copyInstance()
+  {
+    PerMessageDeflate perMessageDeflate = new PerMessageDeflate();
+    perMessageDeflate.level_ = level_;
+    perMessageDeflate.isContextTakeover_ = isContextTakeover_;
+    perMessageDeflate.threshold_ = threshold_;
+    return perMessageDeflate;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void reset()
+  {
+    isInflating_ = false;
+    isLocalNoContextTakeover_ = false;
+    isRemoteNoContextTakeover_ = false;
+
+    if (deflater_ != null) {
+      deflater_.end();
+      deflater_ = null;
+    }
+
+    if (inflater_ != null) {
+      inflater_.end();
+      inflater_ = null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return EXTENSION_NAME;
+  }
+
+  /**
+   * Draft of RFC 6455 that writes the RSV1 bit of frames
+   * compressed by the extension.
+   */
+  private static final class DeflateDraft
+    extends Draft_6455
+  {
+    /**
+     * Create a draft with the specified extensions and protocols.
+     *
+     * @param extensions    Extensions of the draft. Non-null.
+     * @param protocols     Protocols of the draft. Non-null.
+     * @param maxFrameSize  Max size in bytes of incoming frames. [1,&gt;.
+     */
+    private DeflateDraft(List<IExtension> extensions, List<IProtocol> protocols, int maxFrameSize)
+    {
+      super(extensions, protocols, maxFrameSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuffer createBinaryFrame(Framedata frame)
+    {
+      ByteBuffer buffer = super.createBinaryFrame(frame);
+
+      if (frame.isRSV1())
+        buffer.put(0, (byte) (buffer.get(0) | RSV1));
+
+      return buffer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Draft copyInstance()
+    {
+      Draft_6455 draft = (Draft_6455) super.copyInstance();
+      return new DeflateDraft(draft.getKnownExtensions(), draft.getKnownProtocols(), draft.getMaxFrameSize());
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.enums.Role;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+import no.geosoft.logiq.core.json.JsonSerializable;
+
+/**
+ * A message serialized once, for sending to many connections.
+ * <p>
+ * The message is encoded to UTF-8 and framed when the prepared frame is
+ * created. Sending it to a server side connection of a WebSocketServer
+ * queues a read-only view of the same frame bytes on the connection,
+ * so the cost per connection is independent of the message size.
+ * Other connections, like those of a client, need to mask their frames
+ * and get a {@link #getFramedata frame} sharing the same payload instead.
+ * <p>
+ * A prepared frame is a complete, unfragmented frame without extension
+ * bits, and is valid also on connections that have negotiated
+ * permessage-deflate. The frame is queued directly, and should not
+ * be sent to connections that send fragmented messages concurrently.
+ * <p>
+ * For results that are to be fanned out under a different request ID
+ * for each connection, see {@link PreparedResponse}.
+ * <p>
+ * Prepared frames are immutable and thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class PreparedFrame
+{
+  /** Opcode of a text frame. */
+  private static final int OPCODE_TEXT = 0x1;
+
+  /** Opcode of a binary frame. */
+  private static final int OPCODE_BINARY = 0x2;
+
+  /** True if this is a binary frame, false if it is a text frame. */
+  private final boolean isBinary_;
+
+  /** The payload. Read-only, position 0. */
+  private final ByteBuffer payload_;
+
+  /** The unmasked frame as written to the wire. Read-only, position 0. */
+  private final ByteBuffer wire_;
+
+  /**
+   * Create a prepared frame of the specified unmasked wire bytes.
+   *
+   * @param wire           The complete frame. Non-null.
+   * @param payloadOffset  Position of the payload within wire. [0,&gt;.
+   * @param isBinary       True if this is a binary frame, false if text.
+   */
+  PreparedFrame(byte[] wire, int payloadOffset, boolean isBinary)
+  {
+    assert wire != null : "wire cannot be null";
+    assert payloadOffset >= 0 && payloadOffset <= wire.length : "Invalid payloadOffset: " + payloadOffset;
+
+    isBinary_ = isBinary;
+    wire_ = ByteBuffer.wrap(wire).asReadOnlyBuffer();
+    payload_ = ByteBuffer.wrap(wire, payloadOffset, wire.length - payloadOffset).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Return a prepared text frame of the specified text.
+   *
+   * @param text  Text of frame. Non-null.
+   * @return      The prepared frame. Never null.
+   * @throws IllegalArgumentException  If text is null.
+   */
+  public static PreparedFrame of(String text)
+  {
+    if (text == null)
+      throw new IllegalArgumentException("text cannot be null");
+
+    return of(text.getBytes(StandardCharsets.UTF_8), false);
+  }
+
+  /**
+   * Return a prepared text frame of the JSON of the specified message,
+   * typically a Response or a Request.
+   *
+   * @param message  Message of frame. Non-null.
+   * @return         The prepared frame. Never null.
+   * @throws IllegalArgumentException  If message is null.
+   */
+  public static PreparedFrame of(JsonSerializable message)
+  {
+    if (message == null)
+      throw new IllegalArgumentException("message cannot be null");
+
+    return of(message.toJson());
+  }
+
+  /**
+   * Return a prepared binary frame of the remaining bytes of the specified buffer.
+   * The bytes are copied, and the buffer is left unchanged.
+   *
+   * @param bytes  Payload of frame. Non-null.
+   * @return       The prepared frame. Never null.
+   * @throws IllegalArgumentException  If bytes is null.
+   */
+  public static PreparedFrame of(ByteBuffer bytes)
+  {
+    if (bytes == null)
+      throw new IllegalArgumentException("bytes cannot be null");
+
+    byte[] payload = new byte[bytes.remaining()];
+    bytes.duplicate().get(payload);
+
+    return of(payload, true);
+  }
+
+  /**
+   * Return a prepared frame of the specified payload.
+   *
+   * @param payload   Payload of frame. Non-null.
+   * @param isBinary  True for a binary frame, false for a text frame.
+   * @return          The prepared frame. Never null.
+   */
+  private static PreparedFrame of(byte[] payload, boolean isBinary)
+  {
+    assert payload != null : "payload cannot be null";
+
+    int headerLength = getHeaderLength(payload.length);
+    byte[] wire = new byte[headerLength + payload.length];
+    writeHeader(wire, payload.length, isBinary);
+    System.arraycopy(payload, 0, wire, headerLength, payload.length);
+
+    return new PreparedFrame(wire, headerLength, isBinary);
+  }
+
+  /**
+   * Return the length of the header of an unmasked frame
+   * of the specified payload length.
+   *
+   * @param payloadLength  Length of payload. [0,&gt;.
+   * @return               Length of header. [2,10].
+   */
+  static int getHeaderLength(int payloadLength)
+  {
+    assert payloadLength >= 0 : "Invalid payloadLength: " + payloadLength;
+
+    if (payloadLength < 126)
+      return 2;
+
+    if (payloadLength <= 0xffff)
+      return 4;
+
+    return 10;
+  }
+
+  /**
+   * Write the header of a final, unmasked frame to the start of the specified array.
+   * See RFC 6455 section 5.2.
+   *
+   * @param wire           Array to write to. Non-null.
+   * @param payloadLength  Length of payload. [0,&gt;.
+   * @param isBinary       True for a binary frame, false for a text frame.
+   */
+  static void writeHeader(byte[] wire, int payloadLength, boolean isBinary)
+  {
+    assert wire != null : "wire cannot be null";
+    assert payloadLength >= 0 : "Invalid payloadLength: " + payloadLength;
+
+    wire[0] = (byte) (0x80 | (isBinary ? OPCODE_BINARY : OPCODE_TEXT));
+
+    if (payloadLength < 126) {
+      wire[1] = (byte) payloadLength;
+    }
+    else if (payloadLength <= 0xffff) {
+      wire[1] = 126;
+      wire[2] = (byte) (payloadLength >>> 8);
+      wire[3] = (byte) payloadLength;
+    }
+    else {
+      wire[1] = 127;
+      for (int i = 0; i < 8; i++)
+        wire[2 + i] = (byte) ((long) payloadLength >>> (56 - 8 * i));
+    }
+  }
+
+  /**
+   * Check if this is a binary frame.
+   *
+   * @return  True if this is a binary frame, false if it is a text frame.
+   */
+  public boolean isBinary()
+  {
+    return isBinary_;
+  }
+
+  /**
+   * Return the payload of this frame.
+   *
+   * @return  A read-only view of the payload. Never null.
+   */
+  public ByteBuffer getPayload()
+  {
+    return payload_.duplicate();
+  }
+
+  /**
+   * Return the length of the payload of this frame.
+   *
+   * @return  Length of the payload in bytes. [0,&gt;.
+   */
+  public int getPayloadLength()
+  {
+    return payload_.capacity();
+  }
+
+  /**
+   * Return the length of this frame as written to a server side connection.
+   *
+   * @return  Length of the frame in bytes, including the header. [2,&gt;.
+   */
+  public int getLength()
+  {
+    return wire_.capacity();
+  }
+
+  /**
+   * Return this frame as a Java-WebSocket frame.
+   * <p>
+   * The library consumes the payload of a frame when masking it, so
+   * a new frame is returned on each call. The frames share the payload
+   * of this prepared frame, and creating them does not copy it.
+   *
+   * @return  A new final frame of the payload of this frame. Never null.
+   */
+  public DataFrame getFramedata()
+  {
+    DataFrame frame = isBinary_ ? new BinaryFrame() : new TextFrame();
+    frame.setPayload(payload_.duplicate());
+    frame.setFin(true);
+    return frame;
+  }
+
+  /**
+   * Send this frame to the specified connection.
+   *
+   * @param connection  Connection to send to. Non-null.
+   * @throws IllegalArgumentException  If connection is null.
+   * @throws WebsocketNotConnectedException  If the connection is not open.
+   */
+  public void send(WebSocket connection)
+  {
+    if (connection == null)
+      throw new IllegalArgumentException("connection cannot be null");
+
+    if (connection instanceof WebSocketImpl) {
+      WebSocketImpl webSocket = (WebSocketImpl) connection;
+      if (webSocket.getDraft() != null && webSocket.getDraft().getRole() == Role.SERVER) {
+        if (!webSocket.isOpen())
+          throw new WebsocketNotConnectedException();
+
+        // One buffer holding the complete frame is queued atomically
+        webSocket.outQueue.add(wire_.duplicate());
+        webSocket.getWebSocketListener().onWriteDemand(webSocket);
+        return;
+      }
+    }
+
+    connection.sendFrame(getFramedata());
+  }
+
+  /**
+   * Send this frame to each of the specified connections.
+   * Connections that are not open are skipped.
+   *
+   * @param connections  Connections to send to. Non-null.
+   * @return             Number of connections the frame was sent to. [0,&gt;.
+   * @throws IllegalArgumentException  If connections is null.
+   */
+  public int send(Collection<? extends WebSocket> connections)
+  {
+    if (connections == null)
+      throw new IllegalArgumentException("connections cannot be null");
+
+    int nSent = 0;
+    for (WebSocket connection : connections) {
+      try {
+        send(connection);
+        nSent++;
+      }
+      catch (WebsocketNotConnectedException exception) {
+        // Closed while sending. Skip it.
+      }
+    }
+
+    return nSent;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Prepared " + (isBinary_ ? "binary" : "text") + " frame of " + getPayloadLength() + " bytes";
+  }
+}
@@ -0,0 +1,148 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import no.geosoft.logiq.core.json.JsonUtil;
+
+/**
+ * A success response serialized once, for sending to many connections
+ * under different request IDs.
+ * <p>
+ * Data of a stream is delivered to each consumer as responses to its
+ * <em>startConsuming</em> request, so the same result is sent under
+ * a different ID to each consumer. The result is serialized and
+ * encoded to UTF-8 when the prepared response is created, and the
+ * response of a given ID is then one array copy away:
+ *
+ * <pre>
+ *   PreparedResponse response = new PreparedResponse(data);
+ *   for (Subscriber subscriber : subscribers)
+ *     response.send(subscriber.getConnection(), subscriber.getMessageId());
+ * </pre>
+ *
+ * The JSON is identical to that of {@link no.geosoft.logiq.core.jsonrpc.Response}
+ * of the same result and ID. Consumers sharing an ID share the frame,
+ * see {@link #send(Map)}.
+ * <p>
+ * Prepared responses are immutable and thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class PreparedResponse
+{
+  /** The UTF-8 response up to the ID, i.e. {"jsonrpc":"2.0","result":...,"id": */
+  private final byte[] prefix_;
+
+  /**
+   * Create a prepared response of the specified result.
+   *
+   * @param result  The response result, as for Response. May be null.
+   */
+  public PreparedResponse(Object result)
+  {
+    StringBuilder s = new StringBuilder();
+    s.append("{\"jsonrpc\":\"2.0\",\"result\":");
+    JsonUtil.write(result, s);
+    s.append(",\"id\":");
+
+    prefix_ = s.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Return the response of the specified ID as a prepared frame.
+   *
+   * @param id  ID of the request responded to.
+   * @return    The requested frame. Never null.
+   */
+  public PreparedFrame toFrame(long id)
+  {
+    // IDs are ASCII, so characters and bytes are the same
+    String idString = Long.toString(id);
+
+    int payloadLength = prefix_.length + idString.length() + 1;
+    int headerLength = PreparedFrame.getHeaderLength(payloadLength);
+
+    byte[] wire = new byte[headerLength + payloadLength];
+    PreparedFrame.writeHeader(wire, payloadLength, false);
+
+    int pos = headerLength;
+    System.arraycopy(prefix_, 0, wire, pos, prefix_.length);
+    pos += prefix_.length;
+
+    for (int i = 0; i < idString.length(); i++)
+      wire[pos++] = (byte) idString.charAt(i);
+
+    wire[pos] = '}';
+
+    return new PreparedFrame(wire, headerLength, false);
+  }
+
+  /**
+   * Send the response of the specified ID to the given connection.
+   *
+   * @param connection  Connection to send to. Non-null.
+   * @param id          ID of the request responded to.
+   * @throws IllegalArgumentException  If connection is null.
+   * @throws WebsocketNotConnectedException  If the connection is not open.
+   */
+  public void send(WebSocket connection, long id)
+  {
+    if (connection == null)
+      throw new IllegalArgumentException("connection cannot be null");
+
+    toFrame(id).send(connection);
+  }
+
+  /**
+   * Send the response to each of the specified connections, under the
+   * ID given for the connection. Connections of the same ID share the
+   * same frame. Connections that are not open are skipped.
+   *
+   * @param subscribers  Request ID of each connection to send to. Non-null.
+   * @return             Number of connections the response was sent to. [0,&gt;.
+   * @throws IllegalArgumentException  If subscribers is null.
+   */
+  public int send(Map<? extends WebSocket,Long> subscribers)
+  {
+    if (subscribers == null)
+      throw new IllegalArgumentException("subscribers cannot be null");
+
+    Map<Long,PreparedFrame> frames = new HashMap<>();
+
+    int nSent = 0;
+    for (Map.Entry<? extends WebSocket,Long> entry : subscribers.entrySet()) {
+      PreparedFrame frame = frames.computeIfAbsent(entry.getValue(), this::toFrame);
+      try {
+        frame.send(entry.getKey());
+        nSent++;
+      }
+      catch (WebsocketNotConnectedException exception) {
+        // Closed while sending. Skip it.
+      }
+    }
+
+    return nSent;
+  }
+
+  /**
+   * Return the length of the response, excluding the digits of the ID.
+   *
+   * @return  Length of the UTF-8 response in bytes, excluding the ID digits. [0,&gt;.
+   */
+  public int getLength()
+  {
+    return prefix_.length + 1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    return "Prepared response of " + getLength() + " bytes";
+  }
+}
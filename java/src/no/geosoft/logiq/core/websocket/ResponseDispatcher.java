@@ -0,0 +1,175 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import no.geosoft.logiq.core.jsonrpc.Response;
+
+/**
+ * Decodes incoming frames and delivers the responses on an executor
+ * rather than on the web socket thread.
+ * <p>
+ * Frames are decoded in parallel, but responses with the same ID are
+ * delivered one at a time and in the order their frames arrived.
+ * As the server answers all messages of a subscription (e.g. startConsuming)
+ * with the ID of the subscribing request, this keeps the order per stream.
+ * Responses with different IDs are delivered concurrently.
+ * Responses without ID are delivered in order among themselves.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+final class ResponseDispatcher
+{
+  /** The logger instance. */
+  private static final Logger logger_ = Logger.getLogger(ResponseDispatcher.class.getName());
+
+  /** Lane key of responses without ID. */
+  private static final Long NO_ID = Long.MIN_VALUE;
+
+  /** Executor for decoding and delivery. */
+  private final Executor executor_;
+
+  /** Delivers a decoded response. */
+  private final Consumer<Response> deliverer_;
+
+  /**
+   * Completes when the responses of the last frame submitted have been
+   * put in their lanes. Each frame waits for the previous one, so that
+   * lanes are filled in frame order. Always completes normally, as
+   * later frames would otherwise never be delivered.
+   */
+  private CompletableFuture<Void> tail_ = CompletableFuture.completedFuture(null);
+
+  /** The last delivery of each ID with deliveries outstanding, by ID. */
+  private final Map<Long,CompletableFuture<Void>> lanes_ = new ConcurrentHashMap<>();
+
+  /**
+   * Create a response dispatcher.
+   *
+   * @param executor   Executor for decoding and delivery. Non-null.
+   * @param deliverer  Delivers a decoded response. Non-null.
+   */
+  ResponseDispatcher(Executor executor, Consumer<Response> deliverer)
+  {
+    assert executor != null : "executor cannot be null";
+    assert deliverer != null : "deliverer cannot be null";
+
+    executor_ = executor;
+    deliverer_ = deliverer;
+  }
+
+  /**
+   * Decode a frame on the executor and deliver its responses.
+   * Must be called in frame order.
+   *
+   * @param decoder  Decodes the frame into its responses. Non-null.
+   */
+  synchronized void submit(Callable<List<Response>> decoder)
+  {
+    assert decoder != null : "decoder cannot be null";
+
+    CompletableFuture<List<Response>> decoded;
+    try {
+      decoded = CompletableFuture.supplyAsync(() -> decode(decoder), executor_);
+    }
+    catch (RejectedExecutionException exception) {
+      logger_.log(Level.WARNING, "Unable to decode message", exception);
+      return;
+    }
+
+    // Handled rather than accepted so that a failure can't complete the tail exceptionally
+    tail_ = tail_.thenCombine(decoded, (previous, responses) -> responses).handle(this::enqueue);
+  }
+
+  /**
+   * Decode a frame. Failures are logged, as there is no caller to report them to.
+   *
+   * @param decoder  Decodes the frame into its responses. Non-null.
+   * @return         The responses of the frame. Empty if decoding failed. Never null.
+   */
+  private static List<Response> decode(Callable<List<Response>> decoder)
+  {
+    assert decoder != null : "decoder cannot be null";
+
+    try {
+      return decoder.call();
+    }
+    catch (Throwable throwable) {
+      logger_.log(Level.WARNING, "Unable to decode message", throwable);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Put the specified responses in the lanes of their IDs.
+   * Failures are logged, as there is no caller to report them to.
+   *
+   * @param responses  Responses to enqueue. Null if the frame failed.
+   * @param failure    Failure of the frame. Null if none.
+   * @return           Null, as nothing is passed on to the next frame.
+   */
+  private Void enqueue(List<Response> responses, Throwable failure)
+  {
+    if (failure != null) {
+      logger_.log(Level.WARNING, "Unable to decode message", failure);
+      return null;
+    }
+
+    assert responses != null : "responses cannot be null";
+
+    try {
+      for (Response response : responses) {
+        Long id = response.getId() != null ? response.getId() : NO_ID;
+
+        // Handled rather than run so that a failed delivery doesn't stop the lane
+        CompletableFuture<Void> delivery = lanes_.compute(id, (key, lane) -> {
+            CompletableFuture<Void> previous = lane != null ? lane : CompletableFuture.completedFuture(null);
+            return previous.handleAsync((result, throwable) -> deliver(response), executor_);
+          });
+
+        // Drop the lane when nothing more is queued on it. Fails only if
+        // the executor rejected the delivery.
+        delivery.whenComplete((result, throwable) -> {
+            if (throwable != null)
+              logger_.log(Level.WARNING, "Unable to deliver response " + response.getId(), throwable);
+            lanes_.remove(id, delivery);
+          });
+      }
+    }
+    catch (Throwable throwable) {
+      logger_.log(Level.WARNING, "Unable to enqueue responses", throwable);
+    }
+
+    return null;
+  }
+
+  /**
+   * Deliver the specified response. Failures are logged so that
+   * the lane is kept going.
+   *
+   * @param response  Response to deliver. Non-null.
+   * @return          Null, as nothing is passed on to the next delivery.
+   */
+  private Void deliver(Response response)
+  {
+    assert response != null : "response cannot be null";
+
+    try {
+      deliverer_.accept(response);
+    }
+    catch (Throwable throwable) {
+      logger_.log(Level.WARNING, "Unable to deliver response " + response.getId(), throwable);
+    }
+
+    return null;
+  }
+}
@@ -2,36 +2,800 @@ package no.geosoft.logiq.core.websocket;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.json.stream.JsonParsingException;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
 
-import no.geosoft.cc.util.TextUtil;
-import no.geosoft.cc.event.EventManager;
+import no.geosoft.cc.event.EventManager;
+
+import no.geosoft.logiq.core.jsonrpc.MessageCodec;
+import no.geosoft.logiq.core.jsonrpc.Request;
+import no.geosoft.logiq.core.jsonrpc.RequestBatch;
+import no.geosoft.logiq.core.jsonrpc.RequestParser;
+import no.geosoft.logiq.core.jsonrpc.Response;
+import no.geosoft.logiq.core.jsonrpc.ResponseBatch;
+
+/**
+ * A websocket client instance.
+ * <p>
+ * If auto reconnect is enabled, the client reconnects after the connection
+ * is lost, with exponential backoff and jitter between the attempts.
+ * If an {@link OfflineBuffer} is installed, requests sent while the client
+ * is disconnected are kept in the buffer and replayed in order once the
+ * connection is back. Requests already passed to the socket when the
+ * connection is lost are not recovered.
+ * <p>
+ * The futures of {@link #sendAsync} fail when the connection closes, except
+ * for requests still held in the offline buffer. These are sent on replay
+ * and keep waiting for their response, bounded by the request timeout,
+ * so a request is never both failed and sent.
+ * <p>
+ * By default incoming messages are decoded and delivered on the web socket
+ * thread, so a slow listener holds back the connection. With a dispatch
+ * executor installed, see {@link #setDispatchExecutor}, the web socket
+ * thread only hands the frames over.
+ * <p>
+ * Messages are compressed if the client is created with a
+ * {@link PerMessageDeflate} extension and the server accepts it.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public class WebSocketClient extends org.java_websocket.client.WebSocketClient
+{
+  /** The logger instance. */
+  private static final Logger logger_ = Logger.getLogger(WebSocketClient.class.getName());
+
+  /** Rate limited and size capped logging of the message traffic. */
+  private static final MessageLogger messageLogger_ = MessageLogger.getInstance();
+
+  /** Default time to wait for the response of an asynchronous request. */
+  private static final long DEFAULT_REQUEST_TIMEOUT = 30000L;
+
+  /** Default buffered amount below which a paused client accepts requests again. */
+  private static final long DEFAULT_LOW_WATERMARK = 256 * 1024L;
+
+  /** Default buffered amount above which a client is paused. */
+  private static final long DEFAULT_HIGH_WATERMARK = 1024 * 1024L;
+
+  /** Shortest wait between checks of the buffered amount when paused. */
+  private static final long MIN_PARK_NANOS = 50000L;
+
+  /** Longest wait between checks of the buffered amount when paused. */
+  private static final long MAX_PARK_NANOS = 2000000L;
+
+  /** Default delay in milliseconds before the first reconnect attempt. */
+  private static final long DEFAULT_MIN_RECONNECT_DELAY = 500L;
+
+  /** Default max delay in milliseconds between reconnect attempts. */
+  private static final long DEFAULT_MAX_RECONNECT_DELAY = 30000L;
+
+  /** Min time in nanoseconds between scans of the socket queue for the buffered amount. */
+  private static final long BUFFERED_AMOUNT_SCAN_INTERVAL = 1000000L;
+
+  /** Delay in milliseconds before replay is resumed when the client is paused. */
+  private static final long REPLAY_RETRY_DELAY = 10L;
+
+  /** Timer for reconnects and replays, shared by all clients. */
+  private static final ScheduledExecutorService timer_ = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LogIQ web socket client");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /**
+   * Runs the reconnect attempts, which block while the old connection
+   * is torn down, so that they don't hold back the shared timer.
+   */
+  private static final ExecutorService reconnector_ = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "LogIQ web socket reconnect");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /** Indicate if requests are sent as binary (UTF-8) frames rather than text frames. */
+  private volatile boolean isBinary_ = false;
+
+  /** Time in milliseconds to wait for the response of an asynchronous request. */
+  private volatile long requestTimeout_ = DEFAULT_REQUEST_TIMEOUT;
+
+  /** Asynchronous requests awaiting their response, by request ID. */
+  private final Map<Long,CompletableFuture<Response>> pendingRequests_ = new ConcurrentHashMap<>();
+
+  /** IDs of the asynchronous requests held in the offline buffer, not yet sent. */
+  private final Set<Long> bufferedRequests_ = ConcurrentHashMap.newKeySet();
+
+  /** Buffered amount in bytes below which a paused client accepts requests again. */
+  private volatile long lowWatermark_ = DEFAULT_LOW_WATERMARK;
+
+  /** Buffered amount in bytes above which the client is paused. */
+  private volatile long highWatermark_ = DEFAULT_HIGH_WATERMARK;
+
+  /** Buffered amount in bytes found by the last scan of the socket queue. */
+  private volatile long scannedAmount_ = 0L;
+
+  /** Time of the last scan of the socket queue, by System.nanoTime(). */
+  private volatile long scanTime_ = System.nanoTime() - BUFFERED_AMOUNT_SCAN_INTERVAL;
+
+  /** Payload bytes passed to the socket since the last scan. */
+  private final LongAdder unscannedAmount_ = new LongAdder();
+
+  /** Indicate if the client is paused, i.e. trySend() and send() with timeout holds back. */
+  private volatile boolean isPaused_ = false;
+
+  /** Accumulated time in nanoseconds senders have waited for the client to be unpaused. */
+  private final LongAdder stallTime_ = new LongAdder();
+
+  /** Number of times a sender has had to wait for the client to be unpaused. */
+  private final LongAdder nStalls_ = new LongAdder();
+
+  /** Number of requests rejected by trySend() or timed out in send() with timeout. */
+  private final LongAdder nRejected_ = new LongAdder();
+
+  /** Indicate if the client reconnects when the connection is lost. */
+  private volatile boolean isAutoReconnect_ = false;
+
+  /** Delay in milliseconds before the first reconnect attempt. */
+  private volatile long minReconnectDelay_ = DEFAULT_MIN_RECONNECT_DELAY;
+
+  /** Max delay in milliseconds between reconnect attempts. */
+  private volatile long maxReconnectDelay_ = DEFAULT_MAX_RECONNECT_DELAY;
+
+  /** Number of failed connection attempts since the connection was last open. */
+  private volatile int nAttempts_ = 0;
+
+  /** Total number of reconnect attempts. */
+  private final LongAdder nReconnects_ = new LongAdder();
+
+  /** Indicate if the connection is being closed on request, so no reconnect should take place. */
+  private volatile boolean isClosing_ = false;
+
+  /**
+   * Indicate if the client is closed by the user. Unlike isClosing_ it is
+   * not changed by the close and connect calls of a reconnect attempt,
+   * so a close during the attempt is never undone.
+   */
+  private volatile boolean isClosedByUser_ = false;
+
+  /** The thread running a reconnect attempt. Null if none. */
+  private volatile Thread reconnectThread_ = null;
+
+  /** Buffer of requests sent while disconnected. Null if none. */
+  private volatile OfflineBuffer offlineBuffer_ = null;
+
+  /** Decodes and delivers incoming messages off the web socket thread. Null to do it inline. */
+  private volatile ResponseDispatcher dispatcher_ = null;
+
+  /** Traffic metrics of this client. */
+  private final ClientMetrics metrics_ = new ClientMetrics();
+
+  /**
+   * Lock serializing the encoding of outgoing frames if messages are
+   * compressed, as compressed messages depend on those before them.
+   * Taken by all the send methods, frames included. Null if not compressing.
+   */
+  private final Object sendLock_;
+
+  /**
+   * Create a websocket client.
+   *
+   * @param webSocketUri  URI to server web socket. Non-null.
+   */
+  public WebSocketClient(URI webSocketUri)
+  {
+    super(webSocketUri);
+    sendLock_ = null;
+  }
+
+  /**
+   * Create a websocket client that offers the permessage-deflate
+   * extension to the server. Messages are compressed if the server
+   * accepts it, and sent uncompressed otherwise.
+   *
+   * @param webSocketUri       URI to server web socket. Non-null.
+   * @param perMessageDeflate  Compression settings. Non-null.
+   * @throws IllegalArgumentException  If perMessageDeflate is null.
+   */
+  public WebSocketClient(URI webSocketUri, PerMessageDeflate perMessageDeflate)
+  {
+    super(webSocketUri, newDraft(perMessageDeflate));
+    sendLock_ = new Object();
+  }
+
+  /**
+   * Return the draft of the specified compression settings.
+   * Done ahead of the super constructor.
+   *
+   * @param perMessageDeflate  Compression settings.
+   * @return                   The draft of the settings. Never null.
+   * @throws IllegalArgumentException  If perMessageDeflate is null.
+   */
+  private static Draft_6455 newDraft(PerMessageDeflate perMessageDeflate)
+  {
+    if (perMessageDeflate == null)
+      throw new IllegalArgumentException("perMessageDeflate cannot be null");
+
+    return perMessageDeflate.newDraft();
+  }
+
+  /**
+   * Specify if requests should be sent as binary frames holding
+   * the UTF-8 encoded message rather than as text frames.
+   * Binary frames are encoded directly to bytes, without
+   * the intermediate JSON string. The server must accept
+   * binary frames for this to work. Default is false.
+   *
+   * @param isBinary  True to send binary frames, false to send text frames.
+   */
+  public void setBinary(boolean isBinary)
+  {
+    isBinary_ = isBinary;
+  }
+
+  /**
+   * Return if requests are sent as binary frames.
+   *
+   * @return  True if requests are sent as binary frames, false if
+   *          they are sent as text frames.
+   */
+  public boolean isBinary()
+  {
+    return isBinary_;
+  }
+
+  /**
+   * Set the time to wait for the response of requests sent by
+   * {@link #sendAsync(Request)}. Default is 30 seconds.
+   *
+   * @param requestTimeout  Timeout in milliseconds. [1,&gt;.
+   * @throws IllegalArgumentException  If requestTimeout is &lt; 1.
+   */
+  public void setRequestTimeout(long requestTimeout)
+  {
+    if (requestTimeout < 1)
+      throw new IllegalArgumentException("Invalid requestTimeout: " + requestTimeout);
+
+    requestTimeout_ = requestTimeout;
+  }
+
+  /**
+   * Return the time to wait for the response of asynchronous requests.
+   *
+   * @return  Timeout in milliseconds. [1,&gt;.
+   */
+  public long getRequestTimeout()
+  {
+    return requestTimeout_;
+  }
+
+  /**
+   * Return the number of asynchronous requests awaiting their response.
+   *
+   * @return  Number of pending requests. [0,&gt;.
+   */
+  public int getNPendingRequests()
+  {
+    return pendingRequests_.size();
+  }
+
+  /**
+   * Set the watermarks of the outbound flow control of
+   * {@link #trySend} and {@link #send(Request,long,TimeUnit)}.
+   * <p>
+   * When the amount of data buffered by the socket and not yet written
+   * to the network reaches the high watermark, the client is paused
+   * and requests are held back. It is resumed when the buffered amount
+   * has dropped to the low watermark. Defaults are 256kB and 1MB.
+   *
+   * @param lowWatermark   Low watermark in bytes. [0,highWatermark].
+   * @param highWatermark  High watermark in bytes. [1,&gt;.
+   * @throws IllegalArgumentException  If the watermarks are out of range.
+   */
+  public void setWatermarks(long lowWatermark, long highWatermark)
+  {
+    if (highWatermark < 1)
+      throw new IllegalArgumentException("Invalid highWatermark: " + highWatermark);
+
+    if (lowWatermark < 0 || lowWatermark > highWatermark)
+      throw new IllegalArgumentException("Invalid lowWatermark: " + lowWatermark);
+
+    lowWatermark_ = lowWatermark;
+    highWatermark_ = highWatermark;
+  }
+
+  /**
+   * Return the low watermark of the outbound flow control.
+   *
+   * @return  The low watermark in bytes. [0,&gt;.
+   */
+  public long getLowWatermark()
+  {
+    return lowWatermark_;
+  }
+
+  /**
+   * Return the high watermark of the outbound flow control.
+   *
+   * @return  The high watermark in bytes. [1,&gt;.
+   */
+  public long getHighWatermark()
+  {
+    return highWatermark_;
+  }
+
+  /**
+   * Return the number of bytes queued in the socket and not yet
+   * written to the network.
+   * <p>
+   * The socket queue is scanned at most once a millisecond. In between
+   * the amount is that of the last scan plus the payload sent since,
+   * which may overestimate it, but never misses a growing queue.
+   *
+   * @return  The buffered amount in bytes. [0,&gt;.
+   */
+  public long getBufferedAmount()
+  {
+    WebSocket connection = getConnection();
+    if (!(connection instanceof WebSocketImpl) || !connection.hasBufferedData())
+      return 0L;
+
+    long now = System.nanoTime();
+    if (now - scanTime_ < BUFFERED_AMOUNT_SCAN_INTERVAL)
+      return scannedAmount_ + unscannedAmount_.sum();
+
+    // Reset ahead of the scan, so a concurrent send is counted twice rather than not at all
+    unscannedAmount_.reset();
+
+    // The write thread sends each buffer from its array up to the limit,
+    // and doesn't change position or limit of the buffers queued
+    long bufferedAmount = 0L;
+    for (ByteBuffer buffer : ((WebSocketImpl) connection).outQueue)
+      bufferedAmount += buffer.limit();
+
+    scannedAmount_ = bufferedAmount;
+    scanTime_ = now;
+
+    return bufferedAmount;
+  }
+
+  /**
+   * Return the number of frames queued in the socket and not yet
+   * written to the network.
+   *
+   * @return  The queue depth in frames. [0,&gt;.
+   */
+  public int getQueueDepth()
+  {
+    WebSocket connection = getConnection();
+    return connection instanceof WebSocketImpl ? ((WebSocketImpl) connection).outQueue.size() : 0;
+  }
+
+  /**
+   * Return if the client is currently paused by the outbound flow control.
+   *
+   * @return  True if the client is paused, false otherwise.
+   */
+  public boolean isPaused()
+  {
+    return isPaused_;
+  }
+
+  /**
+   * Return the accumulated time senders have waited in
+   * {@link #send(Request,long,TimeUnit)} for the client to be resumed.
+   *
+   * @return  Accumulated stall time in milliseconds. [0,&gt;.
+   */
+  public long getStallTime()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(stallTime_.sum());
+  }
+
+  /**
+   * Return the number of times a sender has had to wait for the client
+   * to be resumed.
+   *
+   * @return  Number of stalls. [0,&gt;.
+   */
+  public long getNStalls()
+  {
+    return nStalls_.sum();
+  }
+
+  /**
+   * Return the number of requests rejected by {@link #trySend} or
+   * timed out in {@link #send(Request,long,TimeUnit)}.
+   *
+   * @return  Number of rejected requests. [0,&gt;.
+   */
+  public long getNRejected()
+  {
+    return nRejected_.sum();
+  }
+
+  /**
+   * Specify if the client should reconnect when the connection is lost,
+   * or when the initial connect fails. Default is false.
+   * The client never reconnects after it is closed by one of the
+   * close() methods.
+   *
+   * @param isAutoReconnect  True to reconnect, false not to.
+   */
+  public void setAutoReconnect(boolean isAutoReconnect)
+  {
+    isAutoReconnect_ = isAutoReconnect;
+  }
+
+  /**
+   * Return if the client reconnects when the connection is lost.
+   *
+   * @return  True if the client reconnects, false if not.
+   */
+  public boolean isAutoReconnect()
+  {
+    return isAutoReconnect_;
+  }
+
+  /**
+   * Set the delays between reconnect attempts.
+   * <p>
+   * The delay doubles for each failed attempt, from minDelay up to
+   * maxDelay, and the actual delay is picked at random between half
+   * and all of it so that a crowd of clients losing the same server
+   * don't come back in lockstep. Defaults are 0.5 and 30 seconds.
+   *
+   * @param minDelay  Delay before the first attempt in milliseconds. [1,maxDelay].
+   * @param maxDelay  Max delay between attempts in milliseconds. [1,&gt;.
+   * @throws IllegalArgumentException  If the delays are out of range.
+   */
+  public void setReconnectDelay(long minDelay, long maxDelay)
+  {
+    if (maxDelay < 1)
+      throw new IllegalArgumentException("Invalid maxDelay: " + maxDelay);
+
+    if (minDelay < 1 || minDelay > maxDelay)
+      throw new IllegalArgumentException("Invalid minDelay: " + minDelay);
+
+    minReconnectDelay_ = minDelay;
+    maxReconnectDelay_ = maxDelay;
+  }
+
+  /**
+   * Return the total number of reconnect attempts of this client.
+   *
+   * @return  Number of reconnect attempts. [0,&gt;.
+   */
+  public long getNReconnects()
+  {
+    return nReconnects_.sum();
+  }
+
+  /**
+   * Install a buffer for requests sent by {@link #send(Request)} while the
+   * client is disconnected. Without a buffer such requests fail with
+   * an IOException. Default is none.
+   * <p>
+   * Requests in the buffer are replayed in order on a background thread
+   * once the connection is open, and requests sent during replay are
+   * added to the end of the buffer, so the order is kept throughout.
+   * The replay respects the watermarks, see {@link #setWatermarks}.
+   * Replayed requests are not notified individually, instead a
+   * "LogIqRequestsReplayed" notification with the number of requests
+   * replayed is issued when the buffer is emptied.
+   *
+   * @param offlineBuffer  Buffer to install. Null to remove the current one.
+   */
+  public void setOfflineBuffer(OfflineBuffer offlineBuffer)
+  {
+    // Requests of a replaced buffer are no longer known to be replayed
+    if (offlineBuffer != offlineBuffer_)
+      bufferedRequests_.clear();
+
+    offlineBuffer_ = offlineBuffer;
+
+    if (offlineBuffer != null && !offlineBuffer.isEmpty() && isOpen())
+      timer_.execute(this::replay);
+  }
+
+  /**
+   * Return the buffer of requests sent while disconnected.
+   *
+   * @return  The offline buffer. Null if none.
+   */
+  public OfflineBuffer getOfflineBuffer()
+  {
+    return offlineBuffer_;
+  }
+
+  /**
+   * Return the traffic metrics of this client.
+   *
+   * @return  The metrics of this client. Never null.
+   */
+  public ClientMetrics getMetrics()
+  {
+    return metrics_;
+  }
+
+  /**
+   * Set the executor to decode incoming messages and deliver the
+   * responses on. Default is none, in which case this is done on the
+   * web socket thread.
+   * <p>
+   * Messages are decoded in parallel, but responses with the same ID,
+   * like all data of a subscribed stream, are delivered one at a time
+   * and in the order received. Listeners may be called from different
+   * threads, and futures of sendAsync() may complete concurrently.
+   * <p>
+   * The executor should be set before connecting. It is not shut down
+   * by the client. See {@link #newDispatchExecutor}.
+   *
+   * @param executor  Executor to dispatch on. Null to dispatch on the web socket thread.
+   */
+  public void setDispatchExecutor(Executor executor)
+  {
+    dispatcher_ = executor != null ? new ResponseDispatcher(executor, this::dispatch) : null;
+  }
+
+  /**
+   * Create an executor suitable for {@link #setDispatchExecutor}.
+   * This is a virtual thread per task executor if the platform supports
+   * it (Java 21 and later), otherwise a pool of daemon threads, one per
+   * available processor.
+   *
+   * @return  A new dispatch executor. Never null.
+   */
+  public static ExecutorService newDispatchExecutor()
+  {
+    // Looked up by reflection as the code is built for older platforms too
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException exception) {
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+          Thread thread = new Thread(runnable, "LogIQ dispatcher");
+          thread.setDaemon(true);
+          return thread;
+        });
+    }
+  }
+
+  /**
+   * Schedule a reconnect attempt with exponential backoff and jitter.
+   */
+  private void scheduleReconnect()
+  {
+    int nAttempts = nAttempts_++;
+
+    long delay = minReconnectDelay_ << Math.min(nAttempts, 30);
+    if (delay <= 0 || delay > maxReconnectDelay_)
+      delay = maxReconnectDelay_;
+
+    delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+    logger_.log(Level.INFO, "Reconnecting to " + getURI() + " in " + delay + " ms");
+    timer_.schedule(() -> reconnector_.execute(this::reconnectScheduled), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reconnect, unless the client was closed in the meantime.
+   * Must not be called from the web socket thread.
+   */
+  private void reconnectScheduled()
+  {
+    if (isClosedByUser_ || !isAutoReconnect_)
+      return;
+
+    nReconnects_.increment();
+    EventManager.getInstance().notify("LogIqReconnecting", this);
+
+    // A failed attempt ends in onClose(), which schedules the next one.
+    // reconnect() closes and connects through the overridden methods,
+    // which tell these calls from those of the user by the thread.
+    reconnectThread_ = Thread.currentThread();
+    try {
+      reconnect();
+    }
+    finally {
+      reconnectThread_ = null;
+    }
+  }
+
+  /**
+   * Check if the calling thread is running a reconnect attempt.
+   *
+   * @return  True if called from a reconnect attempt, false otherwise.
+   */
+  private boolean isReconnecting()
+  {
+    return Thread.currentThread() == reconnectThread_;
+  }
+
+  /**
+   * Send the requests of the offline buffer, oldest first.
+   * Runs on the timer thread, and reschedules itself while the client is paused.
+   */
+  private void replay()
+  {
+    OfflineBuffer offlineBuffer = offlineBuffer_;
+    if (offlineBuffer == null)
+      return;
+
+    int nReplayed = 0;
+
+    // Synchronized per request so that send() can't slip a request past those buffered
+    while (isOpen()) {
+      synchronized (offlineBuffer) {
+        byte[] message = offlineBuffer.peek();
+        if (message == null) {
+          if (nReplayed > 0)
+            EventManager.getInstance().notify("LogIqRequestsReplayed", this, nReplayed);
+          return;
+        }
+
+        if (!isWritable()) {
+          timer_.schedule(this::replay, REPLAY_RETRY_DELAY, TimeUnit.MILLISECONDS);
+          return;
+        }
+
+        try {
+          if (isBinary_)
+            send(message);
+          else
+            send(new String(message, StandardCharsets.UTF_8));
+
+          metrics_.messageSent(message.length);
+        }
+        catch (WebsocketNotConnectedException exception) {
+          // Kept in the buffer and replayed on the next open
+          return;
+        }
+
+        offlineBuffer.remove();
+        nReplayed++;
+
+        // Once sent, its future fails if the connection closes
+        if (!bufferedRequests_.isEmpty()) {
+          Long id = getRequestId(message);
+          if (id != null)
+            bufferedRequests_.remove(id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the specified request to the offline buffer.
+   *
+   * @param offlineBuffer  Buffer to add to. Non-null.
+   * @param request        Request to add. Non-null.
+   * @throws IOException  If the buffer is full.
+   */
+  private void buffer(OfflineBuffer offlineBuffer, Request request)
+    throws IOException
+  {
+    assert offlineBuffer != null : "offlineBuffer cannot be null";
+    assert request != null : "request cannot be null";
+
+    if (!offlineBuffer.add(request.toJson().getBytes(StandardCharsets.UTF_8)))
+      throw new IOException("Offline buffer is full, request " + request.getId() + " (" + request.getMethod() + ") rejected");
+
+    if (pendingRequests_.containsKey(request.getId()))
+      bufferedRequests_.add(request.getId());
+  }
+
+  /**
+   * Return the ID of the specified buffered request.
+   *
+   * @param message  Request as held by the offline buffer. Non-null.
+   * @return         ID of the request, or null if it can't be parsed.
+   */
+  private static Long getRequestId(byte[] message)
+  {
+    assert message != null : "message cannot be null";
+
+    try {
+      return RequestParser.parseLazy(new String(message, StandardCharsets.UTF_8)).getId();
+    }
+    catch (JsonParsingException exception) {
+      logger_.log(Level.WARNING, "Unparsable buffered request", exception);
+      return null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void connect()
+  {
+    if (isReconnecting()) {
+      // Closed by the user while the old connection was reset
+      if (isClosedByUser_)
+        return;
+    }
+    else {
+      isClosedByUser_ = false;
+    }
+
+    isClosing_ = false;
+    super.connect();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close()
+  {
+    if (!isReconnecting())
+      isClosedByUser_ = true;
+
+    isClosing_ = true;
+    super.close();
+  }
 
-import no.geosoft.logiq.core.jsonrpc.Request;
-import no.geosoft.logiq.core.jsonrpc.Response;
+  /** {@inheritDoc} */
+  @Override
+  public void close(int code)
+  {
+    if (!isReconnecting())
+      isClosedByUser_ = true;
 
-/**
- * A websocket client instance.
- *
- * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
- */
-public class WebSocketClient extends org.java_websocket.client.WebSocketClient
-{
-  /** The logger instance. */
-  private static final Logger logger_ = Logger.getLogger(WebSocketClient.class.getName());
+    isClosing_ = true;
+    super.close(code);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close(int code, String message)
+  {
+    if (!isReconnecting())
+      isClosedByUser_ = true;
+
+    isClosing_ = true;
+    super.close(code, message);
+  }
 
   /**
-   * Create a websocket client.
+   * Update and return the flow control state of the client.
    *
-   * @param webSocketUri  URI to server web socket. Non-null.
+   * @return  True if requests may be sent, false if the client is paused.
    */
-  public WebSocketClient(URI webSocketUri)
+  private boolean isWritable()
   {
-    super(webSocketUri);
+    long bufferedAmount = getBufferedAmount();
+
+    if (isPaused_) {
+      if (bufferedAmount <= lowWatermark_)
+        isPaused_ = false;
+    }
+    else if (bufferedAmount >= highWatermark_) {
+      isPaused_ = true;
+    }
+
+    return !isPaused_;
   }
 
   /** {@inheritDoc} */
@@ -41,7 +805,33 @@ public class WebSocketClient extends org.java_websocket.client.WebSocketClient
     logger_.log(Level.INFO, "Connection open " + getRemoteSocketAddress() +
                 " - " + serverHandshake.getHttpStatusMessage() +
                 " (" + serverHandshake.getHttpStatus() + ")");
+    nAttempts_ = 0;
+
     EventManager.getInstance().notify("LogIqConnectionOpened", this);
+
+    // Not on the web socket thread, which must be free to read
+    OfflineBuffer offlineBuffer = offlineBuffer_;
+    if (offlineBuffer != null && !offlineBuffer.isEmpty())
+      timer_.execute(this::replay);
+  }
+
+  /**
+   * Fail the pending asynchronous requests not held in the offline buffer.
+   *
+   * @param exception  Exception to fail the requests with. Non-null.
+   */
+  private void failPendingRequests(IOException exception)
+  {
+    assert exception != null : "exception cannot be null";
+
+    for (Long id : pendingRequests_.keySet()) {
+      if (bufferedRequests_.contains(id))
+        continue;
+
+      CompletableFuture<Response> future = pendingRequests_.remove(id);
+      if (future != null)
+        future.completeExceptionally(exception);
+    }
   }
 
   /** {@inheritDoc} */
@@ -50,17 +840,183 @@ public class WebSocketClient extends org.java_websocket.client.WebSocketClient
   {
     logger_.log(Level.INFO, "Connection closed " + getRemoteSocketAddress() +
                 " - " + closeReason + " (" + exitCode + ")");
+
+    //
+    // Fail the requests that will never get a response. Those in the
+    // offline buffer are sent on replay, and are left pending. The lock
+    // keeps send() from buffering a request while the others are failed.
+    //
+    IOException exception = new IOException("Connection closed: " + closeReason + " (" + exitCode + ")");
+    OfflineBuffer offlineBuffer = offlineBuffer_;
+    if (offlineBuffer != null) {
+      synchronized (offlineBuffer) {
+        failPendingRequests(exception);
+      }
+    }
+    else {
+      failPendingRequests(exception);
+    }
+
+    metrics_.connectionClosed();
+
     EventManager.getInstance().notify("LogIqConnectionClosed", this);
+
+    if (isAutoReconnect_ && !isClosing_ && !isClosedByUser_)
+      scheduleReconnect();
   }
 
   /** {@inheritDoc} */
   @Override
   public void onMessage(String message)
   {
-    logger_.log(Level.INFO, "Response: " + message);
+    messageLogger_.logPayload(logger_, Level.FINE, "Response: ", message);
+    metrics_.messageReceived(message.length());
+
+    ResponseDispatcher dispatcher = dispatcher_;
+    if (dispatcher != null) {
+      dispatcher.submit(() -> decode(message));
+      return;
+    }
+
+    for (Response response : decode(message))
+      dispatch(response);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onMessage(ByteBuffer message)
+  {
+    int nBytes = message.remaining();
+    if (logger_.isLoggable(Level.FINE))
+      messageLogger_.log(logger_, Level.FINE, () -> "Response: " + nBytes + " bytes");
+
+    metrics_.messageReceived(nBytes);
+
+    // The frame buffer is not reused by the socket, so it can be handed over as is
+    ResponseDispatcher dispatcher = dispatcher_;
+    if (dispatcher != null) {
+      dispatcher.submit(() -> decode(message));
+      return;
+    }
+
+    for (Response response : decode(message))
+      dispatch(response);
+  }
+
+  /**
+   * Decode the specified message, being a single response or a batch.
+   *
+   * @param message  Message to decode. Non-null.
+   * @return         The responses of the message. Never null.
+   */
+  private List<Response> decode(String message)
+  {
+    assert message != null : "message cannot be null";
+
+    long startTime = System.nanoTime();
+
+    List<Response> responses = isBatch(message) ?
+      new ResponseBatch(message).getResponses() :
+      Collections.singletonList(new Response(message));
+
+    decoded(responses, startTime);
+    return responses;
+  }
+
+  /**
+   * Decode the specified UTF-8 message, being a single response or a batch.
+   *
+   * @param message  Message to decode. Non-null.
+   * @return         The responses of the message. Never null.
+   */
+  private List<Response> decode(ByteBuffer message)
+  {
+    assert message != null : "message cannot be null";
+
+    long startTime = System.nanoTime();
+
+    List<Response> responses = isBatch(message) ?
+      MessageCodec.decodeResponseBatch(message).getResponses() :
+      Collections.singletonList(MessageCodec.decodeResponse(message));
+
+    decoded(responses, startTime);
+    return responses;
+  }
+
+  /**
+   * Record the metrics of the specified decoded responses.
+   *
+   * @param responses  Responses decoded. Non-null.
+   * @param startTime  Time decoding started, as System.nanoTime().
+   */
+  private void decoded(List<Response> responses, long startTime)
+  {
+    assert responses != null : "responses cannot be null";
+
+    long endTime = System.nanoTime();
+    metrics_.messageDecoded(endTime - startTime);
+
+    for (Response response : responses)
+      metrics_.responseReceived(response, endTime);
+  }
+
+  /**
+   * Deliver the specified response. A response to a request sent by
+   * sendAsync() completes its future. Other responses are notified
+   * to the listeners.
+   *
+   * @param response  Response to deliver. Non-null.
+   */
+  private void dispatch(Response response)
+  {
+    assert response != null : "response cannot be null";
+
+    Long id = response.getId();
+    CompletableFuture<Response> future = id != null ? pendingRequests_.remove(id) : null;
+
+    if (future != null)
+      future.complete(response);
+    else
+      EventManager.getInstance().notify("LogIqResponseReceived", this, response);
+  }
+
+  /**
+   * Check if the specified message is a JSON-RPC batch, i.e. a JSON array.
+   *
+   * @param message  Message to check. Non-null.
+   * @return         True if message is a batch, false otherwise.
+   */
+  private static boolean isBatch(CharSequence message)
+  {
+    assert message != null : "message cannot be null";
+
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (!Character.isWhitespace(c))
+        return c == '[';
+    }
+
+    return false;
+  }
+
+  /**
+   * Check if the specified UTF-8 message is a JSON-RPC batch, i.e. a JSON array.
+   * The position of the buffer is not changed.
+   *
+   * @param message  Message to check. Non-null.
+   * @return         True if message is a batch, false otherwise.
+   */
+  private static boolean isBatch(ByteBuffer message)
+  {
+    assert message != null : "message cannot be null";
 
-    Response response = new Response(message);
-    EventManager.getInstance().notify("LogIqResponseReceived", this, response);
+    for (int i = message.position(); i < message.limit(); i++) {
+      byte b = message.get(i);
+      if (!Character.isWhitespace(b))
+        return b == '[';
+    }
+
+    return false;
   }
 
   /** {@inheritDoc} */
@@ -72,9 +1028,13 @@ public class WebSocketClient extends org.java_websocket.client.WebSocketClient
 
   /**
    * Send the specified request to the server.
+   * <p>
+   * If an offline buffer is installed, the request is added to the buffer
+   * instead if the client is disconnected or the buffer is being replayed.
    *
    * @param message  Request to send. Non-null.
-   * @throws IOException  If sending failed for some reason.
+   * @throws IOException  If sending failed for some reason, or if the
+   *                      request should be buffered and the buffer is full.
    */
   public void send(Request request)
     throws IOException
@@ -82,13 +1042,377 @@ public class WebSocketClient extends org.java_websocket.client.WebSocketClient
     if (request == null)
       throw new IllegalArgumentException("request cannot be null");
 
+    OfflineBuffer offlineBuffer = offlineBuffer_;
+    if (offlineBuffer != null) {
+      synchronized (offlineBuffer) {
+        if (!isOpen() || !offlineBuffer.isEmpty()) {
+          buffer(offlineBuffer, request);
+          return;
+        }
+
+        try {
+          sendNow(request);
+        }
+        catch (IOException exception) {
+          // The connection went down after the check
+          buffer(offlineBuffer, request);
+        }
+      }
+      return;
+    }
+
+    sendNow(request);
+  }
+
+  /**
+   * Send the specified request to the server through the socket.
+   *
+   * @param request  Request to send. Non-null.
+   * @throws IOException  If sending failed for some reason.
+   */
+  private void sendNow(Request request)
+    throws IOException
+  {
+    assert request != null : "request cannot be null";
+
     try {
-      send(request.toJson());
+      long startTime = System.nanoTime();
+
+      if (isBinary_) {
+        ByteBuffer message = MessageCodec.encode(request);
+        long sendTime = System.nanoTime();
+        int nBytes = message.remaining();
+
+        metrics_.requestSent(request, sendTime);
+        send(message);
+        metrics_.messageSent(nBytes);
+        metrics_.messageEncoded(sendTime - startTime);
+      }
+      else {
+        String message = request.toJson();
+        long sendTime = System.nanoTime();
+
+        metrics_.requestSent(request, sendTime);
+        send(message);
+        metrics_.messageSent(message.length());
+        metrics_.messageEncoded(sendTime - startTime);
+      }
 
       EventManager.getInstance().notify("LogIqRequestSent", this, request);
     }
     catch (WebsocketNotConnectedException exception) {
-      throw new IOException("Unable to send message: " + TextUtil.truncate(request.toJson(), 40), exception);
+      throw new IOException("Unable to send request " + request.getId() + " (" + request.getMethod() + ")", exception);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void send(String text)
+  {
+    if (text != null)
+      unscannedAmount_.add(text.length());
+
+    if (sendLock_ == null) {
+      super.send(text);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.send(text);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void send(ByteBuffer bytes)
+  {
+    if (bytes != null)
+      unscannedAmount_.add(bytes.remaining());
+
+    if (sendLock_ == null) {
+      super.send(bytes);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.send(bytes);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void send(byte[] bytes)
+  {
+    if (bytes != null)
+      unscannedAmount_.add(bytes.length);
+
+    if (sendLock_ == null) {
+      super.send(bytes);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.send(bytes);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void sendFrame(Framedata framedata)
+  {
+    // Taken ahead, as masking consumes the payload
+    if (framedata != null)
+      unscannedAmount_.add(framedata.getPayloadData().remaining());
+
+    if (sendLock_ == null) {
+      super.sendFrame(framedata);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.sendFrame(framedata);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void sendFrame(Collection<Framedata> frames)
+  {
+    if (frames != null) {
+      for (Framedata framedata : frames)
+        unscannedAmount_.add(framedata.getPayloadData().remaining());
+    }
+
+    if (sendLock_ == null) {
+      super.sendFrame(frames);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.sendFrame(frames);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void sendFragmentedFrame(Opcode opcode, ByteBuffer buffer, boolean isLast)
+  {
+    if (buffer != null)
+      unscannedAmount_.add(buffer.remaining());
+
+    if (sendLock_ == null) {
+      super.sendFragmentedFrame(opcode, buffer, isLast);
+      return;
+    }
+
+    synchronized (sendLock_) {
+      super.sendFragmentedFrame(opcode, buffer, isLast);
+    }
+  }
+
+  /**
+   * Send the specified request to the server unless the client is
+   * paused by the outbound flow control. See {@link #setWatermarks}.
+   *
+   * @param request  Request to send. Non-null.
+   * @return         True if the request was sent, false if it was rejected
+   *                 because the client is paused.
+   * @throws IllegalArgumentException  If request is null.
+   * @throws IOException  If sending failed for some reason.
+   */
+  public boolean trySend(Request request)
+    throws IOException
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (!isWritable()) {
+      nRejected_.increment();
+      return false;
+    }
+
+    send(request);
+    return true;
+  }
+
+  /**
+   * Send the specified request to the server, waiting for at most the
+   * specified time if the client is paused by the outbound flow control.
+   * See {@link #setWatermarks}.
+   *
+   * @param request  Request to send. Non-null.
+   * @param timeout  Max time to wait. [0,&gt;.
+   * @param unit     Unit of timeout. Non-null.
+   * @return         True if the request was sent, false if the client
+   *                 was still paused when the time was up.
+   * @throws IllegalArgumentException  If request or unit is null or timeout &lt; 0.
+   * @throws IOException           If sending failed for some reason.
+   * @throws InterruptedException  If the calling thread was interrupted while waiting.
+   */
+  public boolean send(Request request, long timeout, TimeUnit unit)
+    throws IOException, InterruptedException
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (timeout < 0)
+      throw new IllegalArgumentException("Invalid timeout: " + timeout);
+
+    if (unit == null)
+      throw new IllegalArgumentException("unit cannot be null");
+
+    if (!isWritable()) {
+      long startTime = System.nanoTime();
+      long deadline = startTime + unit.toNanos(timeout);
+      long parkNanos = MIN_PARK_NANOS;
+
+      nStalls_.increment();
+
+      // The socket gives no notification as data is written,
+      // so the buffered amount is polled with increasing intervals
+      try {
+        while (!isWritable() && isOpen()) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            nRejected_.increment();
+            return false;
+          }
+
+          LockSupport.parkNanos(Math.min(parkNanos, remaining));
+          if (Thread.interrupted())
+            throw new InterruptedException();
+
+          parkNanos = Math.min(2 * parkNanos, MAX_PARK_NANOS);
+        }
+      }
+      finally {
+        stallTime_.add(System.nanoTime() - startTime);
+      }
+    }
+
+    // Throws if the connection was closed while waiting
+    send(request);
+    return true;
+  }
+
+  /**
+   * Send the specified requests to the server as one JSON-RPC batch
+   * in a single frame. The server answers with one frame holding
+   * all the responses, and each of them is notified individually.
+   *
+   * @param batch  Requests to send. Non-null.
+   * @throws IOException  If sending failed for some reason.
+   */
+  public void send(RequestBatch batch)
+    throws IOException
+  {
+    if (batch == null)
+      throw new IllegalArgumentException("batch cannot be null");
+
+    try {
+      long startTime = System.nanoTime();
+
+      if (isBinary_) {
+        ByteBuffer message = MessageCodec.encode(batch);
+        long sendTime = System.nanoTime();
+        int nBytes = message.remaining();
+
+        for (Request request : batch.getRequests())
+          metrics_.requestSent(request, sendTime);
+        send(message);
+        metrics_.messageSent(nBytes);
+        metrics_.messageEncoded(sendTime - startTime);
+      }
+      else {
+        String message = batch.toJson();
+        long sendTime = System.nanoTime();
+
+        for (Request request : batch.getRequests())
+          metrics_.requestSent(request, sendTime);
+        send(message);
+        metrics_.messageSent(message.length());
+        metrics_.messageEncoded(sendTime - startTime);
+      }
+
+      for (Request request : batch.getRequests())
+        EventManager.getInstance().notify("LogIqRequestSent", this, request);
+    }
+    catch (WebsocketNotConnectedException exception) {
+      throw new IOException("Unable to send batch of " + batch.size() + " requests", exception);
+    }
+  }
+
+  /**
+   * Send the specified request to the server and return a future
+   * for its response, using the default request timeout.
+   * See {@link #sendAsync(Request,long,TimeUnit)}.
+   *
+   * @param request  Request to send. Non-null.
+   * @return         Future of the response. Never null.
+   * @throws IllegalArgumentException  If request is null.
+   * @throws IllegalStateException     If a request with the same ID is already pending.
+   */
+  public CompletableFuture<Response> sendAsync(Request request)
+  {
+    return sendAsync(request, requestTimeout_, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Send the specified request to the server and return a future
+   * for its response.
+   * <p>
+   * The future completes when the response with the ID of the request
+   * arrives. The response is delivered through the future only, and is
+   * <em>not</em> notified as "LogIqResponseReceived" to the listeners.
+   * The future completes exceptionally with an IOException if the request
+   * cannot be sent or the connection is closed before the response
+   * arrives, and with a TimeoutException if the response doesn't arrive
+   * within the given time.
+   * <p>
+   * A request held in the offline buffer when the connection closes is
+   * not failed, as it is still to be sent on replay. Its future waits
+   * for the response or the timeout, and the timeout should allow for
+   * the time to reconnect.
+   *
+   * @param request  Request to send. Non-null.
+   * @param timeout  Time to wait for the response. [1,&gt;.
+   * @param unit     Unit of timeout. Non-null.
+   * @return         Future of the response. Never null.
+   * @throws IllegalArgumentException  If request or unit is null or timeout &lt; 1.
+   * @throws IllegalStateException     If a request with the same ID is already pending.
+   */
+  public CompletableFuture<Response> sendAsync(Request request, long timeout, TimeUnit unit)
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    if (timeout < 1)
+      throw new IllegalArgumentException("Invalid timeout: " + timeout);
+
+    if (unit == null)
+      throw new IllegalArgumentException("unit cannot be null");
+
+    Long id = request.getId();
+    CompletableFuture<Response> future = new CompletableFuture<>();
+
+    // Registered before sending, as the response may arrive before send() returns
+    if (pendingRequests_.putIfAbsent(id, future) != null)
+      throw new IllegalStateException("Request " + id + " is already pending");
+
+    // Unregister however the future is completed, including by timeout or by the caller
+    future.orTimeout(timeout, unit);
+    future.whenComplete((response, throwable) -> {
+        pendingRequests_.remove(id, future);
+        bufferedRequests_.remove(id);
+      });
+
+    try {
+      send(request);
     }
+    catch (IOException exception) {
+      future.completeExceptionally(exception);
+    }
+
+    return future;
   }
 }
@@ -0,0 +1,356 @@
+package no.geosoft.logiq.core.websocket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import no.geosoft.cc.event.EventListener;
+import no.geosoft.cc.event.EventManager;
+
+import no.geosoft.logiq.core.jsonrpc.Request;
+
+/**
+ * A pool of connections to the same server, for consumers of many streams.
+ * <p>
+ * A single connection is limited by its socket and its one read thread.
+ * The pool spreads the streams across its connections by the hash of the
+ * stream name: <em>startConsuming</em> requests go to the connection of
+ * the stream, and <em>stopConsuming</em> requests to the connection the
+ * stream is currently consumed on. Other requests are sent round robin.
+ * <p>
+ * When a connection closes, its streams are spread on the open
+ * connections by sending their startConsuming requests again, with
+ * their original IDs so that the data keeps arriving under the same ID.
+ * A "LogIqStreamMoved" notification is issued for each stream moved, with
+ * the stream name as data. If no connection is open, the streams are held
+ * until one opens. The connections reconnect automatically, but streams
+ * are not moved back.
+ * <p>
+ * The responses of all connections are notified as "LogIqPoolResponseReceived"
+ * with the pool as source, in addition to the "LogIqResponseReceived"
+ * notification of the connection itself.
+ * <p>
+ * The pool is thread safe.
+ *
+ * @author <a href="mailto:jacob.dreyer@geosoft.no">Jacob Dreyer</a>
+ */
+public final class WebSocketClientPool
+{
+  /** The logger instance. */
+  private static final Logger logger_ = Logger.getLogger(WebSocketClientPool.class.getName());
+
+  /** Method that starts consuming a stream. */
+  private static final String START_CONSUMING = "startConsuming";
+
+  /** Method that stops consuming a stream. */
+  private static final String STOP_CONSUMING = "stopConsuming";
+
+  /**
+   * Thread for moving streams, shared by all pools. Streams are not moved
+   * on the web socket thread, which is inside an EventManager notification.
+   */
+  private static final Executor failoverExecutor_ = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "LogIQ client pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  /** The connections of the pool. */
+  private final List<WebSocketClient> clients_;
+
+  /** The startConsuming request of each stream consumed, by stream name. */
+  private final Map<String,Request> subscriptions_ = new HashMap<>();
+
+  /** The connection each stream is consumed on, by stream name. Absent if pending. */
+  private final Map<String,WebSocketClient> hosts_ = new HashMap<>();
+
+  /** Index of the connection of the next round robin request. */
+  private int next_ = 0;
+
+  /** Listener to the events of the connections. Kept, as EventManager only holds weak references. */
+  private final EventListener listener_ = this::update;
+
+  /**
+   * Create a pool of connections to the specified server.
+   * The connections are created with auto reconnect enabled,
+   * but not connected.
+   *
+   * @param webSocketUri  URI to server web socket. Non-null.
+   * @param nConnections  Number of connections. [1,&gt;.
+   * @throws IllegalArgumentException  If webSocketUri is null or nConnections &lt; 1.
+   */
+  public WebSocketClientPool(URI webSocketUri, int nConnections)
+  {
+    if (webSocketUri == null)
+      throw new IllegalArgumentException("webSocketUri cannot be null");
+
+    if (nConnections < 1)
+      throw new IllegalArgumentException("Invalid nConnections: " + nConnections);
+
+    List<WebSocketClient> clients = new ArrayList<>(nConnections);
+    for (int i = 0; i < nConnections; i++) {
+      WebSocketClient client = new WebSocketClient(webSocketUri);
+      client.setAutoReconnect(true);
+      clients.add(client);
+    }
+    clients_ = Collections.unmodifiableList(clients);
+
+    EventManager eventManager = EventManager.getInstance();
+    eventManager.addListener("LogIqConnectionOpened", listener_);
+    eventManager.addListener("LogIqConnectionClosed", listener_);
+    eventManager.addListener("LogIqResponseReceived", listener_);
+  }
+
+  /**
+   * Return the number of connections of this pool.
+   *
+   * @return  Number of connections. [1,&gt;.
+   */
+  public int getNConnections()
+  {
+    return clients_.size();
+  }
+
+  /**
+   * Return the connections of this pool, e.g. for individual configuration.
+   *
+   * @return  The connections of this pool. Never null.
+   */
+  public List<WebSocketClient> getClients()
+  {
+    return clients_;
+  }
+
+  /**
+   * Return the connection the specified stream is consumed on.
+   *
+   * @param streamName  Name of stream. Non-null.
+   * @return            The connection of the stream, or null if the stream
+   *                    is not consumed or is waiting for a connection.
+   * @throws IllegalArgumentException  If streamName is null.
+   */
+  public synchronized WebSocketClient getClient(String streamName)
+  {
+    if (streamName == null)
+      throw new IllegalArgumentException("streamName cannot be null");
+
+    return hosts_.get(streamName);
+  }
+
+  /**
+   * Connect all connections and wait for them to open.
+   *
+   * @return  True if all connections opened, false otherwise. Connections
+   *          that failed reconnect in the background.
+   * @throws InterruptedException  If the calling thread is interrupted while waiting.
+   */
+  public boolean connectBlocking()
+    throws InterruptedException
+  {
+    boolean isConnected = true;
+    for (WebSocketClient client : clients_)
+      isConnected &= client.connectBlocking();
+
+    return isConnected;
+  }
+
+  /**
+   * Close all connections of this pool. The pool cannot be used after this.
+   *
+   * @throws InterruptedException  If the calling thread is interrupted while waiting.
+   */
+  public void closeBlocking()
+    throws InterruptedException
+  {
+    EventManager.getInstance().removeListener(listener_);
+
+    for (WebSocketClient client : clients_)
+      client.closeBlocking();
+  }
+
+  /**
+   * Return the name of the stream of the specified consumer request.
+   *
+   * @param request  startConsuming or stopConsuming request. Non-null.
+   * @return         Name of stream. Never null.
+   * @throws IllegalArgumentException  If the request has no stream name param.
+   */
+  private static String getStreamName(Request request)
+  {
+    assert request != null : "request cannot be null";
+
+    Object streamName = request.getParam(0);
+    if (streamName == null)
+      throw new IllegalArgumentException("Missing stream name: " + request.getMethod());
+
+    return streamName.toString();
+  }
+
+  /**
+   * Return the connection of the hash of the specified stream name if it
+   * is open. Otherwise an open connection picked by the same hash, so
+   * that the streams of a closed connection are spread on the others.
+   *
+   * @param streamName  Name of stream. Non-null.
+   * @return            An open connection, or null if none are open.
+   */
+  private WebSocketClient getOpenClient(String streamName)
+  {
+    assert streamName != null : "streamName cannot be null";
+
+    int hash = streamName.hashCode();
+
+    WebSocketClient client = clients_.get(Math.floorMod(hash, clients_.size()));
+    if (client.isOpen())
+      return client;
+
+    List<WebSocketClient> openClients = new ArrayList<>(clients_.size());
+    for (WebSocketClient openClient : clients_) {
+      if (openClient.isOpen())
+        openClients.add(openClient);
+    }
+
+    return !openClients.isEmpty() ? openClients.get(Math.floorMod(hash, openClients.size())) : null;
+  }
+
+  /**
+   * Send the specified request through the pool.
+   * <p>
+   * A startConsuming request goes to the connection of its stream. If no
+   * connection is open it is held, and sent once a connection opens.
+   * A stopConsuming request goes to the connection the stream is consumed on.
+   * It is dropped if the stream is not consumed on an open connection,
+   * as the server has then already stopped it. Other requests are sent
+   * round robin on the open connections.
+   *
+   * @param request  Request to send. Non-null.
+   * @throws IllegalArgumentException  If request is null, or if it is a
+   *                                   consumer request without stream name.
+   * @throws IOException  If sending failed, or if no connection is open
+   *                      for a request that is not held.
+   */
+  public synchronized void send(Request request)
+    throws IOException
+  {
+    if (request == null)
+      throw new IllegalArgumentException("request cannot be null");
+
+    String method = request.getMethod();
+
+    //
+    // startConsuming
+    //
+    if (method.equals(START_CONSUMING)) {
+      String streamName = getStreamName(request);
+      subscriptions_.put(streamName, request);
+      hosts_.remove(streamName);
+
+      WebSocketClient client = getOpenClient(streamName);
+      if (client != null) {
+        client.send(request);
+        hosts_.put(streamName, client);
+      }
+    }
+
+    //
+    // stopConsuming
+    //
+    else if (method.equals(STOP_CONSUMING)) {
+      String streamName = getStreamName(request);
+      subscriptions_.remove(streamName);
+
+      WebSocketClient client = hosts_.remove(streamName);
+      if (client != null && client.isOpen())
+        client.send(request);
+    }
+
+    //
+    // Anything else
+    //
+    else {
+      int nConnections = clients_.size();
+      for (int i = 0; i < nConnections; i++) {
+        WebSocketClient client = clients_.get(next_);
+        next_ = (next_ + 1) % nConnections;
+        if (client.isOpen()) {
+          client.send(request);
+          return;
+        }
+      }
+
+      throw new IOException("No open connection for request " + request.getId() + " (" + method + ")");
+    }
+  }
+
+  /**
+   * Send the startConsuming requests of the streams that are not consumed
+   * on an open connection to an open connection.
+   */
+  private synchronized void assignStreams()
+  {
+    for (Map.Entry<String,Request> entry : subscriptions_.entrySet()) {
+      String streamName = entry.getKey();
+
+      WebSocketClient host = hosts_.get(streamName);
+      if (host != null && host.isOpen())
+        continue;
+
+      hosts_.remove(streamName);
+
+      WebSocketClient client = getOpenClient(streamName);
+      if (client == null)
+        return;
+
+      try {
+        client.send(entry.getValue());
+        hosts_.put(streamName, client);
+
+        if (host != null)
+          EventManager.getInstance().notify("LogIqStreamMoved", this, streamName);
+      }
+      catch (IOException exception) {
+        // Closing too. Picked up when its close is handled.
+        logger_.log(Level.WARNING, "Unable to move stream " + streamName, exception);
+      }
+    }
+  }
+
+  /**
+   * Handle the events of the connections.
+   *
+   * @param eventName  Name of event. Non-null.
+   * @param source     Source of event.
+   * @param data       Event data.
+   */
+  private void update(String eventName, Object source, Object data)
+  {
+    // Identity, as the notification may be from a client of another pool
+    boolean isPoolClient = false;
+    for (WebSocketClient client : clients_)
+      isPoolClient |= client == source;
+
+    if (!isPoolClient)
+      return;
+
+    // No locking here, as senders lock the pool before the EventManager
+    if (eventName.equals("LogIqResponseReceived"))
+      EventManager.getInstance().notify("LogIqPoolResponseReceived", this, data);
+    else
+      failoverExecutor_.execute(this::assignStreams);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized String toString()
+  {
+    return "Pool of " + clients_.size() + " connections, " + subscriptions_.size() + " streams";
+  }
+}